@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.api.actions.api;
+
+import org.onebusaway.util.tracing.RequestTracer;
+import org.onebusaway.util.tracing.SlowRequestTraceRecorder;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.opensymphony.xwork2.ActionInvocation;
+import com.opensymphony.xwork2.ActionProxy;
+import com.opensymphony.xwork2.interceptor.AbstractInterceptor;
+import com.opensymphony.xwork2.interceptor.PreResultListener;
+
+/**
+ * Traces API requests when a {@link SlowRequestTraceRecorder} is configured.
+ * The trace is split into an "action" span, covering the transit data service
+ * calls and bean conversion, and a "result" span, covering serialization of
+ * the response.
+ */
+public class SlowRequestTraceInterceptor extends AbstractInterceptor {
+
+  private static final long serialVersionUID = 1L;
+
+  private SlowRequestTraceRecorder _recorder;
+
+  @Autowired(required = false)
+  public void setSlowRequestTraceRecorder(SlowRequestTraceRecorder recorder) {
+    _recorder = recorder;
+  }
+
+  @Override
+  public String intercept(ActionInvocation invocation) throws Exception {
+
+    if (_recorder == null)
+      return invocation.invoke();
+
+    ActionProxy proxy = invocation.getProxy();
+    if (!_recorder.begin(proxy.getNamespace() + "/" + proxy.getActionName()))
+      return invocation.invoke();
+
+    final RequestTracer.Span[] current = {RequestTracer.span("action")};
+    invocation.addPreResultListener(new PreResultListener() {
+      @Override
+      public void beforeResult(ActionInvocation invocation, String resultCode) {
+        current[0].close();
+        current[0] = RequestTracer.span("result");
+      }
+    });
+
+    try {
+      return invocation.invoke();
+    } finally {
+      current[0].close();
+      _recorder.end();
+    }
+  }
+}
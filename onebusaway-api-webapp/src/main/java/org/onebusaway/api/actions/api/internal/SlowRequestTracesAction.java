@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2025 Aaron Brethorst <aaron@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.api.actions.api.internal;
+
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.struts2.interceptor.ServletRequestAware;
+import org.apache.struts2.rest.DefaultHttpHeaders;
+import org.onebusaway.api.actions.api.ApiActionSupport;
+import org.onebusaway.container.LocalRequests;
+import org.onebusaway.util.tracing.RequestTrace;
+import org.onebusaway.util.tracing.SlowRequestTraceRecorder;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Lists the most recent slow request traces, most recent first, at
+ * /api/internal/slow-request-traces.  A POST to the same path discards the
+ * retained traces.
+ *
+ * Only available when a {@link SlowRequestTraceRecorder} is configured, and
+ * only to requests made directly from the local host: requests from other
+ * hosts, or relayed by a proxy, get a "resource not found" response.
+ */
+public class SlowRequestTracesAction extends ApiActionSupport implements
+    ServletRequestAware {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final int V2 = 2;
+
+  private SlowRequestTraceRecorder _recorder;
+
+  private HttpServletRequest _servletRequest;
+
+  public SlowRequestTracesAction() {
+    super(V2);
+  }
+
+  @Autowired(required = false)
+  public void setSlowRequestTraceRecorder(SlowRequestTraceRecorder recorder) {
+    _recorder = recorder;
+  }
+
+  @Override
+  public void setServletRequest(HttpServletRequest request) {
+    _servletRequest = request;
+  }
+
+  /**
+   * GET: list the retained traces.
+   */
+  public DefaultHttpHeaders index() {
+
+    if (hasErrors())
+      return setValidationErrorsResponse();
+
+    if (!isVersion(V2))
+      return setUnknownVersionResponse();
+
+    if (_recorder == null || !isLocalRequest())
+      return setResourceNotFoundResponse();
+
+    List<RequestTrace> traces = _recorder.getSlowTraces();
+    return setOkResponse(getBeanFactoryV2().list(traces, false));
+  }
+
+  /**
+   * POST: discard the retained traces, returning the ones that were discarded.
+   */
+  public DefaultHttpHeaders create() {
+
+    if (hasErrors())
+      return setValidationErrorsResponse();
+
+    if (!isVersion(V2))
+      return setUnknownVersionResponse();
+
+    if (_recorder == null || !isLocalRequest())
+      return setResourceNotFoundResponse();
+
+    List<RequestTrace> traces = _recorder.getSlowTraces();
+    _recorder.clear();
+    return setOkResponse(getBeanFactoryV2().list(traces, false));
+  }
+
+  private boolean isLocalRequest() {
+    return LocalRequests.isLocalRequest(_servletRequest);
+  }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.api.actions.api.where;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.struts2.rest.DefaultHttpHeaders;
+import org.onebusaway.api.actions.api.ApiActionSupport;
+import org.onebusaway.exceptions.NoSuchStopServiceException;
+import org.onebusaway.exceptions.ServiceException;
+import org.onebusaway.transit_data.model.AgencyWithCoverageBean;
+import org.onebusaway.transit_data.model.ArrivalSummaryBean;
+import org.onebusaway.transit_data.model.ArrivalsAndDeparturesQueryBean;
+import org.onebusaway.transit_data.model.FilterChain;
+import org.onebusaway.transit_data.model.ListBean;
+import org.onebusaway.transit_data.services.TransitDataService;
+import org.onebusaway.util.services.configuration.ConfigurationService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.opensymphony.xwork2.conversion.annotations.TypeConversion;
+import com.opensymphony.xwork2.validator.annotations.RequiredFieldValidator;
+
+/**
+ * Flat arrival summaries for a stop: the same arrivals as
+ * arrivals-and-departures-for-stop, but without trip status, situations or
+ * references, for clients that only render a departure board.
+ */
+public class ArrivalSummariesForStopAction extends ApiActionSupport {
+
+  private static final Logger _log = LoggerFactory.getLogger(ArrivalSummariesForStopAction.class);
+
+  private static final long serialVersionUID = 1L;
+
+  private static final int V2 = 2;
+
+  @Autowired
+  private TransitDataService _service;
+
+  @Autowired
+  private ConfigurationService _configService;
+
+  private String _id;
+
+  private ArrivalsAndDeparturesQueryBean _query = new ArrivalsAndDeparturesQueryBean();
+
+  public ArrivalSummariesForStopAction() {
+    super(V2);
+  }
+
+  @RequiredFieldValidator
+  public void setId(String id) {
+    _id = id;
+  }
+
+  public String getId() {
+    return _id;
+  }
+
+  @TypeConversion(converter = "org.onebusaway.presentation.impl.conversion.DateTimeConverter")
+  public void setTime(Date time) {
+    _query.setTime(time.getTime());
+  }
+
+  public void setMinutesBefore(int minutesBefore) {
+    _query.setMinutesBefore(minutesBefore);
+  }
+
+  public void setMinutesAfter(int minutesAfter) {
+    _query.setMinutesAfter(minutesAfter);
+  }
+
+  @Autowired(required = false)
+  public void setFilterChain(FilterChain filterChain) {
+    _query.setSystemFilterChain(filterChain);
+  }
+
+  public DefaultHttpHeaders show() throws ServiceException {
+
+    if (hasErrors())
+      return setValidationErrorsResponse();
+
+    if (!isVersion(V2))
+      return setUnknownVersionResponse();
+
+    HashSet<String> agenciesExcludingScheduled = new HashSet<String>();
+    for (AgencyWithCoverageBean agencyBean : _service.getAgenciesWithCoverage()) {
+      String agency = agencyBean.getAgency().getId();
+      if (_configService.getConfigurationFlagForAgency(agency, "hideScheduleInfo"))
+        agenciesExcludingScheduled.add(agency);
+    }
+    _query.setAgenciesExcludingScheduled(agenciesExcludingScheduled);
+
+    ListBean<ArrivalSummaryBean> result = null;
+    try {
+      result = _service.getArrivalSummariesForStop(_id, _query);
+    } catch (NoSuchStopServiceException nsse) {
+      _log.error("no such stop Exception {}", nsse, nsse);
+      return setResourceNotFoundResponse();
+    }
+
+    if (result == null)
+      return setResourceNotFoundResponse();
+
+    List<ArrivalSummaryBean> summaries = result.getList();
+    return setOkResponse(getBeanFactoryV2().list(summaries, false));
+  }
+}
@@ -173,7 +173,7 @@ public class LinesRequestV2Action extends MonitoringActionV2Base
         error, responseTimestamp);
 
     // use ApiActionSupport to set proper headers instead of writing directly to response
-    return setOkResponseText(getSiri());
+    return setOkResponseText(getSiriText());
   }
 
   private Siri generateSiriResponse(
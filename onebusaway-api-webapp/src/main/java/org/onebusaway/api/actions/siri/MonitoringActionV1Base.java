@@ -15,6 +15,9 @@
  */
 package org.onebusaway.api.actions.siri;
 
+import java.io.IOException;
+import java.io.Writer;
+import org.onebusaway.api.model.StreamingText;
 import org.onebusaway.presentation.impl.service_alerts.ServiceAlertsHelper;
 import org.onebusaway.presentation.services.realtime.RealtimeService;
 import org.slf4j.Logger;
@@ -41,20 +44,35 @@ public class MonitoringActionV1Base extends SiriAction {
   }
 
   public String getSiri() {
-    // we no longer set response types here -- custom handlers take care of that
-    // based on the type param
-    try {
-      if(getType().equals("xml")) {
-        return _realtimeService.getSiriXmlSerializer().getXml(_siriResponse);
-      } else {
-        return _realtimeService.getSiriJsonSerializer().getJson(_siriResponse,
-                /*_servletRequest.getParameter("callback")*/null);
-        // callback happens at a lower level
+    return getSiriText().toString();
+  }
+
+  /**
+   * The serialized response, written straight to the client by the content
+   * type handlers rather than built as a String first. The type param picks
+   * the format; custom handlers take care of the response type.
+   */
+  protected StreamingText getSiriText() {
+    final Siri siri = _siriResponse;
+    final boolean xml = getType().equals("xml");
+    return new StreamingText() {
+      @Override
+      public void writeTo(Writer out) throws IOException {
+        try {
+          if (xml) {
+            _realtimeService.getSiriXmlSerializer().writeXml(siri, out);
+          } else {
+            // callback happens at a lower level
+            _realtimeService.getSiriJsonSerializer().writeJson(siri, null, out);
+          }
+        } catch (IOException e) {
+          throw e;
+        } catch (Exception e) {
+          _log.error("Siri v1 serialization failed: ", e);
+          throw new IOException("Siri v1 serialization failed", e);
+        }
       }
-    } catch(Exception e) {
-      _log.error("Siri v1 serialization failed: ", e,e);
-      return e.toString();
-    }
+    };
   }
 
 }
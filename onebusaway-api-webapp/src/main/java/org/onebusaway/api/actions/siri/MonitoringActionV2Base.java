@@ -15,6 +15,8 @@
  */
 package org.onebusaway.api.actions.siri;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -22,6 +24,7 @@ import java.util.Map;
 
 import org.onebusaway.api.actions.siri.impl.ServiceAlertsHelperV2;
 import org.onebusaway.api.actions.siri.service.RealtimeServiceV2;
+import org.onebusaway.api.model.StreamingText;
 import org.onebusaway.geospatial.model.CoordinateBounds;
 import org.onebusaway.geospatial.services.SphericalGeometryLibrary;
 import org.onebusaway.gtfs.model.AgencyAndId;
@@ -57,19 +60,34 @@ public class MonitoringActionV2Base extends SiriAction {
   }
 
   protected String getSiri() {
-    try {
-      if (getType().equals("xml")) {
-        return _realtimeService.getSiriXmlSerializer()
-                .getXml(_siriResponse);
-      } else {
-        return _realtimeService.getSiriJsonSerializer().getJson(
-                _siriResponse, /*_servletRequest.getParameter("callback")*/null);
-        // callback happens at a lower level
+    return getSiriText().toString();
+  }
+
+  /**
+   * The serialized response, written straight to the client by the content
+   * type handlers rather than built as a String first.
+   */
+  protected StreamingText getSiriText() {
+    final Siri siri = _siriResponse;
+    final boolean xml = getType().equals("xml");
+    return new StreamingText() {
+      @Override
+      public void writeTo(Writer out) throws IOException {
+        try {
+          if (xml) {
+            _realtimeService.getSiriXmlSerializer().writeXml(siri, out);
+          } else {
+            // callback happens at a lower level
+            _realtimeService.getSiriJsonSerializer().writeJson(siri, null, out);
+          }
+        } catch (IOException e) {
+          throw e;
+        } catch (Exception e) {
+          _log.error("Siri v2 serialization failed: ", e);
+          throw new IOException("Siri v2 serialization failed", e);
+        }
       }
-    } catch (Exception e) {
-      _log.error("Siri v2 serialization failed: ", e,e);
-      return e.toString();
-    }
+    };
   }
 
   protected boolean isValidRoute(AgencyAndId routeId) {
@@ -249,7 +249,7 @@ public class StopMonitoringAction extends MonitoringActionV1Base {
     _siriResponse = generateSiriResponse(visits, stopIds, error, responseTimestamp);
 
     // use ApiActionSupport to set proper headers instead of writing directly to response
-    return setOkResponseText(getSiri());
+    return setOkResponseText(getSiriText());
   }
   
   private boolean isValidRoute(AgencyAndId routeId) {
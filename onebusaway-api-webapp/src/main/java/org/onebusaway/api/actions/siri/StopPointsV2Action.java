@@ -168,7 +168,7 @@ public class StopPointsV2Action extends MonitoringActionV2Base
     _siriResponse = generateSiriResponse(stopPoints, upcomingServiceAllStops, error, responseTimestamp);
 
     // use ApiActionSupport to set proper headers instead of writing directly to response
-    return setOkResponseText(getSiri());
+    return setOkResponseText(getSiriText());
   }
 
   private Siri generateSiriResponse(
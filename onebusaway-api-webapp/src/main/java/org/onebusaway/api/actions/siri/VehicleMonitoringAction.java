@@ -219,7 +219,9 @@ public class VehicleMonitoringAction extends MonitoringActionV1Base {
         // There is no input (route id) to validate, so pass null error
         _siriResponse = generateSiriResponse(activities, null, null,
             currentTimestamp);
-        _cacheService.store(hashKey, getSiri());
+        // serialized once, for both the cache and this response
+        _cachedResponse = getSiri();
+        _cacheService.store(hashKey, _cachedResponse);
       } else {
         _cachedResponse = _cacheService.retrieve(hashKey);
       }
@@ -230,7 +232,9 @@ public class VehicleMonitoringAction extends MonitoringActionV1Base {
     }
 
     // use ApiActionSupport to set proper headers instead of writing directly to response
-    return setOkResponseText(getSiri());
+    if (_cachedResponse != null)
+      return setOkResponseText(_cachedResponse);
+    return setOkResponseText(getSiriText());
   }
 
   /**
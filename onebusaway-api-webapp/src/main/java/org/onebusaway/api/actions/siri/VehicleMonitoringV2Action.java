@@ -48,8 +48,6 @@ public class VehicleMonitoringV2Action extends MonitoringActionV2Base {
 
   private static final String VEHICLE_REF = "VehicleRef";
 
-  private String _cachedResponse = null;
-
   public DefaultHttpHeaders index() throws IOException {
     
     long currentTimestamp = getTime();
@@ -170,10 +168,7 @@ public class VehicleMonitoringV2Action extends MonitoringActionV2Base {
       try {
       gaLabel = "All Vehicles";
       
-      //int hashKey = _siriCacheService.hash(maximumOnwardCalls, agencyIds, _type);
-      
       List<VehicleActivityStructure> activities = new ArrayList<VehicleActivityStructure>();
-      //if (!_siriCacheService.containsKey(hashKey)) {
         for (String agency : agencyIds) {
           ListBean<VehicleStatusBean> vehicles = _transitDataService.getAllVehiclesForAgency(
               agency, currentTimestamp);
@@ -190,16 +185,12 @@ public class VehicleMonitoringV2Action extends MonitoringActionV2Base {
         // There is no input (route id) to validate, so pass null error
         _siriResponse = generateSiriResponse(activities, null, null,
             currentTimestamp);
-        //_siriCacheService.store(hashKey, getVehicleMonitoring());
-      //} else {
-      //  _cachedResponse = _siriCacheService.retrieve(hashKey);
-      //}
       } catch (Exception e) {
         _log.error("vm all broke:", e);
         throw new RuntimeException(e);
       }
     }
-    return setOkResponseText(getSiri());
+    return setOkResponseText(getSiriText());
   }
 
   /**
@@ -246,12 +237,4 @@ public class VehicleMonitoringV2Action extends MonitoringActionV2Base {
 
     return siri;
   }
-
-  public String getSiri() {
-    if (_cachedResponse != null) {
-      // check the cache first
-      return _cachedResponse;
-    }
-    return super.getSiri();
-  }
 }
@@ -22,6 +22,7 @@ import com.opensymphony.xwork2.inject.Inject;
 import org.apache.struts2.ServletActionContext;
 import org.apache.struts2.rest.handler.AbstractContentTypeHandler;
 import org.onebusaway.api.model.ResponseBean;
+import org.onebusaway.api.model.StreamingText;
 import org.onebusaway.api.serializers.json.CustomSerializerProvider;
 
 import javax.servlet.http.HttpServletRequest;
@@ -52,6 +53,14 @@ public class CustomJsonLibHandler extends AbstractContentTypeHandler {
                         // check if serialization already occurred as with SIRI calls
                         ResponseBean bean = (ResponseBean) obj;
                         isText = bean.isString();
+                        if (isText && bean.getData() instanceof StreamingText) {
+                                if (callback != null)
+                                        stream.write(callback + "(");
+                                ((StreamingText) bean.getData()).writeTo(stream);
+                                if (callback != null)
+                                        stream.write(")");
+                                return null;
+                        }
                         if (bean.getData() != null) {
                                 value = bean.getData().toString();
                         }
@@ -23,6 +23,7 @@ import org.apache.struts2.rest.handler.XStreamHandler;
 
 import org.onebusaway.api.actions.api.ValidationErrorBean;
 import org.onebusaway.api.model.ResponseBean;
+import org.onebusaway.api.model.StreamingText;
 import org.onebusaway.api.model.StopGroupV2Bean;
 import org.onebusaway.api.model.StopGroupingV2Bean;
 import org.onebusaway.api.model.TimeBean;
@@ -48,6 +49,8 @@ import org.onebusaway.api.model.where.ArrivalAndDepartureBeanV1;
 import org.onebusaway.geospatial.model.EncodedPolygonBean;
 import org.onebusaway.geospatial.model.EncodedPolylineBean;
 import org.onebusaway.transit_data.model.*;
+import org.onebusaway.util.tracing.RequestTrace;
+import org.onebusaway.util.tracing.RequestTraceSpan;
 
 import com.thoughtworks.xstream.XStream;
 
@@ -57,17 +60,28 @@ import java.io.Writer;
 
 public class CustomXStreamHandler extends XStreamHandler {
 
+  /**
+   * Configuring XStream (aliases, local converters and the reflection metadata
+   * it gathers for each bean class) costs far more than marshalling a typical
+   * response. A configured instance is thread-safe for both marshalling and
+   * unmarshalling, so we build it once and share it across requests.
+   */
+  private volatile XStream _xstream;
+
   @Override
   public String fromObject(ActionInvocation invocation, Object obj, String resultCode, Writer out) throws IOException {
     if (obj != null) {
       if (obj instanceof ResponseBean) {
         ResponseBean bean = (ResponseBean) obj;
+        if (bean.isString() && bean.getData() instanceof StreamingText) {
+          ((StreamingText) bean.getData()).writeTo(out);
+          return null;
+        }
         if (bean.isString() && bean.getData() != null) {
           out.write(bean.getData().toString());
           return null;
         }
-        XStream xstream = this.createXStream(invocation);
-        xstream.toXML(obj, out);
+        getXStream().toXML(obj, out);
       }
 
     }
@@ -77,13 +91,26 @@ public class CustomXStreamHandler extends XStreamHandler {
 
   @Override
   public void toObject(ActionInvocation invocation, Reader in, Object target) {
-    XStream xstream = this.createXStream(invocation);
-    xstream.fromXML(in, target);
+    getXStream().fromXML(in, target);
   }
 
   @Override
   protected XStream createXStream(ActionInvocation invocation) {
-    return createXStream();
+    return getXStream();
+  }
+
+  XStream getXStream() {
+    XStream xstream = _xstream;
+    if (xstream == null) {
+      synchronized (this) {
+        xstream = _xstream;
+        if (xstream == null) {
+          xstream = createXStream();
+          _xstream = xstream;
+        }
+      }
+    }
+    return xstream;
   }
 
   @Override
@@ -98,6 +125,7 @@ public class CustomXStreamHandler extends XStreamHandler {
     xstream.alias("route", RouteBean.class);
     xstream.alias("arrivalAndDeparture", ArrivalAndDepartureBean.class);
     xstream.alias("arrivalAndDeparture", ArrivalAndDepartureBeanV1.class);
+    xstream.alias("arrivalSummary", ArrivalSummaryBean.class);
     xstream.alias("encodedPolyline", EncodedPolylineBean.class);
     xstream.alias("encodedPolygon", EncodedPolygonBean.class);
     xstream.alias("stopGrouping", StopGroupingV2Bean.class);
@@ -142,6 +170,8 @@ public class CustomXStreamHandler extends XStreamHandler {
     xstream.alias("stopsForRoute", StopsForRouteV2Bean.class);
     xstream.alias("vehicleLocationRecord", VehicleLocationRecordV2Bean.class);
     xstream.alias("vehicleStatus", VehicleStatusV2Bean.class);
+    xstream.alias("requestTrace", RequestTrace.class);
+    xstream.alias("requestTraceSpan", RequestTraceSpan.class);
 
     xstream.alias("situation", SituationV2Bean.class);
     xstream.alias("affects", SituationAffectsV2Bean.class);
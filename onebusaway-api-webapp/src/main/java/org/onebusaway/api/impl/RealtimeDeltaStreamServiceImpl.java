@@ -0,0 +1,211 @@
+/**
+ * Copyright (C) 2017 Cambridge Systematics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.api.impl;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.onebusaway.api.services.RealtimeDeltaStreamService;
+import org.onebusaway.transit_data.model.realtime.RealtimeDeltaBean;
+import org.onebusaway.transit_data.model.realtime.RealtimeDeltasBean;
+import org.onebusaway.transit_data.services.TransitDataService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Follows the real-time delta journal of each agency that has at least one
+ * streaming subscriber and fans new deltas out to the matching subscriptions.
+ * A single poller per webapp keeps the load on the transit data service
+ * independent of the number of connected clients.
+ * 
+ * Each streaming client holds a blocking servlet container thread for as long
+ * as it is connected, so the subscriber limit must stay well below the
+ * connector's thread pool (150 in the stock Tomcat configuration), which also
+ * serves the REST API and, when co-deployed, the transit data service itself.
+ * Override it with {@code realtimeDeltaStreamServiceImpl.maxSubscribers} in
+ * data-sources.xml.
+ */
+@Component
+public class RealtimeDeltaStreamServiceImpl implements
+    RealtimeDeltaStreamService {
+
+  private static Logger _log = LoggerFactory.getLogger(RealtimeDeltaStreamServiceImpl.class);
+
+  private TransitDataService _transitDataService;
+
+  private long _pollIntervalMillis = 1000;
+
+  private int _maxDeltasPerPoll = 1000;
+
+  private int _maxSubscribers = 20;
+
+  private int _maxPendingDeltas = 1000;
+
+  private ScheduledExecutorService _executor;
+
+  private final ConcurrentMap<String, List<RealtimeDeltaSubscription>> _subscriptionsByAgencyId = new ConcurrentHashMap<String, List<RealtimeDeltaSubscription>>();
+
+  private final AtomicInteger _subscriberCount = new AtomicInteger();
+
+  /**
+   * journal cursor per agency, only touched from the poller thread
+   */
+  private final Map<String, Long> _cursorsByAgencyId = new HashMap<String, Long>();
+
+  @Autowired
+  public void setTransitDataService(TransitDataService transitDataService) {
+    _transitDataService = transitDataService;
+  }
+
+  public void setPollIntervalMillis(long pollIntervalMillis) {
+    _pollIntervalMillis = pollIntervalMillis;
+  }
+
+  public void setMaxDeltasPerPoll(int maxDeltasPerPoll) {
+    _maxDeltasPerPoll = maxDeltasPerPoll;
+  }
+
+  public void setMaxSubscribers(int maxSubscribers) {
+    _maxSubscribers = maxSubscribers;
+  }
+
+  public void setMaxPendingDeltas(int maxPendingDeltas) {
+    _maxPendingDeltas = maxPendingDeltas;
+  }
+
+  @PostConstruct
+  public void start() {
+    _executor = Executors.newSingleThreadScheduledExecutor();
+    _executor.scheduleWithFixedDelay(new PollTask(), _pollIntervalMillis,
+        _pollIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (_executor != null)
+      _executor.shutdownNow();
+    for (List<RealtimeDeltaSubscription> subscriptions : _subscriptionsByAgencyId.values()) {
+      for (RealtimeDeltaSubscription subscription : subscriptions)
+        subscription.close();
+    }
+  }
+
+  /****
+   * {@link RealtimeDeltaStreamService} Interface
+   ****/
+
+  @Override
+  public RealtimeDeltaSubscription subscribe(String agencyId,
+      Set<String> stopIds, Set<String> vehicleIds) {
+
+    if (_subscriberCount.incrementAndGet() > _maxSubscribers) {
+      _subscriberCount.decrementAndGet();
+      return null;
+    }
+
+    RealtimeDeltaSubscription subscription = new RealtimeDeltaSubscription(
+        agencyId, stopIds, vehicleIds, _maxPendingDeltas);
+    List<RealtimeDeltaSubscription> subscriptions = _subscriptionsByAgencyId.computeIfAbsent(
+        agencyId, k -> new CopyOnWriteArrayList<RealtimeDeltaSubscription>());
+    subscriptions.add(subscription);
+    return subscription;
+  }
+
+  @Override
+  public void unsubscribe(RealtimeDeltaSubscription subscription) {
+    subscription.close();
+    List<RealtimeDeltaSubscription> subscriptions = _subscriptionsByAgencyId.get(subscription.getAgencyId());
+    if (subscriptions != null && subscriptions.remove(subscription))
+      _subscriberCount.decrementAndGet();
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  /**
+   * package private so tests can drive the poller without the executor
+   */
+  void poll() {
+    for (Map.Entry<String, List<RealtimeDeltaSubscription>> entry : _subscriptionsByAgencyId.entrySet()) {
+      String agencyId = entry.getKey();
+      List<RealtimeDeltaSubscription> subscriptions = entry.getValue();
+      if (subscriptions.isEmpty()) {
+        // start from the head again once someone subscribes
+        _cursorsByAgencyId.remove(agencyId);
+        continue;
+      }
+      try {
+        pollAgency(agencyId, subscriptions);
+      } catch (Throwable ex) {
+        _log.warn("error polling realtime deltas for agency " + agencyId, ex);
+      }
+    }
+  }
+
+  private void pollAgency(String agencyId,
+      List<RealtimeDeltaSubscription> subscriptions) {
+
+    Long cursor = _cursorsByAgencyId.get(agencyId);
+
+    while (true) {
+
+      RealtimeDeltasBean result = _transitDataService.getRealtimeDeltas(
+          agencyId, cursor == null ? -1 : cursor, _maxDeltasPerPoll);
+      if (result == null)
+        return;
+
+      if (cursor != null && result.isReset()) {
+        for (RealtimeDeltaSubscription subscription : subscriptions)
+          subscription.reset();
+      }
+
+      if (cursor != null) {
+        for (RealtimeDeltaBean delta : result.getDeltas()) {
+          for (RealtimeDeltaSubscription subscription : subscriptions)
+            subscription.offer(delta);
+        }
+      }
+
+      _cursorsByAgencyId.put(agencyId, result.getLastSequence());
+
+      if (cursor == null || result.getDeltas().size() < _maxDeltasPerPoll)
+        return;
+      cursor = result.getLastSequence();
+    }
+  }
+
+  private class PollTask implements Runnable {
+    @Override
+    public void run() {
+      poll();
+    }
+  }
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2017 Cambridge Systematics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.api.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.onebusaway.transit_data.model.realtime.RealtimeDeltaBean;
+import org.onebusaway.util.AgencyAndIdLibrary;
+
+/**
+ * A single streaming client's view of the real-time delta feed. Pending deltas
+ * are coalesced by {@link RealtimeDeltaBean#getCoalescingKey()}, so a slow
+ * client only ever sees the latest state of each vehicle or stop prediction.
+ * If the client falls further behind than the pending limit allows, the
+ * subscription is flagged for reset and closed instead of buffering without
+ * bound. Only deltas for the subscription's agency are delivered, by vehicle
+ * or, for stop predictions, by stop.
+ */
+public class RealtimeDeltaSubscription {
+
+  private final String _agencyId;
+
+  private final Set<String> _stopIds;
+
+  private final Set<String> _vehicleIds;
+
+  private final int _maxPendingDeltas;
+
+  private final Map<String, RealtimeDeltaBean> _pending = new LinkedHashMap<String, RealtimeDeltaBean>();
+
+  private boolean _reset = false;
+
+  private boolean _closed = false;
+
+  public RealtimeDeltaSubscription(String agencyId, Set<String> stopIds,
+      Set<String> vehicleIds, int maxPendingDeltas) {
+    _agencyId = agencyId;
+    _stopIds = stopIds == null ? Collections.<String> emptySet() : stopIds;
+    _vehicleIds = vehicleIds == null ? Collections.<String> emptySet()
+        : vehicleIds;
+    _maxPendingDeltas = maxPendingDeltas;
+  }
+
+  public String getAgencyId() {
+    return _agencyId;
+  }
+
+  public boolean isMatch(RealtimeDeltaBean delta) {
+    // a transit data service instance may serve several agencies
+    if (!isAgencyMatch(delta))
+      return false;
+    if (RealtimeDeltaBean.TYPE_STOP.equals(delta.getType())) {
+      if (!_stopIds.isEmpty())
+        return _stopIds.contains(delta.getStopId());
+      return _vehicleIds.isEmpty()
+          || _vehicleIds.contains(delta.getVehicleId());
+    }
+    if (!_vehicleIds.isEmpty())
+      return _vehicleIds.contains(delta.getVehicleId());
+    return _stopIds.isEmpty();
+  }
+
+  private boolean isAgencyMatch(RealtimeDeltaBean delta) {
+    if (_agencyId.equals(getAgencyId(delta.getVehicleId())))
+      return true;
+    return RealtimeDeltaBean.TYPE_STOP.equals(delta.getType())
+        && _agencyId.equals(getAgencyId(delta.getStopId()));
+  }
+
+  private static String getAgencyId(String id) {
+    if (id == null)
+      return null;
+    int index = id.indexOf(AgencyAndIdLibrary.ID_SEPARATOR);
+    return index == -1 ? null : id.substring(0, index);
+  }
+
+  public synchronized void offer(RealtimeDeltaBean delta) {
+    if (_closed || !isMatch(delta))
+      return;
+    String key = delta.getCoalescingKey();
+    _pending.remove(key);
+    _pending.put(key, delta);
+    if (_pending.size() > _maxPendingDeltas) {
+      _pending.clear();
+      _reset = true;
+      _closed = true;
+    }
+    notifyAll();
+  }
+
+  /**
+   * Signals that the upstream journal could not be followed continuously, so
+   * the client must re-fetch full state before applying further deltas.
+   */
+  public synchronized void reset() {
+    _pending.clear();
+    _reset = true;
+    notifyAll();
+  }
+
+  public synchronized void close() {
+    _closed = true;
+    notifyAll();
+  }
+
+  public synchronized boolean isClosed() {
+    return _closed;
+  }
+
+  /**
+   * @return true, once, if a reset was signalled since the last call
+   */
+  public synchronized boolean consumeReset() {
+    boolean reset = _reset;
+    _reset = false;
+    return reset;
+  }
+
+  /**
+   * Waits up to the given timeout for pending deltas, then drains them.
+   * Returns early, possibly with an empty list, on reset or close.
+   */
+  public synchronized List<RealtimeDeltaBean> take(long timeoutMillis)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    while (_pending.isEmpty() && !_reset && !_closed) {
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0)
+        break;
+      wait(remaining);
+    }
+    if (_pending.isEmpty())
+      return Collections.emptyList();
+    List<RealtimeDeltaBean> deltas = new ArrayList<RealtimeDeltaBean>(
+        _pending.values());
+    _pending.clear();
+    return deltas;
+  }
+}
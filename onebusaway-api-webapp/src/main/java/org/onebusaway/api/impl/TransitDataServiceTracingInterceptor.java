@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.api.impl;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.onebusaway.util.tracing.RequestTracer;
+import org.springframework.stereotype.Component;
+
+/**
+ * Adds a span for each {@link org.onebusaway.transit_data.services.TransitDataService}
+ * call made while a request is being traced, so slow request traces separate
+ * time spent waiting on the transit data federation from bean conversion.
+ */
+@Aspect
+@Component
+public class TransitDataServiceTracingInterceptor {
+
+  @Around("execution(* org.onebusaway.transit_data.services.TransitDataService.*(..))")
+  public Object trace(ProceedingJoinPoint pjp) throws Throwable {
+
+    if (!RequestTracer.isActive())
+      return pjp.proceed();
+
+    try (RequestTracer.Span span = RequestTracer.span("tds."
+        + pjp.getSignature().getName())) {
+      return pjp.proceed();
+    }
+  }
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2017 Cambridge Systematics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.api.model;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+/**
+ * Response text that is written straight to the response instead of being
+ * built as a String first, for payloads such as SIRI deliveries that are
+ * already serialized by the action. The content type handlers stream it when
+ * it is the data of a text {@link ResponseBean}.
+ */
+public abstract class StreamingText {
+
+  public abstract void writeTo(Writer out) throws IOException;
+
+  /**
+   * @return the full text, for callers that do need it as a String
+   */
+  @Override
+  public String toString() {
+    StringWriter out = new StringWriter();
+    try {
+      writeTo(out);
+    } catch (IOException ex) {
+      throw new IllegalStateException(ex);
+    }
+    return out.toString();
+  }
+}
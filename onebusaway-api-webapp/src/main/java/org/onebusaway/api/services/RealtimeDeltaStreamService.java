@@ -0,0 +1,38 @@
+/**
+ * Copyright (C) 2017 Cambridge Systematics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.api.services;
+
+import java.util.Set;
+
+import org.onebusaway.api.impl.RealtimeDeltaSubscription;
+
+/**
+ * Fans real-time deltas from the transit data service out to streaming
+ * clients, so they receive changes instead of polling.
+ */
+public interface RealtimeDeltaStreamService {
+
+  /**
+   * @param agencyId the agency whose transit data service instance to follow
+   * @param stopIds stops to receive prediction deltas for, or empty for all
+   * @param vehicleIds vehicles to receive deltas for, or empty for all
+   * @return the subscription, or null if the subscriber limit is reached
+   */
+  public RealtimeDeltaSubscription subscribe(String agencyId,
+      Set<String> stopIds, Set<String> vehicleIds);
+
+  public void unsubscribe(RealtimeDeltaSubscription subscription);
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2017 Cambridge Systematics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.api.servlets;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.onebusaway.api.ResponseCodes;
+import org.onebusaway.api.impl.RealtimeDeltaSubscription;
+import org.onebusaway.api.services.RealtimeDeltaStreamService;
+import org.onebusaway.transit_data.model.realtime.RealtimeDeltaBean;
+import org.onebusaway.users.services.ApiKeyPermissionService;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.WebApplicationContextUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Streams real-time deltas to a client as server-sent events, so push clients
+ * can hold one connection open instead of repeatedly polling the REST API.
+ * 
+ * Parameters are the API {@code key}, the {@code agencyId} to follow and
+ * optionally any number of {@code stopId} and {@code vehicleId} filters. A
+ * {@code reset} event tells the client that deltas were dropped and it should
+ * re-fetch full state from the REST API. Each connection holds a container
+ * thread, so connections beyond the stream service's subscriber limit are
+ * refused with a 503.
+ */
+public class RealtimeDeltaStreamServlet extends HttpServlet {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final long KEEPALIVE_INTERVAL = 15 * 1000;
+
+  private final ObjectMapper _mapper = new ObjectMapper();
+
+  private RealtimeDeltaStreamService _streamService;
+
+  private ApiKeyPermissionService _keyService;
+
+  @Override
+  public void init() throws ServletException {
+    WebApplicationContext context = WebApplicationContextUtils.getRequiredWebApplicationContext(getServletContext());
+    _streamService = context.getBean(RealtimeDeltaStreamService.class);
+    _keyService = context.getBean(ApiKeyPermissionService.class);
+  }
+
+  @Override
+  protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+      throws ServletException, IOException {
+
+    String key = req.getParameter("key");
+    ApiKeyPermissionService.Status status = key == null
+        ? ApiKeyPermissionService.Status.UNAUTHORIZED
+        : _keyService.getPermission(key, "api");
+    if (status == ApiKeyPermissionService.Status.RATE_EXCEEDED) {
+      resp.sendError(ResponseCodes.RESPONSE_TOO_MANY_REQUESTS);
+      return;
+    }
+    if (status != ApiKeyPermissionService.Status.AUTHORIZED) {
+      resp.sendError(ResponseCodes.RESPONSE_UNAUTHORIZED);
+      return;
+    }
+
+    String agencyId = req.getParameter("agencyId");
+    if (agencyId == null || agencyId.isEmpty()) {
+      resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "agencyId required");
+      return;
+    }
+
+    RealtimeDeltaSubscription subscription = _streamService.subscribe(
+        agencyId, getParameterValues(req, "stopId"),
+        getParameterValues(req, "vehicleId"));
+    if (subscription == null) {
+      resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      return;
+    }
+
+    try {
+      resp.setContentType("text/event-stream");
+      resp.setCharacterEncoding("UTF-8");
+      resp.setHeader("Cache-Control", "no-cache");
+      PrintWriter writer = resp.getWriter();
+      writer.write(": connected\n\n");
+      writer.flush();
+
+      while (!subscription.isClosed()) {
+        List<RealtimeDeltaBean> deltas = subscription.take(KEEPALIVE_INTERVAL);
+        if (subscription.consumeReset())
+          writer.write("event: reset\ndata: {}\n\n");
+        if (deltas.isEmpty()) {
+          writer.write(": keepalive\n\n");
+        } else {
+          for (RealtimeDeltaBean delta : deltas)
+            writeDelta(writer, delta);
+        }
+        writer.flush();
+        // the writer swallows exceptions, so this is how a disconnect shows up
+        if (writer.checkError())
+          break;
+      }
+
+      if (subscription.consumeReset()) {
+        writer.write("event: reset\ndata: {}\n\n");
+        writer.flush();
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } finally {
+      _streamService.unsubscribe(subscription);
+    }
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private Set<String> getParameterValues(HttpServletRequest req, String name) {
+    String[] values = req.getParameterValues(name);
+    if (values == null)
+      return null;
+    return new HashSet<String>(Arrays.asList(values));
+  }
+
+  private void writeDelta(PrintWriter writer, RealtimeDeltaBean delta)
+      throws IOException {
+
+    Map<String, Object> data = new LinkedHashMap<String, Object>();
+    data.put("time", delta.getTime());
+    data.put("vehicleId", delta.getVehicleId());
+    if (delta.getTripId() != null) {
+      data.put("tripId", delta.getTripId());
+      data.put("serviceDate", delta.getServiceDate());
+    }
+    if (RealtimeDeltaBean.TYPE_STOP.equals(delta.getType())) {
+      data.put("stopId", delta.getStopId());
+      data.put("stopSequence", delta.getStopSequence());
+      data.put("predictedArrivalTime", delta.getPredictedArrivalTime());
+      data.put("predictedDepartureTime", delta.getPredictedDepartureTime());
+    } else {
+      putIfSet(data, "lat", delta.getLat());
+      putIfSet(data, "lon", delta.getLon());
+      putIfSet(data, "scheduleDeviation", delta.getScheduleDeviation());
+      putIfSet(data, "distanceAlongBlock", delta.getDistanceAlongBlock());
+    }
+
+    writer.write("id: " + delta.getSequence() + "\n");
+    writer.write("event: " + delta.getType() + "\n");
+    writer.write("data: " + _mapper.writeValueAsString(data) + "\n\n");
+  }
+
+  private static void putIfSet(Map<String, Object> data, String name,
+      double value) {
+    if (!Double.isNaN(value))
+      data.put(name, value);
+  }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.api.actions.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.onebusaway.util.tracing.RequestTrace;
+import org.onebusaway.util.tracing.RequestTraceSpan;
+import org.onebusaway.util.tracing.RequestTracer;
+import org.onebusaway.util.tracing.SlowRequestTraceRecorder;
+
+import com.opensymphony.xwork2.ActionInvocation;
+import com.opensymphony.xwork2.ActionProxy;
+import com.opensymphony.xwork2.interceptor.PreResultListener;
+
+public class SlowRequestTraceInterceptorTest {
+
+  private SlowRequestTraceInterceptor _interceptor;
+
+  private SlowRequestTraceRecorder _recorder;
+
+  private ActionInvocation _invocation;
+
+  private final List<PreResultListener> _listeners = new ArrayList<PreResultListener>();
+
+  @Before
+  public void setup() {
+    _recorder = new SlowRequestTraceRecorder();
+    _recorder.setThresholdMillis(0);
+
+    _interceptor = new SlowRequestTraceInterceptor();
+    _interceptor.setSlowRequestTraceRecorder(_recorder);
+
+    ActionProxy proxy = mock(ActionProxy.class);
+    when(proxy.getNamespace()).thenReturn("/api/where");
+    when(proxy.getActionName()).thenReturn("stop");
+
+    _invocation = mock(ActionInvocation.class);
+    when(_invocation.getProxy()).thenReturn(proxy);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        _listeners.add((PreResultListener) invocation.getArguments()[0]);
+        return null;
+      }
+    }).when(_invocation).addPreResultListener(any(PreResultListener.class));
+  }
+
+  @After
+  public void after() {
+    RequestTracer.end();
+  }
+
+  @Test
+  public void testActionAndResultSpans() throws Exception {
+    when(_invocation.invoke()).thenAnswer(new Answer<String>() {
+      @Override
+      public String answer(InvocationOnMock invocation) {
+        assertTrue(RequestTracer.isActive());
+        try (RequestTracer.Span span = RequestTracer.span("tds.getStop")) {
+        }
+        for (PreResultListener listener : _listeners)
+          listener.beforeResult(_invocation, "success");
+        return "success";
+      }
+    });
+
+    assertEquals("success", _interceptor.intercept(_invocation));
+    assertFalse(RequestTracer.isActive());
+
+    List<RequestTrace> traces = _recorder.getSlowTraces();
+    assertEquals(1, traces.size());
+    assertEquals("/api/where/stop", traces.get(0).getName());
+
+    List<RequestTraceSpan> spans = traces.get(0).getSpans();
+    assertEquals(3, spans.size());
+    assertEquals("action", spans.get(0).getName());
+    assertEquals(0, spans.get(0).getDepth());
+    assertEquals("tds.getStop", spans.get(1).getName());
+    assertEquals(1, spans.get(1).getDepth());
+    assertEquals("result", spans.get(2).getName());
+    assertEquals(0, spans.get(2).getDepth());
+  }
+
+  @Test
+  public void testTraceEndsOnException() throws Exception {
+    when(_invocation.invoke()).thenThrow(new IllegalStateException("boom"));
+
+    try {
+      _interceptor.intercept(_invocation);
+      fail("expected IllegalStateException");
+    } catch (IllegalStateException ex) {
+    }
+
+    assertFalse(RequestTracer.isActive());
+    List<RequestTrace> traces = _recorder.getSlowTraces();
+    assertEquals(1, traces.size());
+    assertEquals("action", traces.get(0).getSpans().get(0).getName());
+  }
+
+  @Test
+  public void testNoRecorder() throws Exception {
+    _interceptor.setSlowRequestTraceRecorder(null);
+    when(_invocation.invoke()).thenAnswer(new Answer<String>() {
+      @Override
+      public String answer(InvocationOnMock invocation) {
+        assertFalse(RequestTracer.isActive());
+        return "success";
+      }
+    });
+
+    assertEquals("success", _interceptor.intercept(_invocation));
+    assertTrue(_listeners.isEmpty());
+  }
+
+  @Test
+  public void testNestedRequestIsNotTracedAgain() throws Exception {
+    RequestTracer.begin("outer");
+    when(_invocation.invoke()).thenReturn("success");
+
+    assertEquals("success", _interceptor.intercept(_invocation));
+    assertTrue(RequestTracer.isActive());
+    assertTrue(_recorder.getSlowTraces().isEmpty());
+  }
+}
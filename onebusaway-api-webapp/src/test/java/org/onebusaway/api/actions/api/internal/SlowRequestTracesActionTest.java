@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2025 Aaron Brethorst <aaron@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.api.actions.api.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.struts2.rest.DefaultHttpHeaders;
+import org.junit.Before;
+import org.junit.Test;
+import org.onebusaway.api.model.ResponseBean;
+import org.onebusaway.api.model.transit.ListWithReferencesBean;
+import org.onebusaway.util.tracing.RequestTrace;
+import org.onebusaway.util.tracing.SlowRequestTraceRecorder;
+
+public class SlowRequestTracesActionTest {
+
+  private SlowRequestTraceRecorder _recorder;
+
+  private HttpServletRequest _request;
+
+  private SlowRequestTracesAction _action;
+
+  @Before
+  public void setup() {
+    _recorder = new SlowRequestTraceRecorder();
+    _recorder.setThresholdMillis(0);
+    _recorder.begin("request");
+    _recorder.end();
+
+    _request = mock(HttpServletRequest.class);
+    when(_request.getRemoteAddr()).thenReturn("127.0.0.1");
+
+    _action = new SlowRequestTracesAction();
+    _action.setSlowRequestTraceRecorder(_recorder);
+    _action.setServletRequest(_request);
+  }
+
+  @Test
+  public void testIndexListsWithoutClearing() {
+    DefaultHttpHeaders headers = _action.index();
+    assertEquals(200, headers.getStatus());
+    assertEquals(1, getTraces().size());
+    assertEquals("request", getTraces().get(0).getName());
+
+    assertEquals(1, _recorder.getSlowTraces().size());
+  }
+
+  @Test
+  public void testCreateClears() {
+    DefaultHttpHeaders headers = _action.create();
+    assertEquals(200, headers.getStatus());
+    assertEquals(1, getTraces().size());
+
+    assertEquals(0, _recorder.getSlowTraces().size());
+  }
+
+  @Test
+  public void testIpv6Loopback() {
+    when(_request.getRemoteAddr()).thenReturn("0:0:0:0:0:0:0:1");
+    assertEquals(200, _action.index().getStatus());
+  }
+
+  @Test
+  public void testRemoteRequest() {
+    when(_request.getRemoteAddr()).thenReturn("192.0.2.10");
+
+    assertEquals(404, _action.index().getStatus());
+    assertEquals(404, _action.create().getStatus());
+    assertEquals(1, _recorder.getSlowTraces().size());
+  }
+
+  @Test
+  public void testProxiedRequest() {
+    when(_request.getHeader("X-Forwarded-For")).thenReturn("192.0.2.10");
+
+    assertEquals(404, _action.index().getStatus());
+    assertEquals(404, _action.create().getStatus());
+    assertEquals(1, _recorder.getSlowTraces().size());
+  }
+
+  @Test
+  public void testNoRecorder() {
+    _action.setSlowRequestTraceRecorder(null);
+    assertEquals(404, _action.index().getStatus());
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<RequestTrace> getTraces() {
+    ResponseBean response = _action.getModel();
+    return ((ListWithReferencesBean<RequestTrace>) response.getData()).getList();
+  }
+}
@@ -0,0 +1,247 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.api.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.onebusaway.api.model.ResponseBean;
+import org.onebusaway.api.model.transit.ArrivalAndDepartureV2Bean;
+import org.onebusaway.api.model.transit.EntryWithReferencesBean;
+import org.onebusaway.api.model.transit.ListWithReferencesBean;
+import org.onebusaway.api.model.transit.ReferencesBean;
+import org.onebusaway.api.model.transit.StopV2Bean;
+import org.onebusaway.api.model.transit.StopWithArrivalsAndDeparturesV2Bean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.thoughtworks.xstream.XStream;
+
+public class CustomXStreamHandlerTest {
+
+  private static Logger _log = LoggerFactory.getLogger(CustomXStreamHandlerTest.class);
+
+  @Test
+  public void testSharedInstance() {
+    CustomXStreamHandler handler = new CustomXStreamHandler();
+    XStream xstream = handler.getXStream();
+    assertSame(xstream, handler.getXStream());
+    assertSame(xstream, handler.createXStream(null));
+  }
+
+  @Test
+  public void testOutputMatchesFreshInstance() throws Exception {
+    CustomXStreamHandler handler = new CustomXStreamHandler();
+    for (ResponseBean response : Arrays.asList(getStopsForLocationResponse(),
+        getArrivalsAndDeparturesResponse())) {
+      // Warm the shared instance with a different bean graph first
+      toXml(handler, getStopsForLocationResponse());
+      String expected = handler.createXStream().toXML(response);
+      assertEquals(expected, toXml(handler, response));
+    }
+  }
+
+  @Test
+  public void testConcurrentSerialization() throws Exception {
+    final CustomXStreamHandler handler = new CustomXStreamHandler();
+    final ResponseBean stops = getStopsForLocationResponse();
+    final ResponseBean arrivals = getArrivalsAndDeparturesResponse();
+    final String expectedStops = handler.createXStream().toXML(stops);
+    final String expectedArrivals = handler.createXStream().toXML(arrivals);
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+      for (int i = 0; i < 64; i++) {
+        final boolean useStops = i % 2 == 0;
+        futures.add(executor.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            if (useStops)
+              return expectedStops.equals(toXml(handler, stops));
+            return expectedArrivals.equals(toXml(handler, arrivals));
+          }
+        }));
+      }
+      for (Future<Boolean> future : futures)
+        assertTrue(future.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testConfiguresXStreamOnce() throws Exception {
+    final AtomicInteger created = new AtomicInteger();
+    final CustomXStreamHandler handler = new CustomXStreamHandler() {
+      @Override
+      protected XStream createXStream() {
+        created.incrementAndGet();
+        return super.createXStream();
+      }
+    };
+    final ResponseBean stops = getStopsForLocationResponse();
+    final ResponseBean arrivals = getArrivalsAndDeparturesResponse();
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<String>> futures = new ArrayList<Future<String>>();
+      for (int i = 0; i < 64; i++) {
+        final ResponseBean response = i % 2 == 0 ? stops : arrivals;
+        futures.add(executor.submit(new Callable<String>() {
+          @Override
+          public String call() throws Exception {
+            return toXml(handler, response);
+          }
+        }));
+      }
+      for (Future<String> future : futures)
+        future.get();
+    } finally {
+      executor.shutdownNow();
+    }
+    handler.createXStream(null);
+
+    assertEquals(1, created.get());
+  }
+
+  /**
+   * Logs the time and allocation per serialization for the shared instance
+   * against building a configured XStream per request, which is what the
+   * handler did before.  Opt-in: remove the @Ignore to run it.
+   */
+  @Ignore("benchmark")
+  @Test
+  public void testPerRequestCost() throws Exception {
+    final CustomXStreamHandler handler = new CustomXStreamHandler();
+    int warmup = 200;
+    int iterations = 1000;
+
+    for (final ResponseBean response : Arrays.asList(
+        getStopsForLocationResponse(), getArrivalsAndDeparturesResponse())) {
+
+      Callable<String> shared = new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          return toXml(handler, response);
+        }
+      };
+
+      Callable<String> perRequest = new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          StringWriter out = new StringWriter();
+          handler.createXStream().toXML(response, out);
+          return out.toString();
+        }
+      };
+
+      measure(shared, warmup);
+      measure(perRequest, warmup);
+
+      long[] after = measure(shared, iterations);
+      long[] before = measure(perRequest, iterations);
+
+      _log.info("xml " + response.getData().getClass().getSimpleName()
+          + ": perRequest=" + (before[0] / 1000) + "us " + (before[1] / 1024)
+          + "KB shared=" + (after[0] / 1000) + "us " + (after[1] / 1024)
+          + "KB per serialization");
+    }
+  }
+
+  /**
+   * @return average nanoseconds and bytes allocated by the current thread per
+   *         call
+   */
+  private static long[] measure(Callable<String> task, int iterations)
+      throws Exception {
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long bytes0 = threads.getThreadAllocatedBytes(threadId);
+    long t0 = System.nanoTime();
+    for (int i = 0; i < iterations; i++)
+      task.call();
+    long elapsed = System.nanoTime() - t0;
+    long allocated = threads.getThreadAllocatedBytes(threadId) - bytes0;
+    return new long[] {elapsed / iterations, allocated / iterations};
+  }
+
+  private static String toXml(CustomXStreamHandler handler,
+      ResponseBean response) throws Exception {
+    StringWriter out = new StringWriter();
+    handler.fromObject(null, response, null, out);
+    return out.toString();
+  }
+
+  private static ResponseBean getStopsForLocationResponse() {
+    ReferencesBean references = new ReferencesBean();
+    List<StopV2Bean> stops = new ArrayList<StopV2Bean>();
+    for (int i = 0; i < 100; i++) {
+      StopV2Bean stop = new StopV2Bean();
+      stop.setId("1_" + i);
+      stop.setCode(Integer.toString(i));
+      stop.setName("Stop " + i);
+      stop.setDirection("N");
+      stop.setLat(47.6 + i * 0.001);
+      stop.setLon(-122.3 - i * 0.001);
+      stop.setRouteIds(Arrays.asList("1_10", "1_11"));
+      stops.add(stop);
+    }
+    return new ResponseBean(2, 200, "OK", new ListWithReferencesBean<StopV2Bean>(
+        stops, false, references));
+  }
+
+  private static ResponseBean getArrivalsAndDeparturesResponse() {
+    List<ArrivalAndDepartureV2Bean> arrivals = new ArrayList<ArrivalAndDepartureV2Bean>();
+    for (int i = 0; i < 30; i++) {
+      ArrivalAndDepartureV2Bean bean = new ArrivalAndDepartureV2Bean();
+      bean.setRouteId("1_10");
+      bean.setTripId("1_trip" + i);
+      bean.setStopId("1_75403");
+      bean.setServiceDate(1300000000000L);
+      bean.setStopSequence(i);
+      bean.setArrivalEnabled(true);
+      bean.setDepartureEnabled(true);
+      bean.setScheduledArrivalTime(1300000000000L + i * 60000);
+      bean.setScheduledDepartureTime(1300000000000L + i * 60000);
+      bean.setPredicted(i % 2 == 0);
+      bean.setStatus("default");
+      arrivals.add(bean);
+    }
+    StopWithArrivalsAndDeparturesV2Bean stop = new StopWithArrivalsAndDeparturesV2Bean();
+    stop.setStopId("1_75403");
+    stop.setArrivalsAndDepartures(arrivals);
+    stop.setNearbyStopIds(Arrays.asList("1_75404"));
+    stop.setSituationIds(new ArrayList<String>());
+    return new ResponseBean(2, 200, "OK",
+        new EntryWithReferencesBean<StopWithArrivalsAndDeparturesV2Bean>(stop,
+            new ReferencesBean()));
+  }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2017 Cambridge Systematics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.api.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.onebusaway.api.impl.RealtimeDeltaSubscriptionTest.vehicle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.onebusaway.transit_data.model.realtime.RealtimeDeltaBean;
+import org.onebusaway.transit_data.model.realtime.RealtimeDeltasBean;
+import org.onebusaway.transit_data.services.TransitDataService;
+
+public class RealtimeDeltaStreamServiceImplTest {
+
+  private TransitDataService _transitDataService;
+
+  private RealtimeDeltaStreamServiceImpl _service;
+
+  @Before
+  public void before() {
+    _transitDataService = mock(TransitDataService.class);
+    _service = new RealtimeDeltaStreamServiceImpl();
+    _service.setTransitDataService(_transitDataService);
+    _service.setMaxDeltasPerPoll(2);
+  }
+
+  @Test
+  public void testPollerFollowsCursor() throws Exception {
+    RealtimeDeltaSubscription subscription = _service.subscribe("1", null,
+        null);
+
+    // the first poll only positions the cursor at the head
+    when(_transitDataService.getRealtimeDeltas("1", -1, 2)).thenReturn(
+        deltas(5, false));
+    _service.poll();
+    assertTrue(subscription.take(0).isEmpty());
+
+    // a full page is followed by another read in the same poll
+    when(_transitDataService.getRealtimeDeltas("1", 5, 2)).thenReturn(
+        deltas(7, false, vehicle("1_v1", 1000), vehicle("1_v2", 1000)));
+    when(_transitDataService.getRealtimeDeltas("1", 7, 2)).thenReturn(
+        deltas(8, false, vehicle("1_v3", 1000)));
+    _service.poll();
+
+    List<RealtimeDeltaBean> received = subscription.take(0);
+    assertEquals(3, received.size());
+    assertEquals("1_v3", received.get(2).getVehicleId());
+
+    when(_transitDataService.getRealtimeDeltas("1", 8, 2)).thenReturn(
+        deltas(8, false));
+    _service.poll();
+    assertTrue(subscription.take(0).isEmpty());
+    verify(_transitDataService).getRealtimeDeltas("1", 8, 2);
+  }
+
+  @Test
+  public void testUpstreamResetIsForwarded() throws Exception {
+    RealtimeDeltaSubscription subscription = _service.subscribe("1", null,
+        null);
+
+    when(_transitDataService.getRealtimeDeltas("1", -1, 2)).thenReturn(
+        deltas(5, false));
+    _service.poll();
+
+    // e.g. the transit data service restarted
+    when(_transitDataService.getRealtimeDeltas("1", 5, 2)).thenReturn(
+        deltas(1, true));
+    _service.poll();
+    assertTrue(subscription.consumeReset());
+
+    // and the cursor follows the new head
+    when(_transitDataService.getRealtimeDeltas("1", 1, 2)).thenReturn(
+        deltas(2, false, vehicle("1_v1", 1000)));
+    _service.poll();
+    assertEquals(1, subscription.take(0).size());
+  }
+
+  @Test
+  public void testMaxSubscribers() {
+    _service.setMaxSubscribers(2);
+
+    RealtimeDeltaSubscription a = _service.subscribe("1", null, null);
+    assertNotNull(a);
+    assertNotNull(_service.subscribe("2", null, null));
+    assertNull(_service.subscribe("1", null, null));
+
+    _service.unsubscribe(a);
+    assertTrue(a.isClosed());
+    assertNotNull(_service.subscribe("1", null, null));
+  }
+
+  private RealtimeDeltasBean deltas(long lastSequence, boolean reset,
+      RealtimeDeltaBean... deltas) {
+    RealtimeDeltasBean bean = new RealtimeDeltasBean();
+    bean.setLastSequence(lastSequence);
+    bean.setReset(reset);
+    bean.setDeltas(new ArrayList<RealtimeDeltaBean>(Arrays.asList(deltas)));
+    return bean;
+  }
+}
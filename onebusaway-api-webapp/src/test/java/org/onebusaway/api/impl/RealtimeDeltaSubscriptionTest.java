@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2017 Cambridge Systematics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.api.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+import org.onebusaway.transit_data.model.realtime.RealtimeDeltaBean;
+
+public class RealtimeDeltaSubscriptionTest {
+
+  @Test
+  public void testCoalescing() throws Exception {
+    RealtimeDeltaSubscription subscription = new RealtimeDeltaSubscription(
+        "1", null, null, 10);
+
+    subscription.offer(vehicle("1_v1", 1000));
+    subscription.offer(vehicle("1_v2", 1000));
+    subscription.offer(vehicle("1_v1", 2000));
+    subscription.offer(stop("1_v1", "1_s1", 10000));
+    subscription.offer(stop("1_v1", "1_s1", 11000));
+
+    List<RealtimeDeltaBean> deltas = subscription.take(0);
+    assertEquals(3, deltas.size());
+    // the superseded delta moves to the position of its replacement
+    assertEquals("1_v2", deltas.get(0).getVehicleId());
+    assertEquals("1_v1", deltas.get(1).getVehicleId());
+    assertEquals(2000, deltas.get(1).getTime());
+    assertEquals(11000, deltas.get(2).getPredictedArrivalTime());
+
+    assertTrue(subscription.take(0).isEmpty());
+    assertFalse(subscription.consumeReset());
+  }
+
+  @Test
+  public void testOverflowResetsAndCloses() throws Exception {
+    RealtimeDeltaSubscription subscription = new RealtimeDeltaSubscription(
+        "1", null, null, 2);
+
+    subscription.offer(vehicle("1_v1", 1000));
+    subscription.offer(vehicle("1_v2", 1000));
+    // coalesced, so still within the limit
+    subscription.offer(vehicle("1_v2", 2000));
+    assertFalse(subscription.isClosed());
+
+    subscription.offer(vehicle("1_v3", 1000));
+    assertTrue(subscription.isClosed());
+    assertTrue(subscription.take(0).isEmpty());
+    assertTrue(subscription.consumeReset());
+    assertFalse(subscription.consumeReset());
+
+    // nothing more is queued once closed
+    subscription.offer(vehicle("1_v1", 3000));
+    assertTrue(subscription.take(0).isEmpty());
+  }
+
+  @Test
+  public void testResetDropsPending() throws Exception {
+    RealtimeDeltaSubscription subscription = new RealtimeDeltaSubscription(
+        "1", null, null, 10);
+
+    subscription.offer(vehicle("1_v1", 1000));
+    subscription.reset();
+    assertFalse(subscription.isClosed());
+    assertTrue(subscription.take(0).isEmpty());
+    assertTrue(subscription.consumeReset());
+
+    subscription.offer(vehicle("1_v1", 2000));
+    assertEquals(1, subscription.take(0).size());
+  }
+
+  @Test
+  public void testAgencyFilter() {
+    RealtimeDeltaSubscription subscription = new RealtimeDeltaSubscription(
+        "1", null, null, 10);
+
+    assertTrue(subscription.isMatch(vehicle("1_v1", 1000)));
+    assertFalse(subscription.isMatch(vehicle("2_v1", 1000)));
+    assertFalse(subscription.isMatch(vehicle("10_v1", 1000)));
+    assertTrue(subscription.isMatch(stop("1_v1", "1_s1", 1000)));
+    // another agency's vehicle serving one of our stops
+    assertTrue(subscription.isMatch(stop("2_v1", "1_s1", 1000)));
+    assertFalse(subscription.isMatch(stop("2_v1", "2_s1", 1000)));
+  }
+
+  @Test
+  public void testStopAndVehicleFilters() {
+    RealtimeDeltaSubscription byStop = new RealtimeDeltaSubscription("1",
+        new HashSet<String>(Arrays.asList("1_s1")), null, 10);
+    assertTrue(byStop.isMatch(stop("1_v1", "1_s1", 1000)));
+    assertFalse(byStop.isMatch(stop("1_v1", "1_s2", 1000)));
+    assertFalse(byStop.isMatch(vehicle("1_v1", 1000)));
+
+    RealtimeDeltaSubscription byVehicle = new RealtimeDeltaSubscription("1",
+        Collections.<String> emptySet(),
+        new HashSet<String>(Arrays.asList("1_v1")), 10);
+    assertTrue(byVehicle.isMatch(vehicle("1_v1", 1000)));
+    assertTrue(byVehicle.isMatch(stop("1_v1", "1_s2", 1000)));
+    assertFalse(byVehicle.isMatch(vehicle("1_v2", 1000)));
+    assertFalse(byVehicle.isMatch(stop("1_v2", "1_s2", 1000)));
+  }
+
+  static RealtimeDeltaBean vehicle(String vehicleId, long time) {
+    RealtimeDeltaBean delta = new RealtimeDeltaBean();
+    delta.setType(RealtimeDeltaBean.TYPE_VEHICLE);
+    delta.setVehicleId(vehicleId);
+    delta.setTime(time);
+    return delta;
+  }
+
+  static RealtimeDeltaBean stop(String vehicleId, String stopId,
+      long predictedArrivalTime) {
+    RealtimeDeltaBean delta = new RealtimeDeltaBean();
+    delta.setType(RealtimeDeltaBean.TYPE_STOP);
+    delta.setVehicleId(vehicleId);
+    delta.setTripId("1_t1");
+    delta.setStopId(stopId);
+    delta.setStopSequence(1);
+    delta.setPredictedArrivalTime(predictedArrivalTime);
+    return delta;
+  }
+}
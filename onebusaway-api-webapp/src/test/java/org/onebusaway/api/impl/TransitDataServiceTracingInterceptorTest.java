@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.api.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.Signature;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onebusaway.util.tracing.RequestTrace;
+import org.onebusaway.util.tracing.RequestTraceSpan;
+import org.onebusaway.util.tracing.RequestTracer;
+
+public class TransitDataServiceTracingInterceptorTest {
+
+  private TransitDataServiceTracingInterceptor _interceptor;
+
+  private ProceedingJoinPoint _pjp;
+
+  @Before
+  public void setup() throws Throwable {
+    _interceptor = new TransitDataServiceTracingInterceptor();
+
+    Signature signature = mock(Signature.class);
+    when(signature.getName()).thenReturn("getStop");
+    _pjp = mock(ProceedingJoinPoint.class);
+    when(_pjp.getSignature()).thenReturn(signature);
+    when(_pjp.proceed()).thenReturn("stop");
+  }
+
+  @After
+  public void after() {
+    RequestTracer.end();
+  }
+
+  @Test
+  public void testSpanWhenTracing() throws Throwable {
+    RequestTracer.begin("request");
+
+    assertEquals("stop", _interceptor.trace(_pjp));
+
+    RequestTrace trace = RequestTracer.end();
+    List<RequestTraceSpan> spans = trace.getSpans();
+    assertEquals(1, spans.size());
+    assertEquals("tds.getStop", spans.get(0).getName());
+    assertEquals(0, spans.get(0).getDepth());
+  }
+
+  @Test
+  public void testNoSpanWhenNotTracing() throws Throwable {
+    assertEquals("stop", _interceptor.trace(_pjp));
+    verify(_pjp).proceed();
+    assertFalse(RequestTracer.isActive());
+  }
+
+  @Test
+  public void testSpanClosedOnException() throws Throwable {
+    when(_pjp.proceed()).thenThrow(new IllegalStateException("boom"));
+    RequestTracer.begin("request");
+
+    try {
+      _interceptor.trace(_pjp);
+      fail("expected IllegalStateException");
+    } catch (IllegalStateException ex) {
+    }
+
+    // the next span is a sibling, not a child, of the failed call's span
+    try (RequestTracer.Span span = RequestTracer.span("result")) {
+    }
+    List<RequestTraceSpan> spans = RequestTracer.end().getSpans();
+    assertEquals(2, spans.size());
+    assertEquals(0, spans.get(1).getDepth());
+  }
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2025 Aaron Brethorst <aaron@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.container;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Checks for requests made directly from the local host, for pages that
+ * expose internal state and should only be reachable by an operator on the
+ * machine itself.
+ */
+public final class LocalRequests {
+
+  private LocalRequests() {
+
+  }
+
+  /**
+   * A request is local when it comes from a loopback address and carries no
+   * forwarding headers. A request relayed by a proxy on the same host has a
+   * loopback remote address too, so any forwarding header disqualifies it.
+   * 
+   * @param request the request, which may be null
+   * @return true if the request was made directly from the local host
+   */
+  public static boolean isLocalRequest(HttpServletRequest request) {
+    if (request == null)
+      return false;
+    if (request.getHeader("X-Forwarded-For") != null
+        || request.getHeader("Forwarded") != null)
+      return false;
+    String remoteAddr = request.getRemoteAddr();
+    if (remoteAddr == null)
+      return false;
+    try {
+      // remoteAddr is an IP literal, so this does not do a DNS lookup
+      return InetAddress.getByName(remoteAddr).isLoopbackAddress();
+    } catch (UnknownHostException ex) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2025 Aaron Brethorst <aaron@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.container;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Test;
+
+public class LocalRequestsTest {
+
+  @Test
+  public void testLoopback() {
+    assertTrue(LocalRequests.isLocalRequest(request("127.0.0.1")));
+    assertTrue(LocalRequests.isLocalRequest(request("0:0:0:0:0:0:0:1")));
+  }
+
+  @Test
+  public void testRemote() {
+    assertFalse(LocalRequests.isLocalRequest(request("10.0.0.5")));
+    assertFalse(LocalRequests.isLocalRequest(request(null)));
+    assertFalse(LocalRequests.isLocalRequest(null));
+  }
+
+  @Test
+  public void testForwarded() {
+    HttpServletRequest request = request("127.0.0.1");
+    when(request.getHeader("X-Forwarded-For")).thenReturn("10.0.0.5");
+    assertFalse(LocalRequests.isLocalRequest(request));
+
+    request = request("127.0.0.1");
+    when(request.getHeader("Forwarded")).thenReturn("for=10.0.0.5");
+    assertFalse(LocalRequests.isLocalRequest(request));
+  }
+
+  private HttpServletRequest request(String remoteAddr) {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getRemoteAddr()).thenReturn(remoteAddr);
+    return request;
+  }
+}
@@ -29,6 +29,12 @@ import org.onebusaway.federations.FederatedService;
  * {@link FederatedService} in turn an aggregating the results with the
  * appropriate collection.
  * 
+ * When there is more than one service, the calls are made concurrently and the
+ * results merged in service order as they arrive. A {@link #timeoutMillis()}
+ * bounds the wait for the slowest service, and {@link #allowPartialResults()}
+ * determines whether a failed or timed out service fails the whole call or is
+ * simply left out of the result.
+ * 
  * <pre class="code">
  * @FederatedByAggregateMethod
  * public List<String> getValuesAsList();
@@ -45,4 +51,15 @@ import org.onebusaway.federations.FederatedService;
 @Target(value = ElementType.METHOD)
 public @interface FederatedByAggregateMethod {
 
+  /**
+   * @return maximum time to wait for all services to respond, in milliseconds,
+   *         or zero to wait indefinitely
+   */
+  long timeoutMillis() default 0;
+
+  /**
+   * @return true if the results of the services that did respond should be
+   *         returned when another service fails or times out
+   */
+  boolean allowPartialResults() default false;
 }
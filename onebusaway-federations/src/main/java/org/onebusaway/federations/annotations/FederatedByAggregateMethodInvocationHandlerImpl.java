@@ -16,8 +16,11 @@
 package org.onebusaway.federations.annotations;
 
 import org.onebusaway.exceptions.ServiceAreaServiceException;
+import org.onebusaway.exceptions.ServiceException;
 import org.onebusaway.federations.FederatedService;
 import org.onebusaway.federations.FederatedServiceCollection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -25,62 +28,297 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Provides a {@link FederatedServiceMethodInvocationHandler} implementation for
  * the {@link FederatedByAggregateMethod} annotation.
  * 
+ * With more than one service, each service is called from a shared pool so that
+ * the call takes as long as the slowest service rather than the sum of all of
+ * them. Results are merged in service order as soon as each is available.
+ * 
+ * The pool is bounded: once {@link #MAX_THREADS} calls are running and
+ * {@link #MAX_QUEUED_CALLS} more are waiting, further calls run on the calling
+ * thread instead, which slows callers down rather than growing the pool.
+ * 
  * @author bdferris
  */
 class FederatedByAggregateMethodInvocationHandlerImpl implements FederatedServiceMethodInvocationHandler {
 
+  private static Logger _log = LoggerFactory.getLogger(FederatedByAggregateMethodInvocationHandlerImpl.class);
+
+  static final int MAX_THREADS = 32;
+
+  static final int MAX_QUEUED_CALLS = 256;
+
+  private static final ExecutorService _executor = createExecutor();
+
   private EMethodAggregationType _aggregationType;
 
+  private long _timeoutMillis;
+
+  private boolean _allowPartialResults;
+
+  private FederatedServiceLatencyMetrics _metrics = FederatedServiceLatencyMetrics.getInstance();
+
   public FederatedByAggregateMethodInvocationHandlerImpl(EMethodAggregationType aggregationType) {
+    this(aggregationType, 0, false);
+  }
+
+  public FederatedByAggregateMethodInvocationHandlerImpl(EMethodAggregationType aggregationType,
+      long timeoutMillis, boolean allowPartialResults) {
     _aggregationType = aggregationType;
+    _timeoutMillis = timeoutMillis;
+    _allowPartialResults = allowPartialResults;
   }
   
   public EMethodAggregationType getAggregationType() {
     return _aggregationType;
   }
 
+  public long getTimeoutMillis() {
+    return _timeoutMillis;
+  }
+
+  public boolean isAllowPartialResults() {
+    return _allowPartialResults;
+  }
+
   public Object invoke(FederatedServiceCollection collection, Method method, Object[] args)
       throws ServiceAreaServiceException, IllegalArgumentException, IllegalAccessException, InvocationTargetException {
 
-    List<Object> results = new ArrayList<Object>();
+    List<FederatedService> services = new ArrayList<FederatedService>(collection.getAllServices());
+
+    Aggregate aggregate = createAggregate();
+
+    if (services.size() == 1) {
+      aggregate.add(invokeService(services.get(0), method, args));
+      return aggregate.getResult();
+    }
+
+    CompletionService<Object> completionService = new ExecutorCompletionService<Object>(_executor);
+    List<Future<Object>> futures = new ArrayList<Future<Object>>(services.size());
+    Map<Future<Object>, Integer> indices = new HashMap<Future<Object>, Integer>();
+
+    for (final FederatedService service : services) {
+      Future<Object> future = completionService.submit(new ServiceCall(service, method, args));
+      indices.put(future, futures.size());
+      futures.add(future);
+    }
+
+    /**
+     * Results are held until every earlier service has been merged, so the
+     * aggregate is the same regardless of the order the services respond in
+     */
+    Object[] results = new Object[services.size()];
+    boolean[] completed = new boolean[services.size()];
+    int nextToMerge = 0;
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(_timeoutMillis);
+
+    try {
+      for (int received = 0; received < services.size(); received++) {
+
+        Future<Object> future = pollNext(completionService, deadline);
+
+        if (future == null) {
+          handleTimeout(method, services, completed);
+          break;
+        }
+
+        int index = indices.get(future);
+        completed[index] = true;
+
+        try {
+          results[index] = future.get();
+        } catch (ExecutionException ex) {
+          handleFailure(method, services.get(index), ex.getCause());
+        }
+
+        while (nextToMerge < results.length && completed[nextToMerge]) {
+          aggregate.add(results[nextToMerge]);
+          results[nextToMerge++] = null;
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new ServiceException("interrupted waiting on federated services for " + method.getName(), ex);
+    } finally {
+      for (Future<Object> future : futures)
+        future.cancel(true);
+    }
+
+    for (; nextToMerge < results.length; nextToMerge++) {
+      if (results[nextToMerge] != null)
+        aggregate.add(results[nextToMerge]);
+    }
+
+    return aggregate.getResult();
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private Object invokeService(FederatedService service, Method method, Object[] args)
+      throws IllegalAccessException, InvocationTargetException {
+    long start = System.nanoTime();
+    boolean failed = true;
+    try {
+      Object result = method.invoke(service, args);
+      failed = false;
+      return result;
+    } finally {
+      _metrics.recordCall(service, System.nanoTime() - start, failed);
+    }
+  }
 
-    for (FederatedService service : collection.getAllServices())
-      results.add(method.invoke(service, args));
+  private static ExecutorService createExecutor() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(MAX_QUEUED_CALLS), new AggregateThreadFactory(),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  private Future<Object> pollNext(CompletionService<Object> completionService, long deadline)
+      throws InterruptedException {
+    if (_timeoutMillis <= 0)
+      return completionService.take();
+    long remaining = deadline - System.nanoTime();
+    if (remaining <= 0)
+      return completionService.poll();
+    return completionService.poll(remaining, TimeUnit.NANOSECONDS);
+  }
 
-    return aggregateResults(results);
+  private void handleTimeout(Method method, List<FederatedService> services, boolean[] completed) {
+    List<FederatedService> pending = new ArrayList<FederatedService>();
+    for (int i = 0; i < completed.length; i++) {
+      if (!completed[i]) {
+        pending.add(services.get(i));
+        _metrics.recordTimeout(services.get(i));
+      }
+    }
+    if (!_allowPartialResults)
+      throw new ServiceException("timed out after " + _timeoutMillis + "ms waiting on federated services for "
+          + method.getName() + ": " + pending);
+    _log.warn("timed out after {}ms waiting on federated services for {}, returning partial results: {}",
+        _timeoutMillis, method.getName(), pending);
+  }
+
+  private void handleFailure(Method method, FederatedService service, Throwable cause)
+      throws IllegalAccessException, InvocationTargetException {
+    if (_allowPartialResults) {
+      Throwable reported = cause instanceof InvocationTargetException
+          ? ((InvocationTargetException) cause).getTargetException() : cause;
+      _log.warn("federated service " + service + " failed for " + method.getName()
+          + ", returning partial results", reported);
+      return;
+    }
+    if (cause instanceof InvocationTargetException)
+      throw (InvocationTargetException) cause;
+    if (cause instanceof IllegalAccessException)
+      throw (IllegalAccessException) cause;
+    if (cause instanceof RuntimeException)
+      throw (RuntimeException) cause;
+    if (cause instanceof Error)
+      throw (Error) cause;
+    throw new ServiceException(cause);
   }
 
-  private Object aggregateResults(List<Object> results) {
+  private Aggregate createAggregate() {
     switch (_aggregationType) {
       case LIST:
-        return aggregateResultsAsList(results);
+        return new ListAggregate();
       case MAP:
-        return aggregateResultsAsMap(results);
+        return new MapAggregate();
       default:
         throw new IllegalStateException("unknown aggregation type: " + _aggregationType);
     }
   }
 
-  private Object aggregateResultsAsList(List<Object> results) {
-    List<Object> asList = new ArrayList<Object>();
-    for (Object result : results) {
+  private class ServiceCall implements Callable<Object> {
+
+    private final FederatedService _service;
+
+    private final Method _method;
+
+    private final Object[] _args;
+
+    public ServiceCall(FederatedService service, Method method, Object[] args) {
+      _service = service;
+      _method = method;
+      _args = args;
+    }
+
+    @Override
+    public Object call() throws Exception {
+      return invokeService(_service, _method, _args);
+    }
+  }
+
+  private interface Aggregate {
+
+    public void add(Object result);
+
+    public Object getResult();
+  }
+
+  private static class ListAggregate implements Aggregate {
+
+    private List<Object> _values = new ArrayList<Object>();
+
+    @Override
+    public void add(Object result) {
+      if (result == null)
+        return;
       List<?> values = (List<?>) result;
-      asList.addAll(values);
+      _values.addAll(values);
+    }
+
+    @Override
+    public Object getResult() {
+      return _values;
     }
-    return asList;
   }
 
-  private Object aggregateResultsAsMap(List<Object> results) {
-    Map<Object, Object> asMap = new HashMap<Object, Object>();
-    for (Object result : results) {
+  private static class MapAggregate implements Aggregate {
+
+    private Map<Object, Object> _values = new HashMap<Object, Object>();
+
+    @Override
+    public void add(Object result) {
+      if (result == null)
+        return;
       Map<?, ?> values = (Map<?, ?>) result;
-      asMap.putAll(values);
+      _values.putAll(values);
+    }
+
+    @Override
+    public Object getResult() {
+      return _values;
+    }
+  }
+
+  private static class AggregateThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger _count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "federated-aggregate-" + _count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
     }
-    return asMap;
   }
 }
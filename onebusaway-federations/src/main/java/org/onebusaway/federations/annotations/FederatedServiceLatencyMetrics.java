@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.federations.annotations;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import org.onebusaway.federations.FederatedService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-service latency counters for calls fanned out by
+ * {@link FederatedByAggregateMethodInvocationHandlerImpl}. Services are keyed
+ * by their string form, which for remote proxies includes the service url.
+ * 
+ * The instance registers itself with the platform MBean server as
+ * {@value #OBJECT_NAME}, so the counters can be read with any JMX client.
+ */
+public final class FederatedServiceLatencyMetrics implements
+    FederatedServiceLatencyMetricsMBean {
+
+  public static final String OBJECT_NAME = "org.onebusaway.federations.annotations:name=FederatedServiceLatencyMetrics";
+
+  private static Logger _log = LoggerFactory.getLogger(FederatedServiceLatencyMetrics.class);
+
+  private static final FederatedServiceLatencyMetrics INSTANCE = register(new FederatedServiceLatencyMetrics());
+
+  private final ConcurrentMap<String, Latency> _latencies = new ConcurrentHashMap<String, Latency>();
+
+  public static FederatedServiceLatencyMetrics getInstance() {
+    return INSTANCE;
+  }
+
+  public void recordCall(FederatedService service, long elapsedNanos,
+      boolean failed) {
+    Latency latency = getLatency(service);
+    latency.calls.incrementAndGet();
+    latency.totalNanos.addAndGet(elapsedNanos);
+    if (failed)
+      latency.failures.incrementAndGet();
+    long max = latency.maxNanos.get();
+    while (elapsedNanos > max
+        && !latency.maxNanos.compareAndSet(max, elapsedNanos))
+      max = latency.maxNanos.get();
+  }
+
+  public void recordTimeout(FederatedService service) {
+    getLatency(service).timeouts.incrementAndGet();
+  }
+
+  /**
+   * @return a snapshot of the counters for each service seen so far, ordered
+   *         by service name
+   */
+  public Map<String, Latency> getLatencies() {
+    return new TreeMap<String, Latency>(_latencies);
+  }
+
+  @Override
+  public String[] getLatencySummary() {
+    Map<String, Latency> latencies = getLatencies();
+    String[] summary = new String[latencies.size()];
+    int index = 0;
+    for (Map.Entry<String, Latency> entry : latencies.entrySet())
+      summary[index++] = entry.getKey() + " " + entry.getValue();
+    return summary;
+  }
+
+  @Override
+  public void reset() {
+    _latencies.clear();
+  }
+
+  private static FederatedServiceLatencyMetrics register(
+      FederatedServiceLatencyMetrics metrics) {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+          new ObjectName(OBJECT_NAME));
+    } catch (Exception ex) {
+      // another copy of this class, from another webapp, may already hold the
+      // name; the counters still work, they just aren't visible over JMX
+      _log.warn("unable to register " + OBJECT_NAME + ": " + ex);
+    }
+    return metrics;
+  }
+
+  private Latency getLatency(FederatedService service) {
+    String key = String.valueOf(service);
+    Latency latency = _latencies.get(key);
+    if (latency == null) {
+      Latency created = new Latency();
+      latency = _latencies.putIfAbsent(key, created);
+      if (latency == null)
+        latency = created;
+    }
+    return latency;
+  }
+
+  public static final class Latency {
+
+    private final AtomicLong calls = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final AtomicLong timeouts = new AtomicLong();
+
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public long getCalls() {
+      return calls.get();
+    }
+
+    public long getFailures() {
+      return failures.get();
+    }
+
+    public long getTimeouts() {
+      return timeouts.get();
+    }
+
+    public double getAverageMillis() {
+      long count = calls.get();
+      if (count == 0)
+        return 0;
+      return totalNanos.get() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getMaxMillis() {
+      return maxNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+      return "Latency(calls=" + getCalls() + " failures=" + getFailures()
+          + " timeouts=" + getTimeouts() + " avgMillis=" + getAverageMillis()
+          + " maxMillis=" + getMaxMillis() + ")";
+    }
+  }
+}
@@ -0,0 +1,29 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.federations.annotations;
+
+/**
+ * JMX view of {@link FederatedServiceLatencyMetrics}.
+ */
+public interface FederatedServiceLatencyMetricsMBean {
+
+  /**
+   * @return one line per service, ordered by service name
+   */
+  public String[] getLatencySummary();
+
+  public void reset();
+}
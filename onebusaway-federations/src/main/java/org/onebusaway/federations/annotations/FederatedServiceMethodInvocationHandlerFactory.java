@@ -78,7 +78,7 @@ public class FederatedServiceMethodInvocationHandlerFactory {
     if (ann4 != null) {
       EMethodAggregationType aggregationType = getAggregationTypeForMethod(method);
       return new FederatedByAggregateMethodInvocationHandlerImpl(
-          aggregationType);
+          aggregationType, ann4.timeoutMillis(), ann4.allowPartialResults());
     }
 
     FederatedByCoordinateBoundsMethod ann5 = method.getAnnotation(FederatedByCoordinateBoundsMethod.class);
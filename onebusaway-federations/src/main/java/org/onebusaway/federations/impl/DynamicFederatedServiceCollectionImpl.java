@@ -49,6 +49,10 @@ import com.caucho.hessian.client.HessianRuntimeException;
  * Hessian rpc service, as we'll be using {@link HessianProxyFactory} to create
  * proxy service instances from the service urls.
  * 
+ * The underlying {@link FederatedServiceCollectionImpl}, along with its
+ * spatial index, is only rebuilt when the set of service urls or their
+ * advertised coverage changes between updates.
+ * 
  * @author bdferris
  */
 public class DynamicFederatedServiceCollectionImpl extends
@@ -67,6 +71,8 @@ public class DynamicFederatedServiceCollectionImpl extends
 
   private volatile Set<String> _activeUrls = new HashSet<String>();
 
+  private Map<String, Map<String, List<CoordinateBounds>>> _coverageByUrl = new HashMap<String, Map<String, List<CoordinateBounds>>>();
+
   private FederatedServiceRegistry _registry;
 
   private int _updateFrequency = 60;
@@ -123,6 +129,8 @@ public class DynamicFederatedServiceCollectionImpl extends
 
         Map<FederatedService, Map<String, List<CoordinateBounds>>> byProvider = new HashMap<FederatedService, Map<String, List<CoordinateBounds>>>();
 
+        Map<String, Map<String, List<CoordinateBounds>>> coverageByUrl = new HashMap<String, Map<String, List<CoordinateBounds>>>();
+
         for (FederatedServiceRegistryEntry serviceEntry : entries) {
 
           String url = serviceEntry.getServiceUrl();
@@ -154,6 +162,7 @@ public class DynamicFederatedServiceCollectionImpl extends
             if (allGood) {
               _log.debug("adding service...");
               byProvider.put(service, agencyIdsWithCoverageArea);
+              coverageByUrl.put(url, agencyIdsWithCoverageArea);
               activeUrls.add(url);
             }
           } catch (HessianRuntimeException ex) {
@@ -178,7 +187,13 @@ public class DynamicFederatedServiceCollectionImpl extends
             _log.info("service added: " + url);
         }
 
+        if (coverageByUrl.equals(_coverageByUrl)) {
+          _log.debug("services unchanged");
+          return;
+        }
+
         _collection = new FederatedServiceCollectionImpl(byProvider);
+        _coverageByUrl = coverageByUrl;
         _activeUrls = activeUrls;
       } catch (Throwable ex) {
         _log.warn("error refreshing services", ex);
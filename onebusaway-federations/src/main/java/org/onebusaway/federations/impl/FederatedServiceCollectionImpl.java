@@ -15,9 +15,11 @@
  */
 package org.onebusaway.federations.impl;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -42,6 +44,11 @@ import org.onebusaway.geospatial.model.CoordinatePoint;
  * constructing a {@link FederatedServiceCollectionImpl} from a set of
  * {@link FederatedService} instances of a particular type.
  * 
+ * Location and bounds queries are first resolved against a
+ * {@link FederatedServiceGrid} over the coverage areas, which answers anything
+ * away from a coverage boundary with a cell lookup. The remaining queries go to
+ * a spatial tree, with recent answers kept in a small LRU cache.
+ * 
  * @author bdferris
  * @see FederatedService
  * @see FederatedServiceCollection
@@ -53,8 +60,14 @@ public class FederatedServiceCollectionImpl implements
 
   private Map<String, FederatedService> _servicesByAgencyId = new HashMap<String, FederatedService>();
 
+  private static final int MAX_RECENT_PROVIDERS = 1024;
+
   private STRtree _tree;
 
+  private FederatedServiceGrid _grid;
+
+  private Map<Envelope, Set<FederatedService>> _recentProviders = Collections.synchronizedMap(new RecentProvidersMap());
+
   public static <T extends FederatedService> FederatedServiceCollectionImpl create(
       List<T> serviceProviders, Class<T> serviceInterface) {
     Map<FederatedService, Map<String, List<CoordinateBounds>>> map = FederatedServiceLibrary.getFederatedServiceAgencyCoverage(
@@ -69,6 +82,9 @@ public class FederatedServiceCollectionImpl implements
 
     _tree = new STRtree();
 
+    List<Envelope> envelopes = new ArrayList<Envelope>();
+    List<FederatedService> envelopeServices = new ArrayList<FederatedService>();
+
     for (Map.Entry<FederatedService, Map<String, List<CoordinateBounds>>> entry : services.entrySet()) {
       FederatedService service = entry.getKey();
       Map<String, List<CoordinateBounds>> agencyIdsAndCoverage = entry.getValue();
@@ -83,11 +99,15 @@ public class FederatedServiceCollectionImpl implements
           Envelope env = new Envelope(rc.getMinLon(), rc.getMaxLon(),
               rc.getMinLat(), rc.getMaxLat());
           _tree.insert(env, service);
+          envelopes.add(env);
+          envelopeServices.add(service);
         }
       }
     }
 
     _tree.build();
+
+    _grid = FederatedServiceGrid.create(envelopes, envelopeServices);
   }
 
   public FederatedServiceCollectionImpl() {
@@ -175,10 +195,28 @@ public class FederatedServiceCollectionImpl implements
 
   private FederatedService getProviderForRectangle(Envelope env)
       throws ServiceAreaServiceException {
-    ProviderCollector collector = new ProviderCollector();
-    if (_tree.size() != 0)
-      _tree.query(env, collector);
-    Set<FederatedService> providers = collector.getProviders();
+
+    if (_grid != null) {
+      Object result = _grid.getServiceForRectangle(env.getMinX(),
+          env.getMinY(), env.getMaxX(), env.getMaxY());
+      if (result == FederatedServiceGrid.MULTIPLE)
+        throw new MultipleServiceAreasServiceException();
+      if (result == null)
+        throw new OutOfServiceAreaServiceException();
+      if (result != FederatedServiceGrid.UNRESOLVED)
+        return (FederatedService) result;
+    }
+
+    Set<FederatedService> providers = _recentProviders.get(env);
+
+    if (providers == null) {
+      ProviderCollector collector = new ProviderCollector();
+      if (_tree.size() != 0)
+        _tree.query(env, collector);
+      providers = collector.getProviders();
+      _recentProviders.put(env, providers);
+    }
+
     return getProviderFromProviders(providers);
   }
 
@@ -192,6 +230,22 @@ public class FederatedServiceCollectionImpl implements
     throw new MultipleServiceAreasServiceException();
   }
 
+  private static class RecentProvidersMap extends
+      LinkedHashMap<Envelope, Set<FederatedService>> {
+
+    private static final long serialVersionUID = 1L;
+
+    public RecentProvidersMap() {
+      super(16, 0.75f, true);
+    }
+
+    @Override
+    protected boolean removeEldestEntry(
+        Map.Entry<Envelope, Set<FederatedService>> eldest) {
+      return size() > MAX_RECENT_PROVIDERS;
+    }
+  }
+
   private class ProviderCollector implements ItemVisitor {
 
     private Set<FederatedService> _providers = new HashSet<FederatedService>();
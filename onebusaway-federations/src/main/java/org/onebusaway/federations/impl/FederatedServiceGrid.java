@@ -0,0 +1,235 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.federations.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.locationtech.jts.geom.Envelope;
+import org.onebusaway.federations.FederatedService;
+
+/**
+ * A uniform grid over the combined coverage area of a set of
+ * {@link FederatedService} instances, used to resolve most location and bounds
+ * queries with a cell lookup instead of a spatial tree query. Each cell is
+ * either empty, covered throughout by a single service with no other service
+ * touching it, or mixed. Only mixed cells need an exact geometry test, and
+ * {@link #getServiceForRectangle(double, double, double, double)} reports
+ * those by returning {@link #UNRESOLVED}.
+ * 
+ * Cell indices for both coverage rectangles and queries come from the same
+ * monotonic mapping, so a rectangle always touches the cell a point inside it
+ * maps to, regardless of floating point rounding at cell boundaries.
+ */
+final class FederatedServiceGrid {
+
+  /**
+   * Marker returned when the grid alone can't answer a query
+   */
+  static final Object UNRESOLVED = new Object();
+
+  /**
+   * Marker returned when a query touches more than one service
+   */
+  static final Object MULTIPLE = new Object();
+
+  private static final int MAX_DIMENSION = 256;
+
+  private static final int MAX_QUERY_CELLS = 64;
+
+  private static final byte EMPTY = 0;
+
+  private static final byte COVERED = 1;
+
+  private static final byte MIXED = 2;
+
+  private final double _minX;
+
+  private final double _minY;
+
+  private final double _maxX;
+
+  private final double _maxY;
+
+  private final int _columns;
+
+  private final int _rows;
+
+  private final double _cellWidth;
+
+  private final double _cellHeight;
+
+  private final byte[] _states;
+
+  private final FederatedService[] _services;
+
+  private FederatedServiceGrid(double minX, double minY, double maxX,
+      double maxY, int columns, int rows) {
+    _minX = minX;
+    _minY = minY;
+    _maxX = maxX;
+    _maxY = maxY;
+    _columns = columns;
+    _rows = rows;
+    _cellWidth = (maxX - minX) / columns;
+    _cellHeight = (maxY - minY) / rows;
+    _states = new byte[columns * rows];
+    _services = new FederatedService[columns * rows];
+  }
+
+  /**
+   * @param envelopes coverage rectangles, as inserted into the spatial tree
+   * @param services the service for each coverage rectangle
+   * @return the grid, or null if there is no coverage to index
+   */
+  public static FederatedServiceGrid create(List<Envelope> envelopes,
+      List<FederatedService> services) {
+
+    if (envelopes.isEmpty())
+      return null;
+
+    Envelope extent = new Envelope();
+    for (Envelope env : envelopes) {
+      if (!isFinite(env))
+        return null;
+      extent.expandToInclude(env);
+    }
+
+    int dimension = (int) Math.ceil(Math.sqrt(envelopes.size()) * 8);
+    dimension = Math.max(16, Math.min(MAX_DIMENSION, dimension));
+    int columns = extent.getWidth() > 0 ? dimension : 1;
+    int rows = extent.getHeight() > 0 ? dimension : 1;
+
+    FederatedServiceGrid grid = new FederatedServiceGrid(extent.getMinX(),
+        extent.getMinY(), extent.getMaxX(), extent.getMaxY(), columns, rows);
+
+    // Cells touched by a rectangle, which may or may not be fully covered
+    List<List<FederatedService>> touching = new ArrayList<List<FederatedService>>();
+    for (int i = 0; i < grid._states.length; i++)
+      touching.add(null);
+
+    boolean[] covered = new boolean[grid._states.length];
+
+    for (int r = 0; r < envelopes.size(); r++) {
+      Envelope env = envelopes.get(r);
+      FederatedService service = services.get(r);
+      int x0 = grid.column(env.getMinX());
+      int x1 = grid.column(env.getMaxX());
+      int y0 = grid.row(env.getMinY());
+      int y1 = grid.row(env.getMaxY());
+      for (int y = y0; y <= y1; y++) {
+        for (int x = x0; x <= x1; x++) {
+          int cell = y * columns + x;
+          List<FederatedService> cellServices = touching.get(cell);
+          if (cellServices == null) {
+            cellServices = new ArrayList<FederatedService>(1);
+            touching.set(cell, cellServices);
+          }
+          if (!cellServices.contains(service))
+            cellServices.add(service);
+          // any point mapping to a strictly interior cell lies inside env
+          if (x0 < x && x < x1 && y0 < y && y < y1)
+            covered[cell] = true;
+        }
+      }
+    }
+
+    for (int cell = 0; cell < grid._states.length; cell++) {
+      List<FederatedService> cellServices = touching.get(cell);
+      if (cellServices == null) {
+        grid._states[cell] = EMPTY;
+      } else if (cellServices.size() == 1 && covered[cell]) {
+        grid._states[cell] = COVERED;
+        grid._services[cell] = cellServices.get(0);
+      } else {
+        grid._states[cell] = MIXED;
+      }
+    }
+
+    return grid;
+  }
+
+  /**
+   * @return the single service whose coverage intersects the rectangle, null
+   *         if none does, {@link #MULTIPLE} if more than one does, or
+   *         {@link #UNRESOLVED} if an exact test is needed
+   */
+  public Object getServiceForRectangle(double minX, double minY, double maxX,
+      double maxY) {
+
+    if (Double.isNaN(minX) || Double.isNaN(minY) || Double.isNaN(maxX)
+        || Double.isNaN(maxY))
+      return UNRESOLVED;
+
+    if (maxX < _minX || minX > _maxX || maxY < _minY || minY > _maxY)
+      return null;
+
+    int x0 = column(Math.max(minX, _minX));
+    int x1 = column(Math.min(maxX, _maxX));
+    int y0 = row(Math.max(minY, _minY));
+    int y1 = row(Math.min(maxY, _maxY));
+
+    if ((x1 - x0 + 1) * (y1 - y0 + 1) > MAX_QUERY_CELLS)
+      return UNRESOLVED;
+
+    FederatedService result = null;
+
+    for (int y = y0; y <= y1; y++) {
+      for (int x = x0; x <= x1; x++) {
+        int cell = y * _columns + x;
+        switch (_states[cell]) {
+          case EMPTY:
+            break;
+          case COVERED:
+            FederatedService service = _services[cell];
+            if (result == null)
+              result = service;
+            else if (result != service)
+              return MULTIPLE;
+            break;
+          default:
+            return UNRESOLVED;
+        }
+      }
+    }
+
+    return result;
+  }
+
+  private int column(double x) {
+    return index(x, _minX, _cellWidth, _columns);
+  }
+
+  private int row(double y) {
+    return index(y, _minY, _cellHeight, _rows);
+  }
+
+  private static int index(double value, double min, double size, int count) {
+    if (count == 1)
+      return 0;
+    int index = (int) Math.floor((value - min) / size);
+    return Math.max(0, Math.min(count - 1, index));
+  }
+
+  private static boolean isFinite(Envelope env) {
+    return isFinite(env.getMinX()) && isFinite(env.getMaxX())
+        && isFinite(env.getMinY()) && isFinite(env.getMaxY());
+  }
+
+  private static boolean isFinite(double value) {
+    return !Double.isNaN(value) && !Double.isInfinite(value);
+  }
+}
@@ -132,4 +132,52 @@ public class FederatedServiceCollectionImplTest {
     }
 
   }
+
+  @Test
+  public void testLocationLookupsAgreeWithCoverage() {
+
+    Map<FederatedService, Map<String, List<CoordinateBounds>>> providers = new HashMap<FederatedService, Map<String, List<CoordinateBounds>>>();
+
+    SimpleFederatedService serviceA = Mockito.mock(SimpleFederatedService.class);
+    Map<String, List<CoordinateBounds>> coverageA = new HashMap<String, List<CoordinateBounds>>();
+    coverageA.put("a1", Arrays.asList(new CoordinateBounds(1, 1, 3, 3),
+        new CoordinateBounds(2, 2, 4, 4)));
+    providers.put(serviceA, coverageA);
+
+    SimpleFederatedService serviceB = Mockito.mock(SimpleFederatedService.class);
+    Map<String, List<CoordinateBounds>> coverageB = new HashMap<String, List<CoordinateBounds>>();
+    coverageB.put("b1", Arrays.asList(new CoordinateBounds(4, 4, 7, 7)));
+    providers.put(serviceB, coverageB);
+
+    FederatedServiceCollection registry = new FederatedServiceCollectionImpl(
+        providers);
+
+    // sample on and between coverage boundaries, twice to exercise the cache
+    for (int pass = 0; pass < 2; pass++) {
+      for (double lat = 0; lat <= 8; lat += 0.25) {
+        for (double lon = 0; lon <= 8; lon += 0.25) {
+
+          Set<FederatedService> expected = new HashSet<FederatedService>();
+          for (Map.Entry<FederatedService, Map<String, List<CoordinateBounds>>> entry : providers.entrySet()) {
+            for (List<CoordinateBounds> coverage : entry.getValue().values()) {
+              for (CoordinateBounds bounds : coverage) {
+                if (bounds.contains(lat, lon))
+                  expected.add(entry.getKey());
+              }
+            }
+          }
+
+          try {
+            FederatedService actual = registry.getServiceForLocation(lat, lon);
+            assertEquals(1, expected.size());
+            assertTrue(expected.contains(actual));
+          } catch (OutOfServiceAreaServiceException ex) {
+            assertTrue(expected.isEmpty());
+          } catch (MultipleServiceAreasServiceException ex) {
+            assertTrue(expected.size() > 1);
+          }
+        }
+      }
+    }
+  }
 }
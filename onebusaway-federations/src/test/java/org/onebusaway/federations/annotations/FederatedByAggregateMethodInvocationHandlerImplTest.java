@@ -16,6 +16,8 @@
 package org.onebusaway.federations.annotations;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import org.onebusaway.federations.FederatedService;
 import org.onebusaway.federations.FederatedServiceCollection;
@@ -24,7 +26,11 @@ import org.onebusaway.federations.impl.FederatedServiceCollectionImpl;
 
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.Collections;
@@ -33,6 +39,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
 
 public class FederatedByAggregateMethodInvocationHandlerImplTest {
   
@@ -109,4 +119,139 @@ public class FederatedByAggregateMethodInvocationHandlerImplTest {
     assertEquals("c3",results.get("c"));
     assertEquals("d4",results.get("d"));
   }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testServicesAreInvokedConcurrently() throws Exception {
+
+    // each service waits for the other to have been called, which can only
+    // happen if the two calls are in flight at the same time
+    final CountDownLatch latch = new CountDownLatch(2);
+    Answer<List<String>> answer = new Answer<List<String>>() {
+      @Override
+      public List<String> answer(InvocationOnMock invocation) throws Throwable {
+        latch.countDown();
+        if (!latch.await(5, TimeUnit.SECONDS))
+          return Arrays.asList("sequential");
+        return Arrays.asList("concurrent");
+      }
+    };
+
+    SimpleFederatedService mockServiceA = Mockito.mock(SimpleFederatedService.class);
+    Mockito.when(mockServiceA.getValuesAsList()).thenAnswer(answer);
+
+    SimpleFederatedService mockServiceB = Mockito.mock(SimpleFederatedService.class);
+    Mockito.when(mockServiceB.getValuesAsList()).thenAnswer(answer);
+
+    FederatedServiceCollection mockCollection = createCollection(mockServiceA, mockServiceB);
+    Method method = SimpleFederatedService.class.getDeclaredMethod("getValuesAsList");
+
+    FederatedServiceMethodInvocationHandler handler = new FederatedByAggregateMethodInvocationHandlerImpl(EMethodAggregationType.LIST);
+    List<String> results = (List<String>) handler.invoke(mockCollection, method, new Object[] {});
+
+    assertEquals(Arrays.asList("concurrent", "concurrent"), results);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testTimeoutWithPartialResults() throws Exception {
+
+    final CountDownLatch release = new CountDownLatch(1);
+
+    SimpleFederatedService mockServiceA = Mockito.mock(SimpleFederatedService.class);
+    Mockito.when(mockServiceA.getValuesAsList()).thenReturn(Arrays.asList("a"));
+
+    SimpleFederatedService mockServiceB = Mockito.mock(SimpleFederatedService.class);
+    Mockito.when(mockServiceB.getValuesAsList()).thenAnswer(new Answer<List<String>>() {
+      @Override
+      public List<String> answer(InvocationOnMock invocation) throws Throwable {
+        release.await(5, TimeUnit.SECONDS);
+        return Arrays.asList("b");
+      }
+    });
+
+    FederatedServiceCollection mockCollection = createCollection(mockServiceA, mockServiceB);
+    Method method = SimpleFederatedService.class.getDeclaredMethod("getValuesAsList");
+
+    FederatedServiceMethodInvocationHandler handler = new FederatedByAggregateMethodInvocationHandlerImpl(
+        EMethodAggregationType.LIST, 100, true);
+    try {
+      List<String> results = (List<String>) handler.invoke(mockCollection, method, new Object[] {});
+      assertEquals(Arrays.asList("a"), results);
+    } finally {
+      release.countDown();
+    }
+
+    Map<String, FederatedServiceLatencyMetrics.Latency> latencies = FederatedServiceLatencyMetrics.getInstance().getLatencies();
+    assertEquals(1, latencies.get(String.valueOf(mockServiceB)).getTimeouts());
+  }
+
+  @Test(expected = InvocationTargetException.class)
+  public void testFailureWithoutPartialResults() throws Exception {
+
+    SimpleFederatedService mockServiceA = Mockito.mock(SimpleFederatedService.class);
+    Mockito.when(mockServiceA.getValuesAsList()).thenReturn(Arrays.asList("a"));
+
+    SimpleFederatedService mockServiceB = Mockito.mock(SimpleFederatedService.class);
+    Mockito.when(mockServiceB.getValuesAsList()).thenThrow(new IllegalStateException());
+
+    FederatedServiceCollection mockCollection = createCollection(mockServiceA, mockServiceB);
+    Method method = SimpleFederatedService.class.getDeclaredMethod("getValuesAsList");
+
+    FederatedServiceMethodInvocationHandler handler = new FederatedByAggregateMethodInvocationHandlerImpl(EMethodAggregationType.LIST);
+    handler.invoke(mockCollection, method, new Object[] {});
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testFailureWithPartialResults() throws Exception {
+
+    SimpleFederatedService mockServiceA = Mockito.mock(SimpleFederatedService.class);
+    Mockito.when(mockServiceA.getValuesAsList()).thenReturn(Arrays.asList("a"));
+
+    SimpleFederatedService mockServiceB = Mockito.mock(SimpleFederatedService.class);
+    Mockito.when(mockServiceB.getValuesAsList()).thenThrow(new IllegalStateException());
+
+    FederatedServiceCollection mockCollection = createCollection(mockServiceA, mockServiceB);
+    Method method = SimpleFederatedService.class.getDeclaredMethod("getValuesAsList");
+
+    FederatedServiceMethodInvocationHandler handler = new FederatedByAggregateMethodInvocationHandlerImpl(
+        EMethodAggregationType.LIST, 0, true);
+    List<String> results = (List<String>) handler.invoke(mockCollection, method, new Object[] {});
+
+    assertEquals(Arrays.asList("a"), results);
+    assertFalse(FederatedServiceLatencyMetrics.getInstance().getLatencies().get(
+        String.valueOf(mockServiceB)).getFailures() == 0);
+  }
+
+  @Test
+  public void testLatencyMetricsOverJmx() throws Exception {
+
+    SimpleFederatedService mockServiceA = Mockito.mock(SimpleFederatedService.class);
+    Mockito.when(mockServiceA.getValuesAsList()).thenReturn(Arrays.asList("a"));
+
+    SimpleFederatedService mockServiceB = Mockito.mock(SimpleFederatedService.class);
+    Mockito.when(mockServiceB.getValuesAsList()).thenReturn(Arrays.asList("b"));
+
+    FederatedServiceCollection mockCollection = createCollection(mockServiceA, mockServiceB);
+    Method method = SimpleFederatedService.class.getDeclaredMethod("getValuesAsList");
+
+    FederatedServiceMethodInvocationHandler handler = new FederatedByAggregateMethodInvocationHandlerImpl(EMethodAggregationType.LIST);
+    handler.invoke(mockCollection, method, new Object[] {});
+
+    String[] summary = (String[]) ManagementFactory.getPlatformMBeanServer().getAttribute(
+        new ObjectName(FederatedServiceLatencyMetrics.OBJECT_NAME), "LatencySummary");
+
+    boolean found = false;
+    for (String line : summary)
+      found |= line.startsWith(String.valueOf(mockServiceA) + " Latency(calls=");
+    assertTrue(found);
+  }
+
+  private FederatedServiceCollection createCollection(FederatedService... services) {
+    Set<FederatedService> asSet = new HashSet<FederatedService>(Arrays.asList(services));
+    FederatedServiceCollection mockCollection = Mockito.mock(FederatedServiceCollectionImpl.class);
+    Mockito.when(mockCollection.getAllServices()).thenReturn(asSet);
+    return mockCollection;
+  }
 }
@@ -25,6 +25,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.onebusaway.gtfs_realtime.archiver.service.GtfsRealtimeRetriever;
 import org.onebusaway.gtfs_realtime.archiver.service.GtfsRealtimeRetriever.EntityType;
+import org.onebusaway.gtfs_realtime.archiver.service.GtfsRealtimeSnapshotService;
 import org.onebusaway.gtfs_realtime.archiver.service.TimeService;
 import org.onebusaway.users.services.ApiKeyPermissionService;
 import org.onebusaway.users.services.ApiKeyPermissionService.Status;
@@ -45,6 +46,9 @@ public class GtfsRealtimePlaybackController {
   @Autowired
   private GtfsRealtimeRetriever _gtfsRealtimeRetriever;
 
+  @Autowired
+  private GtfsRealtimeSnapshotService _snapshotService;
+
   @Autowired
   private TimeService _timeService;
   
@@ -60,6 +64,7 @@ public class GtfsRealtimePlaybackController {
       @RequestParam(value = "timestamp", required = false) Long timestampInSeconds,
       @RequestParam(value = "time", required = false) String simpleDate,
       @RequestParam(value = "interval", required = false, defaultValue = "30") long interval,
+      @RequestParam(value = "snapshot", required = false, defaultValue = "false") boolean snapshot,
       @PathVariable String path)
           throws IOException {
     
@@ -97,6 +102,14 @@ public class GtfsRealtimePlaybackController {
     _timeService.setCurrentTime(key, requestedDate);
     
     Date endDate = _timeService.getCurrentTime(key);
+
+    if (snapshot && interval > 0) {
+      // interval-aligned, pre-serialized feed; deterministic across replays
+      byte[] bytes = _snapshotService.getSnapshot(type, endDate, interval);
+      render(request, response, bytes);
+      return;
+    }
+
     Date startDate = new Date((endDate.getTime() - (interval * 1000))); 
         
     FeedMessage tripUpdates = _gtfsRealtimeRetriever.getFeedMessage(type, startDate, endDate);
@@ -136,6 +149,17 @@ public class GtfsRealtimePlaybackController {
   }
   
   
+  private void render(ServletRequest request, HttpServletResponse response,
+      byte[] message) throws IOException {
+    if (request.getParameter("debug") != null) {
+      render(request, response, FeedMessage.parseFrom(message));
+    } else {
+      response.setContentType("application/x-google-protobuf");
+      response.setContentLength(message.length);
+      response.getOutputStream().write(message);
+    }
+  }
+
   private Status isAllowed(String key) {
     return _keyService.getPermission(key, "api");
   }
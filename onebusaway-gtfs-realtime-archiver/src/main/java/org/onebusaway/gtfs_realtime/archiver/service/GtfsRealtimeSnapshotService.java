@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2016 Cambridge Systematics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.gtfs_realtime.archiver.service;
+
+import java.util.Date;
+
+import org.onebusaway.gtfs_realtime.archiver.service.GtfsRealtimeRetriever.EntityType;
+
+/**
+ * Serves archived GTFS-realtime feeds as pre-serialized snapshots for
+ * playback. Snapshot windows are aligned to the interval: a request at time t
+ * gets the same feed as the live query ending at the last interval boundary
+ * at or before t, so consecutive snapshots tile the archive and repeated
+ * playback of the same period is deterministic and can be served without
+ * re-querying the archive.
+ */
+public interface GtfsRealtimeSnapshotService {
+
+  /**
+   * @param type the entity type of the feed
+   * @param time the playback time; it is truncated to a multiple of the
+   *          interval
+   * @param intervalInSeconds the window of archived records to include
+   * @return the serialized FeedMessage for the interval bucket
+   */
+  byte[] getSnapshot(EntityType type, Date time, long intervalInSeconds);
+
+  /**
+   * Discard all materialized snapshots.
+   */
+  void clear();
+}
@@ -0,0 +1,244 @@
+/**
+ * Copyright (C) 2016 Cambridge Systematics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.gtfs_realtime.archiver.service;
+
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.onebusaway.gtfs_realtime.archiver.service.GtfsRealtimeRetriever.EntityType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.transit.realtime.GtfsRealtime.FeedMessage;
+
+/**
+ * Keeps serialized FeedMessages keyed by (entity type, interval, bucket), where
+ * buckets are aligned to the interval so consecutive snapshots tile the
+ * archive without gaps or overlap. A snapshot for bucket n covers the same
+ * window as the live query ending at n * interval. Only windows that have
+ * ended (plus a settle delay to let the persistor drain) are cached, as they
+ * can no longer change. A background task materializes the most recently
+ * closed bucket for the default interval as it is archived, so real-time
+ * playback rarely misses.
+ */
+@Component
+public class GtfsRealtimeSnapshotServiceImpl implements GtfsRealtimeSnapshotService {
+
+  private static Logger _log = LoggerFactory.getLogger(GtfsRealtimeSnapshotServiceImpl.class);
+
+  private GtfsRealtimeRetriever _gtfsRealtimeRetriever;
+
+  private ThreadPoolTaskScheduler _taskScheduler;
+
+  private ScheduledFuture<?> _materializeTask;
+
+  private Cache<SnapshotKey, byte[]> _snapshots;
+
+  /**
+   * upper bound on the total size of cached snapshots, in bytes
+   */
+  private long _maxCacheSizeInBytes = 256 * 1024 * 1024;
+
+  /**
+   * how long after a window ends before it is considered immutable; the
+   * persistor flushes every 10 seconds so allow for a couple of cycles
+   */
+  private long _settleDelayInSeconds = 30;
+
+  /**
+   * interval materialized ahead of time, matching the playback default
+   */
+  private long _defaultIntervalInSeconds = 30;
+
+  private boolean _materializeOnWrite = true;
+
+  @Autowired
+  public void setGtfsRealtimeRetriever(GtfsRealtimeRetriever retriever) {
+    _gtfsRealtimeRetriever = retriever;
+  }
+
+  @Autowired
+  public void setTaskScheduler(ThreadPoolTaskScheduler scheduler) {
+    _taskScheduler = scheduler;
+  }
+
+  public void setMaxCacheSizeInBytes(long maxCacheSizeInBytes) {
+    _maxCacheSizeInBytes = maxCacheSizeInBytes;
+  }
+
+  public void setSettleDelayInSeconds(long settleDelayInSeconds) {
+    _settleDelayInSeconds = settleDelayInSeconds;
+  }
+
+  public void setDefaultIntervalInSeconds(long defaultIntervalInSeconds) {
+    _defaultIntervalInSeconds = defaultIntervalInSeconds;
+  }
+
+  public void setMaterializeOnWrite(boolean materializeOnWrite) {
+    _materializeOnWrite = materializeOnWrite;
+  }
+
+  @PostConstruct
+  public void start() {
+    _snapshots = CacheBuilder.newBuilder()
+        .maximumWeight(_maxCacheSizeInBytes)
+        .weigher(new Weigher<SnapshotKey, byte[]>() {
+          @Override
+          public int weigh(SnapshotKey key, byte[] value) {
+            return value.length;
+          }
+        })
+        .build();
+
+    if (_materializeOnWrite && _taskScheduler != null) {
+      _materializeTask = _taskScheduler.scheduleAtFixedRate(
+          new MaterializeTask(), _defaultIntervalInSeconds * 1000);
+    }
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (_materializeTask != null) {
+      _materializeTask.cancel(true);
+      _materializeTask = null;
+    }
+  }
+
+  @Override
+  public byte[] getSnapshot(EntityType type, Date time, long intervalInSeconds) {
+    if (intervalInSeconds <= 0)
+      throw new IllegalArgumentException("interval must be positive: "
+          + intervalInSeconds);
+    final long bucket = time.getTime() / (intervalInSeconds * 1000);
+    final SnapshotKey key = new SnapshotKey(type, intervalInSeconds, bucket);
+
+    if (!isClosed(key)) {
+      return buildSnapshot(key);
+    }
+
+    try {
+      return _snapshots.get(key, new Callable<byte[]>() {
+        @Override
+        public byte[] call() {
+          return buildSnapshot(key);
+        }
+      });
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("error building snapshot for " + key,
+          e.getCause());
+    }
+  }
+
+  @Override
+  public void clear() {
+    _snapshots.invalidateAll();
+  }
+
+  private boolean isClosed(SnapshotKey key) {
+    long closedAt = key.getEndTime() + _settleDelayInSeconds * 1000;
+    return closedAt <= currentTimeMillis();
+  }
+
+  /**
+   * package private so tests can control the clock
+   */
+  long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  private byte[] buildSnapshot(SnapshotKey key) {
+    Date endDate = new Date(key.getEndTime());
+    Date startDate = new Date(endDate.getTime() - key.intervalInSeconds * 1000);
+    FeedMessage message = _gtfsRealtimeRetriever.getFeedMessage(key.type,
+        startDate, endDate);
+    return message.toByteArray();
+  }
+
+  private class MaterializeTask implements Runnable {
+
+    @Override
+    public void run() {
+      long intervalInMillis = _defaultIntervalInSeconds * 1000;
+      long now = currentTimeMillis() - _settleDelayInSeconds * 1000;
+      // the most recent window that is closed
+      Date time = new Date(now / intervalInMillis * intervalInMillis);
+      for (EntityType type : EntityType.values()) {
+        try {
+          getSnapshot(type, time, _defaultIntervalInSeconds);
+        } catch (Exception e) {
+          _log.error("error materializing " + type + " snapshot for " + time, e);
+        }
+      }
+    }
+  }
+
+  private static final class SnapshotKey {
+
+    private final EntityType type;
+
+    private final long intervalInSeconds;
+
+    private final long bucket;
+
+    public SnapshotKey(EntityType type, long intervalInSeconds, long bucket) {
+      this.type = type;
+      this.intervalInSeconds = intervalInSeconds;
+      this.bucket = bucket;
+    }
+
+    /**
+     * @return the end of the window, the start of the bucket
+     */
+    public long getEndTime() {
+      return bucket * intervalInSeconds * 1000;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = type.hashCode();
+      result = 31 * result + (int) (intervalInSeconds ^ (intervalInSeconds >>> 32));
+      result = 31 * result + (int) (bucket ^ (bucket >>> 32));
+      return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if (!(obj instanceof SnapshotKey))
+        return false;
+      SnapshotKey other = (SnapshotKey) obj;
+      return type == other.type && intervalInSeconds == other.intervalInSeconds
+          && bucket == other.bucket;
+    }
+
+    @Override
+    public String toString() {
+      return type + "/" + intervalInSeconds + "s@" + bucket;
+    }
+  }
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2016 Cambridge Systematics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.gtfs_realtime.archiver.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.onebusaway.gtfs_realtime.archiver.service.GtfsRealtimeRetriever.EntityType;
+
+import com.google.transit.realtime.GtfsRealtime.FeedEntity;
+import com.google.transit.realtime.GtfsRealtime.FeedHeader;
+import com.google.transit.realtime.GtfsRealtime.FeedMessage;
+
+public class GtfsRealtimeSnapshotServiceImplTest {
+
+  private static final long INTERVAL = 30;
+
+  private WindowRetriever _retriever;
+
+  private TestSnapshotService _service;
+
+  @Before
+  public void before() {
+    _retriever = new WindowRetriever();
+    _service = new TestSnapshotService();
+    _service.setGtfsRealtimeRetriever(_retriever);
+    _service.setMaterializeOnWrite(false);
+    _service.setSettleDelayInSeconds(30);
+    _service.start();
+    _service.now = time(3600);
+  }
+
+  @Test
+  public void testSnapshotAtBoundaryMatchesLiveQuery() {
+    Date end = new Date(time(600));
+    byte[] snapshot = _service.getSnapshot(EntityType.TRIP, end,
+        INTERVAL);
+    assertArrayEquals(live(EntityType.TRIP, end, INTERVAL), snapshot);
+  }
+
+  @Test
+  public void testSnapshotWithinIntervalMatchesLiveQueryAtBoundary() {
+    // every second of an interval is served by the window ending at its start
+    for (int offset = 0; offset < INTERVAL; offset++) {
+      Date time = new Date(time(630 + offset));
+      byte[] snapshot = _service.getSnapshot(EntityType.VEHICLE, time,
+          INTERVAL);
+      assertArrayEquals(live(EntityType.VEHICLE, new Date(time(630)),
+          INTERVAL), snapshot);
+    }
+  }
+
+  @Test
+  public void testConsecutiveSnapshotsTile() throws Exception {
+    long previousEnd = -1;
+    for (int seconds = 600; seconds < 720; seconds += INTERVAL) {
+      FeedMessage message = FeedMessage.parseFrom(_service.getSnapshot(
+          EntityType.TRIP, new Date(time(seconds + 10)), INTERVAL));
+      long start = Long.parseLong(message.getEntity(0).getId());
+      long end = message.getHeader().getTimestamp();
+      assertEquals(INTERVAL * 1000, end - start);
+      if (previousEnd != -1)
+        assertEquals(previousEnd, start);
+      previousEnd = end;
+    }
+  }
+
+  @Test
+  public void testOtherIntervalsAlignToTheirOwnBoundaries() {
+    Date time = new Date(time(650));
+    byte[] snapshot = _service.getSnapshot(EntityType.TRIP, time, 60);
+    assertArrayEquals(live(EntityType.TRIP, new Date(time(600)), 60),
+        snapshot);
+  }
+
+  @Test
+  public void testClosedWindowsAreCached() {
+    Date time = new Date(time(615));
+    _service.getSnapshot(EntityType.TRIP, time, INTERVAL);
+    _service.getSnapshot(EntityType.TRIP, time, INTERVAL);
+    assertEquals(1, _retriever.calls.size());
+
+    _service.clear();
+    _service.getSnapshot(EntityType.TRIP, time, INTERVAL);
+    assertEquals(2, _retriever.calls.size());
+  }
+
+  @Test
+  public void testOpenWindowsAreNotCached() {
+    // the window ending at 3600 is still within the settle delay
+    Date time = new Date(time(3600));
+    _service.getSnapshot(EntityType.TRIP, time, INTERVAL);
+    _service.getSnapshot(EntityType.TRIP, time, INTERVAL);
+    assertEquals(2, _retriever.calls.size());
+
+    // once settled, the same window is cached
+    _service.now = time(3630);
+    _service.getSnapshot(EntityType.TRIP, time, INTERVAL);
+    _service.getSnapshot(EntityType.TRIP, time, INTERVAL);
+    assertEquals(3, _retriever.calls.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNonPositiveInterval() {
+    _service.getSnapshot(EntityType.TRIP, new Date(time(600)), 0);
+  }
+
+  private byte[] live(EntityType type, Date endDate, long interval) {
+    Date startDate = new Date(endDate.getTime() - interval * 1000);
+    return _retriever.build(type, startDate, endDate).toByteArray();
+  }
+
+  private static long time(long seconds) {
+    // an arbitrary, interval-aligned base time
+    return 1500000000000L + seconds * 1000;
+  }
+
+  private static class TestSnapshotService extends
+      GtfsRealtimeSnapshotServiceImpl {
+
+    private long now;
+
+    @Override
+    long currentTimeMillis() {
+      return now;
+    }
+  }
+
+  /**
+   * Encodes the queried window into the message so snapshots can be compared
+   * against the live query byte for byte.
+   */
+  private static class WindowRetriever implements GtfsRealtimeRetriever {
+
+    private List<Date[]> calls = new ArrayList<Date[]>();
+
+    @Override
+    public FeedMessage getFeedMessage(EntityType type, Date startDate,
+        Date endDate) {
+      calls.add(new Date[] {startDate, endDate});
+      return build(type, startDate, endDate);
+    }
+
+    private FeedMessage build(EntityType type, Date startDate, Date endDate) {
+      FeedHeader.Builder header = FeedHeader.newBuilder();
+      header.setGtfsRealtimeVersion("1.0");
+      header.setTimestamp(endDate.getTime());
+      FeedMessage.Builder message = FeedMessage.newBuilder();
+      message.setHeader(header);
+      message.addEntity(FeedEntity.newBuilder().setId(
+          Long.toString(startDate.getTime())));
+      message.addEntity(FeedEntity.newBuilder().setId(type.name()).setIsDeleted(
+          false));
+      return message.build();
+    }
+  }
+}
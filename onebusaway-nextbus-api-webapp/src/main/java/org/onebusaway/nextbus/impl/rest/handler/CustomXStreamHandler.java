@@ -52,9 +52,25 @@ import com.thoughtworks.xstream.XStream;
 
 public class CustomXStreamHandler extends XStreamHandler {
 
+  /**
+   * A configured XStream is thread-safe, so it is built once rather than on
+   * every request.
+   */
+  private volatile XStream _xstream;
+
   @Override
   protected XStream createXStream(ActionInvocation invocation) {
-    return createXStream();
+    XStream xstream = _xstream;
+    if (xstream == null) {
+      synchronized (this) {
+        xstream = _xstream;
+        if (xstream == null) {
+          xstream = createXStream();
+          _xstream = xstream;
+        }
+      }
+    }
+    return xstream;
   }
 
   @Override
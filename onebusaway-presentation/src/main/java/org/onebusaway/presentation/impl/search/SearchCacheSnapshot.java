@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2011 Metropolitan Transportation Authority
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.presentation.impl.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.onebusaway.transit_data.model.AgencyWithCoverageBean;
+import org.onebusaway.transit_data.model.RouteBean;
+import org.onebusaway.transit_data.model.StopBean;
+import org.onebusaway.transit_data.services.TransitDataService;
+import org.onebusaway.util.AgencyAndIdLibrary;
+
+/**
+ * Immutable route and stop lookup tables for a single bundle. A snapshot is
+ * built in full before it is handed to {@link SearchServiceImpl}, which swaps
+ * it in atomically, so searches never observe a partially built set of
+ * tables.
+ */
+final class SearchCacheSnapshot {
+
+  static final SearchCacheSnapshot EMPTY = new SearchCacheSnapshot(null,
+      new HashMap<String, List<RouteBean>>(), new HashMap<String, RouteBean>(),
+      new HashMap<String, List<RouteBean>>(), new HashMap<String, String>(),
+      new HashMap<String, Set<String>>(), new HashMap<String, Set<String>>());
+
+  private final String _bundleId;
+
+  private final Map<String, List<RouteBean>> _routesByShortName;
+
+  // these are uniquely prefixed, they don't need to be a list
+  private final Map<String, RouteBean> _routesById;
+
+  private final Map<String, List<RouteBean>> _routesByLongName;
+
+  private final Map<String, String> _stopIdsByCode;
+
+  private final Map<String, Set<String>> _stopIdsByUnqualifiedId;
+
+  private final Map<String, Set<String>> _stopIdsByName;
+
+  private final SortedPrefixIndex _routeShortNameIndex;
+
+  private SearchCacheSnapshot(String bundleId,
+      Map<String, List<RouteBean>> routesByShortName,
+      Map<String, RouteBean> routesById,
+      Map<String, List<RouteBean>> routesByLongName,
+      Map<String, String> stopIdsByCode,
+      Map<String, Set<String>> stopIdsByUnqualifiedId,
+      Map<String, Set<String>> stopIdsByName) {
+    _bundleId = bundleId;
+    _routesByShortName = Collections.unmodifiableMap(routesByShortName);
+    _routesById = Collections.unmodifiableMap(routesById);
+    _routesByLongName = Collections.unmodifiableMap(routesByLongName);
+    _stopIdsByCode = Collections.unmodifiableMap(stopIdsByCode);
+    _stopIdsByUnqualifiedId = Collections.unmodifiableMap(stopIdsByUnqualifiedId);
+    _stopIdsByName = Collections.unmodifiableMap(stopIdsByName);
+    _routeShortNameIndex = new SortedPrefixIndex(routesByShortName.keySet());
+  }
+
+  /**
+   * Builds the lookup tables for the currently active bundle. This makes a
+   * number of (potentially remote) {@link TransitDataService} calls and should
+   * be kept off the request path where possible.
+   */
+  public static SearchCacheSnapshot create(String bundleId,
+      TransitDataService transitDataService) {
+
+    Map<String, List<RouteBean>> routesByShortName = new HashMap<String, List<RouteBean>>();
+    Map<String, RouteBean> routesById = new HashMap<String, RouteBean>();
+    Map<String, List<RouteBean>> routesByLongName = new HashMap<String, List<RouteBean>>();
+    Map<String, String> stopIdsByCode = new HashMap<String, String>();
+    Map<String, Set<String>> stopIdsByUnqualifiedId = new HashMap<String, Set<String>>();
+    Map<String, Set<String>> stopIdsByName = new HashMap<String, Set<String>>();
+
+    for (AgencyWithCoverageBean agency : transitDataService.getAgenciesWithCoverage()) {
+      for (RouteBean routeBean : transitDataService.getRoutesForAgencyId(
+          agency.getAgency().getId()).getList()) {
+        if (routeBean.getShortName() != null)
+          addToList(routesByShortName, routeBean.getShortName().toUpperCase(),
+              routeBean);
+        if (routeBean.getLongName() != null)
+          addToList(routesByLongName, routeBean.getLongName(), routeBean);
+        routesById.put(routeBean.getId(), routeBean);
+      }
+
+      List<StopBean> stopsList = transitDataService.getAllRevenueStops(agency);
+      for (StopBean stop : stopsList) {
+        String unqualifiedId = AgencyAndIdLibrary.convertFromString(
+            stop.getId()).getId();
+        addToSet(stopIdsByUnqualifiedId, unqualifiedId, stop.getId());
+        stopIdsByCode.put(agency.getAgency().getId() + "_"
+            + stop.getCode().toUpperCase(), stop.getId());
+        addToSet(stopIdsByName, stop.getName(), stop.getId());
+      }
+    }
+
+    return new SearchCacheSnapshot(bundleId, routesByShortName, routesById,
+        routesByLongName, stopIdsByCode, stopIdsByUnqualifiedId, stopIdsByName);
+  }
+
+  public String getBundleId() {
+    return _bundleId;
+  }
+
+  public Map<String, List<RouteBean>> getRoutesByShortName() {
+    return _routesByShortName;
+  }
+
+  public Map<String, RouteBean> getRoutesById() {
+    return _routesById;
+  }
+
+  public Map<String, List<RouteBean>> getRoutesByLongName() {
+    return _routesByLongName;
+  }
+
+  public Map<String, String> getStopIdsByCode() {
+    return _stopIdsByCode;
+  }
+
+  public Map<String, Set<String>> getStopIdsByUnqualifiedId() {
+    return _stopIdsByUnqualifiedId;
+  }
+
+  public Map<String, Set<String>> getStopIdsByName() {
+    return _stopIdsByName;
+  }
+
+  /**
+   * @return the (upper case) route short names that start or end with the
+   *         specified value, without scanning every short name
+   */
+  public Set<String> getRouteShortNamesStartingOrEndingWith(String value) {
+    Set<String> names = new LinkedHashSet<String>();
+    names.addAll(_routeShortNameIndex.getKeysWithPrefix(value));
+    names.addAll(_routeShortNameIndex.getKeysWithSuffix(value));
+    return names;
+  }
+
+  private static <T> void addToList(Map<String, List<T>> map, String key,
+      T value) {
+    List<T> values = map.get(key);
+    if (values == null) {
+      values = new ArrayList<T>();
+      map.put(key, values);
+    }
+    values.add(value);
+  }
+
+  private static <T> void addToSet(Map<String, Set<T>> map, String key,
+      T value) {
+    Set<T> values = map.get(key);
+    if (values == null) {
+      values = new HashSet<T>();
+      map.put(key, values);
+    }
+    values.add(value);
+  }
+}
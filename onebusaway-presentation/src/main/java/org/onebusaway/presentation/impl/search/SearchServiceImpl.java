@@ -41,17 +41,21 @@ import org.springframework.stereotype.Component;
 
 import java.net.URLDecoder;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+
+import javax.annotation.PreDestroy;
+
 import org.onebusaway.util.AgencyAndIdLibrary;
 
 /**
@@ -96,19 +100,21 @@ public class SearchServiceImpl implements SearchService {
 	@Autowired
 	private TransitDataService _transitDataService;
 
-	private Map<String, List<RouteBean>> _routeShortNameToRouteBeanMap = new HashMap<String, List<RouteBean>>();
-	
-	private Map<String, RouteBean> _routeIdToRouteBeanMap = new HashMap<String, RouteBean>(); // these are uniquely prefixed, they don't need to be a list
-
-	private Map<String, List<RouteBean>> _routeLongNameToRouteBeanMap = new HashMap<String, List<RouteBean>>();
-
-	private Map<String, String> _stopCodeToStopIdMap = new HashMap<String, String>();
+	/**
+	 * Route and stop lookup tables for the active bundle. The snapshot is
+	 * immutable and replaced wholesale when the bundle changes, so readers
+	 * never see a half-built set of tables.
+	 */
+	private volatile SearchCacheSnapshot _caches = SearchCacheSnapshot.EMPTY;
 
-	private Map<String, Set<String>> _unqualifiedStopIdToStopIdMap = new HashMap<String, Set<String>>();
+	private final AtomicBoolean _refreshInProgress = new AtomicBoolean(false);
 
-	private Map<String, Set<String>> _stopNameToStopIdMap = new HashMap<>();
+	private final ExecutorService _refreshExecutor = Executors.newSingleThreadExecutor();
 
-	private String _bundleIdForCaches = null;
+	@PreDestroy
+	public void stop() {
+		_refreshExecutor.shutdownNow();
+	}
 
 	// we keep an internal cache of route short/long names because if we moved
 	// this into the
@@ -122,63 +128,26 @@ public class SearchServiceImpl implements SearchService {
 	public void refreshCachesIfNecessary() {
 		String currentBundleId = _transitDataService.getActiveBundleId();
 
-		if ((_bundleIdForCaches != null && _bundleIdForCaches
-				.equals(currentBundleId)) || currentBundleId == null) {
+		SearchCacheSnapshot caches = _caches;
+		if (currentBundleId == null
+				|| currentBundleId.equals(caches.getBundleId())) {
 			return;
 		}
-		_bundleIdForCaches = _transitDataService.getActiveBundleId();
-		refreshCaches();
-	}
-	private synchronized void refreshCaches() {
 
-		_routeShortNameToRouteBeanMap.clear();
-		_routeIdToRouteBeanMap.clear();
-		_routeLongNameToRouteBeanMap.clear();
-		_stopCodeToStopIdMap.clear();
-		_unqualifiedStopIdToStopIdMap.clear();
-		_stopNameToStopIdMap.clear();
-
-		for (AgencyWithCoverageBean agency : _transitDataService
-				.getAgenciesWithCoverage()) {
-			for (RouteBean routeBean : _transitDataService
-					.getRoutesForAgencyId(agency.getAgency().getId()).getList()) {
-				if (routeBean.getShortName() != null)
-				    if (_routeShortNameToRouteBeanMap.containsKey(routeBean.getShortName().toUpperCase())) {
-				      _routeShortNameToRouteBeanMap.get(routeBean.getShortName().toUpperCase()).add(routeBean);
-				    } else {
-					_routeShortNameToRouteBeanMap.put(routeBean.getShortName()
-							.toUpperCase(), new ArrayList<RouteBean>(Arrays.asList(routeBean)));
-				    }
-				if (routeBean.getLongName() != null)
-				  if (_routeLongNameToRouteBeanMap.containsKey(routeBean.getLongName())) {
-				    _routeLongNameToRouteBeanMap.get(routeBean.getLongName()).add(routeBean);
-				  } else {
-				    _routeLongNameToRouteBeanMap.put(routeBean.getLongName(),
-							new ArrayList<RouteBean>(Arrays.asList(routeBean)));
-				  }
-				
-				_routeIdToRouteBeanMap.put(routeBean.getId(), routeBean);
-			}
-
-			List<StopBean> stopsList = _transitDataService.getAllRevenueStops(agency);
-			for (StopBean stop : stopsList) {
-				String unqualifiedId = AgencyAndIdLibrary.convertFromString(stop.getId()).getId();
-				if (!_unqualifiedStopIdToStopIdMap.containsKey(unqualifiedId)) {
-					_unqualifiedStopIdToStopIdMap.put(unqualifiedId, new HashSet<>());
-				}
-				_unqualifiedStopIdToStopIdMap.get(unqualifiedId).add(stop.getId());
-				_stopCodeToStopIdMap.put(agency.getAgency().getId() + "_"
-					+ stop.getCode().toUpperCase(), stop.getId());
-				if (!_stopNameToStopIdMap.containsKey(stop.getName())) {
-					_stopNameToStopIdMap.put(stop.getName(), new HashSet<>());
-				}
-				_stopNameToStopIdMap.get(stop.getName()).add(stop.getId());
-			}
+		if (caches.getBundleId() == null) {
+			// nothing to serve yet, so build on the request thread
+			refreshCaches(currentBundleId);
+		} else if (_refreshInProgress.compareAndSet(false, true)) {
+			// keep serving the previous bundle's tables while we rebuild
+			_refreshExecutor.execute(new RefreshCachesTask(currentBundleId));
 		}
-
-
 	}
 
+	private synchronized void refreshCaches(String bundleId) {
+		if (bundleId.equals(_caches.getBundleId()))
+			return;
+		_caches = SearchCacheSnapshot.create(bundleId, _transitDataService);
+	}
 
 	@Override
 	public SearchResultCollection findStopsNearPoint(Double latitude,
@@ -481,6 +450,7 @@ public class SearchServiceImpl implements SearchService {
 	}
 
 	private void tryAsExactStopName(SearchResultCollection results, String stopQuery, SearchResultFactory resultFactory) {
+		SearchCacheSnapshot caches = _caches;
 		StopBean testStopBean = null;
 		try {
 			// try as a stop_id
@@ -495,8 +465,8 @@ public class SearchServiceImpl implements SearchService {
 		}
 		// try stop name match
 		// stopNames are not guaranteed unique, and therefore this may return the wrong stop
-		if (_stopNameToStopIdMap.containsKey(stopQuery)) {
-			Set<String> stopIdSet = _stopNameToStopIdMap.get(stopQuery);
+		if (caches.getStopIdsByName().containsKey(stopQuery)) {
+			Set<String> stopIdSet = caches.getStopIdsByName().get(stopQuery);
 			// if it's not an exact match let later search heuristics catch it
 			if (stopIdSet.size() == 1) {
 				StopBean stopBean = _transitDataService.getStop(stopIdSet.iterator().next());
@@ -530,7 +500,8 @@ public class SearchServiceImpl implements SearchService {
 		}
 
 	private void tryAsUnqualifiedStopId(SearchResultCollection results, String q, SearchResultFactory resultFactory){
-		Set<String> potentialStops = _unqualifiedStopIdToStopIdMap.get(q);
+		SearchCacheSnapshot caches = _caches;
+		Set<String> potentialStops = caches.getStopIdsByUnqualifiedId().get(q);
 		if (potentialStops != null && potentialStops.size() == 1) {
 			// need exactly one match for this to work
 			StopBean stopBean = _transitDataService.getStop(potentialStops.iterator().next());
@@ -540,6 +511,7 @@ public class SearchServiceImpl implements SearchService {
 		// we could alternatively add a suggestions
 	}
 	private String normalizeQuery(SearchResultCollection results, String q, AgencyServiceInterval serviceInterval) {
+		SearchCacheSnapshot caches = _caches;
 		if (q == null) {
 			return null;
 		}
@@ -600,16 +572,16 @@ public class SearchServiceImpl implements SearchService {
 			}
 
 			// keep track of route tokens we found when parsing
-			if (_routeShortNameToRouteBeanMap.containsKey(token.toUpperCase())) {
+			if (caches.getRoutesByShortName().containsKey(token.toUpperCase())) {
 				// if a route is included as part of another type of query, then
 				// it's a filter--
 				// so remove it from the normalized query sent to the geocoder
 				// or stop service
-				if ((lastItem != null && !_routeShortNameToRouteBeanMap
+				if ((lastItem != null && !caches.getRoutesByShortName()
 						.containsKey(lastItem.toUpperCase()))
-						|| (nextItem != null && !_routeShortNameToRouteBeanMap
+						|| (nextItem != null && !caches.getRoutesByShortName()
 								.containsKey(nextItem.toUpperCase()))) {
-					results.addRouteFilter(_routeShortNameToRouteBeanMap
+					results.addRouteFilter(caches.getRoutesByShortName()
 							.get(token.toUpperCase()).get(0)); //TODO Filtering on multiple route matches
 					continue;
 				}
@@ -618,9 +590,9 @@ public class SearchServiceImpl implements SearchService {
 				// valid stop id (but not also a route ID),
 				// consider the token a bad filter and remove it from the query.
 				if ((lastItem != null && stopsForId(lastItem, serviceInterval).size() > 0
-						&& !_routeShortNameToRouteBeanMap.containsKey(lastItem.toUpperCase()))
+						&& !caches.getRoutesByShortName().containsKey(lastItem.toUpperCase()))
 						|| (nextItem != null && stopsForId(nextItem, serviceInterval).size() > 0
-								&& !_routeShortNameToRouteBeanMap.containsKey(nextItem.toUpperCase()))) { // TOOD Filtering on multiple route matches
+								&& !caches.getRoutesByShortName().containsKey(nextItem.toUpperCase()))) { // TOOD Filtering on multiple route matches
 					if (!token.contains("_")) {
 						// if we have an agency Id, its probably a stop, don't
 						// discard
@@ -634,7 +606,7 @@ public class SearchServiceImpl implements SearchService {
 				// if a user is prepending a route filter with a plus sign, chop
 				// it off
 				// e.g. main and craig + B63
-				if (_routeShortNameToRouteBeanMap.containsKey(nextItem.toUpperCase())) {
+				if (caches.getRoutesByShortName().containsKey(nextItem.toUpperCase())) {
 					continue;
 				}
 
@@ -734,6 +706,7 @@ public class SearchServiceImpl implements SearchService {
 
 	private void tryAsExactRoute(SearchResultCollection results, String additionalTerm, String expectedTerm,
 								 SearchResultFactory resultFactory, AgencyServiceInterval serviceInterval) {
+		SearchCacheSnapshot caches = _caches;
 
 	  	// try as route_id
 		RouteBean testRouteBean = null;
@@ -749,8 +722,8 @@ public class SearchServiceImpl implements SearchService {
 		}
 
 		// short name matching -- if single exact result
-		if (_routeShortNameToRouteBeanMap.get(expectedTerm) != null) {
-			List<RouteBean> routeBeans = _routeShortNameToRouteBeanMap.get(expectedTerm);
+		if (caches.getRoutesByShortName().get(expectedTerm) != null) {
+			List<RouteBean> routeBeans = caches.getRoutesByShortName().get(expectedTerm);
 			if (routeBeans.size() == 1) {
 				results.addMatch(resultFactory.getRouteResult(routeBeans.get(0)));
 				results.setHint("tryAsRoute");
@@ -758,7 +731,7 @@ public class SearchServiceImpl implements SearchService {
 			}
 			// if we have more data see if it matches
 			if (additionalTerm != null) {
-				for (RouteBean routeBean : _routeShortNameToRouteBeanMap.get(expectedTerm)) {
+				for (RouteBean routeBean : caches.getRoutesByShortName().get(expectedTerm)) {
 					AgencyAndId routeId = AgencyAndIdLibrary.convertFromString(routeBean.getId());
 					if (routeId.getId().equalsIgnoreCase(additionalTerm)) {
 						results.addMatch(resultFactory.getRouteResult(routeBean));
@@ -770,8 +743,8 @@ public class SearchServiceImpl implements SearchService {
 		}
 
 		// long name matching -- if single exact result
-		if (_routeLongNameToRouteBeanMap.get(expectedTerm) != null) {
-			List<RouteBean> routeBeans = _routeLongNameToRouteBeanMap.get(expectedTerm);
+		if (caches.getRoutesByLongName().get(expectedTerm) != null) {
+			List<RouteBean> routeBeans = caches.getRoutesByLongName().get(expectedTerm);
 			if (routeBeans.size() == 1) {
 				results.addMatch(resultFactory.getRouteResult(routeBeans.get(0)));
 				results.setHint("tryAsRoute");
@@ -779,7 +752,7 @@ public class SearchServiceImpl implements SearchService {
 			}
 			// if we have more data see if it matches
 			if (additionalTerm != null) {
-				for (RouteBean routeBean : _routeLongNameToRouteBeanMap.get(expectedTerm)) {
+				for (RouteBean routeBean : caches.getRoutesByLongName().get(expectedTerm)) {
 					AgencyAndId routeId = AgencyAndIdLibrary.convertFromString(routeBean.getId());
 					if (routeId.getId().equalsIgnoreCase(additionalTerm)) {
 						results.addMatch(resultFactory.getRouteResult(routeBean));
@@ -794,6 +767,7 @@ public class SearchServiceImpl implements SearchService {
 
 	private void tryAsRoute(SearchResultCollection results, String routeQueryMixedCase,
 			SearchResultFactory resultFactory, AgencyServiceInterval serviceInterval) {
+		SearchCacheSnapshot caches = _caches;
 
 	  String routeQuery = new String(routeQueryMixedCase);
 		if (routeQuery == null || StringUtils.isEmpty(routeQuery)) {
@@ -807,8 +781,8 @@ public class SearchServiceImpl implements SearchService {
 		}
 
 		// agency + route id matching (from direct links) as exact case
-    if (_routeIdToRouteBeanMap.get(routeQueryMixedCase) != null) {
-      RouteBean routeBean = _routeIdToRouteBeanMap.get(routeQueryMixedCase);
+    if (caches.getRoutesById().get(routeQueryMixedCase) != null) {
+      RouteBean routeBean = caches.getRoutesById().get(routeQueryMixedCase);
       results.addMatch(resultFactory.getRouteResult(routeBean));
       results.setHint("tryAsRoute");
       // if we've matched, assume no others
@@ -816,8 +790,8 @@ public class SearchServiceImpl implements SearchService {
     }
 
     // agency + route id matching (from direct links) as upper case
-    if (_routeIdToRouteBeanMap.get(routeQuery) != null) {
-      RouteBean routeBean = _routeIdToRouteBeanMap.get(routeQuery);
+    if (caches.getRoutesById().get(routeQuery) != null) {
+      RouteBean routeBean = caches.getRoutesById().get(routeQuery);
       results.addMatch(resultFactory.getRouteResult(routeBean));
 		results.setHint("tryAsRoute");
       // if we've matched, assume no others
@@ -825,15 +799,16 @@ public class SearchServiceImpl implements SearchService {
     }
 		
 		// short name matching
-		if (_routeShortNameToRouteBeanMap.get(routeQuery) != null) {
-		  for (RouteBean routeBean : _routeShortNameToRouteBeanMap.get(routeQuery)) {
+		if (caches.getRoutesByShortName().get(routeQuery) != null) {
+		  for (RouteBean routeBean : caches.getRoutesByShortName().get(routeQuery)) {
 				results.addMatch(resultFactory.getRouteResult(routeBean));
 			  	results.setHint("tryAsRoute");
 		  }
 		}
 
-		// TOOD make this configurable as it may be expensive on large datasets
-		for (String routeShortName : _routeShortNameToRouteBeanMap.keySet()) {
+		// only short names starting or ending with the query can qualify
+		for (String routeShortName : caches
+				.getRouteShortNamesStartingOrEndingWith(routeQuery)) {
 			// if the route short name ends or starts with our query, and
 			// whatever's left over
 			// matches the regex
@@ -845,7 +820,7 @@ public class SearchServiceImpl implements SearchService {
 					&& ((routeShortName.startsWith(routeQuery) && leftOversAreDiscardable) || (routeShortName
 							.endsWith(routeQuery) && leftOversAreDiscardable))) {
 			  try {
-			    for (RouteBean routeBean : _routeShortNameToRouteBeanMap.get(routeShortName)) {
+			    for (RouteBean routeBean : caches.getRoutesByShortName().get(routeShortName)) {
 			      results.addSuggestion(resultFactory.getRouteResult(routeBean));
 				  results.setHint("tryAsRoute");
 			    }
@@ -857,11 +832,11 @@ public class SearchServiceImpl implements SearchService {
 		}
 
 		// long name matching
-		for (String routeLongName : _routeLongNameToRouteBeanMap.keySet()) {
+		for (String routeLongName : caches.getRoutesByLongName().keySet()) {
 			if (routeLongName.contains(routeQuery + " ")
 					|| routeLongName.contains(" " + routeQuery)) {
 			  try {
-			    for (RouteBean routeBean : _routeLongNameToRouteBeanMap.get(routeLongName)) {
+			    for (RouteBean routeBean : caches.getRoutesByLongName().get(routeLongName)) {
 			      results.addSuggestion(resultFactory.getRouteResult(routeBean));
 			      results.setHint("tryAsRoute");
 			    }
@@ -874,6 +849,7 @@ public class SearchServiceImpl implements SearchService {
 
     private void tryAsRoutes(SearchResultCollection results, String routeQueryMixedCase,
                             SearchResultFactory resultFactory) {
+        SearchCacheSnapshot caches = _caches;
 
         String routeQuery = new String(routeQueryMixedCase);
         if (routeQuery == null || StringUtils.isEmpty(routeQuery)) {
@@ -899,14 +875,14 @@ public class SearchServiceImpl implements SearchService {
         //for each route, match to either an agency prefixed route (ex: 1_92)
         //or a short name of route (ex: 92)
         for (String route : routeTokens)  {
-            if (_routeIdToRouteBeanMap.get(route) != null) {
-                RouteBean routeBean = _routeIdToRouteBeanMap.get(route);
+            if (caches.getRoutesById().get(route) != null) {
+                RouteBean routeBean = caches.getRoutesById().get(route);
                 results.addMatch(resultFactory.getRouteResult(routeBean));
 				results.setHint("tryAsRoute");
             }
 
-            if (_routeShortNameToRouteBeanMap.get(route) != null) {
-                for (RouteBean routeBean : _routeShortNameToRouteBeanMap.get(route)) {
+            if (caches.getRoutesByShortName().get(route) != null) {
+                for (RouteBean routeBean : caches.getRoutesByShortName().get(route)) {
                     results.addMatch(resultFactory.getRouteResult(routeBean));
 					results.setHint("tryAsRoute");
                 }
@@ -1039,12 +1015,34 @@ public class SearchServiceImpl implements SearchService {
 	}
 
 	private String getStopIdFromStopCode(String code) {
+		SearchCacheSnapshot caches = _caches;
 		if (code != null
-				&& _stopCodeToStopIdMap.containsKey(code.toUpperCase()))
-			return _stopCodeToStopIdMap.get(code.toUpperCase());
+				&& caches.getStopIdsByCode().containsKey(code.toUpperCase()))
+			return caches.getStopIdsByCode().get(code.toUpperCase());
 		return code;
 	}
 
+	private class RefreshCachesTask implements Runnable {
+
+		private final String _bundleId;
+
+		public RefreshCachesTask(String bundleId) {
+			_bundleId = bundleId;
+		}
+
+		@Override
+		public void run() {
+			try {
+				refreshCaches(_bundleId);
+			} catch (Exception ex) {
+				_log.error("error refreshing search caches for bundle "
+						+ _bundleId, ex);
+			} finally {
+				_refreshInProgress.set(false);
+			}
+		}
+	}
+
 	private class StopDistanceFromPointComparator implements
 			Comparator<StopBean> {
 
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2011 Metropolitan Transportation Authority
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.presentation.impl.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A compact, immutable prefix index over a set of strings: the keys are held
+ * in a single sorted array, and all keys sharing a prefix form a contiguous
+ * run that is found by binary search. For the key set sizes we deal with
+ * (route short names, stop codes) this answers the same queries as a prefix
+ * trie with far less memory and no per-node allocation.
+ * 
+ * Suffix lookups are supported by indexing the reversed keys as well.
+ */
+final class SortedPrefixIndex {
+
+  private final String[] _keys;
+
+  private final String[] _reversedKeys;
+
+  public SortedPrefixIndex(Collection<String> keys) {
+    _keys = keys.toArray(new String[keys.size()]);
+    Arrays.sort(_keys);
+    _reversedKeys = new String[_keys.length];
+    for (int i = 0; i < _keys.length; i++)
+      _reversedKeys[i] = reverse(_keys[i]);
+    Arrays.sort(_reversedKeys);
+  }
+
+  public int size() {
+    return _keys.length;
+  }
+
+  /**
+   * @return keys starting with the prefix, in sorted order
+   */
+  public List<String> getKeysWithPrefix(String prefix) {
+    List<String> results = new ArrayList<String>();
+    for (int i = lowerBound(_keys, prefix); i < _keys.length
+        && _keys[i].startsWith(prefix); i++)
+      results.add(_keys[i]);
+    return results;
+  }
+
+  /**
+   * @return keys ending with the suffix
+   */
+  public List<String> getKeysWithSuffix(String suffix) {
+    String reversed = reverse(suffix);
+    List<String> results = new ArrayList<String>();
+    for (int i = lowerBound(_reversedKeys, reversed); i < _reversedKeys.length
+        && _reversedKeys[i].startsWith(reversed); i++)
+      results.add(reverse(_reversedKeys[i]));
+    return results;
+  }
+
+  private static int lowerBound(String[] keys, String key) {
+    int index = Arrays.binarySearch(keys, key);
+    if (index < 0)
+      return -(index + 1);
+    return index;
+  }
+
+  private static String reverse(String value) {
+    return new StringBuilder(value).reverse().toString();
+  }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2011 Metropolitan Transportation Authority
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.presentation.impl.search;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class SortedPrefixIndexTest {
+
+  private final SortedPrefixIndex _index = new SortedPrefixIndex(Arrays.asList(
+      "B63", "B6", "B61", "X27", "SBS B63", "Q1", "M15-SBS"));
+
+  @Test
+  public void testPrefix() {
+    assertEquals(Arrays.asList("B6", "B61", "B63"),
+        _index.getKeysWithPrefix("B6"));
+    assertEquals(Arrays.asList("M15-SBS"), _index.getKeysWithPrefix("M"));
+    assertEquals(Collections.emptyList(), _index.getKeysWithPrefix("Z"));
+    assertEquals(7, _index.getKeysWithPrefix("").size());
+  }
+
+  @Test
+  public void testSuffix() {
+    assertEquals(new HashSet<String>(Arrays.asList("B63", "SBS B63")),
+        new HashSet<String>(_index.getKeysWithSuffix("B63")));
+    assertEquals(Arrays.asList("M15-SBS"), _index.getKeysWithSuffix("-SBS"));
+    assertEquals(Collections.emptyList(), _index.getKeysWithSuffix("B"));
+  }
+}
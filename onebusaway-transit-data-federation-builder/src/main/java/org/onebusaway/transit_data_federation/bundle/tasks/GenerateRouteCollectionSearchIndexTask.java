@@ -35,6 +35,7 @@ import org.onebusaway.container.refresh.RefreshService;
 import org.onebusaway.gtfs.model.AgencyAndId;
 import org.onebusaway.transit_data_federation.impl.RefreshableResources;
 import org.onebusaway.transit_data_federation.impl.RouteCollectionSearchServiceImpl;
+import org.onebusaway.transit_data_federation.model.AutocompleteIndex;
 import org.onebusaway.transit_data_federation.model.narrative.RouteCollectionNarrative;
 import org.onebusaway.transit_data_federation.services.FederatedTransitDataBundle;
 import org.onebusaway.transit_data_federation.services.RouteCollectionSearchIndexConstants;
@@ -42,7 +43,9 @@ import org.onebusaway.transit_data_federation.services.RouteCollectionSearchServ
 import org.onebusaway.transit_data_federation.services.StopSearchIndexConstants;
 import org.onebusaway.transit_data_federation.services.narrative.NarrativeService;
 import org.onebusaway.transit_data_federation.services.transit_graph.RouteCollectionEntry;
+import org.onebusaway.transit_data_federation.services.transit_graph.RouteEntry;
 import org.onebusaway.transit_data_federation.services.transit_graph.TransitGraphDao;
+import org.onebusaway.utility.ObjectSerializationLibrary;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
@@ -50,7 +53,8 @@ import org.springframework.transaction.annotation.Transactional;
 /**
  * Generate the underlying Lucene search index for route collection searches
  * that will power {@link RouteCollectionSearchServiceImpl} and
- * {@link RouteCollectionSearchService}.
+ * {@link RouteCollectionSearchService}, along with the
+ * {@link AutocompleteIndex} used for typeahead route queries.
  * 
  * @author bdferris
  * @see RouteCollectionSearchService
@@ -112,14 +116,21 @@ public class GenerateRouteCollectionSearchIndexTask implements Runnable {
     IndexWriterConfig config = new IndexWriterConfig(limitTokenCountAnalyzer);
     IndexWriter writer = new IndexWriter(index, config);
 
+    AutocompleteIndex.Builder autocomplete = new AutocompleteIndex.Builder();
+
     for (RouteCollectionEntry routeCollection : _transitGraphDao.getAllRouteCollections()) {
       RouteCollectionNarrative narrative = _narrativeService.getRouteCollectionForId(routeCollection.getId());
       Document document = getRouteCollectionAsDocument(routeCollection,
           narrative);
       writer.addDocument(document);
+      addRouteCollectionToAutocompleteIndex(autocomplete, routeCollection,
+          narrative);
     }
     writer.close();
 
+    ObjectSerializationLibrary.writeObject(
+        _bundle.getRouteAutocompleteIndexPath(), autocomplete.create());
+
     _refreshService.refresh(RefreshableResources.ROUTE_COLLECTION_SEARCH_DATA);
   }
 
@@ -154,6 +165,27 @@ public class GenerateRouteCollectionSearchIndexTask implements Runnable {
     return document;
   }
 
+  /**
+   * Route collections are indexed by short and long name. Route collections
+   * with more trips rank higher.
+   */
+  private void addRouteCollectionToAutocompleteIndex(
+      AutocompleteIndex.Builder builder, RouteCollectionEntry routeCollection,
+      RouteCollectionNarrative narrative) {
+
+    double weight = 0;
+    if (routeCollection.getChildren() != null) {
+      for (RouteEntry route : routeCollection.getChildren()) {
+        if (route.getTrips() != null)
+          weight += route.getTrips().size();
+      }
+    }
+
+    AgencyAndId id = routeCollection.getId();
+    builder.add(id, narrative.getShortName(), weight);
+    builder.add(id, narrative.getLongName(), weight);
+  }
+
   private static boolean isValue(String value) {
     return value != null && value.length() > 0;
   }
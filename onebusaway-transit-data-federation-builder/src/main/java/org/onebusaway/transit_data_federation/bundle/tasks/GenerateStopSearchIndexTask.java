@@ -33,6 +33,8 @@ import org.onebusaway.container.refresh.RefreshService;
 import org.onebusaway.gtfs.model.AgencyAndId;
 import org.onebusaway.transit_data_federation.impl.RefreshableResources;
 import org.onebusaway.transit_data_federation.impl.StopSearchServiceImpl;
+import org.onebusaway.transit_data_federation.impl.transit_graph.StopEntryImpl;
+import org.onebusaway.transit_data_federation.model.AutocompleteIndex;
 import org.onebusaway.transit_data_federation.model.narrative.StopNarrative;
 import org.onebusaway.transit_data_federation.services.FederatedTransitDataBundle;
 import org.onebusaway.transit_data_federation.services.StopSearchIndexConstants;
@@ -40,12 +42,14 @@ import org.onebusaway.transit_data_federation.services.StopSearchService;
 import org.onebusaway.transit_data_federation.services.narrative.NarrativeService;
 import org.onebusaway.transit_data_federation.services.transit_graph.StopEntry;
 import org.onebusaway.transit_data_federation.services.transit_graph.TransitGraphDao;
+import org.onebusaway.utility.ObjectSerializationLibrary;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 /**
  * Generate the underlying Lucene search index for stop searches that will power
- * {@link StopSearchServiceImpl} and {@link StopSearchService}.
+ * {@link StopSearchServiceImpl} and {@link StopSearchService}, along with the
+ * {@link AutocompleteIndex} used for typeahead stop queries.
  * 
  * @author bdferris
  * @see StopSearchServiceImpl
@@ -97,15 +101,40 @@ public class GenerateStopSearchIndexTask implements Runnable {
     IndexWriterConfig config = new IndexWriterConfig(limitTokenCountAnalyzer);
     IndexWriter writer = new IndexWriter(index, config);
 
+    AutocompleteIndex.Builder autocomplete = new AutocompleteIndex.Builder();
+
     for (StopEntry stopEntry : _transitGraphDao.getAllStops()) {
       StopNarrative narrative = _narrativeService.getStopForId(stopEntry.getId());
       Document document = getStopAsDocument(stopEntry, narrative);
       writer.addDocument(document);
+      addStopToAutocompleteIndex(autocomplete, stopEntry, narrative);
     }
     writer.close();
+
+    ObjectSerializationLibrary.writeObject(
+        _bundle.getStopAutocompleteIndexPath(), autocomplete.create());
     _refreshService.refresh(RefreshableResources.STOP_SEARCH_DATA);
   }
 
+  /**
+   * Stops are indexed by code, falling back to id as for the search index, and
+   * by name. Stops served by more blocks rank higher.
+   */
+  private void addStopToAutocompleteIndex(AutocompleteIndex.Builder builder,
+      StopEntry stopEntry, StopNarrative narrative) {
+
+    double weight = 0;
+    if (stopEntry instanceof StopEntryImpl)
+      weight = ((StopEntryImpl) stopEntry).getStopTimeIndices().size();
+
+    AgencyAndId id = stopEntry.getId();
+    if (narrative.getCode() != null && narrative.getCode().length() > 0)
+      builder.add(id, narrative.getCode(), weight);
+    else
+      builder.add(id, id.getId(), weight);
+    builder.add(id, narrative.getName(), weight);
+  }
+
   private Document getStopAsDocument(StopEntry stopEntry,
       StopNarrative narrative) {
 
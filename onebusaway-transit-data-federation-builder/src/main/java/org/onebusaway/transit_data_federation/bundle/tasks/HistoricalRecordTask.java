@@ -19,6 +19,7 @@ import org.onebusaway.gtfs.model.AgencyAndId;
 import org.onebusaway.gtfs.model.Ridership;
 import org.onebusaway.gtfs.services.GtfsRelationalDao;
 import org.onebusaway.transit_data_federation.model.bundle.HistoricalRidership;
+import org.onebusaway.transit_data_federation.model.bundle.HistoricalRidershipIndex;
 import org.onebusaway.transit_data_federation.services.FederatedTransitDataBundle;
 import org.onebusaway.utility.ObjectSerializationLibrary;
 import org.slf4j.Logger;
@@ -57,6 +58,9 @@ public class HistoricalRecordTask implements Runnable {
             _log.info("translated " + historicalRiderships.size() + " records ");
             ObjectSerializationLibrary.writeObject(_bundle.getHistoricalRidershipPath(), historicalRiderships);
             _log.info("wrote " + historicalRiderships.size() + " records to " + _bundle.getHistoricalRidershipPath());
+            ObjectSerializationLibrary.writeObject(_bundle.getHistoricalRidershipIndexPath(),
+                    HistoricalRidershipIndex.create(historicalRiderships));
+            _log.info("wrote historical ridership index to " + _bundle.getHistoricalRidershipIndexPath());
         } catch (Exception ex) {
             _log.error("fatal exception building HistoricalRecordTask:", ex);
         }
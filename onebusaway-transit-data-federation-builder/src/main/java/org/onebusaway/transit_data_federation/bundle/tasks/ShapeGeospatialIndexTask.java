@@ -17,10 +17,12 @@
 package org.onebusaway.transit_data_federation.bundle.tasks;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -32,6 +34,7 @@ import org.onebusaway.geospatial.model.CoordinatePoint;
 import org.onebusaway.geospatial.services.SphericalGeometryLibrary;
 import org.onebusaway.gtfs.model.AgencyAndId;
 import org.onebusaway.transit_data_federation.impl.RefreshableResources;
+import org.onebusaway.transit_data_federation.impl.shapes.ShapePointStore;
 import org.onebusaway.transit_data_federation.model.ShapePoints;
 import org.onebusaway.transit_data_federation.services.FederatedTransitDataBundle;
 import org.onebusaway.transit_data_federation.services.transit_graph.StopEntry;
@@ -90,6 +93,7 @@ class ShapeGeospatialIndexTask implements Runnable {
       Map<CoordinateBounds, List<AgencyAndId>> shapeIdsByGridCell = buildShapeSpatialIndex();
       File path = _bundle.getShapeGeospatialIndexDataPath();
       ObjectSerializationLibrary.writeObject(path, shapeIdsByGridCell);
+      writeShapePointStore();
       _refreshService.refresh(RefreshableResources.SHAPE_GEOSPATIAL_INDEX);
     } catch (Exception ex) {
       throw new IllegalStateException(
@@ -114,6 +118,26 @@ class ShapeGeospatialIndexTask implements Runnable {
     return shapeIds;
   }
 
+  /**
+   * Writes the coordinates of every shape to a memory-mappable store, so the
+   * runtime can project shapes without holding a second copy on the heap
+   */
+  private void writeShapePointStore() throws IOException {
+
+    Map<AgencyAndId, ShapePoints> shapePointsById = new LinkedHashMap<AgencyAndId, ShapePoints>();
+
+    for (AgencyAndId shapeId : getAllShapeIds()) {
+      ShapePoints shapePoints = _shapePointHelper.getShapePointsForShapeId(shapeId);
+      if (shapePoints != null)
+        shapePointsById.put(shapeId, shapePoints);
+    }
+
+    File path = _bundle.getShapePointStorePath();
+    ShapePointStore.write(path, shapePointsById);
+
+    _log.info("shape point store: shapes=" + shapePointsById.size());
+  }
+
   private Map<CoordinateBounds, List<AgencyAndId>> buildShapeSpatialIndex() {
 
     Map<CoordinatePoint, Set<AgencyAndId>> shapeIdsByGridCellCorner = new FactoryMap<CoordinatePoint, Set<AgencyAndId>>(
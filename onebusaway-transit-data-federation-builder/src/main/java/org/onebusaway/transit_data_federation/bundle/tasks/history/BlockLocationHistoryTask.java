@@ -15,6 +15,8 @@
  */
 package org.onebusaway.transit_data_federation.bundle.tasks.history;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -27,8 +29,12 @@ import org.onebusaway.collections.Range;
 import org.onebusaway.gtfs.model.AgencyAndId;
 import org.onebusaway.gtfs.model.AgencyAndIdInstance;
 import org.onebusaway.transit_data_federation.impl.realtime.history.BlockLocationArchiveRecord;
+import org.onebusaway.transit_data_federation.impl.realtime.history.BlockLocationHistoryColumns;
+import org.onebusaway.transit_data_federation.impl.realtime.history.BlockLocationHistoryServiceImpl;
 import org.onebusaway.transit_data_federation.impl.realtime.history.ScheduleDeviationHistory;
 import org.onebusaway.util.AgencyAndIdLibrary;
+import org.onebusaway.util.SystemTime;
+import org.onebusaway.transit_data_federation.services.FederatedTransitDataBundle;
 import org.onebusaway.transit_data_federation.services.realtime.ScheduleDeviationHistoryDao;
 import org.onebusaway.transit_data_federation.services.transit_graph.TransitGraphDao;
 import org.onebusaway.transit_data_federation.services.transit_graph.TripEntry;
@@ -48,6 +54,8 @@ public class BlockLocationHistoryTask implements Runnable {
 
   private ScheduleDeviationHistoryDao _scheduleDeviationHistoryDao;
 
+  private FederatedTransitDataBundle _bundle;
+
   private BlockLocationArchiveSource _source;
 
   private int _sampleTimeStep = 300;
@@ -58,6 +66,14 @@ public class BlockLocationHistoryTask implements Runnable {
 
   private AgencyAndId _skipToTrip = null;
 
+  private boolean _writeColumnarHistory = true;
+
+  /**
+   * Time the run started, recorded in each columnar history file as the point
+   * up to which it covers the archive
+   */
+  private long _cutoffTime;
+
   @Autowired
   public void setTransitGraphDao(TransitGraphDao transitGraphDao) {
     _transitGraphDao = transitGraphDao;
@@ -69,6 +85,19 @@ public class BlockLocationHistoryTask implements Runnable {
     _scheduleDeviationHistoryDao = scheduleDeviationHistoryDao;
   }
 
+  @Autowired
+  public void setBundle(FederatedTransitDataBundle bundle) {
+    _bundle = bundle;
+  }
+
+  /**
+   * If true, the raw history for each trip is also written to the bundle in
+   * columnar form for use by the BlockLocationHistoryService.
+   */
+  public void setWriteColumnarHistory(boolean writeColumnarHistory) {
+    _writeColumnarHistory = writeColumnarHistory;
+  }
+
   public void setSource(BlockLocationArchiveSource source) {
     _source = source;
   }
@@ -93,9 +122,16 @@ public class BlockLocationHistoryTask implements Runnable {
   public void run() {
 
     if (_source == null) {
-      _log.info("No BlockLocationHistoryTask data source specified.  Skipping this optional task");
+      _log.warn("No BlockLocationHistoryTask data source specified.  Skipping this optional task:"
+          + " no schedule deviation histories or columnar block location history will be written");
+      return;
     }
 
+    _cutoffTime = SystemTime.currentTimeMillis();
+
+    if (_writeColumnarHistory)
+      _bundle.getBlockLocationHistoryPath().mkdirs();
+
     int tripIndex = 0;
 
     Iterable<TripEntry> allTrips = _transitGraphDao.getAllTrips();
@@ -133,6 +169,9 @@ public class BlockLocationHistoryTask implements Runnable {
       AgencyAndId tripId = entry.getKey();
       BlockLocationArchiveRecordMap recordsByInstance = entry.getValue();
 
+      if (_writeColumnarHistory)
+        writeColumnarHistory(trip, tripId, recordsByInstance);
+
       /**
        * If we don't have enough samples, skip the trip
        */
@@ -144,10 +183,30 @@ public class BlockLocationHistoryTask implements Runnable {
       histories.add(history);
     }
 
+    /**
+     * Write an empty history for a trip with no records, so the service knows
+     * it needs to look no further than the archive written since the cutoff
+     */
+    if (_writeColumnarHistory && !recordsByTrip.containsKey(trip.getId()))
+      writeColumnarHistory(trip, trip.getId(),
+          new BlockLocationArchiveRecordMap());
+
     if (!histories.isEmpty())
       _scheduleDeviationHistoryDao.saveScheduleDeviationHistory(histories);
   }
 
+  private void writeColumnarHistory(TripEntry trip, AgencyAndId tripId,
+      BlockLocationArchiveRecordMap recordsByInstance) {
+    File path = BlockLocationHistoryServiceImpl.getColumnarPathForTripId(
+        _bundle.getBlockLocationHistoryPath(), tripId);
+    try {
+      BlockLocationHistoryColumns.write(path, trip.getBlock().getId(),
+          _cutoffTime, recordsByInstance);
+    } catch (IOException ex) {
+      _log.warn("error writing columnar history for trip " + tripId, ex);
+    }
+  }
+
   private Map<AgencyAndId, BlockLocationArchiveRecordMap> loadRecords(
       List<BlockLocationArchiveRecord> records) {
 
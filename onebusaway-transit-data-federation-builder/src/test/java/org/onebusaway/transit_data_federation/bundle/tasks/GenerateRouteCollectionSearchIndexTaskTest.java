@@ -67,6 +67,12 @@ public class GenerateRouteCollectionSearchIndexTaskTest {
     path.deleteOnExit();
     Mockito.when(_bundle.getRouteSearchIndexPath()).thenReturn(path);
 
+    File autocompletePath = File.createTempFile(
+        GenerateRouteCollectionSearchIndexTask.class.getName(), ".obj");
+    autocompletePath.deleteOnExit();
+    Mockito.when(_bundle.getRouteAutocompleteIndexPath()).thenReturn(
+        autocompletePath);
+
     _transitGraphDao = Mockito.mock(TransitGraphDao.class);
     _task.setTransitGraphDao(_transitGraphDao);
 
@@ -79,7 +85,7 @@ public class GenerateRouteCollectionSearchIndexTaskTest {
 
   @Test
   public void testGenerateStopSearchIndex() throws CorruptIndexException,
-      IOException, ParseException {
+      IOException, ParseException, ClassNotFoundException {
 
     RouteCollectionEntryImpl routeA = routeCollection("routeA");
     RouteCollectionEntryImpl routeB = routeCollection("routeB");
@@ -136,5 +142,13 @@ public class GenerateRouteCollectionSearchIndexTaskTest {
     assertEquals(1, ids.size());
     assertEquals(routeC.getId(), ids.getResult(0));
 
+    ids = searchService.autocompleteRoutes("10", 10);
+    assertEquals(2, ids.size());
+    assertEquals(routeA.getId(), ids.getResult(0));
+    assertEquals(routeC.getId(), ids.getResult(1));
+
+    ids = searchService.autocompleteRoutes("el o", 10);
+    assertEquals(1, ids.size());
+    assertEquals(routeB.getId(), ids.getResult(0));
   }
 }
@@ -68,6 +68,12 @@ public class GenerateStopSearchIndexTaskTest {
     path.deleteOnExit();
     Mockito.when(_bundle.getStopSearchIndexPath()).thenReturn(path);
 
+    File autocompletePath = File.createTempFile(
+        GenerateStopSearchIndexTask.class.getName(), ".obj");
+    autocompletePath.deleteOnExit();
+    Mockito.when(_bundle.getStopAutocompleteIndexPath()).thenReturn(
+        autocompletePath);
+
     _transitGraphDao = Mockito.mock(TransitGraphDao.class);
     _task.setTransitGraphDao(_transitGraphDao);
 
@@ -80,7 +86,7 @@ public class GenerateStopSearchIndexTaskTest {
 
   @Test
   public void testGenerateStopSearchIndex() throws CorruptIndexException,
-      IOException, ParseException {
+      IOException, ParseException, ClassNotFoundException {
 
     StopEntryImpl stopA = stop("111", 0, 0);
     StopEntryImpl stopB = stop("222", 0, 0);
@@ -127,5 +133,23 @@ public class GenerateStopSearchIndexTaskTest {
     ids = searchService.searchForStopsByCode("444", 10, MIN_SCORE);
     assertEquals(1, ids.size());
     assertTrue(ids.getResults().contains(new AgencyAndId("1", "333")));
+
+    ids = searchService.autocompleteStops("44", 10);
+    assertEquals(1, ids.size());
+    assertEquals(new AgencyAndId("1", "333"), ids.getResult(0));
+
+    ids = searchService.autocompleteStops("22", 10);
+    assertEquals(1, ids.size());
+    assertEquals(new AgencyAndId("1", "222"), ids.getResult(0));
+
+    ids = searchService.autocompleteStops("bbb sta", 10);
+    assertEquals(1, ids.size());
+    assertEquals(new AgencyAndId("1", "222"), ids.getResult(0));
+
+    ids = searchService.autocompleteStops("stat", 10);
+    assertEquals(3, ids.size());
+
+    ids = searchService.autocompleteStops("statin", 10);
+    assertEquals(3, ids.size());
   }
 }
@@ -20,7 +20,9 @@ import static org.junit.Assert.assertNotNull;
 import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.aid;
 import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.*;
 
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
@@ -32,6 +34,7 @@ import org.onebusaway.container.refresh.RefreshService;
 import org.onebusaway.geospatial.model.CoordinateBounds;
 import org.onebusaway.gtfs.model.AgencyAndId;
 import org.onebusaway.transit_data_federation.impl.RefreshableResources;
+import org.onebusaway.transit_data_federation.impl.shapes.ShapePointStore;
 import org.onebusaway.transit_data_federation.impl.transit_graph.TripEntryImpl;
 import org.onebusaway.transit_data_federation.model.ShapePoints;
 import org.onebusaway.transit_data_federation.model.ShapePointsFactory;
@@ -54,6 +57,10 @@ public class ShapeGeospatialIndexTaskTest {
     path.deleteOnExit();
     FederatedTransitDataBundle bundle = Mockito.mock(FederatedTransitDataBundle.class);
     Mockito.when(bundle.getShapeGeospatialIndexDataPath()).thenReturn(path);
+    File storePath = File.createTempFile(
+        ShapeGeospatialIndexTaskTest.class.getName(), ".bin");
+    storePath.deleteOnExit();
+    Mockito.when(bundle.getShapePointStorePath()).thenReturn(storePath);
     task.setBundle(bundle);
 
     RefreshService refreshService = Mockito.mock(RefreshService.class);
@@ -145,5 +152,37 @@ public class ShapeGeospatialIndexTaskTest {
             47.66397029970477,-122.32102634495334);
 
     assertEquals(Arrays.asList(shapeIdB), shapeIdsByBounds.get(b));
+
+    ShapePointStore store = ShapePointStore.read(storePath);
+    assertEquals(2, store.getShapeCount());
+    assertEquals(7, store.getPointCount());
+
+    int offsetB = store.getOffset(shapeIdB);
+    assertEquals(4, store.getSize(shapeIdB));
+    for (int i = 0; i < shapeB.getSize(); i++) {
+      assertEquals(shapeB.getLatForIndex(i), store.getLat(offsetB + i), 0.0);
+      assertEquals(shapeB.getLonForIndex(i), store.getLon(offsetB + i), 0.0);
+    }
+
+    assertEquals(-1, store.getOffset(new AgencyAndId("1", "missing")));
+    assertEquals(0, store.getSize(new AgencyAndId("1", "missing")));
+  }
+
+  @Test(expected = IOException.class)
+  public void testRejectsVersion1Store() throws IOException {
+    File storePath = File.createTempFile(
+        ShapeGeospatialIndexTaskTest.class.getName(), ".bin");
+    storePath.deleteOnExit();
+    DataOutputStream out = new DataOutputStream(new FileOutputStream(
+        storePath));
+    try {
+      out.writeInt(0x4f425350); // "OBSP"
+      out.writeInt(1);
+      out.writeInt(0);
+      out.writeInt(0);
+    } finally {
+      out.close();
+    }
+    ShapePointStore.read(storePath);
   }
 }
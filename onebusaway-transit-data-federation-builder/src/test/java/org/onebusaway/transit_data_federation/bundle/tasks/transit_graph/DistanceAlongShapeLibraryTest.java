@@ -22,10 +22,12 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.junit.Ignore;
 import org.junit.Test;
 import org.onebusaway.transit_data_federation.impl.transit_graph.DistanceAlongShapeLibrary;
 import org.onebusaway.transit_data_federation.impl.transit_graph.DistanceAlongShapeLibrary.DistanceAlongShapeException;
@@ -38,9 +40,13 @@ import org.onebusaway.transit_data_federation.model.ShapePointsFactory;
 import org.onebusaway.transit_data_federation.services.transit_graph.StopEntry;
 import org.onebusaway.transit_data_federation.services.transit_graph.StopTimeEntry;
 import org.onebusaway.transit_data_federation.testing.UnitTestingSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class DistanceAlongShapeLibraryTest {
 
+  private static Logger _log = LoggerFactory.getLogger(DistanceAlongShapeLibraryTest.class);
+
   private final double STOP_TO_SHAPE_DISTANCE = 0.01;
   @Test
   public void test01() throws IOException, DistanceAlongShapeException {
@@ -164,6 +170,63 @@ public class DistanceAlongShapeLibraryTest {
 
   }
 
+  /**
+   * Logs the time spent choosing stop assignments on the long route fixtures,
+   * comparing the current search against the recursive enumeration it
+   * replaced. The regions are captured from a real run of the library, so
+   * both searches see exactly the candidates the library produces. Opt-in:
+   * remove the @Ignore to run it.
+   */
+  @Ignore("benchmark")
+  @Test
+  public void testRegionSearchCost() throws IOException,
+      DistanceAlongShapeException {
+
+    int iterations = 2000;
+
+    for (String key : Arrays.asList("01", "h6")) {
+
+      RegionRecordingLibrary library = new RegionRecordingLibrary();
+      library.getDistancesAlongShape(readShapePoints("shapes-" + key + ".txt"),
+          readStopTimes("stops-" + key + ".txt"));
+      List<List<List<PointAndIndex>>> regions = library.getRegions();
+
+      int candidates = 0;
+      for (List<List<PointAndIndex>> region : regions) {
+        for (List<PointAndIndex> stop : region)
+          candidates += stop.size();
+        // both searches must agree before their times mean anything
+        assertEquals(enumerate(region), library.search(region));
+      }
+
+      for (int i = 0; i < iterations / 10; i++) {
+        for (List<List<PointAndIndex>> region : regions) {
+          library.search(region);
+          enumerate(region);
+        }
+      }
+
+      long t0 = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        for (List<List<PointAndIndex>> region : regions)
+          library.search(region);
+      }
+      long current = System.nanoTime() - t0;
+
+      t0 = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        for (List<List<PointAndIndex>> region : regions)
+          enumerate(region);
+      }
+      long recursive = System.nanoTime() - t0;
+
+      _log.info("route " + key + ": " + regions.size() + " regions, "
+          + candidates + " candidates: recursive="
+          + (recursive / iterations / 1000) + "us current="
+          + (current / iterations / 1000) + "us per route");
+    }
+  }
+
   private double matchStopToPoint(List<StopTimeEntry> stopTimes, PointAndIndex[] points, int i, String stopId, double distanceAlongBlock) {
     StopEntry expectedStop = null;
     for (StopTimeEntry stei : stopTimes) {
@@ -240,4 +303,79 @@ public class DistanceAlongShapeLibraryTest {
     return stopTimes;
   }
 
+  /**
+   * The search the library used before: enumerates every assignment in
+   * candidate order, copying each complete one, and keeps the first with the
+   * lowest summed distance from target
+   */
+  private static List<PointAndIndex> enumerate(
+      List<List<PointAndIndex>> region) {
+    List<List<PointAndIndex>> best = new ArrayList<List<PointAndIndex>>();
+    double[] bestScore = {Double.POSITIVE_INFINITY};
+    enumerate(region, new ArrayList<PointAndIndex>(), 0, best, bestScore);
+    return best.isEmpty() ? null : best.get(0);
+  }
+
+  private static void enumerate(List<List<PointAndIndex>> region,
+      List<PointAndIndex> currentAssignment, int index,
+      List<List<PointAndIndex>> best, double[] bestScore) {
+
+    if (index == region.size()) {
+      double score = 0;
+      for (PointAndIndex p : currentAssignment)
+        score += p.distanceFromTarget;
+      List<PointAndIndex> assignment = new ArrayList<PointAndIndex>(
+          currentAssignment);
+      if (best.isEmpty() || score < bestScore[0]) {
+        best.clear();
+        best.add(assignment);
+        bestScore[0] = score;
+      }
+      return;
+    }
+
+    double lastDistanceAlongShape = -1;
+    if (index > 0)
+      lastDistanceAlongShape = currentAssignment.get(index - 1).distanceAlongShape;
+
+    List<PointAndIndex> validAssignments = new ArrayList<PointAndIndex>();
+    for (PointAndIndex candidate : region.get(index)) {
+      if (candidate.distanceAlongShape >= lastDistanceAlongShape)
+        validAssignments.add(candidate);
+    }
+
+    for (PointAndIndex candidate : validAssignments) {
+      currentAssignment.add(candidate);
+      enumerate(region, currentAssignment, index + 1, best, bestScore);
+      currentAssignment.remove(currentAssignment.size() - 1);
+    }
+  }
+
+  /**
+   * Keeps a copy of each region of stops the library searches
+   */
+  private static class RegionRecordingLibrary extends DistanceAlongShapeLibrary {
+
+    private final List<List<List<PointAndIndex>>> _regions = new ArrayList<List<List<PointAndIndex>>>();
+
+    public List<List<List<PointAndIndex>>> getRegions() {
+      return _regions;
+    }
+
+    public List<PointAndIndex> search(List<List<PointAndIndex>> region) {
+      return super.findBestAssignmentForRegion(region, 0, region.size());
+    }
+
+    @Override
+    protected List<PointAndIndex> findBestAssignmentForRegion(
+        List<List<PointAndIndex>> possibleAssignments, int indexFrom,
+        int indexTo) {
+      List<List<PointAndIndex>> region = new ArrayList<List<PointAndIndex>>();
+      for (int i = indexFrom; i < indexTo; i++)
+        region.add(new ArrayList<PointAndIndex>(possibleAssignments.get(i)));
+      _regions.add(region);
+      return super.findBestAssignmentForRegion(possibleAssignments, indexFrom,
+          indexTo);
+    }
+  }
 }
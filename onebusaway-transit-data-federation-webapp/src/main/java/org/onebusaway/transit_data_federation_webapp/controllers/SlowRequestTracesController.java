@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation_webapp.controllers;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.onebusaway.container.LocalRequests;
+import org.onebusaway.util.tracing.RequestTrace;
+import org.onebusaway.util.tracing.SlowRequestTraceRecorder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Plain text listing of slow transit data service calls, most recent first.
+ * A POST discards the retained traces.  Only populated when a
+ * {@link SlowRequestTraceRecorder} is configured, and only available to
+ * requests made directly from the local host: requests from other hosts, or
+ * relayed by a proxy, get a 404.
+ */
+@Controller
+public class SlowRequestTracesController {
+
+  private SlowRequestTraceRecorder _recorder;
+
+  @Autowired(required = false)
+  public void setSlowRequestTraceRecorder(SlowRequestTraceRecorder recorder) {
+    _recorder = recorder;
+  }
+
+  @RequestMapping(value = "/slow-request-traces.do", method = RequestMethod.GET, produces = "text/plain")
+  @ResponseBody
+  public String index(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+
+    if (!LocalRequests.isLocalRequest(request)) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return null;
+    }
+
+    if (_recorder == null)
+      return "slow request tracing is not enabled\n";
+
+    return format(_recorder.getSlowTraces());
+  }
+
+  @RequestMapping(value = "/slow-request-traces.do", method = RequestMethod.POST, produces = "text/plain")
+  @ResponseBody
+  public String clear(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+
+    if (!LocalRequests.isLocalRequest(request)) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return null;
+    }
+
+    if (_recorder == null)
+      return "slow request tracing is not enabled\n";
+
+    List<RequestTrace> traces = _recorder.getSlowTraces();
+    _recorder.clear();
+    return format(traces);
+  }
+
+  private String format(List<RequestTrace> traces) {
+    StringBuilder b = new StringBuilder();
+    for (RequestTrace trace : traces)
+      b.append(trace).append("\n\n");
+    return b.toString();
+  }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A hashed timing wheel with one-second ticks. Items are scheduled against an
+ * absolute deadline (in seconds) and handed back to an {@link ExpiryHandler}
+ * once the wheel has advanced past that deadline. Deadlines further out than
+ * one revolution of the wheel simply stay in their slot until the matching
+ * round comes around.
+ * 
+ * Scheduling is lock-free and may happen from any thread. Advancing the wheel
+ * must only happen from a single thread at a time; that thread alone touches
+ * the slots, so each tick only costs the number of entries in one slot.
+ * 
+ * @param <T> the scheduled item type
+ */
+class AlarmTimingWheel<T> {
+
+  public interface ExpiryHandler<T> {
+
+    /**
+     * @param item the expired item
+     * @param deadline the deadline the item was scheduled with
+     * @param now the current tick
+     * @return a new deadline if the item should be rescheduled, or a negative
+     *         value if it is done
+     */
+    public long handleExpiry(T item, long deadline, long now);
+  }
+
+  private final List<Entry<T>>[] _slots;
+
+  private final int _mask;
+
+  private final Queue<Entry<T>> _pending = new ConcurrentLinkedQueue<Entry<T>>();
+
+  private final AtomicInteger _size = new AtomicInteger();
+
+  /**
+   * The last tick that has been processed, or -1 if the wheel hasn't started
+   */
+  private long _currentTick = -1;
+
+  @SuppressWarnings("unchecked")
+  public AlarmTimingWheel(int wheelSize) {
+    int size = Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1;
+    _slots = new List[size];
+    for (int i = 0; i < size; i++)
+      _slots[i] = new ArrayList<Entry<T>>();
+    _mask = size - 1;
+  }
+
+  public int getWheelSize() {
+    return _slots.length;
+  }
+
+  /**
+   * @return the number of scheduled entries, including those not yet expired
+   *         that may since have been superseded
+   */
+  public int size() {
+    return _size.get();
+  }
+
+  public void schedule(T item, long deadline) {
+    _pending.add(new Entry<T>(item, deadline));
+    _size.incrementAndGet();
+  }
+
+  /**
+   * Process every tick up to and including now.
+   * 
+   * @return the number of entries handed to the handler
+   */
+  public synchronized int advance(long now, ExpiryHandler<T> handler) {
+
+    if (_currentTick < 0)
+      _currentTick = now - 1;
+
+    drainPending();
+
+    int expired = 0;
+
+    if (now - _currentTick > _slots.length) {
+      /**
+       * We've fallen more than a full revolution behind (or the clock jumped),
+       * so a single pass over every slot covers all elapsed ticks
+       */
+      _currentTick = now;
+      for (int i = 0; i < _slots.length; i++)
+        expired += processSlot(_slots[i], now, handler);
+      return expired;
+    }
+
+    while (_currentTick < now) {
+      _currentTick++;
+      expired += processSlot(_slots[(int) (_currentTick & _mask)],
+          _currentTick, handler);
+    }
+
+    return expired;
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private void drainPending() {
+    Entry<T> entry;
+    while ((entry = _pending.poll()) != null)
+      place(entry);
+  }
+
+  private void place(Entry<T> entry) {
+    long tick = Math.max(entry.deadline, _currentTick + 1);
+    _slots[(int) (tick & _mask)].add(entry);
+  }
+
+  private int processSlot(List<Entry<T>> slot, long now,
+      ExpiryHandler<T> handler) {
+
+    int expired = 0;
+    int index = 0;
+
+    while (index < slot.size()) {
+
+      Entry<T> entry = slot.get(index);
+
+      if (entry.deadline > now) {
+        index++;
+        continue;
+      }
+
+      // swap-remove, keeping the current index for the moved entry
+      int last = slot.size() - 1;
+      slot.set(index, slot.get(last));
+      slot.remove(last);
+      _size.decrementAndGet();
+      expired++;
+
+      long deadline = handler.handleExpiry(entry.item, entry.deadline, now);
+      if (deadline >= 0) {
+        place(new Entry<T>(entry.item, deadline));
+        _size.incrementAndGet();
+      }
+    }
+
+    return expired;
+  }
+
+  private static final class Entry<T> {
+
+    private final T item;
+
+    private final long deadline;
+
+    public Entry(T item, long deadline) {
+      this.item = item;
+      this.deadline = deadline;
+    }
+  }
+}
@@ -18,16 +18,17 @@ package org.onebusaway.transit_data_federation.impl;
 import java.io.InputStream;
 import java.net.URL;
 import java.net.URLConnection;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.PriorityQueue;
+import java.util.Iterator;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -51,6 +52,18 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+/**
+ * Alarms are held in a single {@link AlarmTimingWheel}, scheduled against
+ * their expected fire time in seconds. Each alarm's fire time is its effective
+ * schedule time plus the current schedule deviation of the vehicle serving its
+ * block instance. Deviation updates are a volatile write on the vehicle's
+ * state: when a vehicle falls further behind, alarms are simply found not yet
+ * due when their slot comes around and are rescheduled; only when a vehicle
+ * gains time do we walk the block instance's alarms to move them earlier.
+ * 
+ * The wheel is advanced on its own thread, so slow alarm callbacks, which run
+ * on a separate pool, never delay a tick.
+ */
 @Component
 class ArrivalAndDepartureAlarmServiceImpl implements
     ArrivalAndDepartureAlarmService, BlockLocationListener {
@@ -61,12 +74,26 @@ class ArrivalAndDepartureAlarmServiceImpl implements
 
   private ConcurrentMap<BlockInstance, AlarmsForBlockInstance> _alarmsByBlockInstance = new ConcurrentHashMap<BlockInstance, AlarmsForBlockInstance>();
 
-  private Map<AgencyAndId, AlarmForBlockInstance> _alarmsById = new HashMap<AgencyAndId, AlarmForBlockInstance>();
+  private ConcurrentMap<AgencyAndId, AlarmForBlockInstance> _alarmsById = new ConcurrentHashMap<AgencyAndId, AlarmForBlockInstance>();
+
+  private AlarmTimingWheel<AlarmForBlockInstance> _wheel;
+
+  private final AlarmExpiryHandler _expiryHandler = new AlarmExpiryHandler();
+
+  /**
+   * Advances the wheel once a second
+   */
+  private ScheduledExecutorService _tickExecutor;
 
-  private ScheduledExecutorService _executor;
+  /**
+   * Fires alarm callbacks
+   */
+  private ExecutorService _executor;
 
   private int _threadPoolSize = 5;
 
+  private int _wheelSize = 4096;
+
   @Autowired
   public void setArrivalAndDepartureService(
       ArrivalAndDepartureService arrivalAndDepartureService) {
@@ -77,17 +104,32 @@ class ArrivalAndDepartureAlarmServiceImpl implements
     _threadPoolSize = threadPoolSize;
   }
 
+  /**
+   * @param wheelSize number of one-second slots in the timing wheel, rounded
+   *          up to a power of two
+   */
+  public void setWheelSize(int wheelSize) {
+    _wheelSize = wheelSize;
+  }
+
   /****
    * 
    ****/
 
   @PostConstruct
   public void start() {
-    _executor = Executors.newScheduledThreadPool(_threadPoolSize);
+    _wheel = new AlarmTimingWheel<AlarmForBlockInstance>(_wheelSize);
+    _executor = Executors.newFixedThreadPool(_threadPoolSize);
+    _tickExecutor = Executors.newSingleThreadScheduledExecutor();
+    _tickExecutor.scheduleAtFixedRate(new TickTask(), 1, 1, TimeUnit.SECONDS);
   }
 
   @PreDestroy
   public void stop() {
+    if (_tickExecutor != null) {
+      _tickExecutor.shutdownNow();
+      _tickExecutor = null;
+    }
     if (_executor != null) {
       _executor.shutdownNow();
       _executor = null;
@@ -107,16 +149,6 @@ class ArrivalAndDepartureAlarmServiceImpl implements
     if (instance == null)
       throw new ServiceException("no arrival-departure found");
 
-    /**
-     * We group alarms by block instance
-     */
-    BlockInstance blockInstance = instance.getBlockInstance();
-
-    /**
-     * Retrieve the alarms for the block instance
-     */
-    AlarmsForBlockInstance alarms = getAlarmsForBlockInstance(blockInstance);
-
     /**
      * The effective schedule time is the point in the transit vehicle's
      * schedule run time when the alarm should be fired
@@ -124,16 +156,24 @@ class ArrivalAndDepartureAlarmServiceImpl implements
     int effectiveScheduleTime = computeEffectiveScheduleTimeForAlarm(alarmBean,
         instance);
 
-    /**
-     * Create and register the alarm
-     */
+    StopEntry stop = instance.getStop();
+    AgencyAndId stopId = stop.getId();
+    AgencyAndId alarmId = new AgencyAndId(stopId.getAgencyId(),
+        UUID.randomUUID().toString());
+
     AlarmAction action = new AlarmAction();
     action.setUrl(alarmBean.getUrl());
 
-    AlarmForBlockInstance alarm = alarms.registerAlarm(action,
-        effectiveScheduleTime, instance);
+    /**
+     * We group alarms by block instance
+     */
+    BlockInstance blockInstance = instance.getBlockInstance();
+
+    AlarmForBlockInstance alarm = registerAlarm(blockInstance, alarmId,
+        action, effectiveScheduleTime, instance.getBlockLocation());
 
     _alarmsById.put(alarm.getId(), alarm);
+    _wheel.schedule(alarm, alarm.getDeadline());
 
     _log.debug("alarm created: {}", alarm.getId());
 
@@ -143,9 +183,9 @@ class ArrivalAndDepartureAlarmServiceImpl implements
   @Override
   public void cancelAlarmForArrivalAndDepartureAtStop(AgencyAndId alarmId) {
     _log.debug("cancelling alarm: {}", alarmId);
-    AlarmForBlockInstance alarm = _alarmsById.get(alarmId);
-    if (alarm != null)
-      alarm.setCanceled();
+    AlarmForBlockInstance alarm = _alarmsById.remove(alarmId);
+    if (alarm != null && alarm.setCanceled())
+      alarm.getAlarms().removeAlarm(alarm);
   }
 
   /****
@@ -199,12 +239,10 @@ class ArrivalAndDepartureAlarmServiceImpl implements
    * this by marking an alarms object as "canceled", indicating that no new
    * alarms can be registered. Thus, we loop while until we get an active alarm
    * instance.
-   * 
-   * @param blockInstance
-   * @return
    */
-  private AlarmsForBlockInstance getAlarmsForBlockInstance(
-      BlockInstance blockInstance) {
+  private AlarmForBlockInstance registerAlarm(BlockInstance blockInstance,
+      AgencyAndId alarmId, AlarmAction action, int effectiveScheduleTime,
+      BlockLocation blockLocation) {
 
     while (true) {
       AlarmsForBlockInstance alarms = _alarmsByBlockInstance.get(blockInstance);
@@ -217,43 +255,42 @@ class ArrivalAndDepartureAlarmServiceImpl implements
           alarms = newAlarms;
       }
 
-      if (alarms.isCanceled())
-        continue;
+      AlarmForBlockInstance alarm = alarms.registerAlarm(alarmId, action,
+          effectiveScheduleTime, blockLocation);
 
-      return alarms;
+      if (alarm != null)
+        return alarm;
     }
   }
 
   private void fireAlarm(AlarmForBlockInstance alarm) {
+    _alarmsById.remove(alarm.getId());
+    alarm.getAlarms().removeAlarm(alarm);
     _executor.submit(new FireAlarmTask(alarm.getId(), alarm.action));
   }
 
+  private static long getCurrentTimeInSeconds() {
+    return SystemTime.currentTimeMillis() / 1000;
+  }
+
   /****
    * 
    ****/
 
-  private class AlarmsForBlockInstance implements Runnable {
+  private class AlarmsForBlockInstance {
 
     private final BlockInstance _blockInstance;
 
     /**
-     * Queue of alarms where no real-time data is available. If real-time
-     * becomes available, we'll upgrade the alarm to the first real-time-equiped
-     * vehicle.
+     * Pending alarms, used to move alarms earlier when a vehicle gains time
      */
-    private PriorityQueue<AlarmForBlockInstance> _noVehicleIdQueue = new PriorityQueue<AlarmForBlockInstance>();
+    private final Set<AlarmForBlockInstance> _alarms = ConcurrentHashMap.newKeySet();
 
     /**
-     * Queues of alarms grouped by vehicle id. Remember that multiple vehicles
+     * Real-time state grouped by vehicle id. Remember that multiple vehicles
      * can be servicing the same block instance.
      */
-    private Map<AgencyAndId, VehicleInfo> _vehicleInfoByVehicleId = new HashMap<AgencyAndId, VehicleInfo>();
-
-    /**
-     * The actual task that will run to check and fire alarms in the future. We
-     * reschedule this task to reflect the next upcoming alarm.
-     */
-    private Future<?> _alarmTask = null;
+    private final ConcurrentMap<AgencyAndId, VehicleInfo> _vehicleInfoByVehicleId = new ConcurrentHashMap<AgencyAndId, VehicleInfo>();
 
     /**
      * Indicates that this alarms instance has been canceled and no new alarms
@@ -267,50 +304,56 @@ class ArrivalAndDepartureAlarmServiceImpl implements
       _blockInstance = blockInstance;
     }
 
-    public synchronized boolean isCanceled() {
-      return _canceled;
+    public long getServiceDate() {
+      return _blockInstance.getServiceDate();
     }
 
-    public synchronized AlarmForBlockInstance registerAlarm(AlarmAction action,
-        int effectiveScheduleTime, ArrivalAndDepartureInstance instance) {
+    /**
+     * @return the registered alarm, or null if this instance has been canceled
+     */
+    public synchronized AlarmForBlockInstance registerAlarm(
+        AgencyAndId alarmId, AlarmAction action, int effectiveScheduleTime,
+        BlockLocation blockLocation) {
 
-      StopEntry stop = instance.getStop();
-      AgencyAndId stopId = stop.getId();
-      AgencyAndId alarmId = new AgencyAndId(stopId.getAgencyId(),
-          UUID.randomUUID().toString());
+      if (_canceled)
+        return null;
 
-      AlarmForBlockInstance alarm = new AlarmForBlockInstance(alarmId, action,
-          effectiveScheduleTime);
+      VehicleInfo vehicleInfo = null;
 
       /**
-       * We put the alarm in the schedule-only vs real-time queue as appropriate
+       * Alarms for a tracked vehicle follow that vehicle's deviation. Others
+       * are schedule-only until real-time becomes available for the block.
        */
-      BlockLocation blockLocation = instance.getBlockLocation();
-
       if (blockLocation == null || blockLocation.getVehicleId() == null) {
-
-        _log.debug("schedule only for alarm: {}", instance);
-        _noVehicleIdQueue.add(alarm);
-
+        _log.debug("schedule only for alarm: {}", alarmId);
       } else {
-
-        _log.debug("real-time for alarm: {}", instance);
-        AgencyAndId vehicleId = blockLocation.getVehicleId();
-        VehicleInfo vehicleInfo = getVehicleInfoForVehicleId(vehicleId, true);
+        _log.debug("real-time for alarm: {}", alarmId);
+        vehicleInfo = getVehicleInfoForVehicleId(blockLocation.getVehicleId());
         if (blockLocation.isScheduleDeviationSet())
           vehicleInfo.setScheduleDeviation((int) blockLocation.getScheduleDeviation());
         else
           _log.warn("no schedule deviation for block location " + blockLocation);
-        PriorityQueue<AlarmForBlockInstance> queue = vehicleInfo.getQueue();
-        queue.add(alarm);
       }
 
-      processQueues();
+      AlarmForBlockInstance alarm = new AlarmForBlockInstance(alarmId, action,
+          effectiveScheduleTime, this, vehicleInfo);
+      alarm.setDeadline(alarm.computeFireTime());
+      _alarms.add(alarm);
 
       return alarm;
     }
 
-    public synchronized void updateBlockLocation(BlockLocation blockLocation) {
+    public synchronized void removeAlarm(AlarmForBlockInstance alarm) {
+      _alarms.remove(alarm);
+      if (_alarms.isEmpty() && !_canceled) {
+        _log.debug("all alarms fired or canceled, cleaning up: {}",
+            _blockInstance);
+        _canceled = true;
+        _alarmsByBlockInstance.remove(_blockInstance, this);
+      }
+    }
+
+    public void updateBlockLocation(BlockLocation blockLocation) {
 
       AgencyAndId vehicleId = blockLocation.getVehicleId();
 
@@ -322,165 +365,102 @@ class ArrivalAndDepartureAlarmServiceImpl implements
       if (!blockLocation.isScheduleDeviationSet()) {
         _log.warn("expected schedule deviation with block location"
             + blockLocation);
+        return;
       }
 
       _log.debug("updating block location for vehicle: {}",
           blockLocation.getVehicleId());
 
-      /**
-       * We've create the vehicle info queue if it means we can move alarms out
-       * of the "scheduled arrival" queue
-       */
-      boolean create = !_noVehicleIdQueue.isEmpty();
+      VehicleInfo vehicleInfo = getVehicleInfoForVehicleId(vehicleId);
 
-      VehicleInfo vehicleInfo = getVehicleInfoForVehicleId(vehicleId, create);
+      int previous = vehicleInfo.setScheduleDeviation((int) blockLocation.getScheduleDeviation());
 
-      if (vehicleInfo == null)
-        return;
-
-      vehicleInfo.setScheduleDeviation((int) blockLocation.getScheduleDeviation());
-
-      moveNoVehicleAlarmsToVehicleAlarms();
-      processQueues();
+      /**
+       * If the vehicle is running later than before, alarms will be found not
+       * yet due and rescheduled lazily. If it has gained time, or schedule-only
+       * alarms may now bind to it, move any alarms that are now due earlier.
+       */
+      if (vehicleInfo.getScheduleDeviation() < previous || hasUnboundAlarms())
+        rescheduleEarlierAlarms();
     }
 
     /**
-     * This is called by the scheduler
+     * Schedule-only alarms are bound to the first vehicle to report real-time
+     * for the block instance.
      */
-    @Override
-    public synchronized void run() {
-      _alarmTask = null;
-      processQueues();
+    public int getScheduleDeviationForAlarm(AlarmForBlockInstance alarm) {
+      VehicleInfo vehicleInfo = alarm.getVehicleInfo();
+      if (vehicleInfo == null) {
+        Iterator<VehicleInfo> it = _vehicleInfoByVehicleId.values().iterator();
+        if (!it.hasNext())
+          return 0;
+        vehicleInfo = it.next();
+        alarm.setVehicleInfo(vehicleInfo);
+      }
+      return vehicleInfo.getScheduleDeviation();
     }
 
     /****
      * 
      ****/
 
-    private VehicleInfo getVehicleInfoForVehicleId(AgencyAndId vehicleId,
-        boolean create) {
-
+    private VehicleInfo getVehicleInfoForVehicleId(AgencyAndId vehicleId) {
       VehicleInfo vehicleInfo = _vehicleInfoByVehicleId.get(vehicleId);
-
-      if (vehicleInfo == null && create) {
-        vehicleInfo = new VehicleInfo();
-        _vehicleInfoByVehicleId.put(vehicleId, vehicleInfo);
+      if (vehicleInfo == null) {
+        VehicleInfo newVehicleInfo = new VehicleInfo();
+        vehicleInfo = _vehicleInfoByVehicleId.putIfAbsent(vehicleId,
+            newVehicleInfo);
+        if (vehicleInfo == null)
+          vehicleInfo = newVehicleInfo;
       }
-
       return vehicleInfo;
     }
 
-    /**
-     * If we had alarms set for a "scheduled arrival" and we now have real-time
-     * tracking for a vehicle serving that arrival, we move the alarms over.
-     */
-    private void moveNoVehicleAlarmsToVehicleAlarms() {
-
-      if (_noVehicleIdQueue.isEmpty() || _vehicleInfoByVehicleId.isEmpty())
-        return;
-      VehicleInfo first = _vehicleInfoByVehicleId.values().iterator().next();
-
-      PriorityQueue<AlarmForBlockInstance> queue = first.getQueue();
-
-      queue.addAll(_noVehicleIdQueue);
-      _noVehicleIdQueue.clear();
-    }
-
-    private void processQueues() {
-
-      if (_alarmTask != null)
-        _alarmTask.cancel(false);
-
-      boolean allQueuesAreEmpty = true;
-      int minNextAlarmTime = Integer.MAX_VALUE;
-
-      for (VehicleInfo vehicleInfo : _vehicleInfoByVehicleId.values()) {
-        PriorityQueue<AlarmForBlockInstance> queue = vehicleInfo.getQueue();
-        int scheduleDeviation = vehicleInfo.getScheduleDeviation();
-        int nextAlarmTime = processQueue(queue, scheduleDeviation);
-        if (nextAlarmTime > 0) {
-          minNextAlarmTime = Math.min(minNextAlarmTime, nextAlarmTime);
-          allQueuesAreEmpty = false;
-        }
-      }
-
-      int nextAlarmTime = processQueue(_noVehicleIdQueue, 0);
-      if (nextAlarmTime > 0) {
-        minNextAlarmTime = Math.min(minNextAlarmTime, nextAlarmTime);
-        allQueuesAreEmpty = false;
-      }
-
-      if (allQueuesAreEmpty) {
-        _log.debug("all alarm queues are empty, cleaning up: {}",
-            _blockInstance);
-        _vehicleInfoByVehicleId.clear();
-        _canceled = true;
-        _alarmsByBlockInstance.remove(_blockInstance);
-
-      } else {
-        _log.debug("scheduling next alarm check in {} secs for {}",
-            minNextAlarmTime, _blockInstance);
-        /**
-         * Schedule the next alarm
-         */
-        _alarmTask = _executor.schedule(this, minNextAlarmTime,
-            TimeUnit.SECONDS);
+    private boolean hasUnboundAlarms() {
+      for (AlarmForBlockInstance alarm : _alarms) {
+        if (alarm.getVehicleInfo() == null)
+          return true;
       }
+      return false;
     }
 
-    private int processQueue(PriorityQueue<AlarmForBlockInstance> queue,
-        int scheduleDeviation) {
-
-      int effectiveScheduleTime = (int) ((SystemTime.currentTimeMillis() - _blockInstance.getServiceDate()) / 1000 - scheduleDeviation);
-
-      while (!queue.isEmpty()) {
-        AlarmForBlockInstance alarm = queue.peek();
-
-        if (alarm.isCanceled()) {
-          queue.poll();
+    private void rescheduleEarlierAlarms() {
+      for (AlarmForBlockInstance alarm : _alarms) {
+        if (alarm.isDone())
           continue;
+        long fireTime = alarm.computeFireTime();
+        while (true) {
+          long deadline = alarm.getDeadline();
+          if (fireTime >= deadline)
+            break;
+          if (alarm.compareAndSetDeadline(deadline, fireTime)) {
+            _wheel.schedule(alarm, fireTime);
+            break;
+          }
         }
-
-        /**
-         * If the first alarm in the queue isn't ready to be fired yet, we
-         * return the time until it should be fired
-         */
-        if (effectiveScheduleTime < alarm.getEffectiveScheduleTime()) {
-          return alarm.getEffectiveScheduleTime() - effectiveScheduleTime;
-        }
-        queue.poll();
-        fireAlarm(alarm);
       }
-
-      /**
-       * We've gone through all the alarms
-       */
-      return -1;
     }
-
   }
 
-  private class VehicleInfo {
-
-    private final PriorityQueue<AlarmForBlockInstance> _queue = new PriorityQueue<AlarmForBlockInstance>();
+  private static class VehicleInfo {
 
-    private int _scheduleDeviation = 0;
+    private volatile int _scheduleDeviation = 0;
 
     public int getScheduleDeviation() {
       return _scheduleDeviation;
     }
 
-    public void setScheduleDeviation(int scheduleDeviation) {
+    /**
+     * @return the previous schedule deviation
+     */
+    public int setScheduleDeviation(int scheduleDeviation) {
+      int previous = _scheduleDeviation;
       _scheduleDeviation = scheduleDeviation;
-    }
-
-    public PriorityQueue<AlarmForBlockInstance> getQueue() {
-      return _queue;
+      return previous;
     }
   }
 
-  private class AlarmForBlockInstance implements
-      Comparable<AlarmForBlockInstance> {
+  private static class AlarmForBlockInstance {
 
     private final AgencyAndId id;
 
@@ -488,34 +468,127 @@ class ArrivalAndDepartureAlarmServiceImpl implements
 
     private final int effectiveScheduleTime;
 
-    private boolean canceled = false;
+    private final AlarmsForBlockInstance alarms;
+
+    private volatile VehicleInfo vehicleInfo;
+
+    /**
+     * The fire time, in seconds, of the most recent wheel entry for this alarm.
+     * Older entries with a different deadline are stale and ignored. Updated
+     * with compare-and-set, since the tick thread pushing a deadline later can
+     * race with an update thread pulling it earlier.
+     */
+    private final AtomicLong deadline = new AtomicLong();
+
+    private final AtomicBoolean done = new AtomicBoolean();
 
     public AlarmForBlockInstance(AgencyAndId id, AlarmAction action,
-        int effectiveScheduleTime) {
+        int effectiveScheduleTime, AlarmsForBlockInstance alarms,
+        VehicleInfo vehicleInfo) {
       this.id = id;
       this.action = action;
       this.effectiveScheduleTime = effectiveScheduleTime;
+      this.alarms = alarms;
+      this.vehicleInfo = vehicleInfo;
     }
 
     public AgencyAndId getId() {
       return id;
     }
 
-    public int getEffectiveScheduleTime() {
-      return effectiveScheduleTime;
+    public AlarmsForBlockInstance getAlarms() {
+      return alarms;
     }
 
-    public void setCanceled() {
-      canceled = true;
+    public VehicleInfo getVehicleInfo() {
+      return vehicleInfo;
     }
 
-    public boolean isCanceled() {
-      return canceled;
+    public void setVehicleInfo(VehicleInfo vehicleInfo) {
+      this.vehicleInfo = vehicleInfo;
     }
 
+    public long getDeadline() {
+      return deadline.get();
+    }
+
+    public void setDeadline(long deadline) {
+      this.deadline.set(deadline);
+    }
+
+    /**
+     * @return true if the deadline was still the expected value and was updated
+     */
+    public boolean compareAndSetDeadline(long expected, long update) {
+      return deadline.compareAndSet(expected, update);
+    }
+
+    /**
+     * @return the time, in seconds, at which the alarm should fire given the
+     *         current schedule deviation
+     */
+    public long computeFireTime() {
+      return alarms.getServiceDate() / 1000 + effectiveScheduleTime
+          + alarms.getScheduleDeviationForAlarm(this);
+    }
+
+    /**
+     * @return true if this call marked the alarm as fired
+     */
+    public boolean setFired() {
+      return done.compareAndSet(false, true);
+    }
+
+    /**
+     * @return true if this call canceled the alarm
+     */
+    public boolean setCanceled() {
+      return done.compareAndSet(false, true);
+    }
+
+    public boolean isDone() {
+      return done.get();
+    }
+  }
+
+  private class AlarmExpiryHandler implements
+      AlarmTimingWheel.ExpiryHandler<AlarmForBlockInstance> {
+
     @Override
-    public int compareTo(AlarmForBlockInstance o) {
-      return this.effectiveScheduleTime - o.effectiveScheduleTime;
+    public long handleExpiry(AlarmForBlockInstance alarm, long deadline,
+        long now) {
+
+      if (alarm.isDone() || deadline != alarm.getDeadline())
+        return -1;
+
+      long fireTime = alarm.computeFireTime();
+
+      if (fireTime > now) {
+        /**
+         * If the deadline moved since we checked, an update thread has
+         * scheduled a newer entry and this one is stale
+         */
+        if (!alarm.compareAndSetDeadline(deadline, fireTime))
+          return -1;
+        return fireTime;
+      }
+
+      if (alarm.setFired())
+        fireAlarm(alarm);
+
+      return -1;
+    }
+  }
+
+  private class TickTask implements Runnable {
+
+    @Override
+    public void run() {
+      try {
+        _wheel.advance(getCurrentTimeInSeconds(), _expiryHandler);
+      } catch (Throwable ex) {
+        _log.error("error processing alarms", ex);
+      }
     }
   }
 
@@ -36,6 +36,8 @@ import org.onebusaway.transit_data_federation.services.blocks.BlockTripInstanceL
 import org.onebusaway.transit_data_federation.services.blocks.InstanceState;
 import org.onebusaway.transit_data_federation.services.realtime.ArrivalAndDepartureInstance;
 import org.onebusaway.transit_data_federation.services.realtime.ArrivalAndDepartureTime;
+import org.onebusaway.transit_data_federation.services.realtime.BlockInstancePredictions;
+import org.onebusaway.transit_data_federation.services.realtime.BlockInstancePredictions.TimepointPredictionMatch;
 import org.onebusaway.transit_data_federation.services.realtime.BlockLocation;
 import org.onebusaway.transit_data_federation.services.realtime.BlockLocationService;
 import org.onebusaway.transit_data_federation.services.realtime.ScheduleDeviationSamples;
@@ -649,6 +651,10 @@ class ArrivalAndDepartureServiceImpl implements ArrivalAndDepartureService {
     ScheduleDeviationSamples scheduleDeviations = blockLocation.getScheduleDeviations();
 
     if (scheduleDeviations != null && !scheduleDeviations.isEmpty()) {
+      BlockInstancePredictions predictions = blockLocation.getPredictions();
+      if (predictions != null
+          && predictions.isApplicable(blockLocation, instance.getBlockStopTime()))
+        return predictions.getBestScheduleDeviation(instance.getBlockStopTime());
       // We currently use the scheduled arrival time of the stop as the search
       // index
       // This MUST be consistent with the index set in
@@ -675,88 +681,45 @@ class ArrivalAndDepartureServiceImpl implements ArrivalAndDepartureService {
     if (records == null)
       return false;
 
-    // Find the right timepoint prediction record. We need to make sure that
-    // there are the proper number of records if the trip loops and stopSequence
-    // is not set.
-
-    int stopSequence = instance.getBlockStopTime().getStopTime().getSequence();
-    int gtfsSequence = instance.getBlockStopTime().getStopTime().getGtfsSequence();
-
-    int totalCandidates = 0;
-    int thisStopIndex = 0; // index (with respect to stop sequence) among stops
-                           // with the same ID
-
-    List<BlockStopTimeEntry> stopTimes = instance.getBlockTrip().getStopTimes();
-    for (int i = 0; i < stopTimes.size(); i++) {
-      BlockStopTimeEntry stopTime = stopTimes.get(i);
-      StopTimeEntry stop = stopTime.getStopTime();
-      if (stop.getStop().getId().equals(instance.getStop().getId())) {
-        totalCandidates++;
-        if (stop.getSequence() < stopSequence)
-          thisStopIndex++;
-      }
-    }
-
-    int tprTotalCandidates = 0;
-    int tprStopIndex = 0;
-
-    boolean success = false;
-
-    for (TimepointPredictionRecord tpr : records) {
-      boolean tripMatches = tpr.getTripId().equals(
-          instance.getBlockTrip().getTrip().getId());
-      boolean stopMatches = tpr.getTimepointId().equals(
-          instance.getStop().getId());
-      boolean sequenceMatches = tpr.getStopSequence() > 0
-          && tpr.getStopSequence() == gtfsSequence;
-      // records may have predictions across multiple blocks
-      if (!tripMatches) {
-        _log.debug("unmatched trip on tpr: " + tpr.getTripId() + " != " + instance.getBlockTrip().getTrip().getId());
-        continue;
-      }
-      if (!stopMatches) {
-        _log.debug("unmatched stop on tpr: " + tpr.getTimepointId() + " != " + instance.getStop().getId());
-        continue;
+    // Find the right timepoint prediction record, using the match precomputed
+    // for the vehicle location record when we have one
+    BlockStopTimeEntry blockStopTime = instance.getBlockStopTime();
+    BlockInstancePredictions predictions = blockLocation.getPredictions();
+    TimepointPredictionMatch match;
+    if (predictions != null
+        && predictions.isApplicable(blockLocation, blockStopTime))
+      match = predictions.getTimepointPredictionMatch(blockStopTime);
+    else
+      match = BlockInstancePredictions.matchTimepointPrediction(records,
+          blockStopTime);
+
+    TimepointPredictionRecord tpr = match.getRecord();
+    if (tpr != null) {
+
+      long arrivalTime = tpr.getTimepointPredictedArrivalTime();
+
+      long departureTime = tpr.getTimepointPredictedDepartureTime();
+      if (departureTime <= 0) {
+        int slack = blockStopTime.getStopTime().getSlackTime();
+        departureTime = arrivalTime + slack * 1000;
       }
+      setPredictedDepartureTimeForInstance(instance, departureTime);
 
-      if (sequenceMatches || tprStopIndex == thisStopIndex) {
-
-        success = true;
-
-        long arrivalTime = tpr.getTimepointPredictedArrivalTime();
-
-        long departureTime = tpr.getTimepointPredictedDepartureTime();
-        if (departureTime <= 0) {
-          int slack = instance.getBlockStopTime().getStopTime().getSlackTime();
-          departureTime = arrivalTime + slack * 1000;
-        }
-        setPredictedDepartureTimeForInstance(instance, departureTime);
-
-        /*
-         * if arrivalTime is -1 be polite to clients and serve departureTime
-         */
-      	if (arrivalTime == -1) {
-      	    setPredictedArrivalTimeForInstance(instance, departureTime);
-      	} else {
-      	    setPredictedArrivalTimeForInstance(instance, arrivalTime);
-      	}
-
-        instance.setScheduledTrack(tpr.getScheduledTrack());
-        instance.setActualTrack(tpr.getActualTrack());
-        instance.setStatus(tpr.getStatus());
-
-        if (sequenceMatches)
-          return true;
+      /*
+       * if arrivalTime is -1 be polite to clients and serve departureTime
+       */
+      if (arrivalTime == -1) {
+        setPredictedArrivalTimeForInstance(instance, departureTime);
+      } else {
+        setPredictedArrivalTimeForInstance(instance, arrivalTime);
       }
 
-      else if (tprStopIndex < thisStopIndex)
-        tprStopIndex++;
-
-      tprTotalCandidates++;
+      instance.setScheduledTrack(tpr.getScheduledTrack());
+      instance.setActualTrack(tpr.getActualTrack());
+      instance.setStatus(tpr.getStatus());
     }
 
-    if (success && totalCandidates == tprTotalCandidates
-        && tprStopIndex == thisStopIndex)
+    if (match.isComplete())
       return true;
 
     // Clear out prediction times if we didn't end up finding the proper number
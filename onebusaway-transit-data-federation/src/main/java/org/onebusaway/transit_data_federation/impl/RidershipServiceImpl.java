@@ -21,6 +21,7 @@ import org.onebusaway.gtfs.model.calendar.ServiceDate;
 import org.onebusaway.realtime.api.OccupancyStatus;
 import org.onebusaway.transit_data.OccupancyStatusBean;
 import org.onebusaway.transit_data_federation.model.bundle.HistoricalRidership;
+import org.onebusaway.transit_data_federation.model.bundle.HistoricalRidershipIndex;
 import org.onebusaway.transit_data_federation.services.FederatedTransitDataBundle;
 import org.onebusaway.transit_data_federation.services.RidershipService;
 import org.onebusaway.utility.ObjectSerializationLibrary;
@@ -36,17 +37,19 @@ import java.util.*;
 
 /**
  * Manage HistoricalRidership Bundle Operations.
+ *
+ * Riderships are held in a {@link HistoricalRidershipIndex}, written at bundle
+ * build time or, for older bundles, built from the serialized list of
+ * riderships when the bundle is loaded.
  */
 @Component
 public class RidershipServiceImpl implements RidershipService {
     private static Logger _log = LoggerFactory.getLogger(RidershipServiceImpl.class);
 
     private FederatedTransitDataBundle _bundle;
-    private List<HistoricalRidership> _riderships;
-    private Map<AgencyAndId, List<HistoricalRidership>> _tripRiderships;
-    private Map<AgencyAndId, List<HistoricalRidership>> _routeRiderships;
-    private Map<AgencyAndId, List<HistoricalRidership>> _stopRiderships;
-    private Map<String, List<HistoricalRidership>> _tuppleRiderships;
+    private volatile HistoricalRidershipIndex _index = HistoricalRidershipIndex.create(
+            Collections.<HistoricalRidership>emptyList());
+    private volatile WeekdayForServiceDate _lastWeekday;
 
     @Autowired
     public void setBundle(FederatedTransitDataBundle bundle) { _bundle = bundle; }
@@ -54,95 +57,59 @@ public class RidershipServiceImpl implements RidershipService {
     @PostConstruct
     @Refreshable(dependsOn = RefreshableResources.TRANSIT_GRAPH)
     public void setup() throws IOException, ClassNotFoundException {
+        File indexPath = _bundle.getHistoricalRidershipIndexPath();
         File path = _bundle.getHistoricalRidershipPath();
-        if (path.exists()) {
+        HistoricalRidershipIndex index;
+        if (indexPath.exists()) {
+            _log.info("loading historical ridership index...");
+            index = ObjectSerializationLibrary.readObject(indexPath);
+        } else if (path.exists()) {
             _log.info("loading historical riderships...");
-            _riderships = ObjectSerializationLibrary.readObject(path);
-            _log.info("loading historical riderships...done");
+            List<HistoricalRidership> riderships = ObjectSerializationLibrary.readObject(path);
+            _log.info("generating historical ridership index");
+            index = HistoricalRidershipIndex.create(riderships);
         } else {
             _log.info("historical riderships not found at " + path);
-            _riderships = new ArrayList<>();
+            index = HistoricalRidershipIndex.create(Collections.<HistoricalRidership>emptyList());
         }
-        _tripRiderships = new HashMap<>();
-        _routeRiderships = new HashMap<>();
-        _stopRiderships = new HashMap<>();
-        _tuppleRiderships = new HashMap<>();
-
-        _log.info("generating historical ridership indexes");
-        createIndexes();
-        _log.info("complete with " + _riderships.size() + " entries");
+        _index = index;
+        _log.info("complete with " + index.size() + " entries");
     }
 
-    private void createIndexes() {
-        for (HistoricalRidership hr : _riderships) {
-            AgencyAndId routeId = hr.getRouteId();
-            AgencyAndId tripId = hr.getTripId();
-            AgencyAndId stopId = hr.getStopId();
-            String tupple = tupple = hash(routeId, tripId, stopId);
-            if (_routeRiderships.containsKey(routeId)) {
-                _routeRiderships.get(routeId).add(hr);
-            } else {
-                _routeRiderships.put(routeId, createList(hr));
-            }
-
-            if (_tripRiderships.containsKey(tripId)) {
-                _tripRiderships.get(tripId).add(hr);
-            } else {
-                _tripRiderships.put(tripId, createList(hr));
-            }
-            if (_stopRiderships.containsKey(stopId)) {
-                _stopRiderships.get(stopId).add(hr);
-            } else {
-                _stopRiderships.put(stopId, createList(hr));
-            }
-            if (tupple != null) {
-                if ( _tuppleRiderships.containsKey(tupple)) {
-                    _tuppleRiderships.get(tupple).add(hr);
-                } else {
-                    _tuppleRiderships.put(tupple, createList(hr));
-                }
-            }
-        }
-    }
-
-    private List<HistoricalRidership> createList(HistoricalRidership hr) {
-        List<HistoricalRidership> list = new ArrayList<>();
-        list.add(hr);
-        return list;
-    }
-
-    private String hash(AgencyAndId a1, AgencyAndId a2, AgencyAndId a3) {
-        if (a1 != null && a2 != null && a3 != null)
-            return a1.toString() + "." + a2.toString() + "." + a3.toString();
-        return null;
-    }
     @Override
     public List<HistoricalRidership> getAllHistoricalRiderships(long serviceDate) {
-        return filterByServiceDate(_riderships, serviceDate);
+        return _index.getAll(getDayClass(serviceDate));
     }
 
     @Override
     public List<HistoricalRidership> getHistoricalRidershipsForTrip(AgencyAndId tripId, long serviceDate) {
-        return filterByServiceDate(_tripRiderships.get(tripId), serviceDate);
+        return _index.getForTrip(tripId, getDayClass(serviceDate));
     }
 
     @Override
     public List<HistoricalRidership> getHistoricalRidershipsForStop(AgencyAndId stopId, long serviceDate) {
-        return filterByServiceDate(_stopRiderships.get(stopId), serviceDate);
+        return _index.getForStop(stopId, getDayClass(serviceDate));
     }
 
     @Override
     public List<HistoricalRidership> getHistoricalRidershipsForRoute(AgencyAndId routeId, long serviceDate) {
-        return filterByServiceDate(_routeRiderships.get(routeId), serviceDate);
+        return _index.getForRoute(routeId, getDayClass(serviceDate));
     }
 
     @Override
     public List<HistoricalRidership> getHistoricalRiderships(AgencyAndId routeId, AgencyAndId tripId, AgencyAndId stopId, long serviceDate) {
-        String hash = hash(routeId, tripId, stopId);
-        if (hash == null)
+        if (routeId == null || tripId == null || stopId == null)
             return  new ArrayList<>();
-        return filterByServiceDate(_tuppleRiderships.get(hash), serviceDate);
+        return _index.getForRouteTripAndStop(routeId, tripId, stopId, getDayClass(serviceDate));
     }
+
+    @Override
+    public double getHistoricalLoadFactor(AgencyAndId routeId, AgencyAndId tripId, AgencyAndId stopId, long serviceDate) {
+        if (routeId == null || tripId == null || stopId == null)
+            return Double.NaN;
+        return _index.getLoadFactor(routeId, tripId, stopId, getDayClass(serviceDate));
+    }
+
     @Override
     public List<OccupancyStatusBean> convertToOccupancyStatusBeans(List<HistoricalRidership> hrs) {
         List<OccupancyStatusBean> beans = new ArrayList<>();
@@ -159,26 +126,31 @@ public class RidershipServiceImpl implements RidershipService {
         return beans;
     }
 
-
-    private List<HistoricalRidership> filterByServiceDate(List<HistoricalRidership> input, long sd) {
-        if (sd == 0 || input == null) {
-            return input;
-        }
-        List<HistoricalRidership> results = new ArrayList<>();
-        for (HistoricalRidership hr : input) {
-            if (isWeekday(sd)) {
-                if(hr.getCalendarType() == HistoricalRidership.CalendarType.WEEKDAY) {
-                    results.add(hr);
-                }
-            } else if (hr.getCalendarType() == HistoricalRidership.CalendarType.SATURDAY || hr.getCalendarType() == HistoricalRidership.CalendarType.SUNDAY) {
-                results.add(hr);
-            }
-        }
-        return results;
+    private int getDayClass(long sd) {
+        if (sd == 0)
+            return HistoricalRidershipIndex.ANY_DAY;
+        return isWeekday(sd) ? HistoricalRidershipIndex.WEEKDAY : HistoricalRidershipIndex.WEEKEND;
     }
+
     private boolean isWeekday(long sd) {
+        // Lookups for an arrivals response almost always share a service date
+        WeekdayForServiceDate last = _lastWeekday;
+        if (last != null && last.serviceDate == sd)
+            return last.weekday;
         Calendar cal = new ServiceDate(new Date(sd)).getAsCalendar(TimeZone.getDefault());
-        return !(cal.get(Calendar.DAY_OF_WEEK) == Calendar.SATURDAY || cal.get(Calendar.DAY_OF_WEEK) == Calendar.SUNDAY);
+        boolean weekday = !(cal.get(Calendar.DAY_OF_WEEK) == Calendar.SATURDAY || cal.get(Calendar.DAY_OF_WEEK) == Calendar.SUNDAY);
+        _lastWeekday = new WeekdayForServiceDate(sd, weekday);
+        return weekday;
+    }
+
+    private static class WeekdayForServiceDate {
+        private final long serviceDate;
+        private final boolean weekday;
+
+        public WeekdayForServiceDate(long serviceDate, boolean weekday) {
+            this.serviceDate = serviceDate;
+            this.weekday = weekday;
+        }
     }
 
 }
@@ -44,10 +44,12 @@ import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.FSDirectory;
 import org.onebusaway.container.refresh.Refreshable;
 import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.transit_data_federation.model.AutocompleteIndex;
 import org.onebusaway.transit_data_federation.model.SearchResult;
 import org.onebusaway.transit_data_federation.services.FederatedTransitDataBundle;
 import org.onebusaway.transit_data_federation.services.RouteCollectionSearchIndexConstants;
 import org.onebusaway.transit_data_federation.services.RouteCollectionSearchService;
+import org.onebusaway.utility.ObjectSerializationLibrary;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -73,6 +75,8 @@ public class RouteCollectionSearchServiceImpl implements
 
   private IndexSearcher _searcher;
 
+  private volatile AutocompleteIndex _autocompleteIndex = AutocompleteIndex.EMPTY;
+
   @Autowired
   public void setBundle(FederatedTransitDataBundle bundle) {
     _bundle = bundle;
@@ -80,7 +84,7 @@ public class RouteCollectionSearchServiceImpl implements
 
   @PostConstruct
   @Refreshable(dependsOn = RefreshableResources.ROUTE_COLLECTION_SEARCH_DATA)
-  public void initialize() throws IOException {
+  public void initialize() throws IOException, ClassNotFoundException {
 
     File path = _bundle.getRouteSearchIndexPath();
 
@@ -90,6 +94,14 @@ public class RouteCollectionSearchServiceImpl implements
     } else {
       _searcher = null;
     }
+
+    File autocompletePath = _bundle.getRouteAutocompleteIndexPath();
+
+    if (autocompletePath.exists()) {
+      _autocompleteIndex = ObjectSerializationLibrary.readObject(autocompletePath);
+    } else {
+      _autocompleteIndex = AutocompleteIndex.EMPTY;
+    }
   }
 
   public SearchResult<AgencyAndId> searchForRoutesByName(String value,
@@ -100,6 +112,12 @@ public class RouteCollectionSearchServiceImpl implements
         maxResultCount, minScoreToKeep);
   }
 
+  @Override
+  public SearchResult<AgencyAndId> autocompleteRoutes(String input,
+      int maxResultCount) {
+    return _autocompleteIndex.search(input, maxResultCount);
+  }
+
   private SearchResult<AgencyAndId> search(QueryParser parser, String value,
       int maxResultCount, double minScoreToKeep) throws IOException,
       ParseException {
@@ -40,10 +40,12 @@ import org.apache.lucene.search.similarities.ClassicSimilarity;
 import org.apache.lucene.store.FSDirectory;
 import org.onebusaway.container.refresh.Refreshable;
 import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.transit_data_federation.model.AutocompleteIndex;
 import org.onebusaway.transit_data_federation.model.SearchResult;
 import org.onebusaway.transit_data_federation.services.FederatedTransitDataBundle;
 import org.onebusaway.transit_data_federation.services.StopSearchIndexConstants;
 import org.onebusaway.transit_data_federation.services.StopSearchService;
+import org.onebusaway.utility.ObjectSerializationLibrary;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -60,6 +62,8 @@ public class StopSearchServiceImpl implements StopSearchService {
 
   private IndexSearcher _searcher;
 
+  private volatile AutocompleteIndex _autocompleteIndex = AutocompleteIndex.EMPTY;
+
   @Autowired
   public void setBundle(FederatedTransitDataBundle bundle) {
     _bundle = bundle;
@@ -67,7 +71,7 @@ public class StopSearchServiceImpl implements StopSearchService {
 
   @PostConstruct
   @Refreshable(dependsOn = RefreshableResources.STOP_SEARCH_DATA)
-  public void initialize() throws IOException {
+  public void initialize() throws IOException, ClassNotFoundException {
     File path = _bundle.getStopSearchIndexPath();
 
     if (path.exists()) {
@@ -76,6 +80,14 @@ public class StopSearchServiceImpl implements StopSearchService {
     } else {
       _searcher = null;
     }
+
+    File autocompletePath = _bundle.getStopAutocompleteIndexPath();
+
+    if (autocompletePath.exists()) {
+      _autocompleteIndex = ObjectSerializationLibrary.readObject(autocompletePath);
+    } else {
+      _autocompleteIndex = AutocompleteIndex.EMPTY;
+    }
   }
 
   public SearchResult<AgencyAndId> searchForStopsByCode(String id,
@@ -92,6 +104,12 @@ public class StopSearchServiceImpl implements StopSearchService {
         maxResultCount, minScoreToKeep);
   }
 
+  @Override
+  public SearchResult<AgencyAndId> autocompleteStops(String input,
+      int maxResultCount) {
+    return _autocompleteIndex.search(input, maxResultCount);
+  }
+
   private SearchResult<AgencyAndId> search(QueryParser parser, String value,
                                            int maxResultCount, double minScoreToKeep) throws IOException,
       ParseException {
@@ -16,6 +16,7 @@
  */
 package org.onebusaway.transit_data_federation.impl.beans;
 
+import org.onebusaway.container.ConfigurationParameter;
 import org.onebusaway.gtfs.model.AgencyAndId;
 import org.onebusaway.gtfs.model.calendar.AgencyServiceInterval;
 import org.onebusaway.realtime.api.OccupancyStatus;
@@ -29,7 +30,6 @@ import org.onebusaway.transit_data.model.trips.TripStatusBean;
 import org.onebusaway.transit_data_federation.impl.realtime.apc.VehicleOccupancyRecordCache;
 import org.onebusaway.transit_data_federation.impl.realtime.gtfs_realtime.GtfsRealtimeNegativeArrivals;
 import org.onebusaway.transit_data_federation.model.TargetTime;
-import org.onebusaway.transit_data_federation.model.bundle.HistoricalRidership;
 import org.onebusaway.transit_data_federation.model.narrative.StopTimeNarrative;
 import org.onebusaway.transit_data_federation.model.narrative.TripNarrative;
 import org.onebusaway.transit_data_federation.services.*;
@@ -88,6 +88,8 @@ public class ArrivalsAndDeparturesBeanServiceImpl implements
   private RidershipService _ridershipService;
 
   private VehicleOccupancyRecordCache _vehicleOccupancyRecordCache;
+
+  private int _occupancySmoothingWindowInSeconds = 0;
   
   @Autowired
   public void setTransitGraphDao(TransitGraphDao transitGraphDao) {
@@ -126,6 +128,15 @@ public class ArrivalsAndDeparturesBeanServiceImpl implements
   @Autowired
   public void setVehicleOccupancyRecordCache(VehicleOccupancyRecordCache cache) { _vehicleOccupancyRecordCache = cache; }
 
+  /**
+   * Average occupancy over this many seconds of recent APC records when
+   * setting arrival occupancy.  Zero uses only the latest record.
+   */
+  @ConfigurationParameter
+  public void setOccupancySmoothingWindowInSeconds(int occupancySmoothingWindowInSeconds) {
+    _occupancySmoothingWindowInSeconds = occupancySmoothingWindowInSeconds;
+  }
+
   @Autowired
   public void setTripDetailsBeanService(
       TripDetailsBeanService tripDetailsBeanService) {
@@ -180,6 +191,26 @@ public class ArrivalsAndDeparturesBeanServiceImpl implements
   @Override
   public List<ArrivalAndDepartureBean> getArrivalsAndDeparturesByStopId(
       AgencyAndId stopId, ArrivalsAndDeparturesQueryBean query) {
+    return getArrivalsAndDeparturesByStopId(stopId, query, false);
+  }
+
+  @Override
+  public List<ArrivalSummaryBean> getArrivalSummariesByStopId(
+      AgencyAndId stopId, ArrivalsAndDeparturesQueryBean query) {
+
+    List<ArrivalAndDepartureBean> beans = getArrivalsAndDeparturesByStopId(
+        stopId, query, true);
+
+    List<ArrivalSummaryBean> summaries = new ArrayList<ArrivalSummaryBean>(
+        beans.size());
+    for (ArrivalAndDepartureBean bean : beans)
+      summaries.add(getBeanAsSummary(bean));
+    return summaries;
+  }
+
+  private List<ArrivalAndDepartureBean> getArrivalsAndDeparturesByStopId(
+      AgencyAndId stopId, ArrivalsAndDeparturesQueryBean query,
+      boolean summary) {
 
     StopEntry stop = _transitGraphDao.getStopEntryForId(stopId, true);
     
@@ -227,8 +258,8 @@ public class ArrivalsAndDeparturesBeanServiceImpl implements
         continue;
       
       ArrivalAndDepartureBean bean = getStopTimeInstanceAsBean(time, instance,
-          stopBeanCache, query.getServiceInterval());
-      applyBlockLocationToBean(instance, bean, time);
+          stopBeanCache, query.getServiceInterval(), summary);
+      applyBlockLocationToBean(instance, bean, time, summary);
       
       Boolean isNegativeScheduledArrivalsEnabled = _gtfsRealtimeNegativeArrivals.getShowNegativeScheduledArrivalByAgencyId(
           instance.getBlockTrip().getTrip().getId().getAgencyId());
@@ -237,7 +268,8 @@ public class ArrivalsAndDeparturesBeanServiceImpl implements
           && bean.getNumberOfStopsAway() < 0 && bean.getPredictedArrivalTime() <= 0)
         continue;
       
-      applySituationsToBean(time, instance, bean);
+      if (!summary)
+        applySituationsToBean(time, instance, bean);
       if (query.getSystemFilterChain().matches(bean) && query.getInstanceFilterChain().matches(bean)) {
         beans.add(bean);
       }
@@ -261,8 +293,8 @@ public class ArrivalsAndDeparturesBeanServiceImpl implements
     }
 
     ArrivalAndDepartureBean bean = getStopTimeInstanceAsBean(time, instance,
-        new HashMap<AgencyAndId, StopBean>(), serviceInterval);
-    applyBlockLocationToBean(instance, bean, time);
+        new HashMap<AgencyAndId, StopBean>(), serviceInterval, false);
+    applyBlockLocationToBean(instance, bean, time, false);
     applySituationsToBean(time, instance, bean);
     boolean hideCanceled = _arrivalAndDepartureService.getHideCanceledTrips();
     if (hideCanceled && TransitDataConstants.STATUS_CANCELED.equals(bean.getStatus())) {
@@ -305,10 +337,15 @@ public class ArrivalsAndDeparturesBeanServiceImpl implements
    * Private Methods
    ****/
 
+  /**
+   * @param summary if true, skip the parts of the bean that
+   *          {@link ArrivalSummaryBean} doesn't carry
+   */
   private ArrivalAndDepartureBean getStopTimeInstanceAsBean(long time,
                                                             ArrivalAndDepartureInstance instance,
                                                             Map<AgencyAndId, StopBean> stopBeanCache,
-                                                            AgencyServiceInterval serviceInterval) {
+                                                            AgencyServiceInterval serviceInterval,
+                                                            boolean summary) {
 
     ArrivalAndDepartureBean pab = new ArrivalAndDepartureBean();
 
@@ -375,6 +412,9 @@ public class ArrivalsAndDeparturesBeanServiceImpl implements
     pab.setScheduledTrack(instance.getScheduledTrack());
 
 
+    if (summary)
+      return pab;
+
     FrequencyEntry frequency = instance.getFrequencyLabel();
     pab.setFrequency(null);
     if (frequency != null) {
@@ -384,8 +424,8 @@ public class ArrivalsAndDeparturesBeanServiceImpl implements
     }
 
     if (_ridershipService != null) {
-      List<HistoricalRidership> occ = _ridershipService.getHistoricalRiderships(trip.getRoute().getId(), trip.getId(), stop.getId(), pab.getServiceDate());
-      if(occ != null && occ.size() > 0) pab.setHistoricalOccupancy(OccupancyStatus.toEnum(occ.get(0).getLoadFactor()));
+      double loadFactor = _ridershipService.getHistoricalLoadFactor(trip.getRoute().getId(), trip.getId(), stop.getId(), pab.getServiceDate());
+      if (!Double.isNaN(loadFactor)) pab.setHistoricalOccupancy(OccupancyStatus.toEnum(loadFactor));
     }
     return pab;
   }
@@ -418,7 +458,7 @@ public class ArrivalsAndDeparturesBeanServiceImpl implements
   }
 
   private void applyBlockLocationToBean(ArrivalAndDepartureInstance instance,
-      ArrivalAndDepartureBean bean, long targetTime) {
+      ArrivalAndDepartureBean bean, long targetTime, boolean summary) {
 
     boolean hasFrequency = instance.getFrequency() != null;
     boolean isCanceled = TransitDataConstants.STATUS_CANCELED.equals(instance.getStatus());
@@ -475,11 +515,12 @@ public class ArrivalsAndDeparturesBeanServiceImpl implements
 
     if (blockLocation.getVehicleId() != null && !isCanceled) {
       bean.setVehicleId(AgencyAndIdLibrary.convertToString(blockLocation.getVehicleId()));
-      if (_vehicleOccupancyRecordCache != null && blockLocation.getActiveTrip() != null) {
+      if (!summary && _vehicleOccupancyRecordCache != null && blockLocation.getActiveTrip() != null) {
         // be specific in our vehicle lookup -- we only want to apply occupancy if its the same route/direction
-        VehicleOccupancyRecord vor = _vehicleOccupancyRecordCache.getRecordForVehicleIdAndRoute(AgencyAndIdLibrary.convertFromString(bean.getVehicleId()),
+        VehicleOccupancyRecord vor = _vehicleOccupancyRecordCache.getSmoothedRecordForVehicleIdAndRoute(blockLocation.getVehicleId(),
                 blockLocation.getActiveTrip().getTrip().getRoute().getId().toString(),
-                blockLocation.getActiveTrip().getTrip().getDirectionId());
+                blockLocation.getActiveTrip().getTrip().getDirectionId(),
+                _occupancySmoothingWindowInSeconds);
         if (vor != null) {
           bean.setOccupancyStatus(vor.getOccupancyStatus());
           // while occupancy status is directly on the A/D bean
@@ -491,6 +532,9 @@ public class ArrivalsAndDeparturesBeanServiceImpl implements
 
     }
 
+    if (summary)
+      return;
+
     TripStatusBean tripStatusBean = _tripDetailsBeanService.getBlockLocationAsStatusBean(
         blockLocation, targetTime);
 
@@ -521,6 +565,39 @@ public class ArrivalsAndDeparturesBeanServiceImpl implements
       bean.setSituations(situations);
   }
 
+  private ArrivalSummaryBean getBeanAsSummary(ArrivalAndDepartureBean bean) {
+
+    ArrivalSummaryBean summary = new ArrivalSummaryBean();
+
+    TripBean trip = bean.getTrip();
+    if (trip != null) {
+      summary.setTripId(trip.getId());
+      if (trip.getRoute() != null) {
+        summary.setRouteId(trip.getRoute().getId());
+        summary.setRouteShortName(trip.getRoute().getShortName());
+      }
+      summary.setTripHeadsign(trip.getTripHeadsign());
+    }
+    if (bean.getRouteShortName() != null)
+      summary.setRouteShortName(bean.getRouteShortName());
+    if (bean.getTripHeadsign() != null)
+      summary.setTripHeadsign(bean.getTripHeadsign());
+    if (bean.getStop() != null)
+      summary.setStopId(bean.getStop().getId());
+
+    summary.setServiceDate(bean.getServiceDate());
+    summary.setStopSequence(bean.getStopSequence());
+    summary.setVehicleId(bean.getVehicleId());
+    summary.setPredicted(bean.isPredicted());
+    summary.setStatus(bean.getStatus());
+    summary.setScheduledArrivalTime(bean.getScheduledArrivalTime());
+    summary.setScheduledDepartureTime(bean.getScheduledDepartureTime());
+    summary.setPredictedArrivalTime(bean.getPredictedArrivalTime());
+    summary.setPredictedDepartureTime(bean.getPredictedDepartureTime());
+    summary.setNumberOfStopsAway(bean.getNumberOfStopsAway());
+    return summary;
+  }
+
   private boolean isArrivalAndDepartureInRange(
       ArrivalAndDepartureInstance instance, long timeFrom, long timeTo) {
 
@@ -145,6 +145,26 @@ class RoutesBeanServiceImpl implements RoutesBeanService {
     return new ListBean<RouteBean>(routes, false);
   }
 
+  @Override
+  public RoutesBean getRoutesForAutocomplete(String input, int maxCount) {
+    SearchResult<AgencyAndId> result = _searchService.autocompleteRoutes(
+        input, maxCount + 1);
+    List<RouteBean> routeBeans = new ArrayList<RouteBean>();
+    for (AgencyAndId id : result.getResults()) {
+      RouteBean routeBean = _routeBeanService.getRouteForId(id);
+      if (routeBean != null)
+        routeBeans.add(routeBean);
+    }
+    // truncate rather than shuffle, to keep the relevance ordering
+    boolean limitExceeded = routeBeans.size() > maxCount;
+    if (limitExceeded)
+      routeBeans = new ArrayList<RouteBean>(routeBeans.subList(0, maxCount));
+    RoutesBean routes = new RoutesBean();
+    routes.setRoutes(routeBeans);
+    routes.setLimitExceeded(limitExceeded);
+    return routes;
+  }
+
   /****
    * Private Methods
    ****/
@@ -35,6 +35,7 @@ import org.onebusaway.transit_data_federation.services.beans.ServiceAlertsBeanSe
 import org.onebusaway.transit_data_federation.services.beans.StopBeanService;
 import org.onebusaway.transit_data_federation.services.beans.StopWithArrivalsAndDeparturesBeanService;
 import org.onebusaway.util.AgencyAndIdLibrary;
+import org.onebusaway.util.tracing.RequestTracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -68,24 +69,31 @@ class StopWithArrivalsAndDeparturesBeanServiceImpl implements
     if (stop == null)
       return null;
 
-    List<ArrivalAndDepartureBean> arrivalsAndDepartures = _arrivalsAndDeparturesBeanService.getArrivalsAndDeparturesByStopId(
-        id, query);
+    List<ArrivalAndDepartureBean> arrivalsAndDepartures;
+    try (RequestTracer.Span span = RequestTracer.span("arrivalsAndDepartures")) {
+      arrivalsAndDepartures = _arrivalsAndDeparturesBeanService.getArrivalsAndDeparturesByStopId(
+          id, query);
+    }
 
-    List<AgencyAndId> nearbyStopIds = _nearbyStopsBeanService.getNearbyStops(
-        stop, 100);
     List<StopBean> nearbyStops = new ArrayList<StopBean>();
-    for (AgencyAndId nearbyStopId : nearbyStopIds)
-      nearbyStops.add(_stopBeanService.getStopForId(nearbyStopId, serviceInterval));
-
-    List<ServiceAlertBean> situations = _serviceAlertsBeanService.getServiceAlertsForStopId(
-        query.getTime(), id);
+    try (RequestTracer.Span span = RequestTracer.span("nearbyStops")) {
+      List<AgencyAndId> nearbyStopIds = _nearbyStopsBeanService.getNearbyStops(
+          stop, 100);
+      for (AgencyAndId nearbyStopId : nearbyStopIds)
+        nearbyStops.add(_stopBeanService.getStopForId(nearbyStopId, serviceInterval));
+    }
 
-    // looks for service alerts for schedules routes -- not just active service
-    Map<String, ServiceAlertBean> situationsById = new HashMap<String, ServiceAlertBean>();
-    findServiceAlertsForRouteIds(Collections.singletonList(stop), situationsById);
     Set<ServiceAlertBean> allSituations = new HashSet<>();
-    allSituations.addAll(situations);
-    allSituations.addAll(situationsById.values());
+    try (RequestTracer.Span span = RequestTracer.span("situations")) {
+      List<ServiceAlertBean> situations = _serviceAlertsBeanService.getServiceAlertsForStopId(
+          query.getTime(), id);
+
+      // looks for service alerts for schedules routes -- not just active service
+      Map<String, ServiceAlertBean> situationsById = new HashMap<String, ServiceAlertBean>();
+      findServiceAlertsForRouteIds(Collections.singletonList(stop), situationsById);
+      allSituations.addAll(situations);
+      allSituations.addAll(situationsById.values());
+    }
 
     return new StopWithArrivalsAndDeparturesBean(stop, arrivalsAndDepartures,
         nearbyStops, new ArrayList<>(allSituations));
@@ -116,6 +116,26 @@ class StopsBeanServiceImpl implements StopsBeanService {
     return constructResult(stopBeans, results.size() == MAX_STOPS);
   }
 
+  @Override
+  public StopsBean getStopsForAutocomplete(String input, int maxCount) {
+    SearchResult<AgencyAndId> results = _searchService.autocompleteStops(
+        input, maxCount + 1);
+    List<StopBean> stopBeans = new ArrayList<StopBean>();
+    for (AgencyAndId id : results.getResults()) {
+      StopBean stopBean = _stopBeanService.getStopForId(id, null);
+      if (stopBean != null)
+        stopBeans.add(stopBean);
+    }
+    // truncate rather than shuffle, to keep the relevance ordering
+    boolean limitExceeded = stopBeans.size() > maxCount;
+    if (limitExceeded)
+      stopBeans = new ArrayList<StopBean>(stopBeans.subList(0, maxCount));
+    StopsBean result = new StopsBean();
+    result.setStops(stopBeans);
+    result.setLimitExceeded(limitExceeded);
+    return result;
+  }
+
   private StopsBean getStopsByBounds(SearchQueryBean queryBean)
       throws ServiceException {
 
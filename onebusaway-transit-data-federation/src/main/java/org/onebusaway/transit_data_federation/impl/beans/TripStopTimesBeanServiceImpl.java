@@ -18,7 +18,6 @@ package org.onebusaway.transit_data_federation.impl.beans;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 import java.util.TimeZone;
 
 import org.onebusaway.gtfs.model.AgencyAndId;
@@ -28,7 +27,6 @@ import org.onebusaway.transit_data.model.TripStopTimeBean;
 import org.onebusaway.transit_data.model.TripStopTimesBean;
 import org.onebusaway.transit_data.model.schedule.FrequencyBean;
 import org.onebusaway.transit_data.model.trips.TripBean;
-import org.onebusaway.transit_data_federation.model.bundle.HistoricalRidership;
 import org.onebusaway.transit_data_federation.model.narrative.StopTimeNarrative;
 import org.onebusaway.transit_data_federation.services.AgencyService;
 import org.onebusaway.transit_data_federation.services.RidershipService;
@@ -107,10 +105,10 @@ public class TripStopTimesBeanServiceImpl implements TripStopTimesBeanService {
     }
 
     for (TripStopTimeBean st : bean.getStopTimes()) {
-      List<HistoricalRidership> rid = _ridershipService.getHistoricalRiderships(blockTrip.getTrip().getRoute().getId(), blockTrip.getTrip().getId(),
+      double loadFactor = _ridershipService.getHistoricalLoadFactor(blockTrip.getTrip().getRoute().getId(), blockTrip.getTrip().getId(),
           AgencyAndId.convertFromString(st.getStop().getId()), blockTripInstance.getServiceDate());
 
-      if(rid != null && rid.size() > 0) st.setHistoricalOccupancy(OccupancyStatus.toEnum(rid.get(0).getLoadFactor()));
+      if (!Double.isNaN(loadFactor)) st.setHistoricalOccupancy(OccupancyStatus.toEnum(loadFactor));
     }
 
     return bean;
@@ -152,8 +150,8 @@ public class TripStopTimesBeanServiceImpl implements TripStopTimesBeanService {
         stBean.setStopHeadsign(stopTimeNarrative.getStopHeadsign());
       }
 
-      List<HistoricalRidership> rid = _ridershipService.getHistoricalRiderships(trip.getRoute().getId(), trip.getId(), stopEntry.getId(), serviceDate);
-      if(rid != null && rid.size() > 0) stBean.setHistoricalOccupancy(OccupancyStatus.toEnum(rid.get(0).getLoadFactor()));
+      double loadFactor = _ridershipService.getHistoricalLoadFactor(trip.getRoute().getId(), trip.getId(), stopEntry.getId(), serviceDate);
+      if (!Double.isNaN(loadFactor)) stBean.setHistoricalOccupancy(OccupancyStatus.toEnum(loadFactor));
 
       bean.addStopTime(stBean);
     }
@@ -0,0 +1,280 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.impl.blocks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.onebusaway.transit_data_federation.services.blocks.BlockInstance;
+import org.onebusaway.transit_data_federation.services.blocks.InstanceState;
+import org.onebusaway.transit_data_federation.services.transit_graph.BlockConfigurationEntry;
+
+/**
+ * Materialized view of the block instances active within a fixed window of
+ * time, typically a day. Each entry is one trip, layover or frequency interval
+ * of a {@link BlockInstance}, held as its service date plus scheduled start
+ * and end times in seconds, exactly as the block indices store them.
+ * 
+ * Entries are sorted by start time, and for each minute bucket we keep the
+ * entries that started in an earlier bucket but are still active at the start
+ * of this one. A query then only touches the entries active at the start of
+ * the range plus those starting within it, rather than every index in the
+ * bundle.
+ * 
+ * Instances are immutable and safe to share between threads.
+ */
+final class ActiveBlocksTimeline {
+
+  static final long BUCKET_SIZE = 60 * 1000;
+
+  /**
+   * Entry times are in whole seconds past the service date, so we widen the
+   * candidate search by a second on either side and leave the exact test to
+   * {@link #isActive(int, long, long)}. Callers should likewise consult every
+   * timeline whose window overlaps the query range widened by this amount.
+   */
+  static final long SLACK = 1000;
+
+  private static final int[] EMPTY = new int[0];
+
+  private final long _windowFrom;
+
+  private final long _windowTo;
+
+  private final BlockInstance[] _instances;
+
+  private final long[] _serviceDates;
+
+  private final int[] _startTimes;
+
+  private final int[] _endTimes;
+
+  private final long[] _starts;
+
+  private final int[][] _carryOvers;
+
+  private ActiveBlocksTimeline(long windowFrom, long windowTo,
+      List<Entry> entries) {
+
+    _windowFrom = windowFrom;
+    _windowTo = windowTo;
+
+    Collections.sort(entries, new EntryStartComparator());
+
+    int n = entries.size();
+    _instances = new BlockInstance[n];
+    _serviceDates = new long[n];
+    _startTimes = new int[n];
+    _endTimes = new int[n];
+    _starts = new long[n];
+
+    for (int i = 0; i < n; i++) {
+      Entry entry = entries.get(i);
+      _instances[i] = entry.instance;
+      _serviceDates[i] = entry.serviceDate;
+      _startTimes[i] = entry.startTime;
+      _endTimes[i] = entry.endTime;
+      _starts[i] = entry.getStart();
+    }
+
+    int bucketCount = (int) ((windowTo - windowFrom + BUCKET_SIZE - 1) / BUCKET_SIZE);
+
+    int[] counts = new int[bucketCount];
+    for (int i = 0; i < n; i++) {
+      int from = getFirstCarryOverBucket(i);
+      int to = getLastCarryOverBucket(i, bucketCount);
+      for (int b = from; b <= to; b++)
+        counts[b]++;
+    }
+
+    _carryOvers = new int[bucketCount][];
+    for (int b = 0; b < bucketCount; b++) {
+      _carryOvers[b] = counts[b] == 0 ? EMPTY : new int[counts[b]];
+      counts[b] = 0;
+    }
+
+    for (int i = 0; i < n; i++) {
+      int from = getFirstCarryOverBucket(i);
+      int to = getLastCarryOverBucket(i, bucketCount);
+      for (int b = from; b <= to; b++)
+        _carryOvers[b][counts[b]++] = i;
+    }
+  }
+
+  public long getWindowFrom() {
+    return _windowFrom;
+  }
+
+  public long getWindowTo() {
+    return _windowTo;
+  }
+
+  public int size() {
+    return _instances.length;
+  }
+
+  /**
+   * Adds the block instances active in the specified time range to the result
+   * collection, with the same semantics as a scan of the underlying block
+   * indices. Only the portion of the range that falls within this timeline's
+   * window is considered.
+   */
+  public void getActiveBlocks(long timeFrom, long timeTo,
+      Collection<BlockInstance> results) {
+
+    long from = Math.max(timeFrom - SLACK, _windowFrom);
+    long to = Math.min(timeTo + SLACK, _windowTo - 1);
+
+    if (from > to)
+      return;
+
+    int bucket = (int) ((from - _windowFrom) / BUCKET_SIZE);
+    long bucketStart = _windowFrom + bucket * BUCKET_SIZE;
+
+    for (int index : _carryOvers[bucket]) {
+      if (isActive(index, timeFrom, timeTo))
+        results.add(_instances[index]);
+    }
+
+    for (int index = lowerBound(bucketStart); index < _starts.length
+        && _starts[index] <= to; index++) {
+      if (isActive(index, timeFrom, timeTo))
+        results.add(_instances[index]);
+    }
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private boolean isActive(int index, long timeFrom, long timeTo) {
+    long serviceDate = _serviceDates[index];
+    int scheduledTimeFrom = (int) ((timeFrom - serviceDate) / 1000);
+    int scheduledTimeTo = (int) ((timeTo - serviceDate) / 1000);
+    return _endTimes[index] >= scheduledTimeFrom
+        && _startTimes[index] < scheduledTimeTo;
+  }
+
+  private int lowerBound(long time) {
+    int low = 0;
+    int high = _starts.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (_starts[mid] < time)
+        low = mid + 1;
+      else
+        high = mid;
+    }
+    return low;
+  }
+
+  /**
+   * @return the first bucket that begins strictly after the entry starts
+   */
+  private int getFirstCarryOverBucket(int index) {
+    long start = _starts[index];
+    if (start < _windowFrom)
+      return 0;
+    return (int) ((start - _windowFrom) / BUCKET_SIZE) + 1;
+  }
+
+  /**
+   * @return the last bucket that begins at or before the entry ends
+   */
+  private int getLastCarryOverBucket(int index, int bucketCount) {
+    long end = _serviceDates[index] + _endTimes[index] * 1000L + SLACK;
+    long bucket = (end - _windowFrom) / BUCKET_SIZE;
+    return (int) Math.min(bucket, bucketCount - 1);
+  }
+
+  /****
+   * Builder
+   ****/
+
+  public static Builder builder(long windowFrom, long windowTo) {
+    return new Builder(windowFrom, windowTo);
+  }
+
+  public static class Builder {
+
+    private final long _windowFrom;
+
+    private final long _windowTo;
+
+    private final List<Entry> _entries = new ArrayList<Entry>();
+
+    private Builder(long windowFrom, long windowTo) {
+      _windowFrom = windowFrom;
+      _windowTo = windowTo;
+    }
+
+    /**
+     * @param block the block configuration
+     * @param state the instance state, including the service date
+     * @param startTime start of the active interval, in seconds since the
+     *          service date
+     * @param endTime end of the active interval, in seconds since the service
+     *          date
+     */
+    public void addEntry(BlockConfigurationEntry block, InstanceState state,
+        int startTime, int endTime) {
+      long serviceDate = state.getServiceDate();
+      long start = serviceDate + startTime * 1000L;
+      long end = serviceDate + endTime * 1000L;
+      if (end + SLACK < _windowFrom || start - SLACK >= _windowTo)
+        return;
+      _entries.add(new Entry(new BlockInstance(block, state), serviceDate,
+          startTime, endTime));
+    }
+
+    public ActiveBlocksTimeline create() {
+      return new ActiveBlocksTimeline(_windowFrom, _windowTo, _entries);
+    }
+  }
+
+  private static class Entry {
+
+    private final BlockInstance instance;
+
+    private final long serviceDate;
+
+    private final int startTime;
+
+    private final int endTime;
+
+    public Entry(BlockInstance instance, long serviceDate, int startTime,
+        int endTime) {
+      this.instance = instance;
+      this.serviceDate = serviceDate;
+      this.startTime = startTime;
+      this.endTime = endTime;
+    }
+
+    public long getStart() {
+      return serviceDate + startTime * 1000L;
+    }
+  }
+
+  private static class EntryStartComparator implements Comparator<Entry> {
+    @Override
+    public int compare(Entry o1, Entry o2) {
+      return Long.compare(o1.getStart(), o2.getStart());
+    }
+  }
+}
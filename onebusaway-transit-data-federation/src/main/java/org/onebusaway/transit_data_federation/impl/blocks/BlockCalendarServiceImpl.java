@@ -27,8 +27,10 @@ import java.util.Set;
 
 import org.onebusaway.collections.Min;
 import org.onebusaway.container.cache.Cacheable;
+import org.onebusaway.container.refresh.Refreshable;
 import org.onebusaway.gtfs.model.AgencyAndId;
 import org.onebusaway.gtfs.model.calendar.ServiceInterval;
+import org.onebusaway.transit_data_federation.impl.RefreshableResources;
 import org.onebusaway.transit_data_federation.model.transit_graph.DynamicGraph;
 import org.onebusaway.transit_data_federation.services.ExtendedCalendarService;
 import org.onebusaway.transit_data_federation.services.blocks.BlockCalendarService;
@@ -50,9 +52,26 @@ import org.onebusaway.transit_data_federation.services.transit_graph.dynamic.Dyn
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
 @Component
 class BlockCalendarServiceImpl implements BlockCalendarService {
 
+  /**
+   * Width of each lazily materialized {@link ActiveBlocksTimeline}
+   */
+  private static final long TIMELINE_WINDOW = 24 * 60 * 60 * 1000L;
+
+  /**
+   * Queries spanning more timeline windows than this fall back to scanning the
+   * block indices directly
+   */
+  private static final int MAX_TIMELINE_WINDOWS_PER_QUERY = 2;
+
+  private static final int MAX_TIMELINES = 32;
+
   private ExtendedCalendarService _calendarService;
 
   private BlockIndexService _blockIndexService;
@@ -61,6 +80,21 @@ class BlockCalendarServiceImpl implements BlockCalendarService {
 
   private DynamicGraph _dynamicGraph;
 
+  private boolean _useActiveBlocksTimeline = true;
+
+  /**
+   * Timelines for the full set of static block indices (keyed with a null
+   * agency id) and for individual agencies, built on first use and shared
+   * across queries.
+   */
+  private final LoadingCache<TimelineKey, ActiveBlocksTimeline> _timelines = CacheBuilder.newBuilder().maximumSize(
+      MAX_TIMELINES).build(new CacheLoader<TimelineKey, ActiveBlocksTimeline>() {
+    @Override
+    public ActiveBlocksTimeline load(TimelineKey key) {
+      return createTimeline(key);
+    }
+  });
+
   @Autowired
   public void setCalendarService(ExtendedCalendarService calendarService) {
     _calendarService = calendarService;
@@ -80,6 +114,22 @@ class BlockCalendarServiceImpl implements BlockCalendarService {
   public void setDynamicGraph(DynamicGraph dynamicGraph) {
     _dynamicGraph = dynamicGraph;
   }
+
+  /**
+   * When true (the default), agency-wide and bundle-wide active block queries
+   * are answered from per-day {@link ActiveBlocksTimeline} views rather than
+   * by scanning every block index.
+   */
+  public void setUseActiveBlocksTimeline(boolean useActiveBlocksTimeline) {
+    _useActiveBlocksTimeline = useActiveBlocksTimeline;
+  }
+
+  @Refreshable(dependsOn = {
+      RefreshableResources.CALENDAR_DATA,
+      RefreshableResources.BLOCK_INDEX_SERVICE})
+  public void clearActiveBlocksTimelines() {
+    _timelines.invalidateAll();
+  }
   /****
    * {@link BlockCalendarService} Interface
    ****/
@@ -172,6 +222,10 @@ class BlockCalendarServiceImpl implements BlockCalendarService {
   @Override
   public List<BlockInstance> getActiveBlocksInTimeRange(long timeFrom,
       long timeTo) {
+    List<BlockInstance> instances = getActiveBlocksFromTimelines(null,
+        timeFrom, timeTo);
+    if (instances != null)
+      return instances;
     List<BlockTripIndex> indices = _blockIndexService.getBlockTripIndices();
     List<BlockLayoverIndex> layoverIndices = _blockIndexService.getBlockLayoverIndices();
     List<FrequencyBlockTripIndex> frequencyIndices = _blockIndexService.getFrequencyBlockTripIndices();
@@ -182,6 +236,10 @@ class BlockCalendarServiceImpl implements BlockCalendarService {
   @Override
   public List<BlockInstance> getActiveBlocksForAgencyInTimeRange(
       String agencyId, long timeFrom, long timeTo) {
+    List<BlockInstance> instances = getActiveBlocksFromTimelines(agencyId,
+        timeFrom, timeTo);
+    if (instances != null)
+      return instances;
     List<BlockTripIndex> indices = _blockIndexService.getBlockTripIndicesForAgencyId(agencyId);
     List<BlockLayoverIndex> layoverIndices = _blockIndexService.getBlockLayoverIndicesForAgencyId(agencyId);
     List<FrequencyBlockTripIndex> frequencyIndices = _blockIndexService.getFrequencyBlockTripIndicesForAgencyId(agencyId);
@@ -224,6 +282,115 @@ class BlockCalendarServiceImpl implements BlockCalendarService {
    * Private Methods
    ****/
 
+  /**
+   * @return the active block instances, or null if the query should be
+   *         answered by scanning the block indices instead
+   */
+  private List<BlockInstance> getActiveBlocksFromTimelines(String agencyId,
+      long timeFrom, long timeTo) {
+
+    if (!_useActiveBlocksTimeline || timeFrom > timeTo)
+      return null;
+
+    long windowFrom = (timeFrom - ActiveBlocksTimeline.SLACK) / TIMELINE_WINDOW;
+    long windowTo = (timeTo + ActiveBlocksTimeline.SLACK) / TIMELINE_WINDOW;
+
+    if (windowFrom < 0
+        || windowTo - windowFrom + 1 > MAX_TIMELINE_WINDOWS_PER_QUERY)
+      return null;
+
+    Set<BlockInstance> instances = new HashSet<BlockInstance>();
+    for (long window = windowFrom; window <= windowTo; window++) {
+      ActiveBlocksTimeline timeline = _timelines.getUnchecked(new TimelineKey(
+          agencyId, window));
+      timeline.getActiveBlocks(timeFrom, timeTo, instances);
+    }
+    return new ArrayList<BlockInstance>(instances);
+  }
+
+  private ActiveBlocksTimeline createTimeline(TimelineKey key) {
+
+    long windowFrom = key.getWindow() * TIMELINE_WINDOW;
+    long windowTo = windowFrom + TIMELINE_WINDOW;
+
+    List<BlockTripIndex> indices;
+    List<BlockLayoverIndex> layoverIndices;
+    List<FrequencyBlockTripIndex> frequencyIndices;
+
+    String agencyId = key.getAgencyId();
+    if (agencyId == null) {
+      indices = _blockIndexService.getBlockTripIndices();
+      layoverIndices = _blockIndexService.getBlockLayoverIndices();
+      frequencyIndices = _blockIndexService.getFrequencyBlockTripIndices();
+    } else {
+      indices = _blockIndexService.getBlockTripIndicesForAgencyId(agencyId);
+      layoverIndices = _blockIndexService.getBlockLayoverIndicesForAgencyId(agencyId);
+      frequencyIndices = _blockIndexService.getFrequencyBlockTripIndicesForAgencyId(agencyId);
+    }
+
+    ActiveBlocksTimeline.Builder builder = ActiveBlocksTimeline.builder(
+        windowFrom, windowTo);
+
+    Date dateFrom = new Date(windowFrom - ActiveBlocksTimeline.SLACK);
+    Date dateTo = new Date(windowTo + ActiveBlocksTimeline.SLACK);
+
+    if (indices != null) {
+      for (BlockTripIndex index : indices) {
+        ServiceIntervalBlock intervals = index.getServiceIntervalBlock();
+        Collection<Date> serviceDates = _calendarService.getServiceDatesWithinRange(
+            index.getServiceIds(), intervals.getRange(), dateFrom, dateTo);
+        List<BlockTripEntry> trips = index.getTrips();
+        int[] minArrivals = intervals.getMinArrivals();
+        int[] maxDepartures = intervals.getMaxDepartures();
+        for (Date serviceDate : serviceDates) {
+          InstanceState state = new InstanceState(serviceDate.getTime());
+          for (int i = 0; i < trips.size(); i++)
+            builder.addEntry(trips.get(i).getBlockConfiguration(), state,
+                minArrivals[i], maxDepartures[i]);
+        }
+      }
+    }
+
+    if (layoverIndices != null) {
+      for (BlockLayoverIndex index : layoverIndices) {
+        LayoverIntervalBlock intervals = index.getLayoverIntervalBlock();
+        Collection<Date> serviceDates = _calendarService.getServiceDatesWithinRange(
+            index.getServiceIds(), intervals.getRange(), dateFrom, dateTo);
+        List<BlockTripEntry> trips = index.getTrips();
+        int[] startTimes = intervals.getStartTimes();
+        int[] endTimes = intervals.getEndTimes();
+        for (Date serviceDate : serviceDates) {
+          InstanceState state = new InstanceState(serviceDate.getTime());
+          for (int i = 0; i < trips.size(); i++)
+            builder.addEntry(trips.get(i).getBlockConfiguration(), state,
+                startTimes[i], endTimes[i]);
+        }
+      }
+    }
+
+    if (frequencyIndices != null) {
+      for (FrequencyBlockTripIndex index : frequencyIndices) {
+        FrequencyServiceIntervalBlock intervals = index.getServiceIntervalBlock();
+        Collection<Date> serviceDates = _calendarService.getServiceDatesWithinRange(
+            index.getServiceIds(), intervals.getRange(), dateFrom, dateTo);
+        List<BlockTripEntry> trips = index.getTrips();
+        List<FrequencyEntry> frequencies = index.getFrequencies();
+        int[] startTimes = intervals.getStartTimes();
+        int[] endTimes = intervals.getEndTimes();
+        for (Date serviceDate : serviceDates) {
+          for (int i = 0; i < trips.size(); i++) {
+            InstanceState state = new InstanceState(serviceDate.getTime(),
+                frequencies.get(i));
+            builder.addEntry(trips.get(i).getBlockConfiguration(), state,
+                startTimes[i], endTimes[i]);
+          }
+        }
+      }
+    }
+
+    return builder.create();
+  }
+
   private boolean allServiceIdsAreActiveForServiceDate(
       BlockConfigurationEntry configuration, Date serviceDate) {
 
@@ -430,4 +597,48 @@ class BlockCalendarServiceImpl implements BlockCalendarService {
     return index;
   }
 
+  private static class TimelineKey {
+
+    private final String _agencyId;
+
+    private final long _window;
+
+    public TimelineKey(String agencyId, long window) {
+      _agencyId = agencyId;
+      _window = window;
+    }
+
+    public String getAgencyId() {
+      return _agencyId;
+    }
+
+    public long getWindow() {
+      return _window;
+    }
+
+    @Override
+    public int hashCode() {
+      final int prime = 31;
+      int result = 1;
+      result = prime * result + ((_agencyId == null) ? 0 : _agencyId.hashCode());
+      result = prime * result + (int) (_window ^ (_window >>> 32));
+      return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if (obj == null || getClass() != obj.getClass())
+        return false;
+      TimelineKey other = (TimelineKey) obj;
+      if (_agencyId == null) {
+        if (other._agencyId != null)
+          return false;
+      } else if (!_agencyId.equals(other._agencyId))
+        return false;
+      return _window == other._window;
+    }
+  }
+
 }
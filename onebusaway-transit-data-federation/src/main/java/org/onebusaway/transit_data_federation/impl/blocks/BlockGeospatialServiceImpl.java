@@ -33,7 +33,6 @@ import org.locationtech.jts.index.strtree.STRtree;
 import org.onebusaway.collections.CollectionsLibrary;
 import org.onebusaway.collections.MappingLibrary;
 import org.onebusaway.collections.Min;
-import org.onebusaway.collections.tuple.T2;
 import org.onebusaway.container.refresh.Refreshable;
 import org.onebusaway.geospatial.model.CoordinateBounds;
 import org.onebusaway.geospatial.model.CoordinatePoint;
@@ -44,6 +43,7 @@ import org.onebusaway.transit_data_federation.impl.RefreshableResources;
 import org.onebusaway.transit_data_federation.impl.shapes.PointAndIndex;
 import org.onebusaway.transit_data_federation.impl.shapes.ShapePointsLibrary;
 import org.onebusaway.transit_data_federation.model.ProjectedPoint;
+import org.onebusaway.transit_data_federation.model.ShapeSegmentIndex;
 import org.onebusaway.transit_data_federation.services.FederatedTransitDataBundle;
 import org.onebusaway.transit_data_federation.services.blocks.BlockCalendarService;
 import org.onebusaway.transit_data_federation.services.blocks.BlockGeospatialService;
@@ -213,16 +213,15 @@ class BlockGeospatialServiceImpl implements BlockGeospatialService {
     List<AgencyAndId> shapePointIds = MappingLibrary.map(block.getTrips(),
         "trip.shapeId");
 
-    T2<List<XYPoint>, double[]> tuple = _projectedShapePointService.getProjectedShapePoints(
+    ShapeSegmentIndex segmentIndex = _projectedShapePointService.getShapeSegmentIndex(
         shapePointIds, targetPoint.getSrid());
 
-    if (tuple == null) {
+    if (segmentIndex == null) {
       throw new IllegalStateException("block had no shape points: "
           + block.getBlock().getId());
     }
 
-    List<XYPoint> projectedShapePoints = tuple.getFirst();
-    double[] distances = tuple.getSecond();
+    double[] distances = segmentIndex.getDistances();
 
     int fromIndex = 0;
     int toIndex = distances.length;
@@ -250,7 +249,7 @@ class BlockGeospatialServiceImpl implements BlockGeospatialService {
     XYPoint xyPoint = new XYPoint(targetPoint.getX(), targetPoint.getY());
 
     List<PointAndIndex> assignments = _shapePointsLibrary.computePotentialAssignments(
-        projectedShapePoints, distances, xyPoint, fromIndex, toIndex);
+        segmentIndex, xyPoint, fromIndex, toIndex);
 
     Min<ScheduledBlockLocation> best = new Min<ScheduledBlockLocation>();
 
@@ -93,6 +93,8 @@ public class BundleManagementServiceImpl implements BundleManagementService {
   
   protected boolean _builderMode = false;
 
+  protected int _bundleLoadThreads = 1;
+
   protected boolean _bundleIsReady = false;
 
   protected String _currentBundleId = null;
@@ -283,6 +285,15 @@ public class BundleManagementServiceImpl implements BundleManagementService {
   public void setBuilderMode(boolean builderMode) {
     _builderMode = builderMode;
   }
+
+  /**
+   * Number of threads used to refresh independent bundle resources after the
+   * transit graph is loaded.  The default of 1 refreshes them one after
+   * another on the bundle change thread.
+   */
+  public void setBundleLoadThreads(int bundleLoadThreads) {
+    _bundleLoadThreads = bundleLoadThreads;
+  }
   
   /********************
    * Service Methods
@@ -422,17 +433,7 @@ public class BundleManagementServiceImpl implements BundleManagementService {
       // give child classes a chance to do work here
       timingHook();
 
-      _refreshService.refresh(RefreshableResources.CALENDAR_DATA);
-      _refreshService.refresh(RefreshableResources.ROUTE_COLLECTIONS_DATA);
-      _refreshService
-          .refresh(RefreshableResources.ROUTE_COLLECTION_SEARCH_DATA);
-      _refreshService.refresh(RefreshableResources.STOP_SEARCH_DATA);
-      _refreshService.refresh(RefreshableResources.BLOCK_INDEX_DATA);
-      _refreshService.refresh(RefreshableResources.BLOCK_INDEX_SERVICE);
-      _refreshService.refresh(RefreshableResources.SHAPE_GEOSPATIAL_INDEX);
-      _refreshService.refresh(RefreshableResources.STOP_GEOSPATIAL_INDEX);
-      _refreshService.refresh(RefreshableResources.NARRATIVE_DATA);
-      _refreshService.refresh(RefreshableResources.STOP_CONSOLIDATION_FILE);
+      createBundleLoader().refresh(_refreshService);
 
     } catch (Exception e) {
       _log.error("Bundle " + bundleName + "(" + bundleId + ")"
@@ -466,6 +467,33 @@ public class BundleManagementServiceImpl implements BundleManagementService {
     return;
   }
 
+  /**
+   * The resources refreshed after the transit graph, with the dependencies
+   * between them.  Everything else reads the transit graph, which is already
+   * loaded.  Block index data is built against the calendar, and the block
+   * index service shares listeners with both the calendar and the shape
+   * index.  Narrative data listeners look up route collections.
+   */
+  protected ParallelBundleLoader createBundleLoader() {
+    ParallelBundleLoader loader = new ParallelBundleLoader();
+    loader.setThreadCount(_bundleLoadThreads);
+    loader.addResource(RefreshableResources.CALENDAR_DATA);
+    loader.addResource(RefreshableResources.ROUTE_COLLECTIONS_DATA);
+    loader.addResource(RefreshableResources.ROUTE_COLLECTION_SEARCH_DATA);
+    loader.addResource(RefreshableResources.STOP_SEARCH_DATA);
+    loader.addResource(RefreshableResources.BLOCK_INDEX_DATA,
+        RefreshableResources.CALENDAR_DATA);
+    loader.addResource(RefreshableResources.BLOCK_INDEX_SERVICE,
+        RefreshableResources.BLOCK_INDEX_DATA);
+    loader.addResource(RefreshableResources.SHAPE_GEOSPATIAL_INDEX,
+        RefreshableResources.BLOCK_INDEX_SERVICE);
+    loader.addResource(RefreshableResources.STOP_GEOSPATIAL_INDEX);
+    loader.addResource(RefreshableResources.NARRATIVE_DATA,
+        RefreshableResources.ROUTE_COLLECTIONS_DATA);
+    loader.addResource(RefreshableResources.STOP_CONSOLIDATION_FILE);
+    return loader;
+  }
+
   // some kind of event notification system camsys setup?
   protected void timingHook() {
   }
@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.impl.bundle;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.onebusaway.container.refresh.RefreshService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Refreshes a set of bundle resources through the {@link RefreshService},
+ * running resources whose dependencies have completed concurrently.  Every
+ * listener of a resource still runs on one thread, in registration order, so
+ * only resources that don't share state with each other should be left
+ * without a dependency between them.  Two resources that share a listener
+ * method (a method that is {@code @Refreshable} on both) must be ordered, or
+ * the listener could run twice at once.
+ * 
+ * With a single thread, resources are refreshed on the calling thread in the
+ * order they were added.
+ */
+public class ParallelBundleLoader {
+
+  private static Logger _log = LoggerFactory.getLogger(ParallelBundleLoader.class);
+
+  private static final ThreadMXBean _threads = ManagementFactory.getThreadMXBean();
+
+  private final Map<String, List<String>> _dependenciesByResource = new LinkedHashMap<String, List<String>>();
+
+  private int _threadCount = 1;
+
+  private volatile List<ResourceLoad> _lastLoads = Collections.emptyList();
+
+  public void setThreadCount(int threadCount) {
+    if (threadCount < 1)
+      throw new IllegalArgumentException("threadCount must be positive");
+    _threadCount = threadCount;
+  }
+
+  /**
+   * @param resource a {@link RefreshService} resource name
+   * @param dependsOn resources that must be refreshed first; each must have
+   *          already been added
+   */
+  public void addResource(String resource, String... dependsOn) {
+    for (String dependency : dependsOn) {
+      if (!_dependenciesByResource.containsKey(dependency))
+        throw new IllegalArgumentException("resource " + resource
+            + " depends on unknown resource " + dependency);
+    }
+    _dependenciesByResource.put(resource, Arrays.asList(dependsOn));
+  }
+
+  /**
+   * @return timings from the most recent call to {@link #refresh}, in
+   *         completion order
+   */
+  public List<ResourceLoad> getLastLoads() {
+    return _lastLoads;
+  }
+
+  public void refresh(final RefreshService refreshService) throws Exception {
+
+    long heapBefore = getUsedHeap();
+    long t0 = System.currentTimeMillis();
+    final List<ResourceLoad> loads = Collections.synchronizedList(new ArrayList<ResourceLoad>());
+
+    if (_threadCount == 1) {
+      for (String resource : _dependenciesByResource.keySet())
+        loads.add(refreshResource(refreshService, resource));
+    } else {
+      ExecutorService executor = Executors.newFixedThreadPool(_threadCount,
+          new LoaderThreadFactory());
+      try {
+        Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<String, CompletableFuture<Void>>();
+        for (Map.Entry<String, List<String>> entry : _dependenciesByResource.entrySet()) {
+          final String resource = entry.getKey();
+          List<CompletableFuture<Void>> dependencies = new ArrayList<CompletableFuture<Void>>();
+          for (String dependency : entry.getValue())
+            dependencies.add(futures.get(dependency));
+          CompletableFuture<Void> future = CompletableFuture.allOf(
+              dependencies.toArray(new CompletableFuture[dependencies.size()])).thenRunAsync(
+              new Runnable() {
+                @Override
+                public void run() {
+                  loads.add(refreshResource(refreshService, resource));
+                }
+              }, executor);
+          futures.put(resource, future);
+        }
+        CompletableFuture.allOf(
+            futures.values().toArray(new CompletableFuture[futures.size()])).join();
+      } catch (CompletionException ex) {
+        Throwable cause = ex.getCause();
+        if (cause instanceof Exception)
+          throw (Exception) cause;
+        throw ex;
+      } finally {
+        executor.shutdown();
+      }
+    }
+
+    _lastLoads = new ArrayList<ResourceLoad>(loads);
+    _log.info("refreshed " + loads.size() + " bundle resources in "
+        + (System.currentTimeMillis() - t0) + " ms with " + _threadCount
+        + " thread(s), heap used " + toMegabytes(heapBefore) + " MB -> "
+        + toMegabytes(getUsedHeap()) + " MB");
+  }
+
+  private ResourceLoad refreshResource(RefreshService refreshService,
+      String resource) {
+    long allocatedBefore = getCurrentThreadAllocatedBytes();
+    long t0 = System.currentTimeMillis();
+    refreshService.refresh(resource);
+    ResourceLoad load = new ResourceLoad(resource,
+        System.currentTimeMillis() - t0,
+        allocatedBefore < 0 ? -1 : getCurrentThreadAllocatedBytes()
+            - allocatedBefore);
+    _log.info("refreshed " + resource + " in " + load.getMillis()
+        + " ms, allocated " + toMegabytes(load.getAllocatedBytes()) + " MB");
+    return load;
+  }
+
+  private static long getUsedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static long getCurrentThreadAllocatedBytes() {
+    if (!(_threads instanceof com.sun.management.ThreadMXBean))
+      return -1;
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) _threads;
+    if (!threads.isThreadAllocatedMemorySupported()
+        || !threads.isThreadAllocatedMemoryEnabled())
+      return -1;
+    return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static long toMegabytes(long bytes) {
+    return bytes < 0 ? -1 : bytes / (1024 * 1024);
+  }
+
+  public static class ResourceLoad {
+
+    private final String resource;
+
+    private final long millis;
+
+    private final long allocatedBytes;
+
+    public ResourceLoad(String resource, long millis, long allocatedBytes) {
+      this.resource = resource;
+      this.millis = millis;
+      this.allocatedBytes = allocatedBytes;
+    }
+
+    public String getResource() {
+      return resource;
+    }
+
+    public long getMillis() {
+      return millis;
+    }
+
+    /**
+     * @return bytes allocated while refreshing the resource, or -1 if the JVM
+     *         doesn't support allocation accounting
+     */
+    public long getAllocatedBytes() {
+      return allocatedBytes;
+    }
+  }
+
+  private static class LoaderThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger _count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "bundle-loader-" + _count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -47,6 +47,7 @@ import org.onebusaway.transit_data.model.problems.TripProblemReportQueryBean;
 import org.onebusaway.transit_data.model.problems.TripProblemReportSummaryBean;
 import org.onebusaway.transit_data.model.realtime.CurrentVehicleEstimateBean;
 import org.onebusaway.transit_data.model.realtime.CurrentVehicleEstimateQueryBean;
+import org.onebusaway.transit_data.model.realtime.RealtimeDeltasBean;
 import org.onebusaway.transit_data.model.realtime.VehicleLocationRecordBean;
 import org.onebusaway.transit_data.model.realtime.VehicleLocationRecordQueryBean;
 import org.onebusaway.transit_data.model.service_alerts.ServiceAlertBean;
@@ -162,6 +163,13 @@ public class TransitDataServiceImpl implements TransitDataService {
     return _transitDataService.getStopsByName(stopName);
   }
 
+  @Override
+  public StopsBean getStopsForAutocomplete(String input, int maxCount)
+      throws ServiceException {
+    blockUntilBundleIsReady();
+    return _transitDataService.getStopsForAutocomplete(input, maxCount);
+  }
+
     @Override
   public StopBean getStop(String stopId) throws ServiceException {
     blockUntilBundleIsReady();
@@ -201,6 +209,14 @@ public class TransitDataServiceImpl implements TransitDataService {
         stopId, query, serviceInterval);
   }
 
+  @Override
+  public ListBean<ArrivalSummaryBean> getArrivalSummariesForStop(
+      String stopId, ArrivalsAndDeparturesQueryBean query)
+      throws ServiceException {
+    blockUntilBundleIsReady();
+    return _transitDataService.getArrivalSummariesForStop(stopId, query);
+  }
+
   @Override
   public StopsWithArrivalsAndDeparturesBean getStopsWithArrivalsAndDepartures(
       Collection<String> stopIds, ArrivalsAndDeparturesQueryBean query, AgencyServiceInterval serviceInterval)
@@ -371,6 +387,13 @@ public class TransitDataServiceImpl implements TransitDataService {
     return _transitDataService.getRoutes(query);
   }
 
+  @Override
+  public RoutesBean getRoutesForAutocomplete(String input, int maxCount)
+      throws ServiceException {
+    blockUntilBundleIsReady();
+    return _transitDataService.getRoutesForAutocomplete(input, maxCount);
+  }
+
   @Override
   public EncodedPolylineBean getShapeForId(String shapeId) {
     blockUntilBundleIsReady();
@@ -383,6 +406,13 @@ public class TransitDataServiceImpl implements TransitDataService {
     return _transitDataService.getShapeIdsForAgencyId(agencyId);
   }
 
+  @Override
+  public RealtimeDeltasBean getRealtimeDeltas(String agencyId,
+      long afterSequence, int maxCount) {
+    blockUntilBundleIsReady();
+    return _transitDataService.getRealtimeDeltas(agencyId, afterSequence, maxCount);
+  }
+
   @Override
   public ListBean<CurrentVehicleEstimateBean> getCurrentVehicleEstimates(
       CurrentVehicleEstimateQueryBean query) {
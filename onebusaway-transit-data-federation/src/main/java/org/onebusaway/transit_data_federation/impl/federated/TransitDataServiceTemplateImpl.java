@@ -37,6 +37,7 @@ import org.onebusaway.transit_data.model.config.BundleMetadata;
 import org.onebusaway.transit_data.model.problems.*;
 import org.onebusaway.transit_data.model.realtime.CurrentVehicleEstimateBean;
 import org.onebusaway.transit_data.model.realtime.CurrentVehicleEstimateQueryBean;
+import org.onebusaway.transit_data.model.realtime.RealtimeDeltasBean;
 import org.onebusaway.transit_data.model.realtime.VehicleLocationRecordBean;
 import org.onebusaway.transit_data.model.realtime.VehicleLocationRecordQueryBean;
 import org.onebusaway.transit_data.model.service_alerts.ServiceAlertBean;
@@ -52,6 +53,7 @@ import org.onebusaway.transit_data_federation.services.blocks.BlockCalendarServi
 import org.onebusaway.transit_data_federation.services.blocks.BlockInstance;
 import org.onebusaway.transit_data_federation.services.bundle.TransitDataServiceTemplate;
 import org.onebusaway.transit_data_federation.services.realtime.CurrentVehicleEstimationService;
+import org.onebusaway.transit_data_federation.services.realtime.RealtimeDeltaService;
 import org.onebusaway.transit_data_federation.services.reporting.UserReportingService;
 import org.onebusaway.transit_data_federation.services.transit_graph.StopEntry;
 import org.onebusaway.transit_data_federation.services.transit_graph.TransitGraphDao;
@@ -127,6 +129,9 @@ public class TransitDataServiceTemplateImpl implements TransitDataServiceTemplat
   @Autowired
   private CurrentVehicleEstimationService _currentVehicleEstimateService;
 
+  @Autowired
+  private RealtimeDeltaService _realtimeDeltaService;
+
   @Autowired
   private VehicleStatusBeanService _vehicleStatusBeanService;
 
@@ -248,6 +253,12 @@ public class TransitDataServiceTemplateImpl implements TransitDataServiceTemplat
     return _stopsBeanService.getStopsByName(stopName);
   }
 
+  //@Override
+  public StopsBean getStopsForAutocomplete(String input, int maxCount)
+      throws ServiceException {
+    return _stopsBeanService.getStopsForAutocomplete(input, maxCount);
+  }
+
 
   //@Override
   public StopBean getStop(String stopId) throws ServiceException {
@@ -290,6 +301,17 @@ public class TransitDataServiceTemplateImpl implements TransitDataServiceTemplat
         id, query, serviceInterval);
   }
 
+  //@Override
+  public ListBean<ArrivalSummaryBean> getArrivalSummariesForStop(
+      String stopId, ArrivalsAndDeparturesQueryBean query)
+      throws ServiceException {
+
+    AgencyAndId id = convertAgencyAndId(stopId);
+    List<ArrivalSummaryBean> summaries = _arrivalsAndDeparturesBeanService.getArrivalSummariesByStopId(
+        id, query);
+    return new ListBean<ArrivalSummaryBean>(summaries, false);
+  }
+
   //@Override
   public StopsWithArrivalsAndDeparturesBean getStopsWithArrivalsAndDepartures(
       Collection<String> stopIds, ArrivalsAndDeparturesQueryBean query, AgencyServiceInterval serviceInterval)
@@ -484,6 +506,12 @@ public class TransitDataServiceTemplateImpl implements TransitDataServiceTemplat
     return _routesBeanService.getRoutesForQuery(query);
   }
 
+  //@Override
+  public RoutesBean getRoutesForAutocomplete(String input, int maxCount)
+      throws ServiceException {
+    return _routesBeanService.getRoutesForAutocomplete(input, maxCount);
+  }
+
   //@Override
   public EncodedPolylineBean getShapeForId(String shapeId) {
     
@@ -504,6 +532,12 @@ public class TransitDataServiceTemplateImpl implements TransitDataServiceTemplat
     return _currentVehicleEstimateService.getCurrentVehicleEstimates(query);
   }
 
+  //@Override
+  public RealtimeDeltasBean getRealtimeDeltas(String agencyId,
+      long afterSequence, int maxCount) {
+    return _realtimeDeltaService.getDeltas(agencyId, afterSequence, maxCount);
+  }
+
 
   public List<OccupancyStatusBean> getHistoricalRidershipForStop(HistoricalOccupancyByStopQueryBean query){
     AgencyAndId id = AgencyAndIdLibrary.convertFromString(query.getStopId());
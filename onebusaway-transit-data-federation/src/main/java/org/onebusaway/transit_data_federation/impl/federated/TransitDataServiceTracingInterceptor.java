@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.impl.federated;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.onebusaway.util.tracing.RequestTracer;
+import org.onebusaway.util.tracing.SlowRequestTraceRecorder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Traces {@link TransitDataServiceImpl} calls.  When the caller is already
+ * tracing the request on this thread, as in a combined webapp, the call is
+ * added as a span of that trace.  Otherwise, when a
+ * {@link SlowRequestTraceRecorder} is configured, each call is traced on its
+ * own.
+ */
+@Aspect
+@Component
+public class TransitDataServiceTracingInterceptor {
+
+  private SlowRequestTraceRecorder _recorder;
+
+  @Autowired(required = false)
+  public void setSlowRequestTraceRecorder(SlowRequestTraceRecorder recorder) {
+    _recorder = recorder;
+  }
+
+  @Around("execution(* org.onebusaway.transit_data_federation.impl.federated.TransitDataServiceImpl.*(..))")
+  public Object trace(ProceedingJoinPoint pjp) throws Throwable {
+
+    String name = pjp.getSignature().getName();
+
+    if (RequestTracer.isActive()) {
+      try (RequestTracer.Span span = RequestTracer.span("federation." + name)) {
+        return pjp.proceed();
+      }
+    }
+
+    if (_recorder == null || !_recorder.begin("TransitDataService." + name))
+      return pjp.proceed();
+
+    try {
+      return pjp.proceed();
+    } finally {
+      _recorder.end();
+    }
+  }
+}
@@ -25,6 +25,7 @@ import org.onebusaway.transit_data.model.TransitDataConstants;
 import org.onebusaway.transit_data_federation.services.blocks.BlockInstance;
 import org.onebusaway.transit_data_federation.services.blocks.ScheduledBlockLocation;
 import org.onebusaway.transit_data_federation.services.blocks.ScheduledBlockLocationService;
+import org.onebusaway.transit_data_federation.services.realtime.BlockInstancePredictions;
 import org.onebusaway.transit_data_federation.services.realtime.BlockLocation;
 import org.onebusaway.transit_data_federation.services.realtime.ScheduleDeviationSamples;
 import org.onebusaway.transit_data_federation.services.realtime.VehicleLocationCacheElement;
@@ -178,83 +179,11 @@ public abstract class AbstractBlockLocationServiceImpl {
 
       List<TimepointPredictionRecord> timepointPredictions = record.getTimepointPredictions();
       if (timepointPredictions != null && !timepointPredictions.isEmpty()) {
-
-        SortedMap<Integer, Double> scheduleDeviations = new TreeMap<Integer, Double>();
-
-        BlockConfigurationEntry blockConfig = blockInstance.getBlock();
-
-        int tprIndexCounter = 0;
-        for (TimepointPredictionRecord tpr : timepointPredictions) {
-
-          AgencyAndId stopId = tpr.getTimepointId();
-          long predictedTime;
-          if (tpr.getTimepointPredictedDepartureTime() != -1) {
-            predictedTime = tpr.getTimepointPredictedDepartureTime();
-          } else {
-            predictedTime = tpr.getTimepointPredictedArrivalTime();
-          }
-          if (stopId == null || predictedTime == 0)
-            continue;
-          for (BlockStopTimeEntry blockStopTime : blockConfig.getStopTimes()) {
-            StopTimeEntry stopTime = blockStopTime.getStopTime();
-            StopEntry stop = stopTime.getStop();
-            // StopSequence equals to -1 when there is no stop sequence in the GTFS-rt
-            if (stopId.equals(stop.getId()) && stopTime.getTrip().getId().equals(tpr.getTripId()) &&
-                    (tpr.getStopSequence() == -1 || stopTime.getSequence() == tpr.getStopSequence())) {
-
-              if (tpr.getStopSequence() == -1 && isFirstOrLastStopInTrip(stopTime) && isLoopRoute(stopTime)) {
-                // GTFS-rt feed didn't provide stop_sequence, and we have a loop, and we're attempting to apply the update to the first/last stop
-
-                if (isSinglePredictionForTrip(timepointPredictions, tpr, tprIndexCounter)) {
-                  continue;
-                }
-
-                // If this isn't the last prediction, and we're on the first stop, then apply it
-                if (isLastPrediction(stopTime, timepointPredictions, tpr, tprIndexCounter)
-                        && isFirstStopInRoute(stopTime)) {
-                  // Do not calculate schedule deviation
-                  continue;
-                }
-
-                // If this is the last prediction, and we're on the last stop, then apply it
-                if (isFirstPrediction(stopTime, timepointPredictions, tpr, tprIndexCounter)
-                        && isLastStopInRoute(stopTime)) {
-                  // Do not calculate schedule deviation
-                  continue;
-                }
-              }
-              int arrivalOrDepartureTime;
-              // We currently use the scheduled arrival time of the stop as the search index
-              // This MUST be consistent with the index search in ArrivalAndSepartureServiceImpl.getBestScheduleDeviation()
-              int index = stopTime.getArrivalTime();
-              if (tpr.getTimepointPredictedDepartureTime() != -1) {
-                // Prefer departure time, because if both exist departure deviations should be the ones propagated downstream
-                arrivalOrDepartureTime = stopTime.getDepartureTime();
-              } else {
-                arrivalOrDepartureTime = stopTime.getArrivalTime();
-              }
-              int deviation = (int) ((predictedTime - blockInstance.getServiceDate()) / 1000 - arrivalOrDepartureTime);
-              scheduleDeviations.put(index, (double) deviation);
-            }
-          }
-          tprIndexCounter++;
-        }
+        BlockInstancePredictions predictions = getBlockInstancePredictions(
+                blockInstance, cacheElement);
         location.setTimepointPredictions(timepointPredictions);
-
-        double[] scheduleTimes = new double[scheduleDeviations.size()];
-        double[] scheduleDeviationMus = new double[scheduleDeviations.size()];
-        double[] scheduleDeviationSigmas = new double[scheduleDeviations.size()];
-
-        int index = 0;
-        for (Map.Entry<Integer, Double> entry : scheduleDeviations.entrySet()) {
-          scheduleTimes[index] = entry.getKey();
-          scheduleDeviationMus[index] = entry.getValue();
-          index++;
-        }
-
-        ScheduleDeviationSamples samples = new ScheduleDeviationSamples(
-                scheduleTimes, scheduleDeviationMus, scheduleDeviationSigmas);
-        location.setScheduleDeviations(samples);
+        location.setScheduleDeviations(predictions.getScheduleDeviations());
+        location.setPredictions(predictions);
       }
 
     } else {
@@ -300,6 +229,104 @@ public abstract class AbstractBlockLocationServiceImpl {
     return location;
   }
 
+  /**
+   * Returns the per-stop predictions for the record of the cache element,
+   * computing them on first read and caching them on the element.  Concurrent
+   * first reads may both compute them, which is harmless since the results are
+   * equivalent.  The element's record is expected to carry timepoint
+   * predictions.
+   */
+  protected BlockInstancePredictions getBlockInstancePredictions(
+          BlockInstance blockInstance, VehicleLocationCacheElement cacheElement) {
+
+    BlockInstancePredictions predictions = cacheElement.getPredictions();
+    if (predictions != null
+            && predictions.getBlockInstance().equals(blockInstance))
+      return predictions;
+
+    VehicleLocationRecord record = cacheElement.getRecord();
+    List<TimepointPredictionRecord> timepointPredictions = record.getTimepointPredictions();
+
+    SortedMap<Integer, Double> scheduleDeviations = new TreeMap<Integer, Double>();
+
+    BlockConfigurationEntry blockConfig = blockInstance.getBlock();
+
+    int tprIndexCounter = 0;
+    for (TimepointPredictionRecord tpr : timepointPredictions) {
+
+      AgencyAndId stopId = tpr.getTimepointId();
+      long predictedTime;
+      if (tpr.getTimepointPredictedDepartureTime() != -1) {
+        predictedTime = tpr.getTimepointPredictedDepartureTime();
+      } else {
+        predictedTime = tpr.getTimepointPredictedArrivalTime();
+      }
+      if (stopId == null || predictedTime == 0)
+        continue;
+      for (BlockStopTimeEntry blockStopTime : blockConfig.getStopTimes()) {
+        StopTimeEntry stopTime = blockStopTime.getStopTime();
+        StopEntry stop = stopTime.getStop();
+        // StopSequence equals to -1 when there is no stop sequence in the GTFS-rt
+        if (stopId.equals(stop.getId()) && stopTime.getTrip().getId().equals(tpr.getTripId()) &&
+                (tpr.getStopSequence() == -1 || stopTime.getSequence() == tpr.getStopSequence())) {
+
+          if (tpr.getStopSequence() == -1 && isFirstOrLastStopInTrip(stopTime) && isLoopRoute(stopTime)) {
+            // GTFS-rt feed didn't provide stop_sequence, and we have a loop, and we're attempting to apply the update to the first/last stop
+
+            if (isSinglePredictionForTrip(timepointPredictions, tpr, tprIndexCounter)) {
+              continue;
+            }
+
+            // If this isn't the last prediction, and we're on the first stop, then apply it
+            if (isLastPrediction(stopTime, timepointPredictions, tpr, tprIndexCounter)
+                    && isFirstStopInRoute(stopTime)) {
+              // Do not calculate schedule deviation
+              continue;
+            }
+
+            // If this is the last prediction, and we're on the last stop, then apply it
+            if (isFirstPrediction(stopTime, timepointPredictions, tpr, tprIndexCounter)
+                    && isLastStopInRoute(stopTime)) {
+              // Do not calculate schedule deviation
+              continue;
+            }
+          }
+          int arrivalOrDepartureTime;
+          // We currently use the scheduled arrival time of the stop as the search index
+          // This MUST be consistent with the index search in ArrivalAndSepartureServiceImpl.getBestScheduleDeviation()
+          int index = stopTime.getArrivalTime();
+          if (tpr.getTimepointPredictedDepartureTime() != -1) {
+            // Prefer departure time, because if both exist departure deviations should be the ones propagated downstream
+            arrivalOrDepartureTime = stopTime.getDepartureTime();
+          } else {
+            arrivalOrDepartureTime = stopTime.getArrivalTime();
+          }
+          int deviation = (int) ((predictedTime - blockInstance.getServiceDate()) / 1000 - arrivalOrDepartureTime);
+          scheduleDeviations.put(index, (double) deviation);
+        }
+      }
+      tprIndexCounter++;
+    }
+
+    double[] scheduleTimes = new double[scheduleDeviations.size()];
+    double[] scheduleDeviationMus = new double[scheduleDeviations.size()];
+    double[] scheduleDeviationSigmas = new double[scheduleDeviations.size()];
+
+    int index = 0;
+    for (Map.Entry<Integer, Double> entry : scheduleDeviations.entrySet()) {
+      scheduleTimes[index] = entry.getKey();
+      scheduleDeviationMus[index] = entry.getValue();
+      index++;
+    }
+
+    ScheduleDeviationSamples samples = new ScheduleDeviationSamples(
+            scheduleTimes, scheduleDeviationMus, scheduleDeviationSigmas);
+    predictions = BlockInstancePredictions.create(blockInstance,
+            timepointPredictions, samples);
+    cacheElement.setPredictions(predictions);
+    return predictions;
+  }
+
   protected ScheduledBlockLocation getScheduledBlockLocationForVehicleLocationCacheRecord(
           BlockInstance blockInstance, VehicleLocationCacheElement cacheElement,
           long targetTime) {
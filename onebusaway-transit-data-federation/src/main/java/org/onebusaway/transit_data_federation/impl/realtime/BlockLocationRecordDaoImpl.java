@@ -44,13 +44,26 @@ import org.springframework.stereotype.Component;
 @ManagedResource("org.onebusaway.transit_data_federation.impl.realtime:name=BlockLocationRecordDaoImpl")
 public class BlockLocationRecordDaoImpl implements BlockLocationRecordDao {
 
+  /**
+   * Used when hibernate.jdbc.batch_size is not set
+   */
+  private static final int DEFAULT_JDBC_BATCH_SIZE = 100;
+
   private SessionFactory _sessionFactory;
 
   private AtomicInteger _savedRecordCount = new AtomicInteger();
 
+  /**
+   * Taken from hibernate.jdbc.batch_size so each flush is sent as a single
+   * JDBC batch
+   */
+  private int _jdbcBatchSize = DEFAULT_JDBC_BATCH_SIZE;
+
   @Autowired
   public void setSessionFactory(SessionFactory sessionFactory) {
     _sessionFactory = sessionFactory;
+    int jdbcBatchSize = sessionFactory.getSessionFactoryOptions().getJdbcBatchSize();
+    _jdbcBatchSize = jdbcBatchSize > 0 ? jdbcBatchSize : DEFAULT_JDBC_BATCH_SIZE;
   }
 
   @ManagedAttribute
@@ -68,11 +81,25 @@ public class BlockLocationRecordDaoImpl implements BlockLocationRecordDao {
     _savedRecordCount.incrementAndGet();
   }
 
+  /**
+   * Records are flushed and evicted from the session every
+   * hibernate.jdbc.batch_size records so that inserts go out as JDBC
+   * batches and the session doesn't grow with the size of the write.
+   */
   @Override
   public void saveBlockLocationRecords(List<BlockLocationRecord> records) {
     Session session = getSession();
+    int count = 0;
     for (Iterator<BlockLocationRecord> it = records.iterator(); it.hasNext();) {
       session.saveOrUpdate(it.next());
+      if (++count % _jdbcBatchSize == 0) {
+        session.flush();
+        session.clear();
+      }
+    }
+    if (count % _jdbcBatchSize != 0) {
+      session.flush();
+      session.clear();
     }
     _savedRecordCount.addAndGet(records.size());
   }
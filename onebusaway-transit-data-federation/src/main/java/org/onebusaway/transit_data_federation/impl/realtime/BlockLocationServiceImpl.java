@@ -42,10 +42,15 @@ import org.springframework.stereotype.Component;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implementation for {@link BlockLocationService}. Keeps a recent cache of
@@ -75,6 +80,8 @@ public class BlockLocationServiceImpl extends AbstractBlockLocationServiceImpl i
   private DynamicHelper helper = new DynamicHelper();
   private List<BlockLocationListener> _blockLocationListeners = Collections.emptyList();
 
+  private RealtimeDeltaService _realtimeDeltaService;
+
   /**
    * By default, we keep around 20 minutes of cache entries, though
    * we may not actually use all of that data.  @see _predictionCacheMaxOffset
@@ -103,11 +110,39 @@ public class BlockLocationServiceImpl extends AbstractBlockLocationServiceImpl i
    */
   private boolean _persistBlockLocationRecords = false;
 
+  /**
+   * Maximum number of block location records waiting to be persisted. Once
+   * full, new records are dropped rather than blocking realtime ingest.
+   */
+  private int _persistenceQueueCapacity = 100000;
+
+  /**
+   * Number of block location records written per batch. A flush is also
+   * triggered as soon as this many records are waiting.
+   */
+  private int _persistenceBatchSize = 1000;
+
+  /**
+   * Interval between time-triggered flushes, in milliseconds
+   */
+  private long _persistenceFlushInterval = 1000;
+
+  /**
+   * Should queued records be written out synchronously on shutdown?
+   */
+  private boolean _persistenceFlushOnShutdown = true;
+
   /**
    * We queue up block location records so they can be bulk persisted to the
    * database
    */
-  private List<BlockLocationRecord> _recordPersistenceQueue = new ArrayList<BlockLocationRecord>();
+  private BlockingQueue<QueuedRecord> _recordPersistenceQueue;
+
+  /**
+   * Set while a size-triggered flush is pending, so ingest threads don't
+   * schedule redundant flushes
+   */
+  private final AtomicBoolean _persistenceFlushPending = new AtomicBoolean();
 
   /**
    * Used to schedule periodic flushes to the database of the block location
@@ -125,6 +160,23 @@ public class BlockLocationServiceImpl extends AbstractBlockLocationServiceImpl i
    */
   private volatile long _lastInsertCount = 0;
 
+  /**
+   * Block location record persistence stats - time the longest-waiting record
+   * in the last batch spent in the queue before it was written
+   */
+  private volatile long _lastInsertLag = 0;
+
+  /**
+   * Block location record persistence stats - records dropped because the
+   * queue was full
+   */
+  private AtomicLong _droppedRecordCount = new AtomicLong();
+
+  /**
+   * Block location record persistence stats - records that failed to write
+   */
+  private AtomicLong _failedRecordCount = new AtomicLong();
+
   /**
    * Records the number of times block location record cache requests fall
    * through to the database
@@ -163,6 +215,11 @@ public class BlockLocationServiceImpl extends AbstractBlockLocationServiceImpl i
     _blockLocationListeners = listeners;
   }
 
+  @Autowired
+  public void setRealtimeDeltaService(RealtimeDeltaService realtimeDeltaService) {
+    _realtimeDeltaService = realtimeDeltaService;
+  }
+
   /**
    * Controls how far back in time we include records in the
    * {@link BlockLocationRecordCollection} for each active trip.
@@ -185,6 +242,34 @@ public class BlockLocationServiceImpl extends AbstractBlockLocationServiceImpl i
     _persistBlockLocationRecords = persistBlockLocationRecords;
   }
 
+  @ConfigurationParameter
+  public void setPersistenceQueueCapacity(int persistenceQueueCapacity) {
+    _persistenceQueueCapacity = persistenceQueueCapacity;
+  }
+
+  @ConfigurationParameter
+  public void setPersistenceBatchSize(int persistenceBatchSize) {
+    _persistenceBatchSize = persistenceBatchSize;
+  }
+
+  /**
+   * @param persistenceFlushInterval in milliseconds
+   */
+  @ConfigurationParameter
+  public void setPersistenceFlushInterval(long persistenceFlushInterval) {
+    _persistenceFlushInterval = persistenceFlushInterval;
+  }
+
+  /**
+   * If true, records still queued at shutdown are written before the service
+   * stops. If false, they are discarded, trading durability for a faster
+   * shutdown.
+   */
+  @ConfigurationParameter
+  public void setPersistenceFlushOnShutdown(boolean persistenceFlushOnShutdown) {
+    _persistenceFlushOnShutdown = persistenceFlushOnShutdown;
+  }
+
   /****
    * JMX Attributes
    ****/
@@ -199,6 +284,27 @@ public class BlockLocationServiceImpl extends AbstractBlockLocationServiceImpl i
     return _lastInsertCount;
   }
 
+  @ManagedAttribute
+  public long getLastInsertLag() {
+    return _lastInsertLag;
+  }
+
+  @ManagedAttribute
+  public int getPersistenceQueueSize() {
+    BlockingQueue<QueuedRecord> queue = _recordPersistenceQueue;
+    return queue == null ? 0 : queue.size();
+  }
+
+  @ManagedAttribute
+  public long getDroppedRecordCount() {
+    return _droppedRecordCount.get();
+  }
+
+  @ManagedAttribute
+  public long getFailedRecordCount() {
+    return _failedRecordCount.get();
+  }
+
   @ManagedAttribute
   public long getBlockLocationRecordPersistentStoreAccessCount() {
     return _blockLocationRecordPersistentStoreAccessCount.get();
@@ -210,14 +316,36 @@ public class BlockLocationServiceImpl extends AbstractBlockLocationServiceImpl i
 
   @PostConstruct
   public void start() {
-    if (_persistBlockLocationRecords)
-      _executor.scheduleAtFixedRate(new PredictionWriter(), 0, 1,
-              TimeUnit.SECONDS);
+    if (_persistBlockLocationRecords) {
+      _recordPersistenceQueue = new LinkedBlockingQueue<QueuedRecord>(
+              _persistenceQueueCapacity);
+      // nothing can be queued yet, so the first flush waits a full interval
+      _executor.scheduleWithFixedDelay(new PredictionWriter(),
+              _persistenceFlushInterval, _persistenceFlushInterval,
+              TimeUnit.MILLISECONDS);
+    }
   }
 
   @PreDestroy
   public void stop() {
-    _executor.shutdownNow();
+    if (!_persistBlockLocationRecords || !_persistenceFlushOnShutdown) {
+      _executor.shutdownNow();
+      return;
+    }
+
+    // let a write already in progress finish rather than interrupting it
+    // part way through a batch, then flush whatever is still queued
+    _executor.shutdown();
+    try {
+      if (!_executor.awaitTermination(10, TimeUnit.SECONDS)) {
+        _log.warn("timed out waiting for block location record writer to finish");
+        _executor.shutdownNow();
+      }
+    } catch (InterruptedException ex) {
+      _executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+    new PredictionWriter().run();
   }
 
   /****
@@ -247,6 +375,10 @@ public class BlockLocationServiceImpl extends AbstractBlockLocationServiceImpl i
       }
 
       putBlockLocationRecord(instance, record, scheduledBlockLocation, samples);
+
+      if (_realtimeDeltaService != null)
+        _realtimeDeltaService.handleVehicleLocationRecord(record,
+            scheduledBlockLocation);
     }
   }
 
@@ -661,18 +793,33 @@ public class BlockLocationServiceImpl extends AbstractBlockLocationServiceImpl i
     return recordsByKey;
   }
 
-  private void addPredictionToPersistenceQueue(List<BlockLocationRecord> records) {
-    synchronized (_recordPersistenceQueue) {
-      _recordPersistenceQueue.addAll(records);
+  /**
+   * Never blocks the calling (ingest) thread: records that don't fit in the
+   * queue are dropped and counted.  Package-private for testing.
+   */
+  void addPredictionToPersistenceQueue(List<BlockLocationRecord> records) {
+    BlockingQueue<QueuedRecord> queue = _recordPersistenceQueue;
+    if (queue == null)
+      return;
+
+    long now = SystemTime.currentTimeMillis();
+    int dropped = 0;
+    for (BlockLocationRecord record : records) {
+      if (!queue.offer(new QueuedRecord(record, now)))
+        dropped++;
     }
-  }
 
-  private List<BlockLocationRecord> getPredictionPersistenceQueue() {
-    synchronized (_recordPersistenceQueue) {
-      List<BlockLocationRecord> queue = new ArrayList<BlockLocationRecord>(
-              _recordPersistenceQueue);
-      _recordPersistenceQueue.clear();
-      return queue;
+    if (dropped > 0 && _droppedRecordCount.getAndAdd(dropped) == 0)
+      _log.warn("block location record persistence queue full, dropping records");
+
+    if (queue.size() >= _persistenceBatchSize
+            && _persistenceFlushPending.compareAndSet(false, true)) {
+      try {
+        _executor.execute(new PredictionWriter());
+      } catch (RejectedExecutionException ex) {
+        // shutting down
+        _persistenceFlushPending.set(false);
+      }
     }
   }
 
@@ -681,23 +828,56 @@ public class BlockLocationServiceImpl extends AbstractBlockLocationServiceImpl i
     @Override
     public void run() {
 
-      try {
-        List<BlockLocationRecord> queue = getPredictionPersistenceQueue();
-
-        if (queue.isEmpty())
-          return;
-
-        long t1 = SystemTime.currentTimeMillis();
-        _blockLocationRecordDao.saveBlockLocationRecords(queue);
-        long t2 = SystemTime.currentTimeMillis();
-        _lastInsertDuration = t2 - t1;
-        _lastInsertCount = queue.size();
-      } catch (Throwable ex) {
-        _log.error("error writing block location records to dao", ex);
+      _persistenceFlushPending.set(false);
+
+      BlockingQueue<QueuedRecord> queue = _recordPersistenceQueue;
+      if (queue == null)
+        return;
+
+      List<QueuedRecord> queued = new ArrayList<QueuedRecord>(
+              _persistenceBatchSize);
+      List<BlockLocationRecord> batch = new ArrayList<BlockLocationRecord>(
+              _persistenceBatchSize);
+
+      while (queue.drainTo(queued, _persistenceBatchSize) > 0) {
+        long oldestEnqueueTime = Long.MAX_VALUE;
+        for (QueuedRecord record : queued) {
+          batch.add(record.record);
+          oldestEnqueueTime = Math.min(oldestEnqueueTime, record.enqueueTime);
+        }
+        try {
+          long t1 = SystemTime.currentTimeMillis();
+          _blockLocationRecordDao.saveBlockLocationRecords(batch);
+          long t2 = SystemTime.currentTimeMillis();
+          _lastInsertDuration = t2 - t1;
+          _lastInsertCount = batch.size();
+          _lastInsertLag = t2 - oldestEnqueueTime;
+        } catch (Throwable ex) {
+          _failedRecordCount.addAndGet(batch.size());
+          _log.error("error writing block location records to dao", ex);
+        }
+        queued.clear();
+        batch.clear();
       }
     }
   }
 
+  /**
+   * A record waiting in the persistence queue, with the time it was queued so
+   * the write lag reflects queueing delay rather than feed latency
+   */
+  private static class QueuedRecord {
+
+    private final BlockLocationRecord record;
+
+    private final long enqueueTime;
+
+    public QueuedRecord(BlockLocationRecord record, long enqueueTime) {
+      this.record = record;
+      this.enqueueTime = enqueueTime;
+    }
+  }
+
   private interface RecordStrategy {
 
     public List<VehicleLocationCacheElements> getRecordsFromCache();
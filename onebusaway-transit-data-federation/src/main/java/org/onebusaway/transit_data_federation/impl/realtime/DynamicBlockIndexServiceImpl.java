@@ -16,6 +16,7 @@
 package org.onebusaway.transit_data_federation.impl.realtime;
 
 import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.calendar.ServiceInterval;
 import org.onebusaway.transit_data_federation.impl.blocks.BlockIndexFactoryServiceImpl;
 import org.onebusaway.transit_data_federation.impl.blocks.BlockStopTimeIndicesFactory;
 import org.onebusaway.transit_data_federation.model.transit_graph.DynamicGraph;
@@ -49,7 +50,7 @@ public class DynamicBlockIndexServiceImpl extends DynamicCache implements Dynami
 
   private Map<AgencyAndId, BlockInstance> cacheByBlockId = new HashMap<>();
 
-  private Map<AgencyAndId, Set<BlockStopTimeIndex>> blockStopTimeIndicesByStopId = new HashMap<>();
+  private DynamicStopTimeIndices blockStopTimeIndicesByStopId = new DynamicStopTimeIndices();
 
   private Map<AgencyAndId, List<BlockTripIndex>> blockTripByBlockId = new HashMap<>();
 
@@ -65,13 +66,7 @@ public class DynamicBlockIndexServiceImpl extends DynamicCache implements Dynami
 
   @Override
   public List<BlockStopTimeIndex> getStopTimeIndicesForStop(StopEntry stopEntry) {
-    synchronized (blockStopTimeIndicesByStopId) {
-      if (!blockStopTimeIndicesByStopId.containsKey(stopEntry.getId())) {
-        return null;
-      }
-      Set<BlockStopTimeIndex> set = blockStopTimeIndicesByStopId.get(stopEntry.getId());
-      return new ArrayList<>(set);
-    }
+    return blockStopTimeIndicesByStopId.getIndicesForStop(stopEntry.getId());
   }
 
   @Override
@@ -122,17 +117,8 @@ public class DynamicBlockIndexServiceImpl extends DynamicCache implements Dynami
   }
 
   private void pruneBlockStopTimeIndicesByStopId(long currentTime, int effectiveTime) {
-    Iterator<Map.Entry<AgencyAndId, Set<BlockStopTimeIndex>>> iteratorOuter = blockStopTimeIndicesByStopId.entrySet().iterator();
-    while (iteratorOuter.hasNext()) {
-      Map.Entry<AgencyAndId, Set<BlockStopTimeIndex>> next = iteratorOuter.next();
-      Iterator<BlockStopTimeIndex> iteratorInner = next.getValue().iterator();
-      while (iteratorInner.hasNext()) {
-        BlockStopTimeIndex stopTimeIndex = iteratorInner.next();
-        if (isExpired(stopTimeIndex, currentTime, effectiveTime)) {
-          iteratorInner.remove();
-        }
-      }
-    }
+    int removed = blockStopTimeIndicesByStopId.removeExpired(effectiveTime);
+    _log.debug("pruned {} stop time indices", removed);
   }
 
   private void pruneCacheByBlockId(long currentTime, int effectiveTime) {
@@ -197,39 +183,12 @@ public class DynamicBlockIndexServiceImpl extends DynamicCache implements Dynami
     blocks.add(blockInstance.getBlock().getBlock());
     List<BlockStopTimeIndex> indices = blockStopTimeIndicesFactory.createIndices(blocks);
     for (BlockStopTimeIndex sti : indices) {
-      AgencyAndId stopId = sti.getStop().getId();
-      if (!blockStopTimeIndicesByStopId.containsKey(stopId)) {
-        // a set to prevent duplicates
-        blockStopTimeIndicesByStopId.put(stopId, new HashSet<>());
-      }
-      BlockStopTimeIndex oldTimeIndex = getBlockStopTimeIndex(blockStopTimeIndicesByStopId.get(stopId), sti);
-      if (!sti.equals(oldTimeIndex)) {
-        _log.debug("time index {} changed!", oldTimeIndex);
-        removeBlockStopTimeIndex(blockStopTimeIndicesByStopId.get(stopId), sti);
-        blockStopTimeIndicesByStopId.get(stopId).add(sti);
-      }
-    }
-  }
-
-  private BlockStopTimeIndex getBlockStopTimeIndex(Set<BlockStopTimeIndex> blockStopTimeIndices, BlockStopTimeIndex sti) {
-    Iterator<BlockStopTimeIndex> iterator = blockStopTimeIndices.iterator();
-    while (iterator.hasNext()) {
-      BlockStopTimeIndex next = iterator.next();
-      if (next.getTrips().get(0).getTrip().getId().equals(sti.getTrips().get(0).getTrip().getId())) {
-        return next;
-      }
-    }
-    return null;
-  }
-
-  private void removeBlockStopTimeIndex(Set<BlockStopTimeIndex> blockStopTimeIndices, BlockStopTimeIndex sti) {
-    Iterator<BlockStopTimeIndex> iterator = blockStopTimeIndices.iterator();
-    while (iterator.hasNext()) {
-      BlockStopTimeIndex next = iterator.next();
-      if (next.getTrips().get(0).getTrip().getId().equals(sti.getTrips().get(0).getTrip().getId())) {
-        iterator.remove();
+      ServiceInterval interval = sti.getServiceInterval();
+      if (blockStopTimeIndicesByStopId.replace(sti, getMinBounds(interval), getMaxBounds(interval))) {
+        _log.debug("time index {} changed!", sti);
       }
     }
+    blockStopTimeIndicesByStopId.publish();
   }
 
 
@@ -298,18 +257,12 @@ public class DynamicBlockIndexServiceImpl extends DynamicCache implements Dynami
 
 
     List<BlockStopTimeIndex> indices = blockStopTimeIndicesFactory.createIndices(blocks);
-    synchronized (blockStopTimeIndicesByStopId) {
-      for (BlockStopTimeIndex sti : indices) {
-        AgencyAndId stopId = sti.getStop().getId();
-        if (!blockStopTimeIndicesByStopId.containsKey(stopId)) {
-          // a set to prevent duplicates
-          blockStopTimeIndicesByStopId.put(stopId, new HashSet<>());
-        }
-        if (!containsTrip(blockStopTimeIndicesByStopId.get(stopId), sti)) {
-          blockStopTimeIndicesByStopId.get(stopId).add(sti);
-        }
-      }
+    for (BlockStopTimeIndex sti : indices) {
+      // at most one index per trip at each stop
+      ServiceInterval interval = sti.getServiceInterval();
+      blockStopTimeIndicesByStopId.add(sti, getMinBounds(interval), getMaxBounds(interval));
     }
+    blockStopTimeIndicesByStopId.publish();
   }
 
   /**
@@ -349,15 +302,6 @@ public class DynamicBlockIndexServiceImpl extends DynamicCache implements Dynami
     return true;
   }
 
-  private boolean containsTrip(Set<BlockStopTimeIndex> blockStopTimeIndices, BlockStopTimeIndex sti) {
-    for (BlockStopTimeIndex blockStopTimeIndex : blockStopTimeIndices) {
-      if (sti.getTrips().get(0).getTrip().getId().equals(blockStopTimeIndex.getTrips().get(0).getTrip().getId())) {
-        return true;
-      }
-    }
-    return false;
-  }
-
   @Override
   public BlockInstance getDynamicBlockInstance(AgencyAndId blockId) {
     return cacheByBlockId.get(blockId);
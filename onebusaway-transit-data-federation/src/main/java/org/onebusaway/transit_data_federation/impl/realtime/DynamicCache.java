@@ -54,13 +54,21 @@ public class DynamicCache {
     return Math.toIntExact((currentTime - new ServiceDate(new Date(currentTime)).getAsDate().getTime())/1000);
   }
   protected boolean isExpired(ServiceInterval range, int effectiveTime) {
-    int minBounds = Math.toIntExact(range.getMinArrival() - windowInMillis / 1000);
-    int maxBounds = Math.toIntExact(range.getMaxDeparture() + windowInMillis / 1000);
+    int minBounds = getMinBounds(range);
+    int maxBounds = getMaxBounds(range);
     if (minBounds >= effectiveTime || maxBounds <= effectiveTime)
       return true;
     return false;
   }
 
+  protected int getMinBounds(ServiceInterval range) {
+    return Math.toIntExact(range.getMinArrival() - windowInMillis / 1000);
+  }
+
+  protected int getMaxBounds(ServiceInterval range) {
+    return Math.toIntExact(range.getMaxDeparture() + windowInMillis / 1000);
+  }
+
   protected boolean isExpired(BlockTripIndex blockTripIndex, long currentTime, int effectiveTime) {
     if (isExpired(blockTripIndex.getServiceIntervalBlock().getRange(), effectiveTime)) {
       return true;
@@ -81,11 +89,18 @@ public class DynamicCache {
   }
 
   protected boolean isExpired(BlockConfigurationEntry entry, int effectiveTime) {
+    return isExpired(getServiceInterval(entry), effectiveTime);
+  }
+
+  protected ServiceInterval getServiceInterval(BlockEntry blockEntry) {
+    return getServiceInterval(blockEntry.getConfigurations().get(0));
+  }
+
+  protected ServiceInterval getServiceInterval(BlockConfigurationEntry entry) {
     List<BlockStopTimeEntry> stopTimes = entry.getBlock().getConfigurations().get(0).getStopTimes();
     int size = stopTimes.size();
-    ServiceInterval serviceInterval = new ServiceInterval(getArrivalOrDeparture(stopTimes.get(0).getStopTime()),
+    return new ServiceInterval(getArrivalOrDeparture(stopTimes.get(0).getStopTime()),
             getDepartureOrArrival(stopTimes.get(size - 1).getStopTime()));
-    return isExpired(serviceInterval, effectiveTime);
   }
 
   private int getDepartureOrArrival(StopTimeEntry stopTime) {
@@ -101,11 +116,14 @@ public class DynamicCache {
   }
 
   protected boolean isExpired(TripEntry trip, int effectiveTime) {
+    return isExpired(getServiceInterval(trip), effectiveTime);
+  }
+
+  protected ServiceInterval getServiceInterval(TripEntry trip) {
     List<StopTimeEntry> stopTimes = trip.getStopTimes();
     int size = stopTimes.size();
-    ServiceInterval serviceInterval = new ServiceInterval(getArrivalOrDeparture(stopTimes.get(0)),
+    return new ServiceInterval(getArrivalOrDeparture(stopTimes.get(0)),
             getDepartureOrArrival(stopTimes.get(size - 1)));
-    return isExpired(serviceInterval, effectiveTime);
   }
 
 }
@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2024 Cambridge Systematics Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.impl.realtime;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Orders cached keys by the bounds of their service window so expired keys can
+ * be found without visiting every entry. A key is expired when the effective
+ * time is at or past its max bounds, or still at or before its min bounds,
+ * matching {@link DynamicCache#isExpired(org.onebusaway.gtfs.model.calendar.ServiceInterval, int)}.
+ *
+ * Not thread safe; callers guard access with their own lock.
+ */
+public class DynamicExpiryIndex<K> {
+
+  private final Map<K, Bounds<K>> boundsByKey = new HashMap<>();
+
+  private final TreeSet<Bounds<K>> byMaxBounds = new TreeSet<>(
+      Comparator.<Bounds<K>>comparingInt(b -> b.maxBounds).thenComparingLong(b -> b.sequence));
+
+  private final TreeSet<Bounds<K>> byMinBounds = new TreeSet<>(
+      Comparator.<Bounds<K>>comparingInt(b -> b.minBounds).reversed().thenComparingLong(b -> b.sequence));
+
+  private long sequence = 0;
+
+  public void put(K key, int minBounds, int maxBounds) {
+    Bounds<K> existing = boundsByKey.get(key);
+    if (existing != null) {
+      if (existing.minBounds == minBounds && existing.maxBounds == maxBounds)
+        return;
+      removeBounds(existing);
+    }
+    Bounds<K> bounds = new Bounds<>(key, minBounds, maxBounds, sequence++);
+    boundsByKey.put(key, bounds);
+    byMaxBounds.add(bounds);
+    byMinBounds.add(bounds);
+  }
+
+  public void remove(K key) {
+    Bounds<K> existing = boundsByKey.remove(key);
+    if (existing != null) {
+      byMaxBounds.remove(existing);
+      byMinBounds.remove(existing);
+    }
+  }
+
+  /**
+   * Removes and returns the keys expired at the effective time, visiting only
+   * those keys.
+   */
+  public List<K> removeExpired(int effectiveTime) {
+    List<K> expired = new ArrayList<>();
+    while (!byMaxBounds.isEmpty() && byMaxBounds.first().maxBounds <= effectiveTime) {
+      Bounds<K> bounds = byMaxBounds.first();
+      removeBounds(bounds);
+      boundsByKey.remove(bounds.key);
+      expired.add(bounds.key);
+    }
+    while (!byMinBounds.isEmpty() && byMinBounds.first().minBounds >= effectiveTime) {
+      Bounds<K> bounds = byMinBounds.first();
+      removeBounds(bounds);
+      boundsByKey.remove(bounds.key);
+      expired.add(bounds.key);
+    }
+    return expired;
+  }
+
+  public int size() {
+    return boundsByKey.size();
+  }
+
+  private void removeBounds(Bounds<K> bounds) {
+    byMaxBounds.remove(bounds);
+    byMinBounds.remove(bounds);
+  }
+
+  private static class Bounds<K> {
+    private final K key;
+    private final int minBounds;
+    private final int maxBounds;
+    private final long sequence;
+
+    public Bounds(K key, int minBounds, int maxBounds, long sequence) {
+      this.key = key;
+      this.minBounds = minBounds;
+      this.maxBounds = maxBounds;
+      this.sequence = sequence;
+    }
+  }
+}
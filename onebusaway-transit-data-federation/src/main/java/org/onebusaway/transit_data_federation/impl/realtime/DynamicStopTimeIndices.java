@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2024 Cambridge Systematics Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.impl.realtime;
+
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.transit_data_federation.services.blocks.BlockStopTimeIndex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dynamic stop time indices by stop, holding at most one index per trip at
+ * each stop.  Writers replace an index by trip id in constant time and expire
+ * indices in service window order.  Readers see an immutable snapshot of each
+ * stop's indices, so they never lock or copy.  Changes made by
+ * {@link #add} and {@link #replace} only become visible on the next
+ * {@link #publish}, which copies each changed stop once no matter how many of
+ * its indices were written in the batch.
+ */
+public class DynamicStopTimeIndices {
+
+  private final Map<AgencyAndId, StopIndices> indicesByStopId = new ConcurrentHashMap<>();
+
+  private final DynamicExpiryIndex<StopAndTripId> expiryIndex = new DynamicExpiryIndex<>();
+
+  private final Set<AgencyAndId> unpublishedStopIds = new HashSet<>();
+
+  /**
+   * @return an unmodifiable list of the published indices at the stop, or null
+   *         if there are none
+   */
+  public List<BlockStopTimeIndex> getIndicesForStop(AgencyAndId stopId) {
+    StopIndices indices = indicesByStopId.get(stopId);
+    if (indices == null || indices.published.isEmpty())
+      return null;
+    return indices.published;
+  }
+
+  /**
+   * Adds the index unless the stop already has an index for the same trip.
+   */
+  public synchronized boolean add(BlockStopTimeIndex index, int minBounds, int maxBounds) {
+    StopAndTripId key = getKey(index);
+    StopIndices indices = indicesByStopId.get(key.stopId);
+    if (indices != null && indices.byTripId.containsKey(key.tripId))
+      return false;
+    put(key, index, indices, minBounds, maxBounds);
+    return true;
+  }
+
+  /**
+   * Replaces the index for the same trip at the stop, unless it is unchanged.
+   */
+  public synchronized boolean replace(BlockStopTimeIndex index, int minBounds, int maxBounds) {
+    StopAndTripId key = getKey(index);
+    StopIndices indices = indicesByStopId.get(key.stopId);
+    if (indices != null && index.equals(indices.byTripId.get(key.tripId)))
+      return false;
+    put(key, index, indices, minBounds, maxBounds);
+    return true;
+  }
+
+  /**
+   * Removes the expired indices and publishes the result, along with any
+   * other unpublished changes.
+   * 
+   * @return the number of indices removed
+   */
+  public synchronized int removeExpired(int effectiveTime) {
+    List<StopAndTripId> expired = expiryIndex.removeExpired(effectiveTime);
+    for (StopAndTripId key : expired) {
+      StopIndices indices = indicesByStopId.get(key.stopId);
+      if (indices != null && indices.byTripId.remove(key.tripId) != null)
+        unpublishedStopIds.add(key.stopId);
+    }
+    publish();
+    return expired.size();
+  }
+
+  /**
+   * Makes the changes since the last publish visible to readers.
+   */
+  public synchronized void publish() {
+    for (AgencyAndId stopId : unpublishedStopIds) {
+      StopIndices indices = indicesByStopId.get(stopId);
+      if (indices == null)
+        continue;
+      if (indices.byTripId.isEmpty())
+        indicesByStopId.remove(stopId);
+      else
+        indices.publish();
+    }
+    unpublishedStopIds.clear();
+  }
+
+  private void put(StopAndTripId key, BlockStopTimeIndex index, StopIndices indices,
+      int minBounds, int maxBounds) {
+    if (indices == null) {
+      indices = new StopIndices();
+      indicesByStopId.put(key.stopId, indices);
+    }
+    indices.byTripId.put(key.tripId, index);
+    unpublishedStopIds.add(key.stopId);
+    expiryIndex.put(key, minBounds, maxBounds);
+  }
+
+  private StopAndTripId getKey(BlockStopTimeIndex index) {
+    return new StopAndTripId(index.getStop().getId(),
+        index.getTrips().get(0).getTrip().getId());
+  }
+
+  private static class StopIndices {
+
+    private final Map<AgencyAndId, BlockStopTimeIndex> byTripId = new LinkedHashMap<>();
+
+    private volatile List<BlockStopTimeIndex> published = Collections.emptyList();
+
+    private void publish() {
+      published = Collections.unmodifiableList(new ArrayList<>(byTripId.values()));
+    }
+  }
+
+  private static class StopAndTripId {
+
+    private final AgencyAndId stopId;
+
+    private final AgencyAndId tripId;
+
+    public StopAndTripId(AgencyAndId stopId, AgencyAndId tripId) {
+      this.stopId = stopId;
+      this.tripId = tripId;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * stopId.hashCode() + tripId.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if (!(obj instanceof StopAndTripId))
+        return false;
+      StopAndTripId other = (StopAndTripId) obj;
+      return stopId.equals(other.stopId) && tripId.equals(other.tripId);
+    }
+  }
+}
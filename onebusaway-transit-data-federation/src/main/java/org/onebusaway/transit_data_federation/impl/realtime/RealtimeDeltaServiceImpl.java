@@ -0,0 +1,294 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.impl.realtime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.onebusaway.container.ConfigurationParameter;
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.realtime.api.TimepointPredictionRecord;
+import org.onebusaway.realtime.api.VehicleLocationRecord;
+import org.onebusaway.transit_data.model.realtime.RealtimeDeltaBean;
+import org.onebusaway.transit_data.model.realtime.RealtimeDeltasBean;
+import org.onebusaway.transit_data_federation.services.blocks.ScheduledBlockLocation;
+import org.onebusaway.transit_data_federation.services.realtime.RealtimeDeltaService;
+import org.onebusaway.transit_data_federation.services.transit_graph.BlockStopTimeEntry;
+import org.onebusaway.transit_data_federation.services.transit_graph.BlockTripEntry;
+import org.onebusaway.transit_data_federation.services.transit_graph.StopTimeEntry;
+import org.onebusaway.util.AgencyAndIdLibrary;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the most recent deltas in a fixed size ring, numbered by a sequence
+ * that increases for the life of the process.  Readers that fall more than
+ * the ring behind are told to reset.
+ * 
+ * The last predictions published for each vehicle are kept so unchanged ones
+ * aren't published again, until the vehicle's last delta falls out of the
+ * ring; a vehicle that stops reporting is then forgotten.
+ */
+@Component
+public class RealtimeDeltaServiceImpl implements RealtimeDeltaService {
+
+  private static final int DEFAULT_JOURNAL_CAPACITY = 50000;
+
+  private int _journalCapacity = DEFAULT_JOURNAL_CAPACITY;
+
+  private RealtimeDeltaBean[] _journal;
+
+  /**
+   * agency of the vehicle behind each delta in the journal, by the same index
+   */
+  private String[] _journalAgencyIds;
+
+  /**
+   * sequence of the most recently published delta; the first is 1, so the
+   * head of an empty journal is 0
+   */
+  private long _lastSequence = 0;
+
+  /**
+   * last published predictions per vehicle, in the order the vehicles last
+   * published, so vehicles whose deltas have left the journal are at the front
+   */
+  private LinkedHashMap<AgencyAndId, VehiclePredictions> _predictionsByVehicleId = new LinkedHashMap<AgencyAndId, VehiclePredictions>();
+
+  @ConfigurationParameter
+  public void setJournalCapacity(int journalCapacity) {
+    if (journalCapacity <= 0)
+      throw new IllegalArgumentException("journalCapacity must be positive");
+    _journalCapacity = journalCapacity;
+  }
+
+  @Override
+  public void handleVehicleLocationRecord(VehicleLocationRecord record) {
+    handleVehicleLocationRecord(record, null);
+  }
+
+  @Override
+  public void handleVehicleLocationRecord(VehicleLocationRecord record,
+      ScheduledBlockLocation scheduledBlockLocation) {
+
+    if (record.getVehicleId() == null)
+      return;
+
+    String vehicleId = AgencyAndIdLibrary.convertToString(record.getVehicleId());
+    String tripId = record.getTripId() == null ? null
+        : AgencyAndIdLibrary.convertToString(record.getTripId());
+
+    List<RealtimeDeltaBean> deltas = new ArrayList<RealtimeDeltaBean>();
+
+    RealtimeDeltaBean vehicle = createDelta(RealtimeDeltaBean.TYPE_VEHICLE,
+        record, vehicleId, tripId);
+    if (record.isCurrentLocationSet()) {
+      vehicle.setLat(record.getCurrentLocationLat());
+      vehicle.setLon(record.getCurrentLocationLon());
+    }
+    if (record.isScheduleDeviationSet())
+      vehicle.setScheduleDeviation(record.getScheduleDeviation());
+    if (record.isDistanceAlongBlockSet())
+      vehicle.setDistanceAlongBlock(record.getDistanceAlongBlock());
+    deltas.add(vehicle);
+
+    List<TimepointPredictionRecord> predictions = record.getTimepointPredictions();
+    if (predictions == null || predictions.isEmpty())
+      predictions = getPredictionsFromScheduleDeviation(record,
+          scheduledBlockLocation);
+
+    publish(record, deltas, predictions);
+  }
+
+  @Override
+  public RealtimeDeltasBean getDeltas(long afterSequence, int maxCount) {
+    return getDeltas(null, afterSequence, maxCount);
+  }
+
+  @Override
+  public synchronized RealtimeDeltasBean getDeltas(String agencyId,
+      long afterSequence, int maxCount) {
+
+    RealtimeDeltasBean result = new RealtimeDeltasBean();
+
+    long oldestSequence = Math.max(1, _lastSequence - _journalCapacity + 1);
+    long from = afterSequence + 1;
+    if (afterSequence < 0) {
+      result.setLastSequence(_lastSequence);
+      return result;
+    }
+    if (from < oldestSequence || afterSequence > _lastSequence) {
+      // we can't supply everything since the requested sequence
+      result.setReset(true);
+      result.setLastSequence(_lastSequence);
+      return result;
+    }
+
+    // read up to maxCount of the agency's deltas, keeping only the latest
+    // delta for each key, in publication order
+    Map<String, RealtimeDeltaBean> latestByKey = new LinkedHashMap<String, RealtimeDeltaBean>();
+    int remaining = Math.max(maxCount, 1);
+    long to = afterSequence;
+    while (to < _lastSequence && remaining > 0) {
+      to++;
+      int index = (int) (to % _journal.length);
+      if (agencyId != null && !agencyId.equals(_journalAgencyIds[index]))
+        continue;
+      RealtimeDeltaBean delta = _journal[index];
+      String key = delta.getCoalescingKey();
+      latestByKey.remove(key);
+      latestByKey.put(key, delta);
+      remaining--;
+    }
+
+    result.setDeltas(new ArrayList<RealtimeDeltaBean>(latestByKey.values()));
+    result.setLastSequence(to);
+    return result;
+  }
+
+  /**
+   * Adds a stop delta for each prediction that changed since the vehicle's
+   * last record, then publishes the deltas.  Comparing against and replacing
+   * the vehicle's last predictions happens under the same lock as publishing,
+   * so two records for one vehicle can't interleave.
+   */
+  private synchronized void publish(VehicleLocationRecord record,
+      List<RealtimeDeltaBean> deltas, List<TimepointPredictionRecord> predictions) {
+
+    AgencyAndId vehicleId = record.getVehicleId();
+    VehiclePredictions previous = _predictionsByVehicleId.remove(vehicleId);
+    VehiclePredictions current = new VehiclePredictions();
+    RealtimeDeltaBean vehicle = deltas.get(0);
+
+    for (TimepointPredictionRecord tpr : predictions) {
+      if (tpr.getTimepointId() == null)
+        continue;
+      String predictionTripId = tpr.getTripId() != null
+          ? AgencyAndIdLibrary.convertToString(tpr.getTripId())
+          : vehicle.getTripId();
+      String key = tpr.getTimepointId() + " " + predictionTripId + " "
+          + tpr.getStopSequence();
+      long[] times = new long[] {
+          tpr.getTimepointPredictedArrivalTime(),
+          tpr.getTimepointPredictedDepartureTime()};
+      current.timesByStopKey.put(key, times);
+      long[] previousTimes = previous == null ? null
+          : previous.timesByStopKey.get(key);
+      if (previousTimes != null && previousTimes[0] == times[0]
+          && previousTimes[1] == times[1])
+        continue;
+      RealtimeDeltaBean stop = createDelta(RealtimeDeltaBean.TYPE_STOP,
+          record, vehicle.getVehicleId(), predictionTripId);
+      stop.setStopId(AgencyAndIdLibrary.convertToString(tpr.getTimepointId()));
+      stop.setStopSequence(tpr.getStopSequence());
+      stop.setPredictedArrivalTime(times[0]);
+      stop.setPredictedDepartureTime(times[1]);
+      deltas.add(stop);
+    }
+
+    if (_journal == null) {
+      _journal = new RealtimeDeltaBean[_journalCapacity];
+      _journalAgencyIds = new String[_journalCapacity];
+    }
+    for (RealtimeDeltaBean delta : deltas) {
+      _lastSequence++;
+      delta.setSequence(_lastSequence);
+      int index = (int) (_lastSequence % _journal.length);
+      _journal[index] = delta;
+      _journalAgencyIds[index] = vehicleId.getAgencyId();
+    }
+
+    if (!current.timesByStopKey.isEmpty()) {
+      current.lastSequence = _lastSequence;
+      _predictionsByVehicleId.put(vehicleId, current);
+    }
+
+    evictVehiclesOutsideJournal();
+  }
+
+  private void evictVehiclesOutsideJournal() {
+    long oldestSequence = _lastSequence - _journal.length + 1;
+    Iterator<VehiclePredictions> it = _predictionsByVehicleId.values().iterator();
+    while (it.hasNext()) {
+      if (it.next().lastSequence >= oldestSequence)
+        break;
+      it.remove();
+    }
+  }
+
+  /**
+   * Feeds that only report a schedule deviation still move every downstream
+   * arrival, so propagate the deviation over the remaining stops of the
+   * active trip, the same way arrivals are predicted for such vehicles.
+   */
+  private List<TimepointPredictionRecord> getPredictionsFromScheduleDeviation(
+      VehicleLocationRecord record,
+      ScheduledBlockLocation scheduledBlockLocation) {
+
+    if (!record.isScheduleDeviationSet() || scheduledBlockLocation == null
+        || scheduledBlockLocation.getActiveTrip() == null)
+      return Collections.emptyList();
+
+    BlockTripEntry activeTrip = scheduledBlockLocation.getActiveTrip();
+    long deviation = (long) (record.getScheduleDeviation() * 1000);
+    List<TimepointPredictionRecord> predictions = new ArrayList<TimepointPredictionRecord>();
+
+    BlockStopTimeEntry blockStopTime = scheduledBlockLocation.getNextStop();
+    while (blockStopTime != null && blockStopTime.getTrip() == activeTrip) {
+      StopTimeEntry stopTime = blockStopTime.getStopTime();
+      TimepointPredictionRecord tpr = new TimepointPredictionRecord();
+      tpr.setTimepointId(stopTime.getStop().getId());
+      tpr.setTripId(activeTrip.getTrip().getId());
+      tpr.setStopSequence(stopTime.getGtfsSequence());
+      tpr.setTimepointPredictedArrivalTime(record.getServiceDate()
+          + stopTime.getArrivalTime() * 1000L + deviation);
+      tpr.setTimepointPredictedDepartureTime(record.getServiceDate()
+          + stopTime.getDepartureTime() * 1000L + deviation);
+      predictions.add(tpr);
+      blockStopTime = blockStopTime.hasNextStop()
+          ? blockStopTime.getNextStop() : null;
+    }
+    return predictions;
+  }
+
+  private static class VehiclePredictions {
+
+    /**
+     * predicted arrival and departure by stop key
+     */
+    private final Map<String, long[]> timesByStopKey = new HashMap<String, long[]>();
+
+    /**
+     * sequence of the vehicle's last published delta
+     */
+    private long lastSequence;
+  }
+
+  private RealtimeDeltaBean createDelta(String type,
+      VehicleLocationRecord record, String vehicleId, String tripId) {
+    RealtimeDeltaBean delta = new RealtimeDeltaBean();
+    delta.setType(type);
+    delta.setTime(record.getTimeOfRecord());
+    delta.setVehicleId(vehicleId);
+    delta.setTripId(tripId);
+    delta.setServiceDate(record.getServiceDate());
+    return delta;
+  }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2017 Metropolitan Transportation Authority
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.impl.realtime.apc;
+
+import org.onebusaway.realtime.api.OccupancyStatus;
+import org.onebusaway.realtime.api.VehicleOccupancyRecord;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Recent occupancy samples for a single vehicle, held in a fixed size ring
+ * buffer, along with the latest sample for each route and direction the
+ * vehicle has reported.
+ */
+class VehicleOccupancyHistory {
+
+    private final Sample[] _samples;
+
+    private int _next = 0;
+
+    private Sample _latest;
+
+    private long _lastReceivedTime = Long.MIN_VALUE;
+
+    private final Map<String, Sample> _latestByRouteKey = new HashMap<>();
+
+    VehicleOccupancyHistory(int capacity) {
+        _samples = new Sample[capacity];
+    }
+
+    synchronized void add(VehicleOccupancyRecord record, String routeKey, long receivedTime) {
+        Sample sample = new Sample(record, routeKey, receivedTime);
+        _samples[_next] = sample;
+        _next = (_next + 1) % _samples.length;
+        _latest = sample;
+        _lastReceivedTime = receivedTime;
+        if (routeKey != null)
+            _latestByRouteKey.put(routeKey, sample);
+    }
+
+    synchronized VehicleOccupancyRecord getLast(long minReceivedTime) {
+        return recordIfCurrent(_latest, minReceivedTime);
+    }
+
+    synchronized VehicleOccupancyRecord getLastForRoute(String routeKey, long minReceivedTime) {
+        return recordIfCurrent(_latestByRouteKey.get(routeKey), minReceivedTime);
+    }
+
+    /**
+     * Averages the occupancy status and raw count of the samples for the route
+     * and direction received since the window start.  The latest sample is
+     * always included, so an empty window gives the latest record unchanged.
+     *
+     * @return a copy of the latest record holding the averages, or null if
+     *         there is no current record for the route and direction
+     */
+    synchronized VehicleOccupancyRecord getSmoothedForRoute(String routeKey, long minReceivedTime,
+                                                            long windowStartTime) {
+        Sample latest = _latestByRouteKey.get(routeKey);
+        if (latest == null || latest.receivedTime <= minReceivedTime)
+            return null;
+
+        int statusSum = 0;
+        int statusCount = 0;
+        long rawCountSum = 0;
+        int rawCountCount = 0;
+        int samples = 0;
+        for (Sample sample : _samples) {
+            if (sample == null || !routeKey.equals(sample.routeKey))
+                continue;
+            if (sample != latest
+                    && (sample.receivedTime <= minReceivedTime || sample.receivedTime < windowStartTime))
+                continue;
+            samples++;
+            OccupancyStatus status = sample.record.getOccupancyStatus();
+            if (status != null && status.valueOf() >= 0) {
+                statusSum += status.valueOf();
+                statusCount++;
+            }
+            if (sample.record.getRawCount() != null) {
+                rawCountSum += sample.record.getRawCount();
+                rawCountCount++;
+            }
+        }
+        if (samples == 1)
+            return latest.record;
+
+        VehicleOccupancyRecord smoothed = latest.record.deepCopy();
+        if (statusCount > 0)
+            smoothed.setOccupancyStatus(OccupancyStatus.toEnum(Math.round((float) statusSum / statusCount)));
+        if (rawCountCount > 0)
+            smoothed.setRawCount(Math.round((float) rawCountSum / rawCountCount));
+        return smoothed;
+    }
+
+    synchronized boolean clearLast(long minReceivedTime) {
+        boolean found = recordIfCurrent(_latest, minReceivedTime) != null;
+        _latest = null;
+        return found;
+    }
+
+    /**
+     * Drops the route and direction from the index and its samples from the
+     * buffer, so they no longer contribute to smoothing.
+     */
+    synchronized boolean clearRoute(String routeKey, long minReceivedTime) {
+        boolean found = recordIfCurrent(_latestByRouteKey.remove(routeKey), minReceivedTime) != null;
+        for (int i = 0; i < _samples.length; i++) {
+            if (_samples[i] != null && routeKey.equals(_samples[i].routeKey))
+                _samples[i] = null;
+        }
+        return found;
+    }
+
+    /**
+     * @return true if no record was received after minReceivedTime
+     */
+    synchronized boolean isExpired(long minReceivedTime) {
+        return _lastReceivedTime <= minReceivedTime;
+    }
+
+    private static VehicleOccupancyRecord recordIfCurrent(Sample sample, long minReceivedTime) {
+        if (sample == null || sample.receivedTime <= minReceivedTime)
+            return null;
+        return sample.record;
+    }
+
+    private static class Sample {
+
+        private final VehicleOccupancyRecord record;
+
+        private final String routeKey;
+
+        private final long receivedTime;
+
+        Sample(VehicleOccupancyRecord record, String routeKey, long receivedTime) {
+            this.record = record;
+            this.routeKey = routeKey;
+            this.receivedTime = receivedTime;
+        }
+    }
+}
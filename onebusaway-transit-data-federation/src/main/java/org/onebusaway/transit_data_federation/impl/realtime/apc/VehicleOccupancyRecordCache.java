@@ -28,6 +28,15 @@ public interface VehicleOccupancyRecordCache {
 
     VehicleOccupancyRecord getRecordForVehicleIdAndRoute(AgencyAndId vehicleId, String routeId, String directionId);
 
+    /**
+     * As {@link #getRecordForVehicleIdAndRoute(AgencyAndId, String, String)},
+     * but with occupancy status and raw count averaged over the records
+     * received in the last windowInSeconds.  A window of zero or less gives
+     * the latest record.
+     */
+    VehicleOccupancyRecord getSmoothedRecordForVehicleIdAndRoute(AgencyAndId vehicleId, String routeId,
+                                                                 String directionId, int windowInSeconds);
+
     boolean clearRecordForVehicle(AgencyAndId vehicleId);
     boolean clearRecord(VehicleOccupancyRecord vehicleOccupancyRecord);
 }
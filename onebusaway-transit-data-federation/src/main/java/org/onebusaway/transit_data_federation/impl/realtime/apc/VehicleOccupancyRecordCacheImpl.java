@@ -15,29 +15,31 @@
  */
 package org.onebusaway.transit_data_federation.impl.realtime.apc;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-
 import org.apache.commons.lang.StringUtils;
 import org.onebusaway.gtfs.model.AgencyAndId;
 import org.onebusaway.realtime.api.VehicleOccupancyRecord;
 import org.springframework.stereotype.Component;
 
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Implementation of cache for APC data.
  *
- * We only keep the last record -- and we carefully expire that record after
- * _cacheTimeoutSeconds.
+ * Each vehicle keeps a ring buffer of its most recent records, indexed by
+ * route and direction, so the latest record and a smoothed record over a
+ * recent window can both be answered without scanning other vehicles.  Records
+ * expire _cacheTimeoutSeconds after they are added.
  */
 @Component
 public class VehicleOccupancyRecordCacheImpl implements VehicleOccupancyRecordCache {
 
     private static int DEFAULT_CACHE_TIMEOUT_SECONDS = 6 * 60;
+    private static int DEFAULT_SAMPLES_PER_VEHICLE = 16;
     private int _cacheTimeoutSeconds = DEFAULT_CACHE_TIMEOUT_SECONDS;
-    private Cache<String, VehicleOccupancyRecord> _routeCache;
-    private Cache<AgencyAndId, VehicleOccupancyRecord> _vehicleCache;
+    private int _samplesPerVehicle = DEFAULT_SAMPLES_PER_VEHICLE;
+    private final Map<AgencyAndId, VehicleOccupancyHistory> _historyByVehicleId = new ConcurrentHashMap<>();
+    private volatile long _lastSweepTime = System.currentTimeMillis();
 
     /**
      * set when records should expire.  A reasonable default is preset,
@@ -51,6 +53,17 @@ public class VehicleOccupancyRecordCacheImpl implements VehicleOccupancyRecordCa
         _cacheTimeoutSeconds = timeoutInSeconds;
     }
 
+    /**
+     * number of recent records kept for each vehicle for smoothing.
+     * @param samplesPerVehicle
+     */
+    public void setSamplesPerVehicle(int samplesPerVehicle) {
+        if (samplesPerVehicle <= 0) {
+            throw new IllegalArgumentException("samplesPerVehicle must be positive");
+        }
+        _samplesPerVehicle = samplesPerVehicle;
+    }
+
     @Override
     public void addRecord(VehicleOccupancyRecord vehicleOccupancyRecord) {
         if (vehicleOccupancyRecord == null || vehicleOccupancyRecord.getVehicleId() == null) {
@@ -58,65 +71,103 @@ public class VehicleOccupancyRecordCacheImpl implements VehicleOccupancyRecordCa
             return;
         }
 
-        getVehicleCache().put(vehicleOccupancyRecord.getVehicleId(), vehicleOccupancyRecord);
+        long now = System.currentTimeMillis();
+        sweepIfNeeded(now);
 
         // route is mandatory -- direction is optional
-        if (StringUtils.isBlank(vehicleOccupancyRecord.getRouteId())) {
-            return;
+        String routeKey = null;
+        if (!StringUtils.isBlank(vehicleOccupancyRecord.getRouteId())) {
+            routeKey = hash(vehicleOccupancyRecord);
         }
 
-        getRouteCache().put(hash(vehicleOccupancyRecord), vehicleOccupancyRecord);
+        final String key = routeKey;
+        // add inside compute so a concurrent sweep cannot drop the history
+        _historyByVehicleId.compute(vehicleOccupancyRecord.getVehicleId(), (id, history) -> {
+            if (history == null)
+                history = new VehicleOccupancyHistory(_samplesPerVehicle);
+            history.add(vehicleOccupancyRecord, key, now);
+            return history;
+        });
     }
 
     public VehicleOccupancyRecord getLastRecordForVehicleId(AgencyAndId vehicleId) {
-        return getVehicleCache().getIfPresent(vehicleId);
+        VehicleOccupancyHistory history = getHistory(vehicleId);
+        if (history == null)
+            return null;
+        return history.getLast(getMinReceivedTime());
     }
 
     @Override
     public VehicleOccupancyRecord getRecordForVehicleIdAndRoute(AgencyAndId vehicleId, String routeId, String directionId) {
-        return getRouteCache().getIfPresent(hash(vehicleId, routeId, directionId));
+        VehicleOccupancyHistory history = getHistory(vehicleId);
+        if (history == null || routeId == null)
+            return null;
+        return history.getLastForRoute(hash(vehicleId, routeId, directionId), getMinReceivedTime());
+    }
+
+    @Override
+    public VehicleOccupancyRecord getSmoothedRecordForVehicleIdAndRoute(AgencyAndId vehicleId, String routeId,
+                                                                        String directionId, int windowInSeconds) {
+        VehicleOccupancyHistory history = getHistory(vehicleId);
+        if (history == null || routeId == null)
+            return null;
+        String routeKey = hash(vehicleId, routeId, directionId);
+        if (windowInSeconds <= 0)
+            return history.getLastForRoute(routeKey, getMinReceivedTime());
+        return history.getSmoothedForRoute(routeKey, getMinReceivedTime(),
+                System.currentTimeMillis() - windowInSeconds * 1000L);
     }
 
     @Override
     public boolean clearRecordForVehicle(AgencyAndId vehicleId) {
-        boolean found = getVehicleCache().getIfPresent(vehicleId) != null;
-        getVehicleCache().invalidate(vehicleId);
-        return found;
+        VehicleOccupancyHistory history = getHistory(vehicleId);
+        if (history == null)
+            return false;
+        return history.clearLast(getMinReceivedTime());
     }
 
     @Override
     public boolean clearRecord(VehicleOccupancyRecord vor) {
-        String hash = hash(vor.getVehicleId(), vor.getRouteId(), vor.getDirectionId());
-        boolean found = getRouteCache().getIfPresent(hash) != null;
-        getRouteCache().invalidate(hash);
-        return found;
+        VehicleOccupancyHistory history = getHistory(vor.getVehicleId());
+        if (history == null)
+            return false;
+        return history.clearRoute(hash(vor), getMinReceivedTime());
     }
 
     private String hash(AgencyAndId vehicleId, String routeId, String directionId) {
         if (!routeId.contains("_")) { // ensure we use qualified route_id
             routeId = new AgencyAndId(vehicleId.getAgencyId(), routeId).toString();
         }
-        return vehicleId.toString() + "." + routeId + "." + directionId;
+        return routeId + "." + directionId;
     }
 
     private String hash(VehicleOccupancyRecord vor) {
         return hash(vor.getVehicleId(), vor.getRouteId(), vor.getDirectionId());
     }
 
-    private Cache<String, VehicleOccupancyRecord> getRouteCache() {
-        if (_routeCache == null) {
-            _routeCache = CacheBuilder.newBuilder()
-                    .expireAfterWrite(_cacheTimeoutSeconds, TimeUnit.SECONDS).build();
-        }
-        return _routeCache;
+    private VehicleOccupancyHistory getHistory(AgencyAndId vehicleId) {
+        if (vehicleId == null)
+            return null;
+        return _historyByVehicleId.get(vehicleId);
+    }
+
+    private long getMinReceivedTime() {
+        return System.currentTimeMillis() - _cacheTimeoutSeconds * 1000L;
     }
 
-    private Cache<AgencyAndId, VehicleOccupancyRecord> getVehicleCache() {
-        if (_vehicleCache == null) {
-            _vehicleCache = CacheBuilder.newBuilder()
-                    .expireAfterWrite(_cacheTimeoutSeconds, TimeUnit.SECONDS).build();
+    /**
+     * drop vehicles that have not reported within the timeout, at most once
+     * per timeout period.
+     */
+    private void sweepIfNeeded(long now) {
+        long timeout = _cacheTimeoutSeconds * 1000L;
+        if (now - _lastSweepTime < timeout)
+            return;
+        _lastSweepTime = now;
+        for (AgencyAndId vehicleId : _historyByVehicleId.keySet()) {
+            _historyByVehicleId.computeIfPresent(vehicleId,
+                    (id, history) -> history.isExpired(now - timeout) ? null : history);
         }
-        return _vehicleCache;
     }
 
 }
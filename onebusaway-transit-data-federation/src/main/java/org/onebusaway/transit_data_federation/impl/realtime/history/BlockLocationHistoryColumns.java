@@ -0,0 +1,322 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.impl.realtime.history;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.AgencyAndIdInstance;
+
+/**
+ * Columnar, per-trip block location history. All records for a single trip
+ * are stored grouped by service date and ordered by distance along block, with
+ * each numeric field held in its own column. Missing values are stored as
+ * {@link Double#NaN}.
+ *
+ * The header also records the cutoff time of the build that wrote the file:
+ * the file holds all of the trip's archived history up to that time, so only
+ * archive data written after it needs to be consulted.
+ *
+ * The on-disk layout is a fixed header followed by the instance table and then
+ * one column per field, so a file can be memory mapped and read without any
+ * per-row parsing. Only the instance table is copied onto the heap; column
+ * values are read straight from the mapped buffer.
+ */
+public final class BlockLocationHistoryColumns {
+
+  private static final int MAGIC = 0x4f424c48; // "OBLH"
+
+  private static final int VERSION = 2;
+
+  private static final int COLUMN_TIME = 0;
+
+  private static final int COLUMN_DISTANCE_ALONG_BLOCK = 1;
+
+  private static final int COLUMN_DISTANCE_ALONG_TRIP = 2;
+
+  private static final int COLUMN_SCHEDULE_DEVIATION = 3;
+
+  private static final int COLUMN_LAT = 4;
+
+  private static final int COLUMN_LON = 5;
+
+  private final AgencyAndId _blockId;
+
+  private final long _cutoffTime;
+
+  private final long[] _serviceDates;
+
+  /**
+   * record offsets for each service date, with a trailing entry equal to the
+   * total number of records
+   */
+  private final int[] _offsets;
+
+  private final ByteBuffer _columns;
+
+  private BlockLocationHistoryColumns(AgencyAndId blockId, long cutoffTime,
+      long[] serviceDates, int[] offsets, ByteBuffer columns) {
+    _blockId = blockId;
+    _cutoffTime = cutoffTime;
+    _serviceDates = serviceDates;
+    _offsets = offsets;
+    _columns = columns;
+  }
+
+  /**
+   * @return the time, in milliseconds, up to which the file holds all of the
+   *         trip's archived history
+   */
+  public long getCutoffTime() {
+    return _cutoffTime;
+  }
+
+  public int getInstanceCount() {
+    return _serviceDates.length;
+  }
+
+  public int getRecordCount() {
+    return _offsets[_serviceDates.length];
+  }
+
+  public int getFromIndex(int instanceIndex) {
+    return _offsets[instanceIndex];
+  }
+
+  public int getToIndex(int instanceIndex) {
+    return _offsets[instanceIndex + 1];
+  }
+
+  /**
+   * Groups the records by trip instance, each sorted by distance along block.
+   * The lists are views over the mapped columns: a record is only materialized
+   * when it is fetched from its list.
+   */
+  public Map<AgencyAndIdInstance, List<BlockLocationArchiveRecord>> getRecordsByInstance(
+      AgencyAndId tripId) {
+
+    Map<AgencyAndIdInstance, List<BlockLocationArchiveRecord>> recordsByInstance = new LinkedHashMap<AgencyAndIdInstance, List<BlockLocationArchiveRecord>>();
+
+    for (int i = 0; i < _serviceDates.length; i++) {
+      recordsByInstance.put(new AgencyAndIdInstance(tripId, _serviceDates[i]),
+          new InstanceRecords(tripId, i));
+    }
+
+    return recordsByInstance;
+  }
+
+  private BlockLocationArchiveRecord getRecord(AgencyAndId tripId,
+      long serviceDate, int index) {
+    BlockLocationArchiveRecord record = new BlockLocationArchiveRecord();
+    record.setBlockId(_blockId);
+    record.setTripId(tripId);
+    record.setServiceDate(serviceDate);
+    record.setTime(_columns.getLong(getPosition(COLUMN_TIME, index)));
+    record.setDistanceAlongBlock(getDouble(COLUMN_DISTANCE_ALONG_BLOCK, index));
+    record.setDistanceAlongTrip(getDouble(COLUMN_DISTANCE_ALONG_TRIP, index));
+    record.setScheduleDeviation(getDouble(COLUMN_SCHEDULE_DEVIATION, index));
+    record.setLocationLat(getDouble(COLUMN_LAT, index));
+    record.setLocationLon(getDouble(COLUMN_LON, index));
+    return record;
+  }
+
+  private Double getDouble(int column, int index) {
+    return box(_columns.getDouble(getPosition(column, index)));
+  }
+
+  private int getPosition(int column, int index) {
+    return (column * getRecordCount() + index) * 8;
+  }
+
+  /****
+   * Serialization
+   ****/
+
+  public static void write(File path, AgencyAndId blockId, long cutoffTime,
+      Map<AgencyAndIdInstance, List<BlockLocationArchiveRecord>> recordsByInstance)
+      throws IOException {
+
+    List<Long> serviceDates = new ArrayList<Long>();
+    List<List<BlockLocationArchiveRecord>> groups = new ArrayList<List<BlockLocationArchiveRecord>>();
+    int recordCount = 0;
+
+    for (Map.Entry<AgencyAndIdInstance, List<BlockLocationArchiveRecord>> entry : recordsByInstance.entrySet()) {
+      List<BlockLocationArchiveRecord> records = new ArrayList<BlockLocationArchiveRecord>(
+          entry.getValue());
+      Collections.sort(records, new DistanceAlongBlockComparator());
+      serviceDates.add(entry.getKey().getServiceDate());
+      groups.add(records);
+      recordCount += records.size();
+    }
+
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(path)));
+
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeUTF(blockId.getAgencyId());
+      out.writeUTF(blockId.getId());
+      out.writeLong(cutoffTime);
+      out.writeInt(serviceDates.size());
+      out.writeInt(recordCount);
+
+      int offset = 0;
+      for (int i = 0; i < serviceDates.size(); i++) {
+        out.writeLong(serviceDates.get(i));
+        out.writeInt(offset);
+        offset += groups.get(i).size();
+      }
+
+      for (List<BlockLocationArchiveRecord> records : groups)
+        for (BlockLocationArchiveRecord record : records)
+          out.writeLong(record.getTime());
+      for (List<BlockLocationArchiveRecord> records : groups)
+        for (BlockLocationArchiveRecord record : records)
+          out.writeDouble(unbox(record.getDistanceAlongBlock()));
+      for (List<BlockLocationArchiveRecord> records : groups)
+        for (BlockLocationArchiveRecord record : records)
+          out.writeDouble(unbox(record.getDistanceAlongTrip()));
+      for (List<BlockLocationArchiveRecord> records : groups)
+        for (BlockLocationArchiveRecord record : records)
+          out.writeDouble(unbox(record.getScheduleDeviation()));
+      for (List<BlockLocationArchiveRecord> records : groups)
+        for (BlockLocationArchiveRecord record : records)
+          out.writeDouble(unbox(record.getLocationLat()));
+      for (List<BlockLocationArchiveRecord> records : groups)
+        for (BlockLocationArchiveRecord record : records)
+          out.writeDouble(unbox(record.getLocationLon()));
+    } finally {
+      out.close();
+    }
+  }
+
+  public static BlockLocationHistoryColumns read(File path) throws IOException {
+
+    RandomAccessFile file = new RandomAccessFile(path, "r");
+
+    try {
+      FileChannel channel = file.getChannel();
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+          channel.size());
+
+      if (buffer.getInt() != MAGIC)
+        throw new IOException("not a block location history file: " + path);
+      int version = buffer.getInt();
+      if (version != VERSION)
+        throw new IOException("unsupported block location history version "
+            + version + ": " + path);
+
+      String agencyId = readUTF(buffer);
+      String id = readUTF(buffer);
+      long cutoffTime = buffer.getLong();
+      int instanceCount = buffer.getInt();
+      int recordCount = buffer.getInt();
+
+      long[] serviceDates = new long[instanceCount];
+      int[] offsets = new int[instanceCount + 1];
+      for (int i = 0; i < instanceCount; i++) {
+        serviceDates[i] = buffer.getLong();
+        offsets[i] = buffer.getInt();
+      }
+      offsets[instanceCount] = recordCount;
+
+      // the mapping stays valid once the channel is closed
+      buffer.limit(buffer.position() + 6 * 8 * recordCount);
+      ByteBuffer columns = buffer.slice();
+
+      return new BlockLocationHistoryColumns(new AgencyAndId(agencyId, id),
+          cutoffTime, serviceDates, offsets, columns);
+    } finally {
+      file.close();
+    }
+  }
+
+  /**
+   * Counterpart to {@link DataOutputStream#writeUTF(String)}, which prefixes
+   * the modified UTF-8 bytes with an unsigned short length.
+   */
+  private static String readUTF(ByteBuffer buffer) throws IOException {
+    int length = buffer.getShort() & 0xffff;
+    byte[] bytes = new byte[length + 2];
+    bytes[0] = (byte) (length >>> 8);
+    bytes[1] = (byte) length;
+    buffer.get(bytes, 2, length);
+    return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+  }
+
+  private static double unbox(Double value) {
+    return value == null ? Double.NaN : value;
+  }
+
+  private static Double box(double value) {
+    return Double.isNaN(value) ? null : value;
+  }
+
+  private final class InstanceRecords extends
+      AbstractList<BlockLocationArchiveRecord> {
+
+    private final AgencyAndId _tripId;
+
+    private final int _instanceIndex;
+
+    public InstanceRecords(AgencyAndId tripId, int instanceIndex) {
+      _tripId = tripId;
+      _instanceIndex = instanceIndex;
+    }
+
+    @Override
+    public BlockLocationArchiveRecord get(int index) {
+      int from = _offsets[_instanceIndex];
+      if (index < 0 || from + index >= _offsets[_instanceIndex + 1])
+        throw new IndexOutOfBoundsException(Integer.toString(index));
+      return getRecord(_tripId, _serviceDates[_instanceIndex], from + index);
+    }
+
+    @Override
+    public int size() {
+      return _offsets[_instanceIndex + 1] - _offsets[_instanceIndex];
+    }
+  }
+
+  private static class DistanceAlongBlockComparator implements
+      Comparator<BlockLocationArchiveRecord> {
+
+    @Override
+    public int compare(BlockLocationArchiveRecord o1,
+        BlockLocationArchiveRecord o2) {
+      return Double.compare(unbox(o1.getDistanceAlongBlock()),
+          unbox(o2.getDistanceAlongBlock()));
+    }
+  }
+}
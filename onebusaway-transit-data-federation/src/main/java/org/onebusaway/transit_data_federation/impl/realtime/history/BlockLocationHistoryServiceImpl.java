@@ -22,6 +22,7 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.zip.GZIPInputStream;
@@ -34,6 +35,7 @@ import org.onebusaway.csv_entities.EntityHandler;
 import org.onebusaway.gtfs.model.AgencyAndId;
 import org.onebusaway.gtfs.model.AgencyAndIdInstance;
 import org.onebusaway.util.AgencyAndIdLibrary;
+import org.onebusaway.transit_data_federation.services.FederatedTransitDataBundle;
 import org.onebusaway.transit_data_federation.services.realtime.BlockLocationHistoryService;
 import org.onebusaway.transit_data_federation.services.transit_graph.BlockEntry;
 import org.onebusaway.transit_data_federation.services.transit_graph.TransitGraphDao;
@@ -47,6 +49,8 @@ public class BlockLocationHistoryServiceImpl implements
 
   private TransitGraphDao _transitGraphDao;
 
+  private FederatedTransitDataBundle _bundle;
+
   private File _dataDir;
 
   @Autowired
@@ -54,6 +58,11 @@ public class BlockLocationHistoryServiceImpl implements
     _transitGraphDao = transitGraphDao;
   }
 
+  @Autowired
+  public void setBundle(FederatedTransitDataBundle bundle) {
+    _bundle = bundle;
+  }
+
   public void setDataDir(File dataDir) {
     _dataDir = dataDir;
   }
@@ -66,9 +75,45 @@ public class BlockLocationHistoryServiceImpl implements
     if (trip == null)
       return null;
 
+    BlockLocationHistoryColumns columns = getColumnarHistoryForTripId(tripId);
+
+    if (columns == null)
+      return getArchivedHistoryForTripId(trip, Long.MIN_VALUE);
+
+    /**
+     * The columnar history is authoritative up to the cutoff of the build that
+     * wrote it, so only archive files written since then are read
+     */
+    Map<AgencyAndIdInstance, List<BlockLocationArchiveRecord>> columnar = columns.getRecordsByInstance(tripId);
+    Map<AgencyAndIdInstance, List<BlockLocationArchiveRecord>> archived = getArchivedHistoryForTripId(
+        trip, columns.getCutoffTime());
+
+    if (archived == null || archived.isEmpty())
+      return columnar;
+
+    Map<AgencyAndIdInstance, List<BlockLocationArchiveRecord>> merged = new LinkedHashMap<AgencyAndIdInstance, List<BlockLocationArchiveRecord>>(
+        columnar);
+    for (Map.Entry<AgencyAndIdInstance, List<BlockLocationArchiveRecord>> entry : archived.entrySet()) {
+      if (!merged.containsKey(entry.getKey()))
+        merged.put(entry.getKey(), entry.getValue());
+    }
+    return merged;
+  }
+
+  /**
+   * @param modifiedAfter only archive files last modified after this time, in
+   *          milliseconds, are read
+   */
+  private Map<AgencyAndIdInstance, List<BlockLocationArchiveRecord>> getArchivedHistoryForTripId(
+      TripEntry trip, long modifiedAfter) {
+
+    if (_dataDir == null || !_dataDir.exists())
+      return null;
+
+    AgencyAndId tripId = trip.getId();
     BlockEntry block = trip.getBlock();
 
-    List<File> files = getFilesForBlockId(block.getId());
+    List<File> files = getFilesForBlockId(block.getId(), modifiedAfter);
 
     CsvEntityReader reader = new CsvEntityReader();
     reader.setTokenizerStrategy(new DelimiterTokenizerStrategy("\t"));
@@ -94,6 +139,35 @@ public class BlockLocationHistoryServiceImpl implements
     return recordsByInstance;
   }
 
+  /**
+   * Per-trip columnar history written by the bundle builder, if present. Its
+   * records are read from the mapped file on access rather than parsed up
+   * front.
+   */
+  private BlockLocationHistoryColumns getColumnarHistoryForTripId(
+      AgencyAndId tripId) {
+
+    if (_bundle == null || _bundle.getPath() == null)
+      return null;
+
+    File path = getColumnarPathForTripId(_bundle.getBlockLocationHistoryPath(),
+        tripId);
+    if (!path.exists())
+      return null;
+
+    try {
+      return BlockLocationHistoryColumns.read(path);
+    } catch (IOException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  public static File getColumnarPathForTripId(File historyDir,
+      AgencyAndId tripId) {
+    return new File(historyDir, AgencyAndIdLibrary.convertToString(tripId)
+        + ".bin");
+  }
+
   private InputStream openFileForInput(File path) throws IOException {
     InputStream in = new FileInputStream(path);
     if (path.getName().endsWith(".gz"))
@@ -101,13 +175,15 @@ public class BlockLocationHistoryServiceImpl implements
     return in;
   }
 
-  private List<File> getFilesForBlockId(AgencyAndId blockId) {
+  private List<File> getFilesForBlockId(AgencyAndId blockId,
+      long modifiedAfter) {
 
     List<File> files = new ArrayList<File>();
     for (File dateDir : _dataDir.listFiles()) {
       File dataFile = new File(dateDir,
           AgencyAndIdLibrary.convertToString(blockId) + ".gz");
-      if (dataFile.exists())
+      // lastModified() is 0 for a missing file
+      if (dataFile.lastModified() > modifiedAfter && dataFile.exists())
         files.add(dataFile);
     }
     return files;
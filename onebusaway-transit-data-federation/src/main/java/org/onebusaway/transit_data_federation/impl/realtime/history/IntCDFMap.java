@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.impl.realtime.history;
+
+/**
+ * A {@link CDFMap} specialized for int values, backed by parallel primitive
+ * arrays so that neither insertion nor sampling boxes its entries.
+ */
+public class IntCDFMap {
+
+  private double _cumulativeProb = 0.0;
+
+  private double[] _cumulativeProbabilities;
+
+  private int[] _entries;
+
+  private int _size = 0;
+
+  public IntCDFMap() {
+    this(2);
+  }
+
+  public IntCDFMap(int initialCapacity) {
+    initialCapacity = Math.max(initialCapacity, 2);
+    _cumulativeProbabilities = new double[initialCapacity];
+    _entries = new int[initialCapacity];
+  }
+
+  public void put(double prob, int value) {
+
+    if (_entries.length <= _size) {
+      int c = _entries.length << 1;
+      double[] cumulativeProbabilities = new double[c];
+      int[] entries = new int[c];
+      System.arraycopy(_cumulativeProbabilities, 0, cumulativeProbabilities, 0,
+          _size);
+      System.arraycopy(_entries, 0, entries, 0, _size);
+      _cumulativeProbabilities = cumulativeProbabilities;
+      _entries = entries;
+    }
+
+    _cumulativeProb += prob;
+    _cumulativeProbabilities[_size] = _cumulativeProb;
+    _entries[_size] = value;
+    _size++;
+  }
+
+  /**
+   * Removes all entries, keeping the allocated capacity so the map can be
+   * reused.
+   */
+  public void clear() {
+    _cumulativeProb = 0.0;
+    _size = 0;
+  }
+
+  public int sample() {
+    return sample(Math.random());
+  }
+
+  /**
+   * @param u a uniform value in [0,1)
+   * @return the entry whose cumulative probability range contains u
+   */
+  public int sample(double u) {
+
+    if (_size == 0)
+      throw new IllegalStateException("No entries in the CDF");
+
+    if (_cumulativeProb == 0.0)
+      throw new IllegalStateException("No cumulative probability in CDF");
+
+    double probability = u * _cumulativeProb;
+
+    int low = 0;
+    int high = _size - 1;
+
+    // first index whose cumulative probability is >= probability
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (_cumulativeProbabilities[mid] < probability)
+        low = mid + 1;
+      else
+        high = mid;
+    }
+
+    return _entries[low];
+  }
+
+  public boolean isEmpty() {
+    return _size == 0;
+  }
+
+  public boolean canSample() {
+    return _size > 0 && _cumulativeProb > 0.0;
+  }
+
+  public int size() {
+    return _size;
+  }
+}
@@ -15,11 +15,11 @@
  */
 package org.onebusaway.transit_data_federation.impl.realtime.history;
 
-import java.util.Arrays;
-
 import org.onebusaway.collections.Range;
+import org.onebusaway.container.refresh.Refreshable;
 import org.onebusaway.gtfs.model.AgencyAndId;
 import org.onebusaway.realtime.api.VehicleLocationRecord;
+import org.onebusaway.transit_data_federation.impl.RefreshableResources;
 import org.onebusaway.transit_data_federation.services.blocks.BlockInstance;
 import org.onebusaway.transit_data_federation.services.blocks.ScheduledBlockLocation;
 import org.onebusaway.transit_data_federation.services.realtime.ArrivalAndDepartureInstance;
@@ -31,7 +31,6 @@ import org.onebusaway.transit_data_federation.services.transit_graph.BlockStopTi
 import org.onebusaway.transit_data_federation.services.transit_graph.BlockTripEntry;
 import org.onebusaway.transit_data_federation.services.transit_graph.StopTimeEntry;
 import org.onebusaway.transit_data_federation.services.transit_graph.TripEntry;
-import org.onebusaway.utility.InterpolationLibrary;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -40,13 +39,24 @@ import cern.jet.random.Normal;
 import cern.jet.random.engine.RandomEngine;
 import cern.jet.stat.Descriptive;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 @Component
 public class RealTimeHistoryServiceImpl implements RealTimeHistoryService {
 
+  private static final int LOOKAHEAD_STEP = 5 * 60;
+
+  private static final ThreadLocal<SamplingBuffers> _samplingBuffers = ThreadLocal.withInitial(SamplingBuffers::new);
+
   private ScheduleDeviationHistoryDao _scheduleDeviationHistoryDao;
 
   private int _predictionLookahead = 20 * 60;
 
+  private int _maxCachedDistributions = 2000;
+
+  private Cache<AgencyAndId, ScheduleDeviationDistribution> _distributionsByTripId = createDistributionCache();
+
   private Normal _schedDevScaleParam = new Normal(0, 5 * 60,
       RandomEngine.makeDefault());
 
@@ -60,6 +70,23 @@ public class RealTimeHistoryServiceImpl implements RealTimeHistoryService {
     _predictionLookahead = predictionLookahead;
   }
 
+  /**
+   * @param maxCachedDistributions the number of trips whose precomputed
+   *          distributions are kept in memory
+   */
+  public void setMaxCachedDistributions(int maxCachedDistributions) {
+    _maxCachedDistributions = maxCachedDistributions;
+    _distributionsByTripId = createDistributionCache();
+  }
+
+  /**
+   * Trip ids, and so their histories, may change with the bundle
+   */
+  @Refreshable(dependsOn = RefreshableResources.TRANSIT_GRAPH)
+  public void clearDistributions() {
+    _distributionsByTripId.invalidateAll();
+  }
+
   @Override
   public ScheduleDeviationHistogram getScheduleDeviationHistogramForArrivalAndDepartureInstance(
       ArrivalAndDepartureInstance instance, int stepSizeInSeconds) {
@@ -68,16 +95,15 @@ public class RealTimeHistoryServiceImpl implements RealTimeHistoryService {
     TripEntry trip = blockTrip.getTrip();
     AgencyAndId tripId = trip.getId();
 
-    ScheduleDeviationHistory history = _scheduleDeviationHistoryDao.getScheduleDeviationHistoryForTripId(tripId);
-    
-    if( history == null)
+    ScheduleDeviationDistribution distribution = getDistributionForTripId(tripId);
+
+    if (distribution == null)
       return null;
 
     BlockStopTimeEntry blockStopTime = instance.getBlockStopTime();
     StopTimeEntry stopTime = blockStopTime.getStopTime();
 
-    double[] values = getScheduleDeviationsForScheduleTime(history,
-        stopTime.getDepartureTime());
+    double[] values = distribution.getScheduleDeviationsForScheduleTime(stopTime.getDepartureTime());
     return createHistogramFromValues(values, stepSizeInSeconds);
   }
 
@@ -91,43 +117,50 @@ public class RealTimeHistoryServiceImpl implements RealTimeHistoryService {
     BlockTripEntry blockTrip = scheduledBlockLocation.getActiveTrip();
     TripEntry trip = blockTrip.getTrip();
 
-    ScheduleDeviationHistory history = _scheduleDeviationHistoryDao.getScheduleDeviationHistoryForTripId(trip.getId());
+    ScheduleDeviationDistribution distribution = getDistributionForTripId(trip.getId());
 
-    if (history == null)
+    if (distribution == null)
       return null;
 
-    ScheduleDeviationHistory resampledHistory = resampleHistory(history,
-        scheduledBlockLocation.getScheduledTime(),
-        record.getScheduleDeviation());
+    SamplingBuffers buffers = _samplingBuffers.get();
+    buffers.ensureCapacity(distribution.getNumberOfSamples());
+
+    int fromScheduleTime = scheduledBlockLocation.getScheduledTime();
+    int[] sampledTraces = resampleTraces(distribution, buffers,
+        fromScheduleTime, record.getScheduleDeviation());
+    int numSamples = distribution.getNumberOfSamples();
+    double[] deviations = buffers.deviations;
+    DoubleArrayList values = buffers.values;
 
-    DoubleArrayList scheduleTimes = new DoubleArrayList();
-    DoubleArrayList mus = new DoubleArrayList();
-    DoubleArrayList sigmas = new DoubleArrayList();
+    int steps = _predictionLookahead < 0 ? 0
+        : _predictionLookahead / LOOKAHEAD_STEP + 1;
+    double[] scheduleTimes = new double[steps];
+    double[] mus = new double[steps];
+    double[] sigmas = new double[steps];
 
-    for (int t = 0; t <= _predictionLookahead; t += 5 * 60) {
+    for (int step = 0; step < steps; step++) {
 
-      int scheduleTime = scheduledBlockLocation.getScheduledTime() + t;
-      double[] deviations = getScheduleDeviationsForScheduleTime(
-          resampledHistory, scheduleTime);
+      int scheduleTime = fromScheduleTime + step * LOOKAHEAD_STEP;
+      distribution.getScheduleDeviationsForScheduleTime(scheduleTime,
+          deviations);
 
-      deviations = noNans(deviations);
-      DoubleArrayList values = new DoubleArrayList(deviations);
+      values.clear();
+      for (int i = 0; i < numSamples; i++) {
+        double deviation = deviations[sampledTraces[i]];
+        if (!Double.isNaN(deviation))
+          values.add(deviation);
+      }
 
       double mu = Descriptive.mean(values);
       double var = Descriptive.sampleVariance(values, mu);
       double sigma = Descriptive.sampleStandardDeviation(values.size(), var);
 
-      scheduleTimes.add(scheduleTime);
-      mus.add(mu);
-      sigmas.add(sigma);
+      scheduleTimes[step] = scheduleTime;
+      mus[step] = mu;
+      sigmas[step] = sigma;
     }
 
-    scheduleTimes.trimToSize();
-    mus.trimToSize();
-    sigmas.trimToSize();
-
-    return new ScheduleDeviationSamples(scheduleTimes.elements(),
-        mus.elements(), sigmas.elements());
+    return new ScheduleDeviationSamples(scheduleTimes, mus, sigmas);
   }
 
   /****
@@ -135,49 +168,27 @@ public class RealTimeHistoryServiceImpl implements RealTimeHistoryService {
    ****/
 
   /**
-   * @param history
-   * @param distanceAlongBlock
-   * @return
+   * Histories are immutable once built, so the transposed and sorted view of
+   * each is computed on first use and shared by subsequent requests.
    */
+  private ScheduleDeviationDistribution getDistributionForTripId(
+      AgencyAndId tripId) {
 
-  private double[] getScheduleDeviationsForScheduleTime(
-      ScheduleDeviationHistory history, int scheduleTime) {
-
-    double[] scheduleTimes = history.getScheduleTimes();
-    double[][] scheduleDeviations = history.getScheduleDeviations();
+    ScheduleDeviationDistribution distribution = _distributionsByTripId.getIfPresent(tripId);
 
-    int index = Arrays.binarySearch(scheduleTimes, scheduleTime);
-
-    if (index >= 0)
-      return getColumn(scheduleDeviations, index);
-
-    index = -(index + 1);
-
-    if (index == scheduleTimes.length)
-      return getColumn(scheduleDeviations, index - 1);
-    if (index == 0)
-      return getColumn(scheduleDeviations, 0);
-
-    int numSamples = history.getNumberOfSamples();
-    double[] values = new double[numSamples];
-
-    for (int i = 0; i < numSamples; i++) {
-      double fromKey = scheduleTimes[index - 1];
-      double toKey = scheduleTimes[index];
-      double fromValue = scheduleDeviations[i][index - 1];
-      double toValue = scheduleDeviations[i][index];
-      values[i] = InterpolationLibrary.interpolatePair(fromKey, fromValue,
-          toKey, toValue, scheduleTime);
+    if (distribution == null) {
+      ScheduleDeviationHistory history = _scheduleDeviationHistoryDao.getScheduleDeviationHistoryForTripId(tripId);
+      if (history == null)
+        return null;
+      distribution = ScheduleDeviationDistribution.create(history);
+      _distributionsByTripId.put(tripId, distribution);
     }
 
-    return values;
+    return distribution;
   }
 
-  private double[] getColumn(double[][] values, int index) {
-    double[] v = new double[values.length];
-    for (int i = 0; i < values.length; i++)
-      v[i] = values[i][index];
-    return v;
+  private Cache<AgencyAndId, ScheduleDeviationDistribution> createDistributionCache() {
+    return CacheBuilder.newBuilder().maximumSize(_maxCachedDistributions).build();
   }
 
   private double[] noNans(double[] values) {
@@ -226,14 +237,24 @@ public class RealTimeHistoryServiceImpl implements RealTimeHistoryService {
     return new ScheduleDeviationHistogram(scheduleDeviations, counts);
   }
 
-  private ScheduleDeviationHistory resampleHistory(
-      ScheduleDeviationHistory history, int scheduleTime, double activeDeviation) {
+  /**
+   * Draws trace indices with replacement, weighting each trace by how close
+   * its deviation at the current schedule time is to the vehicle's active
+   * deviation.
+   * 
+   * @return the buffer's sampled traces, of which the first
+   *         {@link ScheduleDeviationDistribution#getNumberOfSamples()} are set
+   */
+  private int[] resampleTraces(ScheduleDeviationDistribution distribution,
+      SamplingBuffers buffers, int scheduleTime, double activeDeviation) {
 
-    double[] deviations = getScheduleDeviationsForScheduleTime(history,
-        scheduleTime);
+    int numSamples = distribution.getNumberOfSamples();
+    double[] deviations = distribution.getScheduleDeviationsForScheduleTime(
+        scheduleTime, buffers.deviations);
 
-    CDFMap<Integer> cdf = new CDFMap<Integer>();
-    for (int i = 0; i < deviations.length; i++) {
+    IntCDFMap cdf = buffers.cdf;
+    cdf.clear();
+    for (int i = 0; i < numSamples; i++) {
       double deviation = deviations[i];
       if (Double.isNaN(deviation))
         continue;
@@ -241,19 +262,34 @@ public class RealTimeHistoryServiceImpl implements RealTimeHistoryService {
       cdf.put(p, i);
     }
 
-    int numSamples = deviations.length;
+    int[] sampledTraces = buffers.sampledTraces;
 
-    double[] scheduleTimes = history.getScheduleTimes();
-    double[][] scheduleDeviations = history.getScheduleDeviations();
+    for (int i = 0; i < numSamples; i++)
+      sampledTraces[i] = cdf.sample();
 
-    double[][] sampledScheduleDeviations = new double[numSamples][];
+    return sampledTraces;
+  }
 
-    for (int i = 0; i < numSamples; i++) {
-      int index = cdf.sample();
-      sampledScheduleDeviations[i] = scheduleDeviations[index];
-    }
+  /**
+   * Scratch space for {@link #sampleScheduleDeviationsForVehicle}, reused by
+   * each request thread so the lookahead loop does not allocate per step. The
+   * buffers grow to the largest number of samples seen by the thread.
+   */
+  private static class SamplingBuffers {
+
+    private double[] deviations = new double[0];
 
-    return new ScheduleDeviationHistory(history.getTripId(), scheduleTimes,
-        sampledScheduleDeviations);
+    private int[] sampledTraces = new int[0];
+
+    private final IntCDFMap cdf = new IntCDFMap();
+
+    private final DoubleArrayList values = new DoubleArrayList();
+
+    public void ensureCapacity(int numberOfSamples) {
+      if (deviations.length < numberOfSamples) {
+        deviations = new double[numberOfSamples];
+        sampledTraces = new int[numberOfSamples];
+      }
+    }
   }
 }
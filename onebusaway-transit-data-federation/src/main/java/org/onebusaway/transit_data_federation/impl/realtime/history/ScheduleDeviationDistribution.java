@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.impl.realtime.history;
+
+import java.util.Arrays;
+
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.utility.InterpolationLibrary;
+
+/**
+ * A read-only, precomputed view of a {@link ScheduleDeviationHistory}. The
+ * history is stored trace-major ([trace][scheduleTime]), while every query
+ * reads it schedule-time-major, so the deviations are transposed once up
+ * front.
+ * 
+ * Arrays returned by this class are copies, so callers may modify them.
+ */
+public final class ScheduleDeviationDistribution {
+
+  private final AgencyAndId _tripId;
+
+  private final int _numberOfSamples;
+
+  private final double[] _scheduleTimes;
+
+  /**
+   * [scheduleTimeIndex][traceIndex], NaN where a trace has no value
+   */
+  private final double[][] _columns;
+
+  private ScheduleDeviationDistribution(AgencyAndId tripId,
+      int numberOfSamples, double[] scheduleTimes, double[][] columns) {
+    _tripId = tripId;
+    _numberOfSamples = numberOfSamples;
+    _scheduleTimes = scheduleTimes;
+    _columns = columns;
+  }
+
+  public static ScheduleDeviationDistribution create(
+      ScheduleDeviationHistory history) {
+
+    double[] scheduleTimes = history.getScheduleTimes();
+    double[][] scheduleDeviations = history.getScheduleDeviations();
+    int numberOfSamples = history.getNumberOfSamples();
+
+    double[][] columns = new double[scheduleTimes.length][];
+
+    for (int index = 0; index < scheduleTimes.length; index++) {
+      double[] column = new double[numberOfSamples];
+      for (int i = 0; i < numberOfSamples; i++)
+        column[i] = scheduleDeviations[i][index];
+      columns[index] = column;
+    }
+
+    return new ScheduleDeviationDistribution(history.getTripId(),
+        numberOfSamples, scheduleTimes.clone(), columns);
+  }
+
+  public AgencyAndId getTripId() {
+    return _tripId;
+  }
+
+  public int getNumberOfSamples() {
+    return _numberOfSamples;
+  }
+
+  public double[] getScheduleTimes() {
+    return _scheduleTimes.clone();
+  }
+
+  /**
+   * @return the deviation of each trace at the specified schedule time,
+   *         interpolating between sampled schedule times and clamping to the
+   *         first and last samples. May contain NaN.
+   */
+  public double[] getScheduleDeviationsForScheduleTime(int scheduleTime) {
+    return getScheduleDeviationsForScheduleTime(scheduleTime,
+        new double[_numberOfSamples]);
+  }
+
+  /**
+   * As {@link #getScheduleDeviationsForScheduleTime(int)}, but writes the
+   * deviations into the first {@link #getNumberOfSamples()} entries of the
+   * specified buffer instead of allocating a new array.
+   * 
+   * @return values
+   */
+  public double[] getScheduleDeviationsForScheduleTime(int scheduleTime,
+      double[] values) {
+
+    if (values.length < _numberOfSamples)
+      throw new IllegalArgumentException("buffer length " + values.length
+          + " is less than the number of samples " + _numberOfSamples);
+
+    int index = Arrays.binarySearch(_scheduleTimes, scheduleTime);
+
+    if (index >= 0)
+      return copyColumn(index, values);
+
+    index = -(index + 1);
+
+    if (index == _scheduleTimes.length)
+      return copyColumn(index - 1, values);
+    if (index == 0)
+      return copyColumn(0, values);
+
+    double fromKey = _scheduleTimes[index - 1];
+    double toKey = _scheduleTimes[index];
+    double[] fromValues = _columns[index - 1];
+    double[] toValues = _columns[index];
+
+    for (int i = 0; i < _numberOfSamples; i++)
+      values[i] = InterpolationLibrary.interpolatePair(fromKey, fromValues[i],
+          toKey, toValues[i], scheduleTime);
+
+    return values;
+  }
+
+  private double[] copyColumn(int index, double[] values) {
+    System.arraycopy(_columns[index], 0, values, 0, _numberOfSamples);
+    return values;
+  }
+}
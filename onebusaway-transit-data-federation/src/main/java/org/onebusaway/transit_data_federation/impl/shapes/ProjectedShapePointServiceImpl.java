@@ -15,27 +15,61 @@
  */
 package org.onebusaway.transit_data_federation.impl.shapes;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
+import javax.annotation.PostConstruct;
+
 import org.onebusaway.collections.tuple.T2;
 import org.onebusaway.collections.tuple.Tuples;
-import org.onebusaway.container.cache.Cacheable;
+import org.onebusaway.container.refresh.Refreshable;
+import org.onebusaway.geospatial.model.CoordinatePoint;
 import org.onebusaway.geospatial.model.XYPoint;
+import org.onebusaway.geospatial.services.SphericalGeometryLibrary;
 import org.onebusaway.geospatial.services.UTMProjection;
 import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.transit_data_federation.impl.RefreshableResources;
 import org.onebusaway.transit_data_federation.model.ShapePoints;
+import org.onebusaway.transit_data_federation.model.ShapeSegmentIndex;
+import org.onebusaway.transit_data_federation.services.FederatedTransitDataBundle;
 import org.onebusaway.transit_data_federation.services.shapes.ProjectedShapePointService;
 import org.onebusaway.transit_data_federation.services.shapes.ShapePointService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Projects shape points on demand and keeps the packed result for each
+ * combination of shapes and UTM zone. When the bundle includes a
+ * {@link ShapePointStore}, coordinates are read straight from the
+ * memory-mapped store; otherwise they come from the {@link ShapePointService}.
+ */
 @Component
 class ProjectedShapePointServiceImpl implements ProjectedShapePointService {
 
+  private static Logger _log = LoggerFactory.getLogger(ProjectedShapePointServiceImpl.class);
+
   private ShapePointService _shapePointService;
 
   private ShapePointsLibrary _shapePointsLibrary;
 
+  private FederatedTransitDataBundle _bundle;
+
+  private volatile ShapePointStore _shapePointStore;
+
+  /**
+   * Matches the default ehcache size previously used for projected points
+   */
+  private int _maxCachedProjections = 10000;
+
+  private Cache<ProjectionKey, ShapeSegmentIndex> _indicesByKey = createIndexCache();
+
   @Autowired
   public void setShapePointService(ShapePointService shapePointService) {
     _shapePointService = shapePointService;
@@ -46,22 +80,170 @@ class ProjectedShapePointServiceImpl implements ProjectedShapePointService {
     _shapePointsLibrary = shapePointsLibrary;
   }
 
-  @Cacheable
+  @Autowired
+  public void setBundle(FederatedTransitDataBundle bundle) {
+    _bundle = bundle;
+  }
+
+  public void setMaxCachedProjections(int maxCachedProjections) {
+    _maxCachedProjections = maxCachedProjections;
+    _indicesByKey = createIndexCache();
+  }
+
+  @PostConstruct
+  @Refreshable(dependsOn = RefreshableResources.SHAPE_GEOSPATIAL_INDEX)
+  public void setup() throws IOException {
+
+    File path = _bundle.getShapePointStorePath();
+
+    ShapePointStore store = null;
+    if (path.exists()) {
+      store = ShapePointStore.read(path);
+      _log.info("shape point store: shapes=" + store.getShapeCount()
+          + " points=" + store.getPointCount());
+    }
+
+    _shapePointStore = store;
+    _indicesByKey.invalidateAll();
+  }
+
   @Override
   public T2<List<XYPoint>, double[]> getProjectedShapePoints(
       List<AgencyAndId> shapeIds, int utmZoneId) {
 
-    ShapePoints shapePoints = _shapePointService.getShapePointsForShapeIds(shapeIds);
+    ShapeSegmentIndex index = getShapeSegmentIndex(shapeIds, utmZoneId);
 
-    if (shapePoints == null || shapePoints.isEmpty())
+    if (index == null)
       return null;
 
+    return Tuples.tuple(index.getPoints(), index.getDistances());
+  }
+
+  @Override
+  public ShapeSegmentIndex getShapeSegmentIndex(List<AgencyAndId> shapeIds,
+      int utmZoneId) {
+
+    ProjectionKey key = new ProjectionKey(shapeIds, utmZoneId);
+
+    ShapeSegmentIndex index = _indicesByKey.getIfPresent(key);
+    if (index != null)
+      return index;
+
+    /**
+     * Two threads may occasionally project the same shapes, but the results
+     * are identical.
+     */
+    index = createShapeSegmentIndex(shapeIds, utmZoneId);
+
+    if (index != null)
+      _indicesByKey.put(new ProjectionKey(new ArrayList<AgencyAndId>(shapeIds),
+          utmZoneId), index);
+
+    return index;
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private ShapeSegmentIndex createShapeSegmentIndex(
+      List<AgencyAndId> shapeIds, int utmZoneId) {
+
     UTMProjection projection = new UTMProjection(utmZoneId);
+    ShapePointStore store = _shapePointStore;
+
+    if (store == null || !containsAllShapes(store, shapeIds)) {
+
+      ShapePoints shapePoints = _shapePointService.getShapePointsForShapeIds(shapeIds);
+
+      if (shapePoints == null || shapePoints.isEmpty())
+        return null;
+
+      List<XYPoint> projected = _shapePointsLibrary.getProjectedShapePoints(
+          shapePoints, projection);
+
+      return new ShapeSegmentIndex(projected, shapePoints.getDistTraveled());
+    }
+
+    int n = 0;
+    for (AgencyAndId shapeId : shapeIds)
+      n += store.getSize(shapeId);
+
+    if (n == 0)
+      return null;
+
+    double[] xy = new double[n * 2];
+    double[] distances = new double[n];
 
-    List<XYPoint> projected = _shapePointsLibrary.getProjectedShapePoints(
-        shapePoints, projection);
+    /**
+     * Distances are accumulated across the concatenated shapes exactly as
+     * ShapePoints.ensureDistTraveled() does for the combined shape points
+     */
+    double totalDistanceTraveled = 0;
+    double prevLat = 0;
+    double prevLon = 0;
+    int i = 0;
 
-    return Tuples.tuple(projected, shapePoints.getDistTraveled());
+    for (AgencyAndId shapeId : shapeIds) {
+      int offset = store.getOffset(shapeId);
+      int size = store.getSize(shapeId);
+      for (int j = 0; j < size; j++, i++) {
+        double lat = store.getLat(offset + j);
+        double lon = store.getLon(offset + j);
+        XYPoint point = projection.forward(new CoordinatePoint(lat, lon));
+        xy[i * 2] = point.getX();
+        xy[i * 2 + 1] = point.getY();
+        if (i > 0) {
+          totalDistanceTraveled += SphericalGeometryLibrary.distance(prevLat,
+              prevLon, lat, lon);
+          distances[i] = totalDistanceTraveled;
+        }
+        prevLat = lat;
+        prevLon = lon;
+      }
+    }
+
+    return new ShapeSegmentIndex(xy, distances);
   }
-}
 
+  private Cache<ProjectionKey, ShapeSegmentIndex> createIndexCache() {
+    return CacheBuilder.newBuilder().maximumSize(_maxCachedProjections).build();
+  }
+
+  private static boolean containsAllShapes(ShapePointStore store,
+      List<AgencyAndId> shapeIds) {
+    for (AgencyAndId shapeId : shapeIds) {
+      if (store.getOffset(shapeId) == -1)
+        return false;
+    }
+    return true;
+  }
+
+  private static class ProjectionKey {
+
+    private final List<AgencyAndId> _shapeIds;
+
+    private final int _utmZoneId;
+
+    public ProjectionKey(List<AgencyAndId> shapeIds, int utmZoneId) {
+      _shapeIds = shapeIds;
+      _utmZoneId = utmZoneId;
+    }
+
+    @Override
+    public int hashCode() {
+      return _shapeIds.hashCode() * 31 + _utmZoneId;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if (!(obj instanceof ProjectionKey))
+        return false;
+      ProjectionKey other = (ProjectionKey) obj;
+      return _utmZoneId == other._utmZoneId
+          && _shapeIds.equals(other._shapeIds);
+    }
+  }
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.impl.shapes;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.transit_data_federation.model.ShapePoints;
+
+/**
+ * Shape point coordinates for every shape in a bundle, held in a
+ * memory-mapped file rather than on the heap. Points for all shapes are stored
+ * back to back in two columns (lat, lon), and each shape is identified by its
+ * offset and point count within those columns.
+ * 
+ * Lookups read directly from the mapped columns. Distance traveled is not
+ * stored, since callers accumulate it across the shapes they concatenate.
+ */
+public final class ShapePointStore {
+
+  private static final int MAGIC = 0x4f425350; // "OBSP"
+
+  /**
+   * Files from any other version, including version 1 with its distance
+   * traveled column, are rejected and the bundle must be rebuilt
+   */
+  private static final int VERSION = 2;
+
+  private final Map<AgencyAndId, int[]> _rangesByShapeId;
+
+  private final DoubleBuffer _lats;
+
+  private final DoubleBuffer _lons;
+
+  private ShapePointStore(Map<AgencyAndId, int[]> rangesByShapeId,
+      DoubleBuffer lats, DoubleBuffer lons) {
+    _rangesByShapeId = rangesByShapeId;
+    _lats = lats;
+    _lons = lons;
+  }
+
+  public int getShapeCount() {
+    return _rangesByShapeId.size();
+  }
+
+  public int getPointCount() {
+    return _lats.limit();
+  }
+
+  /**
+   * @return the offset of the shape's first point within the point columns, or
+   *         -1 if the shape is not in the store
+   */
+  public int getOffset(AgencyAndId shapeId) {
+    int[] range = _rangesByShapeId.get(shapeId);
+    return range == null ? -1 : range[0];
+  }
+
+  /**
+   * @return the number of points in the shape, or 0 if the shape is not in the
+   *         store
+   */
+  public int getSize(AgencyAndId shapeId) {
+    int[] range = _rangesByShapeId.get(shapeId);
+    return range == null ? 0 : range[1];
+  }
+
+  public double getLat(int pointIndex) {
+    return _lats.get(pointIndex);
+  }
+
+  public double getLon(int pointIndex) {
+    return _lons.get(pointIndex);
+  }
+
+  /****
+   * Serialization
+   ****/
+
+  public static void write(File path, Map<AgencyAndId, ShapePoints> shapePointsById)
+      throws IOException {
+
+    int pointCount = 0;
+    for (ShapePoints shapePoints : shapePointsById.values())
+      pointCount += shapePoints.getSize();
+
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(path)));
+
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(shapePointsById.size());
+      out.writeInt(pointCount);
+
+      int offset = 0;
+      for (Map.Entry<AgencyAndId, ShapePoints> entry : shapePointsById.entrySet()) {
+        AgencyAndId shapeId = entry.getKey();
+        int size = entry.getValue().getSize();
+        out.writeUTF(shapeId.getAgencyId());
+        out.writeUTF(shapeId.getId());
+        out.writeInt(offset);
+        out.writeInt(size);
+        offset += size;
+      }
+
+      for (ShapePoints shapePoints : shapePointsById.values())
+        for (double lat : shapePoints.getLats())
+          out.writeDouble(lat);
+      for (ShapePoints shapePoints : shapePointsById.values())
+        for (double lon : shapePoints.getLons())
+          out.writeDouble(lon);
+    } finally {
+      out.close();
+    }
+  }
+
+  public static ShapePointStore read(File path) throws IOException {
+
+    RandomAccessFile file = new RandomAccessFile(path, "r");
+
+    try {
+      FileChannel channel = file.getChannel();
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+          channel.size());
+
+      if (buffer.getInt() != MAGIC)
+        throw new IOException("not a shape point store: " + path);
+      int version = buffer.getInt();
+      if (version != VERSION)
+        throw new IOException("unsupported shape point store version "
+            + version + ": " + path);
+
+      int shapeCount = buffer.getInt();
+      int pointCount = buffer.getInt();
+
+      Map<AgencyAndId, int[]> rangesByShapeId = new HashMap<AgencyAndId, int[]>(
+          shapeCount * 2);
+      for (int i = 0; i < shapeCount; i++) {
+        String agencyId = readUTF(buffer);
+        String id = readUTF(buffer);
+        int offset = buffer.getInt();
+        int size = buffer.getInt();
+        rangesByShapeId.put(new AgencyAndId(agencyId, id), new int[] {
+            offset, size});
+      }
+
+      DoubleBuffer lats = sliceDoubles(buffer, pointCount);
+      DoubleBuffer lons = sliceDoubles(buffer, pointCount);
+
+      return new ShapePointStore(rangesByShapeId, lats, lons);
+    } finally {
+      // The mapping remains valid after the channel is closed
+      file.close();
+    }
+  }
+
+  private static DoubleBuffer sliceDoubles(ByteBuffer buffer, int count) {
+    ByteBuffer slice = buffer.slice();
+    slice.limit(count * 8);
+    buffer.position(buffer.position() + count * 8);
+    return slice.asDoubleBuffer();
+  }
+
+  /**
+   * Counterpart to {@link DataOutputStream#writeUTF(String)}, which prefixes
+   * the modified UTF-8 bytes with an unsigned short length.
+   */
+  private static String readUTF(ByteBuffer buffer) throws IOException {
+    int length = buffer.getShort() & 0xffff;
+    byte[] bytes = new byte[length + 2];
+    bytes[0] = (byte) (length >>> 8);
+    bytes[1] = (byte) length;
+    buffer.get(bytes, 2, length);
+    return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+  }
+}
@@ -26,9 +26,17 @@ import org.onebusaway.geospatial.model.XYPoint;
 import org.onebusaway.geospatial.services.GeometryLibrary;
 import org.onebusaway.geospatial.services.UTMProjection;
 import org.onebusaway.transit_data_federation.model.ShapePoints;
+import org.onebusaway.transit_data_federation.model.ShapeSegmentIndex;
 
 public class ShapePointsLibrary {
 
+  /**
+   * Margin (in projected units) added before treating a block of segments as
+   * too far away, so rounding differences between the bounding box distance
+   * and the exact segment distance can never cause a skip
+   */
+  private static final double BLOCK_SKIP_MARGIN = 1e-3;
+
   private double _localMinimumThreshold = 50.0;
 
   public ShapePointsLibrary() {
@@ -97,9 +105,36 @@ public class ShapePointsLibrary {
   public List<PointAndIndex> computePotentialAssignments(
       List<XYPoint> projectedShapePoints, double[] shapePointDistance,
       XYPoint targetPoint, int fromIndex, int toIndex) {
+    return computePotentialAssignments(projectedShapePoints,
+        shapePointDistance, null, targetPoint, fromIndex, toIndex);
+  }
+
+  /**
+   * Equivalent to
+   * {@link #computePotentialAssignments(List, double[], XYPoint, int, int)},
+   * but uses the segment bounding boxes of the index to pass over blocks of
+   * segments that are further from the target point than both
+   * {@link #_localMinimumThreshold} and the closest shape point seen in the
+   * range. No segment in such a block could be a local or global min, so the
+   * result is unchanged.
+   */
+  public List<PointAndIndex> computePotentialAssignments(
+      ShapeSegmentIndex index, XYPoint targetPoint, int fromIndex, int toIndex) {
+    return computePotentialAssignments(index.getPoints(),
+        index.getDistances(), index, targetPoint, fromIndex, toIndex);
+  }
+
+  private List<PointAndIndex> computePotentialAssignments(
+      List<XYPoint> projectedShapePoints, double[] shapePointDistance,
+      ShapeSegmentIndex index, XYPoint targetPoint, int fromIndex, int toIndex) {
 
     if (shapePointDistance == null)
       return null;
+
+    double skipDistance = Double.POSITIVE_INFINITY;
+    if (index != null)
+      skipDistance = computeBlockSkipDistance(projectedShapePoints,
+          targetPoint, fromIndex, toIndex);
     /**
      * The absolute closest assignment
      */
@@ -125,9 +160,40 @@ public class ShapePointsLibrary {
     boolean previousEndpointDistanceGreaterThanSnappedDistance = false;
     double previousEndpointDistance = Double.POSITIVE_INFINITY;
 
+    XYPoint previousTo = null;
+    int previousToIndex = -1;
+
     for (int i = fromIndex; i < toIndex - 1; i++) {
-      XYPoint from = projectedShapePoints.get(i);
+
+      if (index != null && i % ShapeSegmentIndex.SEGMENTS_PER_BLOCK == 0) {
+        int blockEnd = i + ShapeSegmentIndex.SEGMENTS_PER_BLOCK;
+        if (blockEnd <= toIndex - 1
+            && index.getMinDistanceToBlock(i
+                / ShapeSegmentIndex.SEGMENTS_PER_BLOCK, targetPoint.getX(),
+                targetPoint.getY()) > skipDistance) {
+          /**
+           * Every segment in the block is beyond the local min threshold, so
+           * the first of them would have closed out any pending local min and
+           * the rest would have left it empty
+           */
+          if (!localMin.isEmpty()) {
+            localMins.add(localMin.getMinElement());
+            localMin = new Min<PointAndIndex>();
+          }
+          i = blockEnd - 1;
+          continue;
+        }
+      }
+
+      /**
+       * Reuse the end of the previous segment, since a point list view may
+       * create a new point on each access
+       */
+      XYPoint from = previousTo != null && previousToIndex == i ? previousTo
+          : projectedShapePoints.get(i);
       XYPoint to = projectedShapePoints.get(i + 1);
+      previousTo = to;
+      previousToIndex = i + 1;
 
       XYPoint location = GeometryLibrary.projectPointToSegment(targetPoint,
           from, to);
@@ -177,4 +243,18 @@ public class ShapePointsLibrary {
 
     return localMins;
   }
+
+  /**
+   * A block of segments can be skipped once it is further away than the local
+   * min threshold and further away than some shape point in the range, since
+   * that point bounds the global min from above.
+   */
+  private double computeBlockSkipDistance(List<XYPoint> projectedShapePoints,
+      XYPoint targetPoint, int fromIndex, int toIndex) {
+    double closest = Double.POSITIVE_INFINITY;
+    for (int i = fromIndex; i < toIndex; i += ShapeSegmentIndex.SEGMENTS_PER_BLOCK)
+      closest = Math.min(closest,
+          projectedShapePoints.get(i).getDistance(targetPoint));
+    return Math.max(closest, _localMinimumThreshold) + BLOCK_SKIP_MARGIN;
+  }
 }
@@ -300,16 +300,12 @@ public class DistanceAlongShapeLibrary {
       if (hasRegion
           && (hasSingleAssignmentFollowingMultipleAssignments || hasMultipleAssignmentsAndLastPoint)) {
 
-        List<PointAndIndex> currentAssignment = new ArrayList<PointAndIndex>(
-            index - startIndex + 1);
-        Min<Assignment> bestAssignments = new Min<Assignment>();
-        recursivelyConstructAssignments(possibleAssignments, currentAssignment,
-            startIndex, startIndex, index + 1, bestAssignments, 0, stopTimes.get(0).toString());
-        if (bestAssignments.isEmpty()) {
+        List<PointAndIndex> bestAssignment = findBestAssignmentForRegion(
+            possibleAssignments, startIndex, index + 1);
+        if (bestAssignment == null) {
           constructError(shapePoints, stopTimes, possibleAssignments,
               projection);
         } else {
-          List<PointAndIndex> bestAssignment = bestAssignments.getMinElement().assigment;
           for (int bestIndex = 0; bestIndex < bestAssignment.size(); bestIndex++) {
             possibleAssignments.set(startIndex + bestIndex,
                 Arrays.asList(bestAssignment.get(bestIndex)));
@@ -431,66 +427,123 @@ public class DistanceAlongShapeLibrary {
         distanceAlongShape);
   }
 
-  private void recursivelyConstructAssignments(
-      List<List<PointAndIndex>> possibleAssignments,
-      List<PointAndIndex> currentAssignment, int index, int indexFrom,
-      int indexTo, Min<Assignment> best, int depth, String id) {
+  /**
+   * Delegates to {@link #computeBestAssignmentForRegion(List, int, int)}.
+   * Overridable so tests can capture the regions of real routes and time
+   * other searches against them.
+   */
+  protected List<PointAndIndex> findBestAssignmentForRegion(
+      List<List<PointAndIndex>> possibleAssignments, int indexFrom, int indexTo) {
+    return computeBestAssignmentForRegion(possibleAssignments, indexFrom,
+        indexTo);
+  }
 
-    /**
-     * If we've made it through ALL assignments, we have a valid assignment!
-     */
-    if (index == indexTo) {
-
-      double score = 0;
-      for (PointAndIndex p : currentAssignment)
-        score += p.distanceFromTarget;
-      currentAssignment = new ArrayList<PointAndIndex>(currentAssignment);
-      Assignment result = new Assignment(currentAssignment, score);
-      best.add(score, result);
-      return;
+  /**
+   * Finds the assignment of stops [indexFrom, indexTo) to shape positions that
+   * minimizes the summed distance from each stop to its shape point, subject to
+   * distance along the shape never decreasing. This is a shortest path through
+   * a layered graph with one layer per stop, so each stop only needs the best
+   * score reaching each of its candidates from the previous stop's candidates,
+   * held in flat primitive arrays.
+   * 
+   * Scores are accumulated stop by stop, the same order a full enumeration of
+   * assignments would sum them in, and ties are broken in favor of the
+   * assignment that comes first when candidates are taken in list order.
+   * 
+   * @return the best assignment, or null if there is no valid assignment
+   */
+  static List<PointAndIndex> computeBestAssignmentForRegion(
+      List<List<PointAndIndex>> possibleAssignments, int indexFrom, int indexTo) {
+
+    int stopCount = indexTo - indexFrom;
+
+    int[] offsets = new int[stopCount + 1];
+    for (int i = 0; i < stopCount; i++)
+      offsets[i + 1] = offsets[i]
+          + possibleAssignments.get(indexFrom + i).size();
+
+    int candidateCount = offsets[stopCount];
+    double[] distancesAlongShape = new double[candidateCount];
+    double[] scores = new double[candidateCount];
+    int[] previous = new int[candidateCount];
+    int[] ranks = new int[candidateCount];
+    long[] rankKeys = new long[candidateCount];
+
+    for (int i = 0; i < stopCount; i++) {
+      List<PointAndIndex> candidates = possibleAssignments.get(indexFrom + i);
+      for (int c = 0; c < candidates.size(); c++)
+        distancesAlongShape[offsets[i] + c] = candidates.get(c).distanceAlongShape;
     }
 
-    List<PointAndIndex> possibleAssignmentsForIndex = possibleAssignments.get(index);
+    for (int i = 0; i < stopCount; i++) {
 
-    List<PointAndIndex> validAssignments = new ArrayList<PointAndIndex>();
+      List<PointAndIndex> candidates = possibleAssignments.get(indexFrom + i);
+      int validCount = 0;
 
-    double lastDistanceAlongShape = -1;
+      for (int c = 0; c < candidates.size(); c++) {
 
-    if (index > indexFrom) {
-      PointAndIndex prev = currentAssignment.get(index - 1 - indexFrom);
-      lastDistanceAlongShape = prev.distanceAlongShape;
-    }
+        int k = offsets[i] + c;
+        double distanceFromTarget = candidates.get(c).distanceFromTarget;
+        double bestScore = Double.POSITIVE_INFINITY;
+        int bestPrevious = -1;
 
-    for (PointAndIndex possibleAssignmentForIndex : possibleAssignmentsForIndex) {
-      if (possibleAssignmentForIndex.distanceAlongShape >= lastDistanceAlongShape)
-        validAssignments.add(possibleAssignmentForIndex);
-    }
+        if (i == 0) {
+          if (distancesAlongShape[k] >= -1)
+            bestScore = 0 + distanceFromTarget;
+        } else {
+          for (int p = offsets[i - 1]; p < offsets[i]; p++) {
+            if (previous[p] == -2 || distancesAlongShape[k] < distancesAlongShape[p])
+              continue;
+            double score = scores[p] + distanceFromTarget;
+            if (bestPrevious == -1 || score < bestScore
+                || (score == bestScore && ranks[p] < ranks[bestPrevious])) {
+              bestScore = score;
+              bestPrevious = p;
+            }
+          }
+        }
 
-    /**
-     * There is no satisfying assignment for this search tree, so we return
-     */
-    if (validAssignments.isEmpty()) {
-      return;
-    }
+        boolean valid = i == 0 ? bestScore != Double.POSITIVE_INFINITY
+            : bestPrevious != -1;
 
-    /**
-     * For each valid assignment, pop it onto the current assignment and
-     * recursively evaluate
-     */
-    if (validAssignments.size() > 100) {
-      _log.warn("complex assignment with depth {} for {} and {} possible assignments",
-              depth, id, possibleAssignments.size());
+        if (valid) {
+          scores[k] = bestScore;
+          previous[k] = bestPrevious;
+          int previousRank = i == 0 ? 0 : ranks[bestPrevious];
+          rankKeys[validCount++] = ((long) previousRank << 32) | c;
+        } else {
+          // -2 marks a candidate that no valid assignment can reach
+          previous[k] = -2;
+        }
+      }
 
+      if (validCount == 0)
+        return null;
+
+      /**
+       * Rank this stop's candidates by the order their best assignment would
+       * be enumerated in, so that ties at the next stop can be broken the same
+       * way
+       */
+      Arrays.sort(rankKeys, 0, validCount);
+      for (int r = 0; r < validCount; r++)
+        ranks[offsets[i] + (int) rankKeys[r]] = r;
     }
-    for (PointAndIndex validAssignment : validAssignments) {
 
-      currentAssignment.add(validAssignment);
+    int best = -1;
+    for (int k = offsets[stopCount - 1]; k < candidateCount; k++) {
+      if (previous[k] == -2)
+        continue;
+      if (best == -1 || scores[k] < scores[best]
+          || (scores[k] == scores[best] && ranks[k] < ranks[best]))
+        best = k;
+    }
 
-      recursivelyConstructAssignments(possibleAssignments, currentAssignment,
-          index + 1, indexFrom, indexTo, best, depth+1, id);
+    PointAndIndex[] assignment = new PointAndIndex[stopCount];
+    for (int i = stopCount - 1, k = best; i >= 0; i--, k = previous[k])
+      assignment[i] = possibleAssignments.get(indexFrom + i).get(k - offsets[i]);
 
-      currentAssignment.remove(currentAssignment.size() - 1);
-    }
+    return Arrays.asList(assignment);
   }
 
   private void constructErrorForPotentialAssignmentCount(
@@ -621,21 +674,6 @@ public class DistanceAlongShapeLibrary {
     throw new InvalidStopToShapeMappingException(first.getTrip());
   }
 
-  private static class Assignment implements Comparable<Assignment> {
-    private final List<PointAndIndex> assigment;
-    private final double score;
-
-    public Assignment(List<PointAndIndex> assignment, double score) {
-      this.assigment = assignment;
-      this.score = score;
-    }
-
-    @Override
-    public int compareTo(Assignment o) {
-      return Double.compare(score, o.score);
-    }
-  }
-
   public static class DistanceAlongShapeException extends Exception {
 
     private static final long serialVersionUID = 1L;
@@ -16,7 +16,9 @@
 package org.onebusaway.transit_data_federation.impl.transit_graph;
 
 import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.calendar.ServiceInterval;
 import org.onebusaway.transit_data_federation.impl.realtime.DynamicCache;
+import org.onebusaway.transit_data_federation.impl.realtime.DynamicExpiryIndex;
 import org.onebusaway.transit_data_federation.model.transit_graph.DynamicGraph;
 import org.onebusaway.transit_data_federation.services.transit_graph.BlockEntry;
 import org.onebusaway.transit_data_federation.services.transit_graph.RouteEntry;
@@ -26,21 +28,32 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * implementation of the DynamicGraph, the dynamic equivalent to the TransitGraph,
  * but populated via real-time and not the bundle.
+ *
+ * Entries are held in concurrent maps so API threads can read without locking
+ * while real-time ingestion writes.  Each read is a single lookup, so readers
+ * see each entry as of the latest write to it rather than a consistent view of
+ * the whole graph.  Writes, including pruning, are serialized on a single
+ * lock.  Trips and blocks are indexed by their service window so pruning only
+ * visits expired entries.
  */
 @Component
 public class DynamicGraphImpl extends DynamicCache implements DynamicGraph {
 
   private static Logger _log = LoggerFactory.getLogger(DynamicGraphImpl.class);
-  private Map<AgencyAndId, BlockEntry> blockEntryById = new HashMap<>();
-  private Map<AgencyAndId, TripEntry> tripEntryById = new HashMap<>();
-  private Map<AgencyAndId, RouteEntry> routeEntryById = new HashMap<>();
+  private Map<AgencyAndId, BlockEntry> blockEntryById = new ConcurrentHashMap<>();
+  private Map<AgencyAndId, TripEntry> tripEntryById = new ConcurrentHashMap<>();
+  private Map<AgencyAndId, RouteEntry> routeEntryById = new ConcurrentHashMap<>();
+
+  private final Object _writeLock = new Object();
+  private DynamicExpiryIndex<AgencyAndId> blockExpiryIndex = new DynamicExpiryIndex<>();
+  private DynamicExpiryIndex<AgencyAndId> tripExpiryIndex = new DynamicExpiryIndex<>();
 
   @Override
   public TripEntry getTripEntryForId(AgencyAndId id) {
@@ -49,26 +62,31 @@ public class DynamicGraphImpl extends DynamicCache implements DynamicGraph {
 
   @Override
   public void registerTrip(TripEntry tripEntry, long currentTime) {
-    if (needsPrune(currentTime)) {
-      prune(currentTime);
-    }
-    if (!tripEntryById.containsKey(tripEntry.getId())) {
-      tripEntryById.put(tripEntry.getId(), tripEntry);
+    synchronized (_writeLock) {
+      if (needsPrune(currentTime)) {
+        prune(currentTime);
+      }
+      if (tripEntryById.putIfAbsent(tripEntry.getId(), tripEntry) == null) {
+        indexTrip(tripEntry);
+      }
     }
   }
 
   private void prune(long currentTime) {
     long start = System.currentTimeMillis();
+    int blocks = 0;
+    int trips = 0;
     try {
       resetStats(currentTime);
       int effectiveTime = getEffectiveTime(currentTime);
-      pruneBlockEntryById(effectiveTime);
-      pruneTripEntryById(effectiveTime);
+      blocks = pruneBlockEntryById(effectiveTime);
+      trips = pruneTripEntryById(effectiveTime);
       pruneRouteEntryById(effectiveTime);
     } catch (Throwable t) {
       _log.error("prune exception {}", t, t);
     } finally {
-      _log.info("cache prune complete in {}ms", System.currentTimeMillis()-start);
+      _log.info("cache prune of {} blocks and {} trips complete in {}ms", blocks, trips,
+          System.currentTimeMillis()-start);
     }
   }
 
@@ -76,29 +94,38 @@ public class DynamicGraphImpl extends DynamicCache implements DynamicGraph {
     // routes don't expire
   }
 
-  private void pruneTripEntryById(int effectiveTime) {
-    Iterator<Map.Entry<AgencyAndId, TripEntry>> iterator = tripEntryById.entrySet().iterator();
-    while (iterator.hasNext()) {
-      Map.Entry<AgencyAndId, TripEntry> next = iterator.next();
-      if (isExpired(next.getValue(), effectiveTime)) {
-        iterator.remove();
-      }
+  private int pruneTripEntryById(int effectiveTime) {
+    List<AgencyAndId> expired = tripExpiryIndex.removeExpired(effectiveTime);
+    for (AgencyAndId id : expired) {
+      tripEntryById.remove(id);
     }
+    return expired.size();
   }
 
-  private void pruneBlockEntryById(int effectiveTime) {
-    Iterator<Map.Entry<AgencyAndId, BlockEntry>> iterator = blockEntryById.entrySet().iterator();
-    while (iterator.hasNext()) {
-      Map.Entry<AgencyAndId, BlockEntry> next = iterator.next();
-      if (isExpired(next.getValue(), effectiveTime)) {
-        iterator.remove();
-      }
+  private int pruneBlockEntryById(int effectiveTime) {
+    List<AgencyAndId> expired = blockExpiryIndex.removeExpired(effectiveTime);
+    for (AgencyAndId id : expired) {
+      blockEntryById.remove(id);
     }
+    return expired.size();
+  }
+
+  private void indexTrip(TripEntry tripEntry) {
+    ServiceInterval interval = getServiceInterval(tripEntry);
+    tripExpiryIndex.put(tripEntry.getId(), getMinBounds(interval), getMaxBounds(interval));
+  }
+
+  private void indexBlock(BlockEntry blockEntry) {
+    ServiceInterval interval = getServiceInterval(blockEntry);
+    blockExpiryIndex.put(blockEntry.getId(), getMinBounds(interval), getMaxBounds(interval));
   }
 
   @Override
   public void updateTrip(TripEntry tripEntry) {
-    tripEntryById.put(tripEntry.getId(), tripEntry);
+    synchronized (_writeLock) {
+      tripEntryById.put(tripEntry.getId(), tripEntry);
+      indexTrip(tripEntry);
+    }
   }
   @Override
   public RouteEntry getRoutEntryForId(AgencyAndId id) {
@@ -107,8 +134,8 @@ public class DynamicGraphImpl extends DynamicCache implements DynamicGraph {
 
   @Override
   public void registerRoute(RouteEntry routeEntry) {
-    if (!routeEntryById.containsKey(routeEntry.getId())) {
-      routeEntryById.put(routeEntry.getId(), routeEntry);
+    synchronized (_writeLock) {
+      routeEntryById.putIfAbsent(routeEntry.getId(), routeEntry);
     }
   }
 
@@ -119,13 +146,18 @@ public class DynamicGraphImpl extends DynamicCache implements DynamicGraph {
 
   @Override
   public void registerBlock(BlockEntry blockEntry) {
-    if (!blockEntryById.containsKey(blockEntry.getId())) {
-      blockEntryById.put(blockEntry.getId(), blockEntry);
+    synchronized (_writeLock) {
+      if (blockEntryById.putIfAbsent(blockEntry.getId(), blockEntry) == null) {
+        indexBlock(blockEntry);
+      }
     }
   }
 
   @Override
   public void updateBlock(BlockEntry blockEntry) {
-    blockEntryById.put(blockEntry.getId(), blockEntry);
+    synchronized (_writeLock) {
+      blockEntryById.put(blockEntry.getId(), blockEntry);
+      indexBlock(blockEntry);
+    }
   }
 }
@@ -0,0 +1,507 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.onebusaway.gtfs.model.AgencyAndId;
+
+/**
+ * Compact, in-memory prefix index for typeahead queries against stop and route
+ * names. Every entry is broken into lower-cased alpha-numeric terms, which are
+ * stored once in a sorted array with a posting list of entry indices per term,
+ * so a prefix resolves to a contiguous range of terms with two binary
+ * searches. Each entry carries a static weight and posting lists are kept in
+ * descending weight order, which lets a top-k query stop scanning a term as
+ * soon as no remaining entry can make the cut.
+ * 
+ * Input tokens that match no term by prefix fall back to matching terms within
+ * a single edit, so that a typo in the middle of typing doesn't empty the
+ * result list.
+ * 
+ * Instances are immutable and built with a {@link Builder}.
+ */
+public final class AutocompleteIndex implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final double EXACT_MATCH = 2.0;
+
+  private static final double PREFIX_MATCH = 1.0;
+
+  private static final double FUZZY_MATCH = 0.5;
+
+  /**
+   * Entry weights are scaled below this value so that they only break ties
+   * between entries of the same match quality
+   */
+  private static final double MAX_WEIGHT = 0.49;
+
+  private static final int MIN_FUZZY_LENGTH = 4;
+
+  public static final AutocompleteIndex EMPTY = new Builder().create();
+
+  private final AgencyAndId[] _ids;
+
+  private final double[] _weights;
+
+  private final String[] _terms;
+
+  /**
+   * posting offsets for each term, with a trailing entry equal to the total
+   * number of postings
+   */
+  private final int[] _postingOffsets;
+
+  private final int[] _postings;
+
+  /**
+   * term offsets for each entry, with a trailing entry equal to the total
+   * number of postings
+   */
+  private final int[] _entryTermOffsets;
+
+  private final int[] _entryTerms;
+
+  private AutocompleteIndex(AgencyAndId[] ids, double[] weights,
+      String[] terms, int[] postingOffsets, int[] postings,
+      int[] entryTermOffsets, int[] entryTerms) {
+    _ids = ids;
+    _weights = weights;
+    _terms = terms;
+    _postingOffsets = postingOffsets;
+    _postings = postings;
+    _entryTermOffsets = entryTermOffsets;
+    _entryTerms = entryTerms;
+  }
+
+  public int size() {
+    return _ids.length;
+  }
+
+  public int getTermCount() {
+    return _terms.length;
+  }
+
+  /**
+   * Every token of the input is matched against the index, the last one by
+   * prefix since it may still be being typed. An entry must match all tokens
+   * to be included.
+   * 
+   * @param input the raw user input
+   * @param maxResultCount maximum number of results to return
+   * @return matching ids, ordered by descending score
+   */
+  public SearchResult<AgencyAndId> search(String input, int maxResultCount) {
+
+    List<String> tokens = tokenize(input);
+
+    if (tokens.isEmpty() || maxResultCount <= 0 || _ids.length == 0)
+      return new SearchResult<AgencyAndId>();
+
+    TokenMatch[] matches = new TokenMatch[tokens.size()];
+    TokenMatch driver = null;
+    double maxQuality = 0;
+
+    for (int i = 0; i < matches.length; i++) {
+      TokenMatch match = getTokenMatch(tokens.get(i), i == matches.length - 1);
+      if (match.getPostingCount() == 0)
+        return new SearchResult<AgencyAndId>();
+      matches[i] = match;
+      maxQuality += match.getMaxQuality();
+      if (driver == null || match.getPostingCount() < driver.getPostingCount())
+        driver = match;
+    }
+
+    /**
+     * Candidates are drawn from the most selective token and then checked
+     * against the remaining ones through the entry's own terms
+     */
+    PriorityQueue<ScoredEntry> top = new PriorityQueue<ScoredEntry>();
+    double otherMaxQuality = maxQuality - driver.getMaxQuality();
+
+    for (int t = driver.nextTerm(-1); t != -1; t = driver.nextTerm(t)) {
+
+      double bound = driver.getQuality(t) + otherMaxQuality;
+
+      for (int p = _postingOffsets[t]; p < _postingOffsets[t + 1]; p++) {
+
+        int entry = _postings[p];
+
+        if (top.size() == maxResultCount
+            && bound + _weights[entry] < top.peek().score)
+          break;
+
+        if (getFirstMatchingTerm(entry, driver) != t)
+          continue;
+
+        double score = _weights[entry];
+        for (TokenMatch match : matches) {
+          double quality = getBestQuality(entry, match);
+          if (quality == 0) {
+            score = -1;
+            break;
+          }
+          score += quality;
+        }
+
+        if (score < 0)
+          continue;
+
+        ScoredEntry scored = new ScoredEntry(entry, score);
+        if (top.size() < maxResultCount) {
+          top.add(scored);
+        } else if (top.peek().compareTo(scored) < 0) {
+          top.poll();
+          top.add(scored);
+        }
+      }
+    }
+
+    int n = top.size();
+    AgencyAndId[] ids = new AgencyAndId[n];
+    double[] scores = new double[n];
+    for (int i = n - 1; i >= 0; i--) {
+      ScoredEntry scored = top.poll();
+      ids[i] = _ids[scored.index];
+      scores[i] = scored.score;
+    }
+
+    return new SearchResult<AgencyAndId>(Arrays.asList(ids), scores);
+  }
+
+  /**
+   * Splits the input into lower-cased runs of letters and digits, the same way
+   * entries are split when the index is built.
+   */
+  public static List<String> tokenize(String value) {
+    List<String> tokens = new ArrayList<String>();
+    if (value == null)
+      return tokens;
+    int length = value.length();
+    int start = -1;
+    for (int i = 0; i <= length; i++) {
+      boolean part = i < length && Character.isLetterOrDigit(value.charAt(i));
+      if (part && start == -1) {
+        start = i;
+      } else if (!part && start != -1) {
+        tokens.add(value.substring(start, i).toLowerCase());
+        start = -1;
+      }
+    }
+    return tokens;
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private TokenMatch getTokenMatch(String token, boolean allowPrefix) {
+
+    int from = lowerBound(token);
+    int exact = from < _terms.length && _terms[from].equals(token) ? from : -1;
+    int to = allowPrefix ? lowerBound(token + Character.MAX_VALUE)
+        : (exact == -1 ? from : from + 1);
+
+    if (from < to || token.length() < MIN_FUZZY_LENGTH)
+      return new TokenMatch(from, to, exact, null);
+
+    return new TokenMatch(0, 0, -1, getFuzzyTerms(token, allowPrefix));
+  }
+
+  private int getFirstMatchingTerm(int entry, TokenMatch match) {
+    for (int i = _entryTermOffsets[entry]; i < _entryTermOffsets[entry + 1]; i++) {
+      if (match.getQuality(_entryTerms[i]) > 0)
+        return _entryTerms[i];
+    }
+    return -1;
+  }
+
+  private double getBestQuality(int entry, TokenMatch match) {
+    double best = 0;
+    for (int i = _entryTermOffsets[entry]; i < _entryTermOffsets[entry + 1]; i++)
+      best = Math.max(best, match.getQuality(_entryTerms[i]));
+    return best;
+  }
+
+  private int lowerBound(String key) {
+    int index = Arrays.binarySearch(_terms, key);
+    return index < 0 ? -(index + 1) : index;
+  }
+
+  /**
+   * Finds the terms within a single insertion, deletion or substitution of the
+   * token, along with the terms whose prefix is within a single substitution
+   * when the token may still be being typed. Rather than comparing against
+   * every term, the sorted term array is walked like a trie: an edit at
+   * position i requires the term to share the first i characters of the token,
+   * so each position only needs a binary search per distinct next character.
+   * 
+   * @return the sorted indices of matching terms
+   */
+  private int[] getFuzzyTerms(String token, boolean allowPrefix) {
+
+    TreeSet<Integer> fuzzy = new TreeSet<Integer>();
+    int length = token.length();
+
+    for (int i = 0; i <= length; i++) {
+
+      String head = token.substring(0, i);
+      int from = lowerBound(head);
+      int to = lowerBound(head + Character.MAX_VALUE);
+      if (from == to)
+        break;
+
+      if (i < length)
+        addTerm(fuzzy, head + token.substring(i + 1));
+
+      // a term equal to the head sorts first and has no next character
+      int t = _terms[from].length() == i ? from + 1 : from;
+
+      while (t < to) {
+        String branch = head + _terms[t].charAt(i);
+        int branchTo = lowerBound(branch + Character.MAX_VALUE);
+        addTerm(fuzzy, branch + token.substring(i));
+        if (i < length && _terms[t].charAt(i) != token.charAt(i)) {
+          String substituted = branch + token.substring(i + 1);
+          if (allowPrefix)
+            addTerms(fuzzy, lowerBound(substituted),
+                lowerBound(substituted + Character.MAX_VALUE));
+          else
+            addTerm(fuzzy, substituted);
+        }
+        t = branchTo;
+      }
+    }
+
+    int[] fuzzyTerms = new int[fuzzy.size()];
+    int index = 0;
+    for (int term : fuzzy)
+      fuzzyTerms[index++] = term;
+    return fuzzyTerms;
+  }
+
+  private void addTerm(Set<Integer> terms, String term) {
+    int index = Arrays.binarySearch(_terms, term);
+    if (index >= 0)
+      terms.add(index);
+  }
+
+  private void addTerms(Set<Integer> terms, int from, int to) {
+    for (int t = from; t < to; t++)
+      terms.add(t);
+  }
+
+  /**
+   * The terms matched by a single input token: either the contiguous range of
+   * terms sharing its prefix or, failing that, a sorted list of terms within a
+   * single edit.
+   */
+  private final class TokenMatch {
+
+    private final int _from;
+
+    private final int _to;
+
+    private final int _exact;
+
+    private final int[] _fuzzy;
+
+    private final int _postingCount;
+
+    public TokenMatch(int from, int to, int exact, int[] fuzzy) {
+      _from = from;
+      _to = to;
+      _exact = exact;
+      _fuzzy = fuzzy;
+      int postingCount = _postingOffsets[to] - _postingOffsets[from];
+      if (fuzzy != null) {
+        for (int t : fuzzy)
+          postingCount += _postingOffsets[t + 1] - _postingOffsets[t];
+      }
+      _postingCount = postingCount;
+    }
+
+    public int getPostingCount() {
+      return _postingCount;
+    }
+
+    public double getMaxQuality() {
+      if (_fuzzy != null)
+        return FUZZY_MATCH;
+      return _exact != -1 ? EXACT_MATCH : PREFIX_MATCH;
+    }
+
+    public double getQuality(int term) {
+      if (_fuzzy != null)
+        return Arrays.binarySearch(_fuzzy, term) >= 0 ? FUZZY_MATCH : 0;
+      if (term == _exact)
+        return EXACT_MATCH;
+      return _from <= term && term < _to ? PREFIX_MATCH : 0;
+    }
+
+    /**
+     * @return the next matching term after the specified term, or -1 if there
+     *         are no more
+     */
+    public int nextTerm(int term) {
+      if (_fuzzy != null) {
+        int index = Arrays.binarySearch(_fuzzy, term + 1);
+        if (index < 0)
+          index = -(index + 1);
+        return index < _fuzzy.length ? _fuzzy[index] : -1;
+      }
+      int next = Math.max(term + 1, _from);
+      return next < _to ? next : -1;
+    }
+  }
+
+  private static final class ScoredEntry implements Comparable<ScoredEntry> {
+
+    private final int index;
+
+    private final double score;
+
+    public ScoredEntry(int index, double score) {
+      this.index = index;
+      this.score = score;
+    }
+
+    /**
+     * Orders by ascending score, with lower entry indices ranked higher on a
+     * tie
+     */
+    @Override
+    public int compareTo(ScoredEntry o) {
+      int c = Double.compare(score, o.score);
+      if (c != 0)
+        return c;
+      return o.index - index;
+    }
+  }
+
+  public static class Builder {
+
+    private final Map<AgencyAndId, Integer> _indices = new LinkedHashMap<AgencyAndId, Integer>();
+
+    private final List<Double> _weights = new ArrayList<Double>();
+
+    private final TreeMap<String, Set<Integer>> _entriesByTerm = new TreeMap<String, Set<Integer>>();
+
+    /**
+     * Adds the terms of the specified text to the entry for the given id. An
+     * id may be added more than once, with the highest weight kept.
+     * 
+     * @param id the entry id
+     * @param text the text to index for the entry
+     * @param weight a non-negative static rank for the entry
+     */
+    public void add(AgencyAndId id, String text, double weight) {
+
+      Integer index = _indices.get(id);
+      if (index == null) {
+        index = _indices.size();
+        _indices.put(id, index);
+        _weights.add(weight);
+      } else if (_weights.get(index) < weight) {
+        _weights.set(index, weight);
+      }
+
+      for (String term : tokenize(text)) {
+        Set<Integer> entries = _entriesByTerm.get(term);
+        if (entries == null) {
+          entries = new TreeSet<Integer>();
+          _entriesByTerm.put(term, entries);
+        }
+        entries.add(index);
+      }
+    }
+
+    public AutocompleteIndex create() {
+
+      AgencyAndId[] ids = _indices.keySet().toArray(
+          new AgencyAndId[_indices.size()]);
+
+      double maxWeight = 0;
+      for (double weight : _weights)
+        maxWeight = Math.max(maxWeight, weight);
+
+      final double[] weights = new double[ids.length];
+      if (maxWeight > 0) {
+        for (int i = 0; i < weights.length; i++)
+          weights[i] = _weights.get(i) / maxWeight * MAX_WEIGHT;
+      }
+
+      Comparator<Integer> byDescendingWeight = new Comparator<Integer>() {
+        @Override
+        public int compare(Integer o1, Integer o2) {
+          int c = Double.compare(weights[o2], weights[o1]);
+          return c != 0 ? c : o1.compareTo(o2);
+        }
+      };
+
+      String[] terms = new String[_entriesByTerm.size()];
+      int[] postingOffsets = new int[terms.length + 1];
+      int postingCount = 0;
+      for (Set<Integer> entries : _entriesByTerm.values())
+        postingCount += entries.size();
+      int[] postings = new int[postingCount];
+
+      int[] entryTermCounts = new int[ids.length];
+
+      int t = 0;
+      int p = 0;
+      for (Map.Entry<String, Set<Integer>> entry : _entriesByTerm.entrySet()) {
+        terms[t] = entry.getKey();
+        postingOffsets[t] = p;
+        List<Integer> entries = new ArrayList<Integer>(entry.getValue());
+        Collections.sort(entries, byDescendingWeight);
+        for (int index : entries) {
+          postings[p++] = index;
+          entryTermCounts[index]++;
+        }
+        t++;
+      }
+      postingOffsets[t] = p;
+
+      int[] entryTermOffsets = new int[ids.length + 1];
+      for (int i = 0; i < ids.length; i++)
+        entryTermOffsets[i + 1] = entryTermOffsets[i] + entryTermCounts[i];
+
+      // terms are visited in sorted order, so each entry's terms end up sorted
+      int[] entryTerms = new int[postingCount];
+      int[] cursors = Arrays.copyOf(entryTermOffsets, ids.length);
+      for (t = 0; t < terms.length; t++) {
+        for (p = postingOffsets[t]; p < postingOffsets[t + 1]; p++)
+          entryTerms[cursors[postings[p]]++] = t;
+      }
+
+      return new AutocompleteIndex(ids, weights, terms, postingOffsets,
+          postings, entryTermOffsets, entryTerms);
+    }
+  }
+}
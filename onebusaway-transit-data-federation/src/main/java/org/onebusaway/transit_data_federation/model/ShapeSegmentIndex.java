@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.model;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.onebusaway.geospatial.model.XYPoint;
+
+/**
+ * Projected shape points together with their distance along the shape and a
+ * bounding box for each fixed-size block of consecutive segments. The boxes
+ * give a cheap lower bound on how close any point within a block can be to a
+ * target, so searches for the closest location along a long shape can pass
+ * over whole blocks that cannot contain a match.
+ * 
+ * Coordinates are packed as alternating x and y values in a single primitive
+ * array. {@link #getPoints()} exposes them as a read-only list view.
+ * 
+ * @see org.onebusaway.transit_data_federation.impl.shapes.ShapePointsLibrary
+ */
+public final class ShapeSegmentIndex {
+
+  /**
+   * The number of segments covered by each bounding box
+   */
+  public static final int SEGMENTS_PER_BLOCK = 16;
+
+  private final double[] _xy;
+
+  private final double[] _distances;
+
+  /**
+   * minX, minY, maxX, maxY for each block of segments, packed in order
+   */
+  private final double[] _blockBounds;
+
+  public ShapeSegmentIndex(List<XYPoint> points, double[] distances) {
+    this(pack(points), distances);
+  }
+
+  /**
+   * @param xy projected coordinates, packed as x0, y0, x1, y1, ...
+   * @param distances distance along the shape for each point
+   */
+  public ShapeSegmentIndex(double[] xy, double[] distances) {
+
+    if (xy.length != distances.length * 2)
+      throw new IllegalArgumentException("expected " + (xy.length / 2)
+          + " distances but found " + distances.length);
+
+    _xy = xy;
+    _distances = distances;
+
+    int segmentCount = Math.max(distances.length - 1, 0);
+    int blockCount = (segmentCount + SEGMENTS_PER_BLOCK - 1)
+        / SEGMENTS_PER_BLOCK;
+    _blockBounds = new double[blockCount * 4];
+
+    for (int block = 0; block < blockCount; block++) {
+      int from = block * SEGMENTS_PER_BLOCK;
+      int to = Math.min(from + SEGMENTS_PER_BLOCK, segmentCount);
+      double minX = Double.POSITIVE_INFINITY;
+      double minY = Double.POSITIVE_INFINITY;
+      double maxX = Double.NEGATIVE_INFINITY;
+      double maxY = Double.NEGATIVE_INFINITY;
+      // A block of segments [from, to) spans points [from, to]
+      for (int i = from; i <= to; i++) {
+        double x = xy[i * 2];
+        double y = xy[i * 2 + 1];
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        maxX = Math.max(maxX, x);
+        maxY = Math.max(maxY, y);
+      }
+      int offset = block * 4;
+      _blockBounds[offset] = minX;
+      _blockBounds[offset + 1] = minY;
+      _blockBounds[offset + 2] = maxX;
+      _blockBounds[offset + 3] = maxY;
+    }
+  }
+
+  public int getSize() {
+    return _distances.length;
+  }
+
+  public double getX(int index) {
+    return _xy[index * 2];
+  }
+
+  public double getY(int index) {
+    return _xy[index * 2 + 1];
+  }
+
+  /**
+   * @return a read-only view of the projected points, creating each
+   *         {@link XYPoint} as it is accessed
+   */
+  public List<XYPoint> getPoints() {
+    return new PointsView();
+  }
+
+  public double[] getDistances() {
+    return _distances;
+  }
+
+  public int getBlockCount() {
+    return _blockBounds.length / 4;
+  }
+
+  /**
+   * @return a lower bound on the distance from (x, y) to any point on the
+   *         segments of the specified block
+   */
+  public double getMinDistanceToBlock(int block, double x, double y) {
+    int offset = block * 4;
+    double dx = Math.max(Math.max(_blockBounds[offset] - x, 0),
+        x - _blockBounds[offset + 2]);
+    double dy = Math.max(Math.max(_blockBounds[offset + 1] - y, 0),
+        y - _blockBounds[offset + 3]);
+    return Math.sqrt(dx * dx + dy * dy);
+  }
+
+  private static double[] pack(List<XYPoint> points) {
+    double[] xy = new double[points.size() * 2];
+    for (int i = 0; i < points.size(); i++) {
+      XYPoint p = points.get(i);
+      xy[i * 2] = p.getX();
+      xy[i * 2 + 1] = p.getY();
+    }
+    return xy;
+  }
+
+  private class PointsView extends AbstractList<XYPoint> implements
+      RandomAccess {
+
+    @Override
+    public XYPoint get(int index) {
+      if (index < 0 || index >= _distances.length)
+        throw new IndexOutOfBoundsException("index=" + index + " size="
+            + _distances.length);
+      return new XYPoint(_xy[index * 2], _xy[index * 2 + 1]);
+    }
+
+    @Override
+    public int size() {
+      return _distances.length;
+    }
+  }
+}
@@ -0,0 +1,384 @@
+/**
+ * Copyright (C) 2018 Cambridge Systematics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.model.bundle;
+
+import org.onebusaway.gtfs.model.AgencyAndId;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columnar form of a list of {@link HistoricalRidership} records. Route, trip
+ * and stop ids are interned to ints, and the records are kept in their original
+ * order as parallel primitive arrays. Permutations sorted by (stop, trip, day
+ * class), by trip and by route allow each lookup to be answered with a binary
+ * search, and ties within a key are broken by original order so results match
+ * a scan of the original list.
+ *
+ * The day class is 0 for {@link HistoricalRidership.CalendarType#WEEKDAY} and 1
+ * for the weekend calendar types.
+ */
+public class HistoricalRidershipIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int ANY_DAY = -1;
+
+    public static final int WEEKDAY = 0;
+
+    public static final int WEEKEND = 1;
+
+    /**
+     * Records without a calendar type never match a weekday or weekend lookup,
+     * so they get a day class of their own
+     */
+    private static final int NO_CALENDAR_TYPE = 2;
+
+    private static final HistoricalRidership.CalendarType[] CALENDAR_TYPES = HistoricalRidership.CalendarType.values();
+
+    private final AgencyAndId[] _ids;
+
+    private final int[] _routes;
+
+    private final int[] _trips;
+
+    private final int[] _stops;
+
+    private final byte[] _calendarTypes;
+
+    private final double[] _loadFactors;
+
+    private final int[] _byStop;
+
+    private final long[] _byStopKeys;
+
+    private final int[] _byTrip;
+
+    private final int[] _byTripKeys;
+
+    private final int[] _byRoute;
+
+    private final int[] _byRouteKeys;
+
+    private transient Map<AgencyAndId, Integer> _idIndex;
+
+    public static HistoricalRidershipIndex create(List<HistoricalRidership> riderships) {
+
+        Map<AgencyAndId, Integer> idIndex = new HashMap<>();
+        List<AgencyAndId> ids = new ArrayList<>();
+        int n = riderships.size();
+        int[] routes = new int[n];
+        int[] trips = new int[n];
+        int[] stops = new int[n];
+        byte[] calendarTypes = new byte[n];
+        double[] loadFactors = new double[n];
+
+        for (int i = 0; i < n; i++) {
+            HistoricalRidership hr = riderships.get(i);
+            routes[i] = intern(hr.getRouteId(), idIndex, ids);
+            trips[i] = intern(hr.getTripId(), idIndex, ids);
+            stops[i] = intern(hr.getStopId(), idIndex, ids);
+            calendarTypes[i] = (byte) (hr.getCalendarType() == null ? -1 : hr.getCalendarType().ordinal());
+            loadFactors[i] = hr.getLoadFactor();
+        }
+
+        return new HistoricalRidershipIndex(ids.toArray(new AgencyAndId[ids.size()]),
+                routes, trips, stops, calendarTypes, loadFactors);
+    }
+
+    private HistoricalRidershipIndex(AgencyAndId[] ids, int[] routes, int[] trips, int[] stops,
+                                     byte[] calendarTypes, double[] loadFactors) {
+        _ids = ids;
+        _routes = routes;
+        _trips = trips;
+        _stops = stops;
+        _calendarTypes = calendarTypes;
+        _loadFactors = loadFactors;
+
+        int n = routes.length;
+
+        _byStopKeys = new long[n];
+        for (int i = 0; i < n; i++)
+            _byStopKeys[i] = stopKey(stops[i], trips[i], getDayClass(calendarTypes[i]));
+        _byStop = sortedPermutation(n, (a, b) -> Long.compare(_byStopKeys[a], _byStopKeys[b]));
+        for (int i = 0; i < n; i++)
+            _byStopKeys[i] = stopKey(stops[_byStop[i]], trips[_byStop[i]],
+                    getDayClass(calendarTypes[_byStop[i]]));
+
+        _byTrip = sortedPermutation(n, (a, b) -> Integer.compare(trips[a], trips[b]));
+        _byTripKeys = new int[n];
+        for (int i = 0; i < n; i++)
+            _byTripKeys[i] = trips[_byTrip[i]];
+
+        _byRoute = sortedPermutation(n, (a, b) -> Integer.compare(routes[a], routes[b]));
+        _byRouteKeys = new int[n];
+        for (int i = 0; i < n; i++)
+            _byRouteKeys[i] = routes[_byRoute[i]];
+
+        _idIndex = createIdIndex(ids);
+    }
+
+    public int size() {
+        return _loadFactors.length;
+    }
+
+    public HistoricalRidership get(int index) {
+        HistoricalRidership.Builder builder = HistoricalRidership.builder();
+        builder.setRouteId(_ids[_routes[index]]);
+        builder.setTripId(_ids[_trips[index]]);
+        builder.setStopId(_ids[_stops[index]]);
+        builder.setCalendarType(_calendarTypes[index] < 0 ? null : CALENDAR_TYPES[_calendarTypes[index]]);
+        builder.setLoadFactor(_loadFactors[index]);
+        return builder.create();
+    }
+
+    /**
+     * @return true if any record has the specified route, trip or stop id
+     */
+    public boolean containsId(AgencyAndId id) {
+        return _idIndex.containsKey(id);
+    }
+
+    /**
+     * Equivalent to the load factor of the first record, in original order,
+     * matching the route, trip, stop and day class, without allocating.
+     *
+     * @return the load factor, or {@link Double#NaN} if there is no match
+     */
+    public double getLoadFactor(AgencyAndId routeId, AgencyAndId tripId, AgencyAndId stopId, int dayClass) {
+        int index = getFirstIndex(routeId, tripId, stopId, dayClass);
+        return index == -1 ? Double.NaN : _loadFactors[index];
+    }
+
+    public List<HistoricalRidership> getAll(int dayClass) {
+        List<HistoricalRidership> results = new ArrayList<>();
+        for (int i = 0; i < _loadFactors.length; i++) {
+            if (matchesDayClass(i, dayClass))
+                results.add(get(i));
+        }
+        return results;
+    }
+
+    /**
+     * @return records for the trip in original order, or null if no record has
+     *         the trip
+     */
+    public List<HistoricalRidership> getForTrip(AgencyAndId tripId, int dayClass) {
+        Integer id = _idIndex.get(tripId);
+        if (id == null)
+            return null;
+        int from = lowerBound(_byTripKeys, id);
+        int to = lowerBound(_byTripKeys, id + 1);
+        if (from == to)
+            return null;
+        return collect(_byTrip, from, to, dayClass, false);
+    }
+
+    /**
+     * @return records for the route in original order, or null if no record has
+     *         the route
+     */
+    public List<HistoricalRidership> getForRoute(AgencyAndId routeId, int dayClass) {
+        Integer id = _idIndex.get(routeId);
+        if (id == null)
+            return null;
+        int from = lowerBound(_byRouteKeys, id);
+        int to = lowerBound(_byRouteKeys, id + 1);
+        if (from == to)
+            return null;
+        return collect(_byRoute, from, to, dayClass, false);
+    }
+
+    /**
+     * @return records for the stop in original order, or null if no record has
+     *         the stop
+     */
+    public List<HistoricalRidership> getForStop(AgencyAndId stopId, int dayClass) {
+        Integer id = _idIndex.get(stopId);
+        if (id == null)
+            return null;
+        int from = lowerBound(_byStopKeys, stopKey(id, 0, 0));
+        int to = lowerBound(_byStopKeys, stopKey(id + 1, 0, 0));
+        if (from == to)
+            return null;
+        // Sorted by trip within the stop, so restore original order
+        return collect(_byStop, from, to, dayClass, true);
+    }
+
+    /**
+     * @return records for the route, trip and stop in original order, or null if
+     *         no record has that combination
+     */
+    public List<HistoricalRidership> getForRouteTripAndStop(AgencyAndId routeId, AgencyAndId tripId,
+                                                            AgencyAndId stopId, int dayClass) {
+        Integer route = _idIndex.get(routeId);
+        Integer trip = _idIndex.get(tripId);
+        Integer stop = _idIndex.get(stopId);
+        if (route == null || trip == null || stop == null)
+            return null;
+
+        int[] matches = new int[0];
+        int count = 0;
+        int from = lowerBound(_byStopKeys, stopKey(stop, trip, 0));
+        int to = lowerBound(_byStopKeys, stopKey(stop, trip + 1, 0));
+        for (int i = from; i < to; i++) {
+            int index = _byStop[i];
+            if (_routes[index] == route) {
+                if (count == matches.length)
+                    matches = Arrays.copyOf(matches, Math.max(4, count * 2));
+                matches[count++] = index;
+            }
+        }
+        if (count == 0)
+            return null;
+
+        Arrays.sort(matches, 0, count);
+        List<HistoricalRidership> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (matchesDayClass(matches[i], dayClass))
+                results.add(get(matches[i]));
+        }
+        return results;
+    }
+
+    /****
+     * Private Methods
+     ****/
+
+    private int getFirstIndex(AgencyAndId routeId, AgencyAndId tripId, AgencyAndId stopId, int dayClass) {
+        Integer route = _idIndex.get(routeId);
+        Integer trip = _idIndex.get(tripId);
+        Integer stop = _idIndex.get(stopId);
+        if (route == null || trip == null || stop == null)
+            return -1;
+
+        int best = -1;
+        for (int day = WEEKDAY; day <= NO_CALENDAR_TYPE; day++) {
+            if (dayClass != ANY_DAY && dayClass != day)
+                continue;
+            long key = stopKey(stop, trip, day);
+            for (int i = lowerBound(_byStopKeys, key); i < _byStopKeys.length && _byStopKeys[i] == key; i++) {
+                int index = _byStop[i];
+                if (_routes[index] == route) {
+                    if (best == -1 || index < best)
+                        best = index;
+                    // Entries within a key are in original order
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    private List<HistoricalRidership> collect(int[] permutation, int from, int to, int dayClass,
+                                              boolean restoreOrder) {
+        int[] indices = Arrays.copyOfRange(permutation, from, to);
+        if (restoreOrder)
+            Arrays.sort(indices);
+        List<HistoricalRidership> results = new ArrayList<>();
+        for (int index : indices) {
+            if (matchesDayClass(index, dayClass))
+                results.add(get(index));
+        }
+        return results;
+    }
+
+    private boolean matchesDayClass(int index, int dayClass) {
+        if (dayClass == ANY_DAY)
+            return true;
+        return getDayClass(_calendarTypes[index]) == dayClass;
+    }
+
+    private static int getDayClass(byte calendarType) {
+        if (calendarType < 0)
+            return NO_CALENDAR_TYPE;
+        return CALENDAR_TYPES[calendarType] == HistoricalRidership.CalendarType.WEEKDAY ? WEEKDAY : WEEKEND;
+    }
+
+    private static long stopKey(int stop, int trip, int dayClass) {
+        return ((long) stop << 32) | ((long) trip << 2) | dayClass;
+    }
+
+    private static int lowerBound(long[] keys, long key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private static int lowerBound(int[] keys, int key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * A stable sort of the record indices, so records with equal keys stay in
+     * original order
+     */
+    private static int[] sortedPermutation(int n, Comparator<Integer> comparator) {
+        Integer[] boxed = new Integer[n];
+        for (int i = 0; i < n; i++)
+            boxed[i] = i;
+        Arrays.sort(boxed, comparator);
+        int[] permutation = new int[n];
+        for (int i = 0; i < n; i++)
+            permutation[i] = boxed[i];
+        return permutation;
+    }
+
+    private static int intern(AgencyAndId id, Map<AgencyAndId, Integer> idIndex, List<AgencyAndId> ids) {
+        Integer index = idIndex.get(id);
+        if (index == null) {
+            index = ids.size();
+            ids.add(id);
+            idIndex.put(id, index);
+        }
+        return index;
+    }
+
+    private static Map<AgencyAndId, Integer> createIdIndex(AgencyAndId[] ids) {
+        Map<AgencyAndId, Integer> idIndex = new HashMap<>(ids.length * 2);
+        for (int i = 0; i < ids.length; i++)
+            idIndex.put(ids[i], i);
+        return idIndex;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        _idIndex = createIdIndex(_ids);
+    }
+}
@@ -56,6 +56,14 @@ public class FederatedTransitDataBundle {
     return new File(_path, "StopSearchIndex");
   }
 
+  public File getRouteAutocompleteIndexPath() {
+    return new File(_path, "RouteAutocompleteIndex.obj");
+  }
+
+  public File getStopAutocompleteIndexPath() {
+    return new File(_path, "StopAutocompleteIndex.obj");
+  }
+
   public File getTransitGraphPath() {
     return new File(_path, "TransitGraph.obj");
   }
@@ -80,10 +88,18 @@ public class FederatedTransitDataBundle {
     return new File(_path, "ShapeGeospatialIndexData.obj.gz");
   }
 
+  public File getShapePointStorePath() {
+    return new File(_path, "ShapePointStore.bin");
+  }
+
   public File getServiceAlertsPath() {
     return new File(_path, "ServiceAlerts.xml");
   }
 
+  public File getBlockLocationHistoryPath() {
+    return new File(_path, "BlockLocationHistory");
+  }
+
   public File getCachePath() {
     return new File(_path, "cache");
   }
@@ -139,6 +155,8 @@ public class FederatedTransitDataBundle {
 
   public File getHistoricalRidershipPath() { return new File(_path, "HistoricalRiderships.obj"); }
 
+  public File getHistoricalRidershipIndexPath() { return new File(_path, "HistoricalRidershipIndex.obj"); }
+
   public File getCanonicalRoutePath() { return new File(_path, "CanonicalRoute.obj"); }
 
   public File getStopSwapPath() {
@@ -28,6 +28,15 @@ public interface RidershipService {
     public List<HistoricalRidership> getHistoricalRidershipsForRoute(AgencyAndId routeId, long serviceDate);
     public List<HistoricalRidership> getHistoricalRiderships(AgencyAndId routeId, AgencyAndId tripId, AgencyAndId stopId, long serviceDate);
 
+    /**
+     * The load factor of the first historical ridership that
+     * {@link #getHistoricalRiderships(AgencyAndId, AgencyAndId, AgencyAndId, long)}
+     * would return, looked up without building the list.
+     *
+     * @return the load factor, or {@link Double#NaN} if there is no ridership
+     */
+    public double getHistoricalLoadFactor(AgencyAndId routeId, AgencyAndId tripId, AgencyAndId stopId, long serviceDate);
+
     public List<OccupancyStatusBean> convertToOccupancyStatusBeans(List<HistoricalRidership> hrs);
 
 }
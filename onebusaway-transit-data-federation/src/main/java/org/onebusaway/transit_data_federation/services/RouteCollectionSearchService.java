@@ -45,4 +45,17 @@ public interface RouteCollectionSearchService {
   public SearchResult<AgencyAndId> searchForRoutesByName(String nameQuery,
       int maxResultCount, double minScoreToKeep) throws IOException,
           ParseException;
+
+  /**
+   * Typeahead search for {@link RouteCollectionEntry} ids by route short or
+   * long name prefix, answered from an in-memory index rather than the Lucene
+   * search index.
+   * 
+   * @param input the partial user input
+   * @param maxResultCount maximum number of results to return
+   * @return a search result for matching {@link RouteCollectionEntry} ids,
+   *         ordered by descending score
+   */
+  public SearchResult<AgencyAndId> autocompleteRoutes(String input,
+      int maxResultCount);
 }
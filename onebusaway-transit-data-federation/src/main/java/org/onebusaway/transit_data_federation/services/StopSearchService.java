@@ -62,4 +62,15 @@ public interface StopSearchService {
   public SearchResult<AgencyAndId> searchForStopsByName(String name,
       int maxResultCount, double minScoreToKeep) throws IOException,
       ParseException;
+
+  /**
+   * Typeahead search for stop ids by stop code or name prefix, answered from
+   * an in-memory index rather than the Lucene search index.
+   * 
+   * @param input the partial user input
+   * @param maxResultCount maximum number of results to return
+   * @return a search result for matching stop ids, ordered by descending score
+   */
+  public SearchResult<AgencyAndId> autocompleteStops(String input,
+      int maxResultCount);
 }
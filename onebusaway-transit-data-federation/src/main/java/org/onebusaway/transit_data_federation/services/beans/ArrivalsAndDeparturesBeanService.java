@@ -21,6 +21,7 @@ import org.onebusaway.gtfs.model.AgencyAndId;
 import org.onebusaway.gtfs.model.Stop;
 import org.onebusaway.gtfs.model.calendar.AgencyServiceInterval;
 import org.onebusaway.transit_data.model.ArrivalAndDepartureBean;
+import org.onebusaway.transit_data.model.ArrivalSummaryBean;
 import org.onebusaway.transit_data.model.ArrivalsAndDeparturesQueryBean;
 import org.onebusaway.transit_data_federation.services.ArrivalAndDepartureQuery;
 
@@ -43,6 +44,19 @@ public interface ArrivalsAndDeparturesBeanService {
   public List<ArrivalAndDepartureBean> getArrivalsAndDeparturesByStopId(
       AgencyAndId stopId, ArrivalsAndDeparturesQueryBean query);
 
+  /**
+   * Same selection and filtering as
+   * {@link #getArrivalsAndDeparturesByStopId(AgencyAndId, ArrivalsAndDeparturesQueryBean)},
+   * but without trip status, situations or historical occupancy.
+   * 
+   * @param stopId see {@link Stop#getId()}
+   * @param query
+   * @return compact arrival summaries for the specified stop, ordered by best
+   *         arrival time
+   */
+  public List<ArrivalSummaryBean> getArrivalSummariesByStopId(
+      AgencyAndId stopId, ArrivalsAndDeparturesQueryBean query);
+
   /**
    * Return arrival and departure information for a single trip instance
    * arriving and departing a particular stop.
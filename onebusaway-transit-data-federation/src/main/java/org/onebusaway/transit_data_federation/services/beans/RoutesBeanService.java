@@ -52,4 +52,13 @@ public interface RoutesBeanService {
   public ListBean<String> getRouteIdsForAgencyId(String agencyId);
 
   public ListBean<RouteBean> getRoutesForAgencyId(String agencyId);
+
+  /**
+   * Typeahead search for routes by name.
+   * 
+   * @param input the partial user input
+   * @param maxCount the maximum number of routes to return
+   * @return matching routes, ordered by descending relevance
+   */
+  public RoutesBean getRoutesForAutocomplete(String input, int maxCount);
 }
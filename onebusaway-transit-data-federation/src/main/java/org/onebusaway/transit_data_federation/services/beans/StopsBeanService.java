@@ -64,4 +64,13 @@ public interface StopsBeanService {
    */
   public StopsBean getStopsByName(String stopName) throws ServiceException;
 
+  /**
+   * Typeahead search for stops by name.
+   * 
+   * @param input the partial user input
+   * @param maxCount the maximum number of stops to return
+   * @return matching stops, ordered by descending relevance
+   */
+  public StopsBean getStopsForAutocomplete(String input, int maxCount);
+
 }
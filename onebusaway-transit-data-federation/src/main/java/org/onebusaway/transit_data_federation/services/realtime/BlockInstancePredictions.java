@@ -0,0 +1,229 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.services.realtime;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.onebusaway.realtime.api.TimepointPredictionRecord;
+import org.onebusaway.transit_data_federation.services.blocks.BlockInstance;
+import org.onebusaway.transit_data_federation.services.transit_graph.BlockConfigurationEntry;
+import org.onebusaway.transit_data_federation.services.transit_graph.BlockStopTimeEntry;
+import org.onebusaway.transit_data_federation.services.transit_graph.StopTimeEntry;
+import org.onebusaway.utility.EInRangeStrategy;
+import org.onebusaway.utility.EOutOfRangeStrategy;
+import org.onebusaway.utility.TransitInterpolationLibrary;
+
+/**
+ * The real-time prediction state of a single vehicle location record
+ * resolved against every stop time of its {@link BlockInstance}, indexed by
+ * {@link BlockStopTimeEntry#getBlockSequence()}. It is computed once per
+ * record, so that the many stop queries that touch the same vehicle only do
+ * array lookups instead of re-matching timepoint predictions and
+ * re-interpolating schedule deviations.
+ */
+public final class BlockInstancePredictions {
+
+  private static final TimepointPredictionMatch NO_MATCH = new TimepointPredictionMatch(
+      null, false);
+
+  private final BlockInstance _blockInstance;
+
+  private final List<TimepointPredictionRecord> _timepointPredictions;
+
+  private final ScheduleDeviationSamples _scheduleDeviations;
+
+  private final TimepointPredictionMatch[] _matches;
+
+  /**
+   * best schedule deviation for each stop time, or {@link Double#NaN} if none
+   */
+  private final double[] _bestScheduleDeviations;
+
+  private BlockInstancePredictions(BlockInstance blockInstance,
+      List<TimepointPredictionRecord> timepointPredictions,
+      ScheduleDeviationSamples scheduleDeviations,
+      TimepointPredictionMatch[] matches, double[] bestScheduleDeviations) {
+    _blockInstance = blockInstance;
+    _timepointPredictions = timepointPredictions;
+    _scheduleDeviations = scheduleDeviations;
+    _matches = matches;
+    _bestScheduleDeviations = bestScheduleDeviations;
+  }
+
+  public static BlockInstancePredictions create(BlockInstance blockInstance,
+      List<TimepointPredictionRecord> timepointPredictions,
+      ScheduleDeviationSamples scheduleDeviations) {
+
+    List<BlockStopTimeEntry> stopTimes = blockInstance.getBlock().getStopTimes();
+    TimepointPredictionMatch[] matches = new TimepointPredictionMatch[stopTimes.size()];
+    double[] bestScheduleDeviations = new double[stopTimes.size()];
+    Arrays.fill(bestScheduleDeviations, Double.NaN);
+
+    boolean hasSamples = scheduleDeviations != null
+        && !scheduleDeviations.isEmpty();
+
+    for (int i = 0; i < stopTimes.size(); i++) {
+      BlockStopTimeEntry blockStopTime = stopTimes.get(i);
+      matches[i] = timepointPredictions == null ? NO_MATCH
+          : matchTimepointPrediction(timepointPredictions, blockStopTime);
+      if (hasSamples) {
+        Double deviation = TransitInterpolationLibrary.interpolate(
+            scheduleDeviations.getScheduleTimes(),
+            scheduleDeviations.getScheduleDeviationMus(),
+            blockStopTime.getStopTime().getArrivalTime(),
+            EOutOfRangeStrategy.LAST_VALUE, EInRangeStrategy.PREVIOUS_VALUE);
+        if (deviation != null)
+          bestScheduleDeviations[i] = deviation;
+      }
+    }
+
+    return new BlockInstancePredictions(blockInstance, timepointPredictions,
+        scheduleDeviations, matches, bestScheduleDeviations);
+  }
+
+  public BlockInstance getBlockInstance() {
+    return _blockInstance;
+  }
+
+  public List<TimepointPredictionRecord> getTimepointPredictions() {
+    return _timepointPredictions;
+  }
+
+  public ScheduleDeviationSamples getScheduleDeviations() {
+    return _scheduleDeviations;
+  }
+
+  /**
+   * @return true if the precomputed values are valid for the given stop time
+   *         of the given block location, which must still carry the same
+   *         predictions and deviation samples this was computed from
+   */
+  public boolean isApplicable(BlockLocation blockLocation,
+      BlockStopTimeEntry blockStopTime) {
+    if (blockLocation.getTimepointPredictions() != _timepointPredictions
+        || blockLocation.getScheduleDeviations() != _scheduleDeviations)
+      return false;
+    BlockConfigurationEntry blockConfig = blockStopTime.getTrip().getBlockConfiguration();
+    int index = blockStopTime.getBlockSequence();
+    return blockConfig == _blockInstance.getBlock() && index >= 0
+        && index < _matches.length;
+  }
+
+  public TimepointPredictionMatch getTimepointPredictionMatch(
+      BlockStopTimeEntry blockStopTime) {
+    return _matches[blockStopTime.getBlockSequence()];
+  }
+
+  /**
+   * @return the deviation interpolated from the schedule deviation samples, or
+   *         null if the stop is upstream of all samples
+   */
+  public Double getBestScheduleDeviation(BlockStopTimeEntry blockStopTime) {
+    double deviation = _bestScheduleDeviations[blockStopTime.getBlockSequence()];
+    return Double.isNaN(deviation) ? null : deviation;
+  }
+
+  /**
+   * Finds the timepoint prediction record for a stop time. Trips that visit the
+   * same stop more than once are matched on GTFS stop sequence when the record
+   * has one, and otherwise on the order of the visits, which requires one
+   * record per visit.
+   */
+  public static TimepointPredictionMatch matchTimepointPrediction(
+      List<TimepointPredictionRecord> records, BlockStopTimeEntry blockStopTime) {
+
+    StopTimeEntry targetStopTime = blockStopTime.getStopTime();
+    int stopSequence = targetStopTime.getSequence();
+    int gtfsSequence = targetStopTime.getGtfsSequence();
+
+    int totalCandidates = 0;
+    int thisStopIndex = 0; // index (with respect to stop sequence) among stops
+                           // with the same ID
+
+    for (BlockStopTimeEntry stopTime : blockStopTime.getTrip().getStopTimes()) {
+      StopTimeEntry stop = stopTime.getStopTime();
+      if (stop.getStop().getId().equals(targetStopTime.getStop().getId())) {
+        totalCandidates++;
+        if (stop.getSequence() < stopSequence)
+          thisStopIndex++;
+      }
+    }
+
+    int tprTotalCandidates = 0;
+    int tprStopIndex = 0;
+
+    TimepointPredictionRecord match = null;
+
+    for (TimepointPredictionRecord tpr : records) {
+      boolean tripMatches = tpr.getTripId().equals(
+          targetStopTime.getTrip().getId());
+      boolean stopMatches = tpr.getTimepointId().equals(
+          targetStopTime.getStop().getId());
+      boolean sequenceMatches = tpr.getStopSequence() > 0
+          && tpr.getStopSequence() == gtfsSequence;
+      // records may have predictions across multiple blocks
+      if (!tripMatches || !stopMatches)
+        continue;
+
+      if (sequenceMatches || tprStopIndex == thisStopIndex) {
+        match = tpr;
+        if (sequenceMatches)
+          return new TimepointPredictionMatch(match, true);
+      } else if (tprStopIndex < thisStopIndex) {
+        tprStopIndex++;
+      }
+
+      tprTotalCandidates++;
+    }
+
+    if (match == null)
+      return NO_MATCH;
+
+    boolean complete = totalCandidates == tprTotalCandidates
+        && tprStopIndex == thisStopIndex;
+    return new TimepointPredictionMatch(match, complete);
+  }
+
+  public static final class TimepointPredictionMatch {
+
+    private final TimepointPredictionRecord _record;
+
+    private final boolean _complete;
+
+    private TimepointPredictionMatch(TimepointPredictionRecord record,
+        boolean complete) {
+      _record = record;
+      _complete = complete;
+    }
+
+    /**
+     * @return the last record that matched the stop time, or null if none did
+     */
+    public TimepointPredictionRecord getRecord() {
+      return _record;
+    }
+
+    /**
+     * @return true if the record can be trusted for the stop time. A record
+     *         without a stop sequence for a trip that visits the stop more
+     *         than once is only trusted if every visit has a record.
+     */
+    public boolean isComplete() {
+      return _complete;
+    }
+  }
+}
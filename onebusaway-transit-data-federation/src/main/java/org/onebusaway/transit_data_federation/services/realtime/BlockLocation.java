@@ -111,6 +111,8 @@ public class BlockLocation {
   
   private List<TimepointPredictionRecord> timepointPredictions;
 
+  private BlockInstancePredictions predictions;
+
   private List<String> vehicleFeatures;
 
 
@@ -490,6 +492,18 @@ public class BlockLocation {
       this.timepointPredictions = timepointPredictions;
   }
 
+  /**
+   * Per-stop predictions precomputed from the underlying vehicle location
+   * record, if any. See {@link BlockInstancePredictions#isApplicable}.
+   */
+  public BlockInstancePredictions getPredictions() {
+    return predictions;
+  }
+
+  public void setPredictions(BlockInstancePredictions predictions) {
+    this.predictions = predictions;
+  }
+
   public void setVehicleFeatures(List<String> vehicleFeatures) {
     this.vehicleFeatures = vehicleFeatures;
   }
@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.services.realtime;
+
+import org.onebusaway.realtime.api.VehicleLocationRecord;
+import org.onebusaway.transit_data.model.realtime.RealtimeDeltasBean;
+import org.onebusaway.transit_data_federation.services.blocks.ScheduledBlockLocation;
+
+/**
+ * Journal of real-time changes, fed as vehicle location records are handled
+ * and read by clients that stream changes instead of polling for arrivals.
+ */
+public interface RealtimeDeltaService {
+
+  /**
+   * Publishes a position delta for the vehicle, and a prediction delta for
+   * each stop whose predicted times changed since the vehicle's last record.
+   */
+  public void handleVehicleLocationRecord(VehicleLocationRecord record);
+
+  /**
+   * As {@link #handleVehicleLocationRecord(VehicleLocationRecord)}, but when
+   * the record carries a schedule deviation and no timepoint predictions,
+   * prediction deltas are derived for the remaining stops of the active trip.
+   * 
+   * @param scheduledBlockLocation the vehicle's scheduled location, or null
+   */
+  public void handleVehicleLocationRecord(VehicleLocationRecord record,
+      ScheduledBlockLocation scheduledBlockLocation);
+
+  /**
+   * @param afterSequence the lastSequence of a previous call, or a negative
+   *          value to start from the current head
+   * @param maxCount the maximum number of published deltas to read
+   */
+  public RealtimeDeltasBean getDeltas(long afterSequence, int maxCount);
+
+  /**
+   * As {@link #getDeltas(long, int)}, but only the deltas of vehicles of the
+   * given agency are returned, and only those count towards maxCount.
+   * Sequence numbers are shared by all agencies.
+   * 
+   * @param agencyId the agency, or null for every agency
+   */
+  public RealtimeDeltasBean getDeltas(String agencyId, long afterSequence,
+      int maxCount);
+}
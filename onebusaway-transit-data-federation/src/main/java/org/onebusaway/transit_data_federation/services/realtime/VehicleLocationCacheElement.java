@@ -30,6 +30,8 @@ public class VehicleLocationCacheElement {
 
   private final ScheduleDeviationSamples _scheduleDeviations;
 
+  private volatile BlockInstancePredictions _predictions;
+
   public VehicleLocationCacheElement(VehicleLocationRecord record,
       ScheduledBlockLocation scheduledBlockLocation,
       ScheduleDeviationSamples scheduleDeviations) {
@@ -59,4 +61,19 @@ public class VehicleLocationCacheElement {
   public ScheduleDeviationSamples getScheduleDeviations() {
     return _scheduleDeviations;
   }
-}
\ No newline at end of file
+
+  /**
+   * Predictions derived from the record, computed lazily by the first query
+   * that reads this element and shared by all subsequent ones. Records that
+   * are replaced before anyone asks for them never pay for the computation.
+   * 
+   * @return the predictions, or null if not yet computed
+   */
+  public BlockInstancePredictions getPredictions() {
+    return _predictions;
+  }
+
+  public void setPredictions(BlockInstancePredictions predictions) {
+    _predictions = predictions;
+  }
+}
@@ -20,8 +20,18 @@ import java.util.List;
 import org.onebusaway.collections.tuple.T2;
 import org.onebusaway.geospatial.model.XYPoint;
 import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.transit_data_federation.model.ShapeSegmentIndex;
 
 public interface ProjectedShapePointService {
   public T2<List<XYPoint>, double[]> getProjectedShapePoints(
       List<AgencyAndId> shapeIds, int utmZoneId);
+
+  /**
+   * @param shapeIds the target shape ids in order
+   * @param utmZoneId the UTM zone to project the shape points into
+   * @return a segment index over the projected shape points, or null if there
+   *         are no shape points
+   */
+  public ShapeSegmentIndex getShapeSegmentIndex(List<AgencyAndId> shapeIds,
+      int utmZoneId);
 }
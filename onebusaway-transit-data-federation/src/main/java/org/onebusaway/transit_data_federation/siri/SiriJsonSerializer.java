@@ -24,6 +24,7 @@ import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationConfig;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.SerializerProvider;
@@ -39,6 +40,8 @@ import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import uk.org.siri.siri.Siri;
 
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.reflect.Field;
 import java.text.FieldPosition;
 import java.text.SimpleDateFormat;
@@ -167,11 +170,13 @@ public class SiriJsonSerializer {
     }
   }
 
-  public String getJson(Siri siri) throws Exception {    
-    return getJson(siri, null);
-  }
-  
-  public String getJson(Siri siri, String callback) throws Exception {    
+  /**
+   * Building the mapper and introspecting the SIRI bean classes is expensive,
+   * so it is done once. {@link ObjectWriter} is immutable and thread-safe.
+   */
+  private static final ObjectWriter WRITER = createWriter();
+
+  private static ObjectWriter createWriter() {
     ObjectMapper mapper = new ObjectMapper();    
     mapper.setSerializationInclusion(Include.NON_EMPTY);
     mapper.configure(SerializationFeature.INDENT_OUTPUT, false);
@@ -186,17 +191,37 @@ public class SiriJsonSerializer {
     // Needed to process SIRI JAXB Annotations
     mapper.registerModules(new JaxbAnnotationModule());
 
-    String output = "";
+    // the caller owns the writer
+    return mapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+  }
+
+  public String getJson(Siri siri) throws Exception {    
+    return getJson(siri, null);
+  }
+  
+  public String getJson(Siri siri, String callback) throws Exception {    
+    StringWriter output = new StringWriter();
+    writeJson(siri, callback, output);
+    return output.toString();
+  }
+
+  /**
+   * Streams the JSON (optionally wrapped in a JSONP callback) to the specified
+   * writer without building an intermediate string. The writer is flushed but
+   * not closed.
+   */
+  public void writeJson(Siri siri, String callback, Writer out)
+      throws Exception {
 
     if(callback != null)
-      output = callback + "(";
+      out.write(callback + "(");
 
-    output += mapper.writeValueAsString(siri);
+    WRITER.writeValue(out, siri);
 
     if(callback != null)
-      output += ")";
+      out.write(")");
 
-    return output;
+    out.flush();
   }  
   
 }
\ No newline at end of file
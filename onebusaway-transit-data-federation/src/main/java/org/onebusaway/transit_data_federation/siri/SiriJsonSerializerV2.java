@@ -16,6 +16,8 @@
 package org.onebusaway.transit_data_federation.siri;
 
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.reflect.Field;
 import java.text.FieldPosition;
 import java.text.SimpleDateFormat;
@@ -32,6 +34,7 @@ import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationConfig;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.SerializerProvider;
@@ -162,11 +165,13 @@ public class SiriJsonSerializerV2 {
     }
   }
 
-  public String getJson(Siri siri) throws Exception {    
-    return getJson(siri, null);
-  }
+  /**
+   * Building the mapper and introspecting the SIRI bean classes is expensive,
+   * so it is done once. {@link ObjectWriter} is immutable and thread-safe.
+   */
+  private static final ObjectWriter WRITER = createWriter();
 
-  public String getJson(Siri siri, String callback) throws Exception {    
+  private static ObjectWriter createWriter() {
     ObjectMapper mapper = new ObjectMapper();    
     mapper.setSerializationInclusion(Include.NON_EMPTY);
     mapper.setPropertyNamingStrategy(PropertyNamingStrategy.UPPER_CAMEL_CASE);
@@ -179,17 +184,37 @@ public class SiriJsonSerializerV2 {
     SiriJsonSerializerV2.SiriJacksonModule module = new SiriJsonSerializerV2.SiriJacksonModule();
     mapper.registerModule(module);
 
-    String output = "";
+    // the caller owns the output stream when streaming
+    return mapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+  }
+
+  public String getJson(Siri siri) throws Exception {    
+    return getJson(siri, null);
+  }
+
+  public String getJson(Siri siri, String callback) throws Exception {    
+    StringWriter output = new StringWriter();
+    writeJson(siri, callback, output);
+    return output.toString();
+  }
+
+  /**
+   * Streams the JSON (optionally wrapped in a JSONP callback) to the specified
+   * writer without building an intermediate string. The writer is flushed but
+   * not closed.
+   */
+  public void writeJson(Siri siri, String callback, Writer out)
+      throws Exception {
 
-    if(callback != null)
-      output = callback + "(";
+    if (callback != null)
+      out.write(callback + "(");
 
-    output += mapper.writeValueAsString(siri);
+    WRITER.writeValue(out, siri);
 
-    if(callback != null)
-      output += ")";
+    if (callback != null)
+      out.write(")");
 
-    return output;
+    out.flush();
   }
 
 }
@@ -20,6 +20,8 @@ import uk.org.siri.siri.Siri;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
@@ -27,7 +29,6 @@ import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.ValidationEvent;
 import javax.xml.bind.ValidationEventHandler;
-import javax.xml.parsers.DocumentBuilderFactory;
 
 /** 
  * Serializer for XSD-generated SIRI classes, creating XML in the format suitable
@@ -38,47 +39,77 @@ import javax.xml.parsers.DocumentBuilderFactory;
  */
 public class SiriXmlSerializer {
 
-  private JAXBContext context = null;
-  
-  public SiriXmlSerializer() {
+  private static final String[] REPLACED_TOKENS = {
+      "<ns5:", "</ns5:", "xmlns:ns5",
+      "<siriExtensionWrapper>", "</siriExtensionWrapper>"};
+
+  private static final String[] REPLACEMENTS = {
+      "<", "</", "xmlns",
+      "", ""};
+
+  private static final ValidationEventHandler EVENT_HANDLER = new ValidationEventHandler() {
+    public boolean handleEvent(ValidationEvent event) {
+      throw new RuntimeException(event.getMessage(), event.getLinkedException());
+    }
+  };
+
+  /**
+   * The JAXBContext is thread-safe and very expensive to build, so it is shared
+   * by all serializer instances.
+   */
+  private static final JAXBContext CONTEXT = createContext();
+
+  /**
+   * Marshallers are not thread-safe but can be reused, so idle ones are pooled
+   * the same way as in {@link SiriXmlSerializerV2}.
+   */
+  private static final BlockingQueue<Marshaller> MARSHALLERS = new ArrayBlockingQueue<Marshaller>(
+      32);
+
+  private static JAXBContext createContext() {
     try {
-      context = JAXBContext.newInstance(uk.org.siri.siri.Siri.class, SiriExtensionWrapper.class, SiriDistanceExtension.class);
-    } catch(Exception e) {
-      // discard
+      return JAXBContext.newInstance(uk.org.siri.siri.Siri.class,
+          SiriExtensionWrapper.class, SiriDistanceExtension.class);
+    } catch(JAXBException e) {
+      throw new IllegalStateException("error creating SIRI JAXB context", e);
     }
   }
-  
-  public String getXml(Siri siri) throws Exception {    
-    Marshaller marshaller = context.createMarshaller();
-    marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, false);
-    marshaller.setEventHandler(
-        new ValidationEventHandler() {
-            public boolean handleEvent(ValidationEvent event ) {
-                throw new RuntimeException(event.getMessage(), event.getLinkedException());
-            }
-        }
-    );
-    
-    DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-    dbf.setNamespaceAware(true);
 
-    Writer output = new StringWriter();
-    marshaller.marshal(siri, output);
+  public String getXml(Siri siri) throws Exception {    
+    StringWriter output = new StringWriter();
+    writeXml(siri, output);
+    return output.toString();
+  }
 
+  /**
+   * Streams the XML to the specified writer without building an intermediate
+   * string. The writer is flushed but not closed.
+   */
+  public void writeXml(Siri siri, Writer out) throws Exception {
     // FIXME: strip off ns5 namespaces on siri root namespace. super hack, please fix me!
-    String outputAsString = output.toString();    
-    outputAsString = outputAsString.replaceAll("<ns5:", "<");
-    outputAsString = outputAsString.replaceAll("</ns5:", "</");
-    outputAsString = outputAsString.replaceAll("xmlns:ns5", "xmlns");
-
-    outputAsString = outputAsString.replaceAll("<siriExtensionWrapper>", "");
-    outputAsString = outputAsString.replaceAll("</siriExtensionWrapper>", "");
+    Writer filtered = new TokenReplacingWriter(out, REPLACED_TOKENS,
+        REPLACEMENTS);
+    Marshaller marshaller = getMarshaller();
+    try {
+      marshaller.marshal(siri, filtered);
+    } finally {
+      MARSHALLERS.offer(marshaller);
+    }
+    filtered.flush();
+  }
 
-    return outputAsString;
+  private Marshaller getMarshaller() throws JAXBException {
+    Marshaller marshaller = MARSHALLERS.poll();
+    if (marshaller == null) {
+      marshaller = CONTEXT.createMarshaller();
+      marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, false);
+      marshaller.setEventHandler(EVENT_HANDLER);
+    }
+    return marshaller;
   }
   
   public Siri fromXml(String xml) throws JAXBException {
-    Unmarshaller u = context.createUnmarshaller();
+    Unmarshaller u = CONTEXT.createUnmarshaller();
     Siri siri = (Siri) u.unmarshal(new StringReader(xml));
     
     return siri;
@@ -17,14 +17,15 @@ package org.onebusaway.transit_data_federation.siri;
 
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.ValidationEvent;
 import javax.xml.bind.ValidationEventHandler;
-import javax.xml.parsers.DocumentBuilderFactory;
 
-import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,66 +40,90 @@ import uk.org.siri.siri_2.Siri;
  */
 public class SiriXmlSerializerV2 {
 
-  private JAXBContext context = null;
   private static Logger _log = LoggerFactory.getLogger(SiriXmlSerializerV2.class);
 
-  public SiriXmlSerializerV2() {
+  /**
+   * Wrapper elements that exist only to carry our SIRI extensions through
+   * JAXB and are stripped from the output.
+   */
+  private static final String[] STRIPPED_ELEMENTS = {
+      "<siriExtensionWrapper>", 
+      "</siriExtensionWrapper>",
+      "<siriUpcomingServiceExtension>",
+      "</siriUpcomingServiceExtension>",
+      "<siriPolyLinesExtension>",
+      "</siriPolyLinesExtension>"
+  };
+
+  private static final ValidationEventHandler EVENT_HANDLER = new ValidationEventHandler() {
+    public boolean handleEvent(ValidationEvent event) {
+      _log.error(event.getMessage(), event.getLinkedException());
+      throw new RuntimeException(event.getMessage(), event.getLinkedException());
+    }
+  };
+
+  /**
+   * The JAXBContext is thread-safe and very expensive to build, so it is shared
+   * by all serializer instances.
+   */
+  private static final JAXBContext CONTEXT = createContext();
+
+  /**
+   * Marshallers are not thread-safe but can be reused, so idle ones are pooled.
+   * A pool rather than a ThreadLocal, so container threads don't keep this
+   * webapp's classes alive across redeploys.
+   */
+  private static final BlockingQueue<Marshaller> MARSHALLERS = new ArrayBlockingQueue<Marshaller>(
+      32);
+
+  private static JAXBContext createContext() {
     try {
-      context = JAXBContext.newInstance(
+      return JAXBContext.newInstance(
           Siri.class,
           SiriExtensionWrapper.class, 
           SiriDistanceExtension.class, 
           SiriUpcomingServiceExtension.class,
           SiriPolyLinesExtension.class);
-    } catch(Exception e) {
-      _log.error("Failed to Serialize Siri to XML", e);
+    } catch(JAXBException e) {
+      throw new IllegalStateException("error creating SIRI JAXB context", e);
     }
   }
 
   public String getXml(Siri siri) throws Exception {    
-    Marshaller marshaller = context.createMarshaller();
-    marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, false);
-    marshaller.setEventHandler(
-        new ValidationEventHandler() {
-            public boolean handleEvent(ValidationEvent event ) {
-              _log.error(event.getMessage(), event.getLinkedException());
-                throw new RuntimeException(event.getMessage(), event.getLinkedException());
-            }
-        }
-    );
-    
-    DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-    dbf.setNamespaceAware(true);
-
-    Writer output = new StringWriter();
-    marshaller.marshal(siri, output);
-
-    // FIXME: strip off ns6 namespaces on siri root namespace. super hack, please fix me!
-    String outputAsString = output.toString();   
-
-    /*outputAsString = outputAsString.replaceAll("<ns6:", "<");
-    outputAsString = outputAsString.replaceAll("</ns6:", "</");
-    outputAsString = outputAsString.replaceAll("xmlns:ns6", "xmlns");
-*/
+    StringWriter output = new StringWriter();
+    writeXml(siri, output);
+    return output.toString();
+  }
 
-    String[] searchList = {
-      "<siriExtensionWrapper>", 
-      "</siriExtensionWrapper>",
-      "<siriUpcomingServiceExtension>",
-      "</siriUpcomingServiceExtension>",
-      "<siriPolyLinesExtension>",
-      "</siriPolyLinesExtension>"
-  };
-    
-    String[] replacementList = {"","","","","",""};
-    
-    outputAsString = StringUtils.replaceEach(outputAsString, searchList, replacementList);
+  /**
+   * Streams the XML to the specified writer without building an intermediate
+   * string, stripping the extension wrapper elements on the way through. The
+   * writer is flushed but not closed.
+   */
+  public void writeXml(Siri siri, Writer out) throws Exception {
+    Writer filtered = TokenReplacingWriter.stripping(out, STRIPPED_ELEMENTS);
+    Marshaller marshaller = getMarshaller();
+    try {
+      marshaller.marshal(siri, filtered);
+    } finally {
+      MARSHALLERS.offer(marshaller);
+    }
+    filtered.flush();
+  }
 
-    return outputAsString;
+  private Marshaller getMarshaller() throws JAXBException {
+    Marshaller marshaller = MARSHALLERS.poll();
+    if (marshaller == null) {
+      marshaller = CONTEXT.createMarshaller();
+      marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, false);
+      marshaller.setEventHandler(EVENT_HANDLER);
+    }
+    return marshaller;
   }
+
   /*
   public Siri fromXml(String xml) throws JAXBException {
-    Unmarshaller u = context.createUnmarshaller();
+    Unmarshaller u = CONTEXT.createUnmarshaller();
     Siri siri = (Siri) u.unmarshal(new StringReader(xml));
     
     return siri;
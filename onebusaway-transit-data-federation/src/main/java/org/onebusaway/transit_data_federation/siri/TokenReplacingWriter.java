@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2016 Cambridge Systematics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.siri;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Replaces exact occurrences of a set of tokens in the character stream, so
+ * serialized output can be cleaned up on its way to the client instead of by
+ * a second pass over a finished string. At most one candidate token is
+ * buffered at a time. Where tokens overlap, the first token to complete wins.
+ */
+class TokenReplacingWriter extends FilterWriter {
+
+  private static final int NO_MATCH = -1;
+
+  private static final int PREFIX = -2;
+
+  private final String[] _tokens;
+
+  private final String[] _replacements;
+
+  /**
+   * the first character of any token, to skip quickly over everything else
+   */
+  private final String _firstChars;
+
+  private final StringBuilder _pending = new StringBuilder();
+
+  public TokenReplacingWriter(Writer out, String[] tokens,
+      String[] replacements) {
+    super(out);
+    if (tokens.length != replacements.length)
+      throw new IllegalArgumentException(
+          "tokens and replacements must have the same length");
+    _tokens = tokens;
+    _replacements = replacements;
+    StringBuilder firstChars = new StringBuilder();
+    for (String token : tokens) {
+      if (token.isEmpty())
+        throw new IllegalArgumentException("empty token");
+      if (firstChars.indexOf(token.substring(0, 1)) == -1)
+        firstChars.append(token.charAt(0));
+    }
+    _firstChars = firstChars.toString();
+  }
+
+  /**
+   * @return a writer that removes the specified tokens
+   */
+  public static TokenReplacingWriter stripping(Writer out, String[] tokens) {
+    return new TokenReplacingWriter(out, tokens, new String[tokens.length]);
+  }
+
+  @Override
+  public void write(int c) throws IOException {
+    if (_pending.length() == 0 && _firstChars.indexOf(c) == -1) {
+      out.write(c);
+      return;
+    }
+    _pending.append((char) c);
+    int match = match();
+    if (match >= 0) {
+      _pending.setLength(0);
+      if (_replacements[match] != null)
+        out.write(_replacements[match]);
+    } else if (match == NO_MATCH) {
+      /**
+       * The pending text can't start a token, but a token may still start
+       * after its first character, so replay the rest
+       */
+      out.write(_pending.charAt(0));
+      String rest = _pending.substring(1);
+      _pending.setLength(0);
+      for (int i = 0; i < rest.length(); i++)
+        write(rest.charAt(i));
+    }
+  }
+
+  @Override
+  public void write(char[] cbuf, int off, int len) throws IOException {
+    int end = off + len;
+    int i = off;
+    while (i < end) {
+      if (_pending.length() == 0) {
+        int start = i;
+        while (i < end && _firstChars.indexOf(cbuf[i]) == -1)
+          i++;
+        if (i > start)
+          out.write(cbuf, start, i - start);
+        if (i == end)
+          break;
+      }
+      write(cbuf[i++]);
+    }
+  }
+
+  @Override
+  public void write(String str, int off, int len) throws IOException {
+    write(str.toCharArray(), off, len);
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (_pending.length() > 0) {
+      out.append(_pending);
+      _pending.setLength(0);
+    }
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    flush();
+    out.close();
+  }
+
+  /**
+   * @return the index of the token equal to the pending text, PREFIX if it is
+   *         a proper prefix of at least one token, and NO_MATCH otherwise
+   */
+  private int match() {
+    int length = _pending.length();
+    boolean prefix = false;
+    for (int t = 0; t < _tokens.length; t++) {
+      String token = _tokens[t];
+      if (token.length() < length)
+        continue;
+      boolean matches = true;
+      for (int i = 0; i < length; i++) {
+        if (token.charAt(i) != _pending.charAt(i)) {
+          matches = false;
+          break;
+        }
+      }
+      if (matches) {
+        if (token.length() == length)
+          return t;
+        prefix = true;
+      }
+    }
+    return prefix ? PREFIX : NO_MATCH;
+  }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class AlarmTimingWheelTest {
+
+  @Test
+  public void testWheelSize() {
+    assertEquals(2, new AlarmTimingWheel<String>(1).getWheelSize());
+    assertEquals(8, new AlarmTimingWheel<String>(5).getWheelSize());
+    assertEquals(4096, new AlarmTimingWheel<String>(4096).getWheelSize());
+  }
+
+  @Test
+  public void testExpiry() {
+
+    AlarmTimingWheel<String> wheel = new AlarmTimingWheel<String>(8);
+    RecordingHandler handler = new RecordingHandler();
+
+    wheel.advance(100, handler);
+
+    wheel.schedule("a", 102);
+    wheel.schedule("b", 105);
+    // more than one revolution out
+    wheel.schedule("c", 120);
+    // already past due
+    wheel.schedule("d", 90);
+    assertEquals(4, wheel.size());
+
+    wheel.advance(101, handler);
+    assertEquals(list("d"), handler.expired);
+
+    wheel.advance(104, handler);
+    assertEquals(list("d", "a"), handler.expired);
+
+    wheel.advance(119, handler);
+    assertEquals(list("d", "a", "b"), handler.expired);
+    assertEquals(1, wheel.size());
+
+    wheel.advance(120, handler);
+    assertEquals(list("d", "a", "b", "c"), handler.expired);
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  public void testReschedule() {
+
+    AlarmTimingWheel<String> wheel = new AlarmTimingWheel<String>(8);
+    RecordingHandler handler = new RecordingHandler();
+    handler.reschedules.put("a", 110L);
+
+    wheel.advance(100, handler);
+    wheel.schedule("a", 102);
+
+    wheel.advance(105, handler);
+    assertEquals(list("a"), handler.expired);
+    assertEquals(1, wheel.size());
+
+    handler.reschedules.clear();
+    wheel.advance(110, handler);
+    assertEquals(list("a", "a"), handler.expired);
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  public void testClockJump() {
+
+    AlarmTimingWheel<String> wheel = new AlarmTimingWheel<String>(8);
+    RecordingHandler handler = new RecordingHandler();
+
+    wheel.advance(100, handler);
+    wheel.schedule("a", 103);
+    wheel.schedule("b", 1000);
+
+    wheel.advance(500, handler);
+    assertEquals(list("a"), handler.expired);
+
+    wheel.advance(1000, handler);
+    assertTrue(handler.expired.contains("b"));
+  }
+
+  private static List<String> list(String... values) {
+    List<String> list = new ArrayList<String>();
+    for (String value : values)
+      list.add(value);
+    return list;
+  }
+
+  private static class RecordingHandler implements
+      AlarmTimingWheel.ExpiryHandler<String> {
+
+    private List<String> expired = new ArrayList<String>();
+
+    private Map<String, Long> reschedules = new HashMap<String, Long>();
+
+    @Override
+    public long handleExpiry(String item, long deadline, long now) {
+      expired.add(item);
+      Long next = reschedules.get(item);
+      return next == null ? -1 : next;
+    }
+  }
+}
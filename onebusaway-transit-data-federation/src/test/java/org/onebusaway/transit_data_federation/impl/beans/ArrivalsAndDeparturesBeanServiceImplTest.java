@@ -37,6 +37,7 @@ import org.junit.Test;
 import org.mockito.Mockito;
 
 import org.onebusaway.transit_data.model.ArrivalAndDepartureBean;
+import org.onebusaway.transit_data.model.ArrivalSummaryBean;
 import org.onebusaway.transit_data.model.ArrivalsAndDeparturesQueryBean;
 import org.onebusaway.transit_data.model.StopBean;
 import org.onebusaway.transit_data.model.TransitDataConstants;
@@ -447,6 +448,88 @@ public class ArrivalsAndDeparturesBeanServiceImplTest {
     assertEquals("default", bean.getStatus());
   }
 
+  @Test
+  public void testArrivalSummaries() {
+
+    long stopTimeFrom = t - minutesBefore * 60 * 1000;
+    long stopTimeTo = t + minutesAfter * 60 * 1000;
+
+    StopTimeInstance sti1 = new StopTimeInstance(bstAB,blockInstanceA.getState());
+    ArrivalAndDepartureInstance in1 = new ArrivalAndDepartureInstance(sti1);
+    in1.setBlockLocation(blockLocationA);
+    in1.setPredictedArrivalTime((long) (in1.getScheduledArrivalTime() + 5 * 60 * 1000));
+    in1.setPredictedDepartureTime((long) (in1.getScheduledDepartureTime()));
+
+    StopTimeInstance sti2 = new StopTimeInstance(bstBB, blockInstanceB.getState());
+    ArrivalAndDepartureInstance in2 = new ArrivalAndDepartureInstance(sti2);
+    in2.setBlockLocation(blockLocationB);
+
+    TargetTime target = new TargetTime(t, t);
+
+    Mockito.when(
+            _arrivalAndDepartureService.getArrivalsAndDeparturesForStopInTimeRange(
+                    stopB, target, stopTimeFrom, stopTimeTo)).thenReturn(
+            Arrays.asList(in1, in2));
+
+    Builder stopTimeNarrative = StopTimeNarrative.builder();
+    stopTimeNarrative.setStopHeadsign("Downtown");
+    Mockito.when(_narrativeService.getStopTimeForEntry(stopTimeAB)).thenReturn(
+        stopTimeNarrative.create());
+
+    stopTimeNarrative = StopTimeNarrative.builder();
+    stopTimeNarrative.setRouteShortName("XX");
+    Mockito.when(_narrativeService.getStopTimeForEntry(stopTimeBB)).thenReturn(
+        stopTimeNarrative.create());
+
+    StopBean stopBBean = new StopBean();
+    stopBBean.setId("1_stopB");
+    Mockito.when(_stopBeanService.getStopForId(stopB.getId(), null)).thenReturn(
+        stopBBean);
+
+    TripBean tripABean = new TripBean();
+    tripABean.setId("1_tripA");
+    Mockito.when(_tripBeanService.getTripForId(aid("tripA"))).thenReturn(
+        tripABean);
+
+    TripBean tripBBean = new TripBean();
+    tripBBean.setId("1_tripB");
+    tripBBean.setTripHeadsign("Uptown");
+    Mockito.when(_tripBeanService.getTripForId(aid("tripB"))).thenReturn(
+        tripBBean);
+
+    ArrivalsAndDeparturesQueryBean query = new ArrivalsAndDeparturesQueryBean();
+    query.setTime(t);
+    query.setMinutesBefore(minutesBefore);
+    query.setMinutesAfter(minutesAfter);
+    query.setFrequencyMinutesBefore(minutesBefore);
+    query.setFrequencyMinutesAfter(minutesAfter);
+
+    List<ArrivalSummaryBean> summaries = _service.getArrivalSummariesByStopId(
+        stopB.getId(), query);
+
+    assertEquals(2, summaries.size());
+
+    ArrivalSummaryBean summary = summaries.get(0);
+    assertEquals("1_tripA", summary.getTripId());
+    assertEquals("1_stopB", summary.getStopId());
+    assertEquals("Downtown", summary.getTripHeadsign());
+    assertEquals("1_vehicle", summary.getVehicleId());
+    assertTrue(summary.isPredicted());
+    assertEquals(1, summary.getNumberOfStopsAway());
+    assertEquals(dateAsLong("2010-10-05 16:45"), summary.computeBestArrivalTime());
+
+    summary = summaries.get(1);
+    assertEquals("1_tripB", summary.getTripId());
+    assertEquals("XX", summary.getRouteShortName());
+    assertEquals("Uptown", summary.getTripHeadsign());
+    assertFalse(summary.hasPredictedArrivalTime());
+    assertEquals(dateAsLong("2010-10-05 16:50"), summary.computeBestArrivalTime());
+
+    // the summary path skips trip status and situations entirely
+    Mockito.verifyNoInteractions(_tripDetailsBeanService,
+        _serviceAlertsBeanService);
+  }
+
   /**
    * confirm CANCELED trips flow through API when enabled.
    * BlockA is cancelled, others are active
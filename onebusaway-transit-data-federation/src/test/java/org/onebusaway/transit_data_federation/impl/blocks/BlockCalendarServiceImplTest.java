@@ -16,6 +16,7 @@
 package org.onebusaway.transit_data_federation.impl.blocks;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.block;
 import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.blockTripIndices;
 import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.findBlockConfig;
@@ -29,10 +30,13 @@ import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Mockito;
 import org.onebusaway.gtfs.impl.calendar.CalendarServiceImpl;
 import org.onebusaway.gtfs.model.calendar.CalendarServiceData;
 import org.onebusaway.transit_data_federation.impl.ExtendedCalendarServiceImpl;
@@ -41,6 +45,7 @@ import org.onebusaway.transit_data_federation.impl.transit_graph.BlockConfigurat
 import org.onebusaway.transit_data_federation.impl.transit_graph.BlockEntryImpl;
 import org.onebusaway.transit_data_federation.impl.transit_graph.StopEntryImpl;
 import org.onebusaway.transit_data_federation.impl.transit_graph.TripEntryImpl;
+import org.onebusaway.transit_data_federation.services.blocks.BlockIndexService;
 import org.onebusaway.transit_data_federation.services.blocks.BlockInstance;
 import org.onebusaway.transit_data_federation.services.blocks.BlockLayoverIndex;
 import org.onebusaway.transit_data_federation.services.blocks.BlockTripIndex;
@@ -306,6 +311,75 @@ public class BlockCalendarServiceImplTest {
     assertEquals(serviceDateC.getTime(), instance.getServiceDate());
   }
 
+  @Test
+  public void testGetActiveBlocksInTimeRangeFromTimeline() {
+
+    Date serviceDateA = UnitTestingSupport.date("2010-09-07 00:00");
+    Date serviceDateB = UnitTestingSupport.date("2010-09-08 00:00");
+
+    UnitTestingSupport.addDates(_calendarData, "sidA", serviceDateA,
+        serviceDateB);
+    UnitTestingSupport.addDates(_calendarData, "sidB", serviceDateB);
+
+    ServiceIdActivation ids_A = serviceIds(lsids("sidA"), lsids());
+    ServiceIdActivation ids_B = serviceIds(lsids("sidB"), lsids());
+
+    StopEntryImpl stopA = stop("stopA", 0.0, 0.0);
+    StopEntryImpl stopB = stop("stopB", 0.0, 0.0);
+
+    BlockEntryImpl blockA = block("blockA");
+    TripEntryImpl tripA = trip("tripA", "sidA");
+    TripEntryImpl tripB = trip("tripB", "sidA");
+
+    stopTime(0, stopA, tripA, time(9, 00), time(9, 00), 0);
+    stopTime(1, stopB, tripA, time(9, 30), time(9, 30), 100);
+    // runs past midnight
+    stopTime(2, stopB, tripB, time(23, 40), time(23, 40), 200);
+    stopTime(3, stopA, tripB, time(24, 25, 30), time(24, 25, 30), 300);
+
+    linkBlockTrips(ids_A, blockA, tripA, tripB);
+
+    BlockEntryImpl blockB = block("blockB");
+    TripEntryImpl tripC = trip("tripC", "sidB");
+
+    stopTime(4, stopA, tripC, time(5, 00), time(5, 00), 0);
+    stopTime(5, stopB, tripC, time(18, 00), time(18, 00), 0);
+
+    linkBlockTrips(ids_B, blockB, tripC);
+
+    List<BlockTripIndex> blocks = blockTripIndices(blockA, blockB);
+    List<BlockLayoverIndex> layoverIndices = Collections.emptyList();
+    List<FrequencyBlockTripIndex> frequencyIndices = Collections.emptyList();
+
+    BlockIndexService blockIndexService = Mockito.mock(BlockIndexService.class);
+    Mockito.when(blockIndexService.getBlockTripIndices()).thenReturn(blocks);
+    Mockito.when(blockIndexService.getBlockLayoverIndices()).thenReturn(
+        layoverIndices);
+    Mockito.when(blockIndexService.getFrequencyBlockTripIndices()).thenReturn(
+        frequencyIndices);
+    _service.setBlockIndexService(blockIndexService);
+
+    long from = timeFromString("2010-09-06 20:00");
+    long to = timeFromString("2010-09-09 04:00");
+    long[] durations = {0, 1000, 20 * 60 * 1000, 6 * 60 * 60 * 1000};
+    int nonEmpty = 0;
+
+    for (long t = from; t < to; t += 7 * 60 * 1000 + 333) {
+      for (long duration : durations) {
+        Set<BlockInstance> expected = new HashSet<BlockInstance>(
+            _service.getActiveBlocksInTimeRange(blocks, layoverIndices,
+                frequencyIndices, t, t + duration));
+        Set<BlockInstance> actual = new HashSet<BlockInstance>(
+            _service.getActiveBlocksInTimeRange(t, t + duration));
+        assertEquals("t=" + t + " duration=" + duration, expected, actual);
+        if (!expected.isEmpty())
+          nonEmpty++;
+      }
+    }
+
+    assertTrue(nonEmpty > 0);
+  }
+
   private static void linkBlockTrips(ServiceIdActivation serviceIds,
       BlockEntryImpl block, TripEntryImpl... trips) {
 
@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.impl.bundle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.onebusaway.container.refresh.RefreshService;
+
+public class ParallelBundleLoaderTest {
+
+  @Test
+  public void testSequential() throws Exception {
+    ParallelBundleLoader loader = new ParallelBundleLoader();
+    loader.addResource("a");
+    loader.addResource("b");
+    loader.addResource("c", "a");
+
+    RecordingRefreshService service = new RecordingRefreshService();
+    loader.refresh(service);
+
+    assertEquals(Arrays.asList("a", "b", "c"), service.refreshed);
+    assertEquals(3, loader.getLastLoads().size());
+    assertEquals("a", loader.getLastLoads().get(0).getResource());
+  }
+
+  @Test
+  public void testParallel() throws Exception {
+    ParallelBundleLoader loader = new ParallelBundleLoader();
+    loader.setThreadCount(4);
+    loader.addResource("a");
+    loader.addResource("b");
+    loader.addResource("c", "a", "b");
+
+    // a and b each wait for the other to start, so they must run concurrently
+    final CountDownLatch started = new CountDownLatch(2);
+    RecordingRefreshService service = new RecordingRefreshService() {
+      @Override
+      public void refresh(String name) {
+        if (!name.equals("c")) {
+          started.countDown();
+          try {
+            if (!started.await(10, TimeUnit.SECONDS))
+              throw new IllegalStateException("not run concurrently");
+          } catch (InterruptedException ex) {
+            throw new IllegalStateException(ex);
+          }
+        }
+        super.refresh(name);
+      }
+    };
+    loader.refresh(service);
+
+    assertEquals(3, service.refreshed.size());
+    assertEquals("c", service.refreshed.get(2));
+    assertEquals(3, loader.getLastLoads().size());
+  }
+
+  @Test
+  public void testFailureSkipsDependents() throws Exception {
+    ParallelBundleLoader loader = new ParallelBundleLoader();
+    loader.setThreadCount(2);
+    loader.addResource("a");
+    loader.addResource("b", "a");
+
+    RecordingRefreshService service = new RecordingRefreshService() {
+      @Override
+      public void refresh(String name) {
+        if (name.equals("a"))
+          throw new IllegalStateException("bad bundle");
+        super.refresh(name);
+      }
+    };
+    try {
+      loader.refresh(service);
+      fail();
+    } catch (IllegalStateException ex) {
+      assertEquals("bad bundle", ex.getMessage());
+    }
+    assertTrue(service.refreshed.isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownDependency() {
+    ParallelBundleLoader loader = new ParallelBundleLoader();
+    loader.addResource("a", "b");
+  }
+
+  private static class RecordingRefreshService implements RefreshService {
+
+    protected final List<String> refreshed = Collections.synchronizedList(new ArrayList<String>());
+
+    @Override
+    public void refresh(String name) {
+      refreshed.add(name);
+    }
+  }
+}
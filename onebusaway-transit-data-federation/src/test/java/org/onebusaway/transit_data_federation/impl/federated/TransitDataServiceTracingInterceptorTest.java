@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.impl.federated;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.Signature;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.onebusaway.util.tracing.RequestTrace;
+import org.onebusaway.util.tracing.RequestTraceSpan;
+import org.onebusaway.util.tracing.RequestTracer;
+import org.onebusaway.util.tracing.SlowRequestTraceRecorder;
+
+public class TransitDataServiceTracingInterceptorTest {
+
+  private TransitDataServiceTracingInterceptor _interceptor;
+
+  private SlowRequestTraceRecorder _recorder;
+
+  private ProceedingJoinPoint _pjp;
+
+  @Before
+  public void setup() throws Throwable {
+    _recorder = new SlowRequestTraceRecorder();
+    _recorder.setThresholdMillis(0);
+
+    _interceptor = new TransitDataServiceTracingInterceptor();
+    _interceptor.setSlowRequestTraceRecorder(_recorder);
+
+    Signature signature = mock(Signature.class);
+    when(signature.getName()).thenReturn("getStop");
+    _pjp = mock(ProceedingJoinPoint.class);
+    when(_pjp.getSignature()).thenReturn(signature);
+    when(_pjp.proceed()).thenReturn("stop");
+  }
+
+  @After
+  public void after() {
+    RequestTracer.end();
+  }
+
+  @Test
+  public void testSpanInCallersTrace() throws Throwable {
+    RequestTracer.begin("request");
+
+    assertEquals("stop", _interceptor.trace(_pjp));
+
+    RequestTrace trace = RequestTracer.end();
+    List<RequestTraceSpan> spans = trace.getSpans();
+    assertEquals(1, spans.size());
+    assertEquals("federation.getStop", spans.get(0).getName());
+    assertTrue(_recorder.getSlowTraces().isEmpty());
+  }
+
+  @Test
+  public void testOwnTraceWithoutCaller() throws Throwable {
+    when(_pjp.proceed()).thenAnswer(new Answer<Object>() {
+      @Override
+      public Object answer(InvocationOnMock invocation) {
+        assertTrue(RequestTracer.isActive());
+        return "stop";
+      }
+    });
+
+    assertEquals("stop", _interceptor.trace(_pjp));
+
+    assertFalse(RequestTracer.isActive());
+    List<RequestTrace> traces = _recorder.getSlowTraces();
+    assertEquals(1, traces.size());
+    assertEquals("TransitDataService.getStop", traces.get(0).getName());
+  }
+
+  @Test
+  public void testOwnTraceEndsOnException() throws Throwable {
+    when(_pjp.proceed()).thenThrow(new IllegalStateException("boom"));
+
+    try {
+      _interceptor.trace(_pjp);
+      fail("expected IllegalStateException");
+    } catch (IllegalStateException ex) {
+    }
+
+    assertFalse(RequestTracer.isActive());
+    assertEquals(1, _recorder.getSlowTraces().size());
+  }
+
+  @Test
+  public void testNoRecorder() throws Throwable {
+    _interceptor.setSlowRequestTraceRecorder(null);
+
+    assertEquals("stop", _interceptor.trace(_pjp));
+
+    assertFalse(RequestTracer.isActive());
+    assertTrue(_recorder.getSlowTraces().isEmpty());
+  }
+}
@@ -25,9 +25,14 @@ import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.
 import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.stopTime;
 import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.trip;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.onebusaway.geospatial.model.CoordinatePoint;
 import org.onebusaway.transit_data_federation.impl.transit_graph.BlockEntryImpl;
 import org.onebusaway.transit_data_federation.impl.transit_graph.StopEntryImpl;
@@ -40,6 +45,7 @@ import org.onebusaway.transit_data_federation.services.blocks.ScheduledBlockLoca
 import org.onebusaway.transit_data_federation.services.realtime.BlockLocation;
 import org.onebusaway.transit_data_federation.services.transit_graph.BlockConfigurationEntry;
 import org.onebusaway.transit_data_federation.services.transit_graph.TransitGraphDao;
+import org.onebusaway.util.SystemTime;
 
 public class BlockLocationServiceImplTest {
 
@@ -148,6 +154,115 @@ public class BlockLocationServiceImplTest {
     assertEquals("fewSeatsAvailable", blockConfig.getStopTimes().get(0).getStopTime().getHistoricalOccupancy().toString());
   }
 
+  @Test
+  public void testPersistenceQueueFullDropsAndCounts() {
+
+    List<Long> saved = mockBlockLocationRecordDao();
+    _service.setPersistBlockLocationRecords(true);
+    _service.setPersistenceQueueCapacity(2);
+    _service.setPersistenceFlushInterval(60 * 60 * 1000);
+    _service.start();
+
+    _service.addPredictionToPersistenceQueue(records(3));
+    assertEquals(2, _service.getPersistenceQueueSize());
+    assertEquals(1, _service.getDroppedRecordCount());
+
+    _service.addPredictionToPersistenceQueue(records(1));
+    assertEquals(2, _service.getPersistenceQueueSize());
+    assertEquals(2, _service.getDroppedRecordCount());
+
+    _service.stop();
+    assertEquals(2, saved.size());
+  }
+
+  @Test
+  public void testPersistenceQueueDrainedOnShutdown() {
+
+    List<Long> saved = mockBlockLocationRecordDao();
+    _service.setPersistBlockLocationRecords(true);
+    _service.setPersistenceFlushInterval(60 * 60 * 1000);
+    _service.start();
+
+    _service.addPredictionToPersistenceQueue(records(25));
+    assertEquals(0, saved.size());
+
+    _service.stop();
+    assertEquals(25, saved.size());
+    assertEquals(0, _service.getPersistenceQueueSize());
+    assertEquals(0, _service.getDroppedRecordCount());
+  }
+
+  @Test
+  public void testPersistenceQueueNotDrainedOnShutdownWhenDisabled() {
+
+    List<Long> saved = mockBlockLocationRecordDao();
+    _service.setPersistBlockLocationRecords(true);
+    _service.setPersistenceFlushInterval(60 * 60 * 1000);
+    _service.setPersistenceFlushOnShutdown(false);
+    _service.start();
+
+    _service.addPredictionToPersistenceQueue(records(5));
+    _service.stop();
+    assertEquals(0, saved.size());
+  }
+
+  @Test
+  public void testPersistenceLagMeasuredFromEnqueueTime() {
+
+    mockBlockLocationRecordDao();
+    _service.setPersistBlockLocationRecords(true);
+    _service.setPersistenceFlushInterval(60 * 60 * 1000);
+    _service.start();
+
+    long adjustment = SystemTime.getAdjustment();
+    try {
+      // the records themselves are a day old, which must not count as lag
+      _service.addPredictionToPersistenceQueue(records(3));
+      SystemTime.setAdjustment(adjustment + 60 * 1000);
+      _service.stop();
+    } finally {
+      SystemTime.setAdjustment(adjustment);
+    }
+
+    long lag = _service.getLastInsertLag();
+    assertTrue("lag=" + lag, lag >= 60 * 1000);
+    assertTrue("lag=" + lag, lag < 70 * 1000);
+  }
+
+  /**
+   * @return the times of the records saved to the mock dao, copied as they are
+   *         saved since the service reuses its batch list
+   */
+  private List<Long> mockBlockLocationRecordDao() {
+    final List<Long> saved = new ArrayList<Long>();
+    BlockLocationRecordDao dao = Mockito.mock(BlockLocationRecordDao.class);
+    Mockito.doAnswer(new Answer<Void>() {
+      @SuppressWarnings("unchecked")
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        List<BlockLocationRecord> records = (List<BlockLocationRecord>) invocation.getArguments()[0];
+        synchronized (saved) {
+          for (BlockLocationRecord record : records)
+            saved.add(record.getTime());
+        }
+        return null;
+      }
+    }).when(dao).saveBlockLocationRecords(Mockito.anyList());
+    _service.setBlockLocationRecordDao(dao);
+    return saved;
+  }
+
+  private List<BlockLocationRecord> records(int count) {
+    long time = System.currentTimeMillis() - 24 * 60 * 60 * 1000;
+    List<BlockLocationRecord> records = new ArrayList<BlockLocationRecord>();
+    for (int i = 0; i < count; i++) {
+      BlockLocationRecord.Builder builder = BlockLocationRecord.builder();
+      builder.setTime(time + i);
+      records.add(builder.create());
+    }
+    return records;
+  }
+
   private long t(long serviceDate, int hours, double minutes) {
     return (long) (serviceDate + (((hours * 60) + minutes) * 60) * 1000);
   }
@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2024 Cambridge Systematics Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.impl.realtime;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DynamicExpiryIndexTest {
+
+  @Test
+  public void testRemoveExpired() {
+    DynamicExpiryIndex<String> index = new DynamicExpiryIndex<>();
+    index.put("early", 100, 200);
+    index.put("current", 150, 500);
+    index.put("late", 400, 600);
+    index.put("removed", 0, 300);
+    index.remove("removed");
+    assertEquals(3, index.size());
+
+    // only "late" has yet to start
+    assertEquals(Collections.singletonList("late"), index.removeExpired(160));
+
+    // replaced bounds take effect
+    index.put("current", 150, 250);
+    List<String> expired = index.removeExpired(300);
+    assertEquals(new HashSet<>(Arrays.asList("early", "current")), new HashSet<>(expired));
+    assertEquals(0, index.size());
+    assertTrue(index.removeExpired(0).isEmpty());
+  }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2024 Cambridge Systematics Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.impl.realtime;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.onebusaway.gtfs.model.calendar.ServiceInterval;
+import org.onebusaway.transit_data_federation.impl.transit_graph.StopEntryImpl;
+import org.onebusaway.transit_data_federation.impl.transit_graph.TripEntryImpl;
+import org.onebusaway.transit_data_federation.services.blocks.BlockStopTimeIndex;
+import org.onebusaway.transit_data_federation.services.transit_graph.BlockConfigurationEntry;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.linkBlockTrips;
+import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.stop;
+import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.stopTime;
+import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.time;
+import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.trip;
+
+public class DynamicStopTimeIndicesTest {
+
+  private StopEntryImpl stopA = stop("stopA", 47.0, -122.0);
+
+  private StopEntryImpl stopB = stop("stopB", 47.1, -122.0);
+
+  private BlockConfigurationEntry blockA;
+
+  private BlockConfigurationEntry blockB;
+
+  private DynamicStopTimeIndices indices;
+
+  @Before
+  public void setup() {
+    TripEntryImpl tripA = trip("tripA", "sA");
+    stopTime(0, stopA, tripA, time(9, 0), 0);
+    stopTime(1, stopB, tripA, time(9, 10), 1000);
+    blockA = linkBlockTrips("blockA", tripA);
+
+    TripEntryImpl tripB = trip("tripB", "sA");
+    stopTime(2, stopA, tripB, time(10, 0), 0);
+    blockB = linkBlockTrips("blockB", tripB);
+
+    indices = new DynamicStopTimeIndices();
+  }
+
+  @Test
+  public void testAddIsVisibleAfterPublish() {
+    BlockStopTimeIndex a0 = index(blockA, 0);
+    BlockStopTimeIndex b0 = index(blockB, 0);
+
+    assertTrue(indices.add(a0, 100, 200));
+    assertTrue(indices.add(b0, 100, 300));
+    assertNull(indices.getIndicesForStop(stopA.getId()));
+
+    indices.publish();
+    assertEquals(Arrays.asList(a0, b0), indices.getIndicesForStop(stopA.getId()));
+    assertNull(indices.getIndicesForStop(stopB.getId()));
+  }
+
+  @Test
+  public void testAddKeepsOneIndexPerTrip() {
+    BlockStopTimeIndex a0 = index(blockA, 0);
+    assertTrue(indices.add(a0, 100, 200));
+    assertFalse(indices.add(index(blockA, 0), 100, 200));
+    indices.publish();
+    List<BlockStopTimeIndex> published = indices.getIndicesForStop(stopA.getId());
+    assertEquals(1, published.size());
+    assertSame(a0, published.get(0));
+  }
+
+  @Test
+  public void testReplace() {
+    BlockStopTimeIndex a0 = index(blockA, 0);
+    assertTrue(indices.replace(a0, 100, 200));
+    indices.publish();
+
+    // an equal index is unchanged
+    assertFalse(indices.replace(index(blockA, 0), 100, 200));
+
+    // an index for another block at the same stop for the same trip replaces it
+    BlockConfigurationEntry blockA2 = linkBlockTrips("blockA2",
+        blockA.getTrips().get(0).getTrip());
+    BlockStopTimeIndex replacement = index(blockA2, 0);
+    assertTrue(indices.replace(replacement, 100, 200));
+
+    // readers keep the previous snapshot until the next publish
+    List<BlockStopTimeIndex> before = indices.getIndicesForStop(stopA.getId());
+    assertEquals(Collections.singletonList(a0), before);
+
+    indices.publish();
+    assertEquals(1, indices.getIndicesForStop(stopA.getId()).size());
+    assertSame(replacement, indices.getIndicesForStop(stopA.getId()).get(0));
+    assertSame(a0, before.get(0));
+  }
+
+  @Test
+  public void testRemoveExpired() {
+    BlockStopTimeIndex a0 = index(blockA, 0);
+    BlockStopTimeIndex a1 = index(blockA, 1);
+    BlockStopTimeIndex b0 = index(blockB, 0);
+    indices.add(a0, 100, 200);
+    indices.add(a1, 100, 200);
+    indices.add(b0, 100, 400);
+    indices.publish();
+
+    assertEquals(2, indices.removeExpired(300));
+    assertEquals(Collections.singletonList(b0),
+        indices.getIndicesForStop(stopA.getId()));
+    assertNull(indices.getIndicesForStop(stopB.getId()));
+
+    assertEquals(1, indices.removeExpired(500));
+    assertNull(indices.getIndicesForStop(stopA.getId()));
+    assertEquals(0, indices.removeExpired(500));
+  }
+
+  @Test
+  public void testRemoveExpiredPublishesPendingChanges() {
+    BlockStopTimeIndex a1 = index(blockA, 1);
+    indices.add(a1, 100, 200);
+    assertEquals(0, indices.removeExpired(150));
+    assertEquals(Collections.singletonList(a1),
+        indices.getIndicesForStop(stopB.getId()));
+  }
+
+  @Test
+  public void testPublishedListIsUnmodifiable() {
+    indices.add(index(blockA, 0), 100, 200);
+    indices.publish();
+    try {
+      indices.getIndicesForStop(stopA.getId()).clear();
+    } catch (UnsupportedOperationException ex) {
+      return;
+    }
+    throw new AssertionError("expected an unmodifiable list");
+  }
+
+  private static BlockStopTimeIndex index(BlockConfigurationEntry blockConfig,
+      int blockSequence) {
+    int time = blockConfig.getStopTimes().get(blockSequence).getStopTime().getArrivalTime();
+    return new BlockStopTimeIndex(Collections.singletonList(blockConfig),
+        new int[] {blockSequence}, new ServiceInterval(time, time, time, time));
+  }
+}
@@ -0,0 +1,251 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.impl.realtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.block;
+import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.blockConfiguration;
+import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.lsids;
+import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.serviceIds;
+import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.stop;
+import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.stopTime;
+import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.time;
+import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.trip;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.realtime.api.TimepointPredictionRecord;
+import org.onebusaway.realtime.api.VehicleLocationRecord;
+import org.onebusaway.transit_data.model.realtime.RealtimeDeltaBean;
+import org.onebusaway.transit_data.model.realtime.RealtimeDeltasBean;
+import org.onebusaway.transit_data_federation.impl.transit_graph.StopEntryImpl;
+import org.onebusaway.transit_data_federation.impl.transit_graph.TripEntryImpl;
+import org.onebusaway.transit_data_federation.services.blocks.ScheduledBlockLocation;
+import org.onebusaway.transit_data_federation.services.transit_graph.BlockConfigurationEntry;
+
+public class RealtimeDeltaServiceImplTest {
+
+  @Test
+  public void testCursor() {
+    RealtimeDeltaServiceImpl service = new RealtimeDeltaServiceImpl();
+
+    RealtimeDeltasBean head = service.getDeltas(-1, 100);
+    assertEquals(0, head.getLastSequence());
+    assertTrue(head.getDeltas().isEmpty());
+
+    service.handleVehicleLocationRecord(record("v1", 1000, 47.0, 100));
+    service.handleVehicleLocationRecord(record("v2", 1000, 48.0, 200));
+
+    RealtimeDeltasBean result = service.getDeltas(head.getLastSequence(), 100);
+    assertFalse(result.isReset());
+    assertEquals(2, result.getLastSequence());
+    assertEquals(2, result.getDeltas().size());
+    assertEquals("1_v1", result.getDeltas().get(0).getVehicleId());
+    assertEquals(47.0, result.getDeltas().get(0).getLat(), 0.0);
+
+    // caught up
+    result = service.getDeltas(result.getLastSequence(), 100);
+    assertTrue(result.getDeltas().isEmpty());
+    assertEquals(2, result.getLastSequence());
+
+    // a cursor from the future, e.g. after a restart, forces a reset
+    result = service.getDeltas(10, 100);
+    assertTrue(result.isReset());
+    assertEquals(2, result.getLastSequence());
+  }
+
+  @Test
+  public void testCoalescingAndReset() {
+    RealtimeDeltaServiceImpl service = new RealtimeDeltaServiceImpl();
+    service.setJournalCapacity(3);
+
+    service.handleVehicleLocationRecord(record("v1", 1000, 47.0, 100));
+    service.handleVehicleLocationRecord(record("v1", 2000, 47.1, 100));
+    service.handleVehicleLocationRecord(record("v1", 3000, 47.2, 100));
+
+    RealtimeDeltasBean result = service.getDeltas(0, 100);
+    assertEquals(1, result.getDeltas().size());
+    assertEquals(3000, result.getDeltas().get(0).getTime());
+    assertEquals(3, result.getLastSequence());
+
+    service.handleVehicleLocationRecord(record("v1", 4000, 47.3, 100));
+
+    // sequence 1 has been overwritten
+    result = service.getDeltas(0, 100);
+    assertTrue(result.isReset());
+    assertEquals(4, result.getLastSequence());
+
+    result = service.getDeltas(1, 100);
+    assertFalse(result.isReset());
+    assertEquals(4000, result.getDeltas().get(0).getTime());
+  }
+
+  @Test
+  public void testOnlyChangedPredictions() {
+    RealtimeDeltaServiceImpl service = new RealtimeDeltaServiceImpl();
+
+    service.handleVehicleLocationRecord(record("v1", 1000, 47.0, 100,
+        prediction("s1", 1, 10000), prediction("s2", 2, 20000)));
+    service.handleVehicleLocationRecord(record("v1", 2000, 47.1, 100,
+        prediction("s1", 1, 10000), prediction("s2", 2, 21000)));
+
+    RealtimeDeltasBean result = service.getDeltas(3, 100);
+    List<RealtimeDeltaBean> deltas = result.getDeltas();
+    assertEquals(2, deltas.size());
+    assertEquals(RealtimeDeltaBean.TYPE_VEHICLE, deltas.get(0).getType());
+    assertEquals(RealtimeDeltaBean.TYPE_STOP, deltas.get(1).getType());
+    assertEquals("1_s2", deltas.get(1).getStopId());
+    assertEquals(21000, deltas.get(1).getPredictedArrivalTime());
+  }
+
+  @Test
+  public void testPredictionsFromScheduleDeviation() {
+    RealtimeDeltaServiceImpl service = new RealtimeDeltaServiceImpl();
+
+    StopEntryImpl stopA = stop("a", 47.0, -122.0);
+    StopEntryImpl stopB = stop("b", 47.1, -122.0);
+    StopEntryImpl stopC = stop("c", 47.2, -122.0);
+    TripEntryImpl trip = trip("t1");
+    stopTime(0, stopA, trip, time(8, 0), time(8, 0), 0).setGtfsSequence(1);
+    stopTime(1, stopB, trip, time(8, 10), time(8, 11), 100).setGtfsSequence(2);
+    stopTime(2, stopC, trip, time(8, 20), time(8, 20), 200).setGtfsSequence(3);
+    BlockConfigurationEntry blockConfig = blockConfiguration(block("b1"),
+        serviceIds(lsids("sA"), lsids()), trip);
+
+    ScheduledBlockLocation location = new ScheduledBlockLocation();
+    location.setActiveTrip(blockConfig.getTrips().get(0));
+    location.setNextStop(blockConfig.getStopTimes().get(1));
+
+    VehicleLocationRecord record = record("v1", 1000, 47.0, 100);
+    record.setScheduleDeviation(120);
+    service.handleVehicleLocationRecord(record, location);
+
+    List<RealtimeDeltaBean> deltas = service.getDeltas(0, 100).getDeltas();
+    assertEquals(3, deltas.size());
+    assertEquals(RealtimeDeltaBean.TYPE_VEHICLE, deltas.get(0).getType());
+    RealtimeDeltaBean delta = deltas.get(1);
+    assertEquals(RealtimeDeltaBean.TYPE_STOP, delta.getType());
+    assertEquals("1_b", delta.getStopId());
+    assertEquals(2, delta.getStopSequence());
+    assertEquals((time(8, 10) + 120) * 1000L, delta.getPredictedArrivalTime());
+    assertEquals((time(8, 11) + 120) * 1000L,
+        delta.getPredictedDepartureTime());
+    assertEquals("1_c", deltas.get(2).getStopId());
+
+    // an unchanged deviation publishes only the vehicle
+    record = record("v1", 2000, 47.1, 100);
+    record.setScheduleDeviation(120);
+    service.handleVehicleLocationRecord(record, location);
+    deltas = service.getDeltas(3, 100).getDeltas();
+    assertEquals(1, deltas.size());
+    assertEquals(RealtimeDeltaBean.TYPE_VEHICLE, deltas.get(0).getType());
+
+    // timepoint predictions take precedence over the deviation
+    record = record("v1", 3000, 47.1, 100, prediction("c", 3, 50000));
+    record.setScheduleDeviation(180);
+    service.handleVehicleLocationRecord(record, location);
+    deltas = service.getDeltas(4, 100).getDeltas();
+    assertEquals(2, deltas.size());
+    assertEquals(50000, deltas.get(1).getPredictedArrivalTime());
+  }
+
+  @Test
+  public void testAgencyFilter() {
+    RealtimeDeltaServiceImpl service = new RealtimeDeltaServiceImpl();
+
+    service.handleVehicleLocationRecord(record("v1", 1000, 47.0, 100));
+    VehicleLocationRecord other = record("v2", 1000, 48.0, 200);
+    other.setVehicleId(new AgencyAndId("2", "v2"));
+    service.handleVehicleLocationRecord(other);
+    service.handleVehicleLocationRecord(record("v3", 1000, 49.0, 300));
+
+    RealtimeDeltasBean result = service.getDeltas("1", 0, 100);
+    assertEquals(3, result.getLastSequence());
+    assertEquals(2, result.getDeltas().size());
+    assertEquals("1_v1", result.getDeltas().get(0).getVehicleId());
+    assertEquals("1_v3", result.getDeltas().get(1).getVehicleId());
+
+    // only the agency's deltas count towards the limit
+    result = service.getDeltas("2", 0, 1);
+    assertEquals(2, result.getLastSequence());
+    assertEquals(1, result.getDeltas().size());
+    assertEquals("2_v2", result.getDeltas().get(0).getVehicleId());
+
+    result = service.getDeltas("1", 0, 1);
+    assertEquals(1, result.getLastSequence());
+    assertEquals("1_v1", result.getDeltas().get(0).getVehicleId());
+  }
+
+  @Test
+  public void testVehicleEvictedWhenOutsideJournal() {
+    RealtimeDeltaServiceImpl service = new RealtimeDeltaServiceImpl();
+    service.setJournalCapacity(4);
+
+    // sequences 1 and 2
+    service.handleVehicleLocationRecord(record("v1", 1000, 47.0, 100,
+        prediction("s1", 1, 10000)));
+
+    // sequences 3 and 4: v1's prediction is still in the journal
+    service.handleVehicleLocationRecord(record("v2", 1000, 48.0, 100));
+    service.handleVehicleLocationRecord(record("v2", 2000, 48.1, 100));
+
+    // sequence 5: unchanged, so only the vehicle is published
+    service.handleVehicleLocationRecord(record("v1", 2000, 47.1, 100,
+        prediction("s1", 1, 10000)));
+    assertEquals(1, service.getDeltas(4, 100).getDeltas().size());
+
+    // sequences 6 to 9 push v1's last delta out of the journal
+    for (int i = 0; i < 4; i++)
+      service.handleVehicleLocationRecord(record("v2", 3000 + i, 48.2, 100));
+
+    // v1 was forgotten, so the same prediction is published again
+    service.handleVehicleLocationRecord(record("v1", 3000, 47.2, 100,
+        prediction("s1", 1, 10000)));
+    List<RealtimeDeltaBean> deltas = service.getDeltas(9, 100).getDeltas();
+    assertEquals(2, deltas.size());
+    assertEquals(RealtimeDeltaBean.TYPE_STOP, deltas.get(1).getType());
+    assertEquals("1_s1", deltas.get(1).getStopId());
+  }
+
+  private VehicleLocationRecord record(String vehicleId, long time,
+      double lat, double lon, TimepointPredictionRecord... predictions) {
+    VehicleLocationRecord record = new VehicleLocationRecord();
+    record.setVehicleId(new AgencyAndId("1", vehicleId));
+    record.setTripId(new AgencyAndId("1", "t1"));
+    record.setServiceDate(0);
+    record.setTimeOfRecord(time);
+    record.setCurrentLocationLat(lat);
+    record.setCurrentLocationLon(lon);
+    if (predictions.length > 0)
+      record.setTimepointPredictions(Arrays.asList(predictions));
+    return record;
+  }
+
+  private TimepointPredictionRecord prediction(String stopId,
+      int stopSequence, long time) {
+    TimepointPredictionRecord tpr = new TimepointPredictionRecord();
+    tpr.setTimepointId(new AgencyAndId("1", stopId));
+    tpr.setStopSequence(stopSequence);
+    tpr.setTimepointPredictedArrivalTime(time);
+    tpr.setTimepointPredictedDepartureTime(time);
+    return tpr;
+  }
+}
@@ -17,6 +17,7 @@ package org.onebusaway.transit_data_federation.impl.realtime;
 
 import org.junit.Test;
 import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.realtime.api.OccupancyStatus;
 import org.onebusaway.realtime.api.VehicleOccupancyRecord;
 import org.onebusaway.transit_data_federation.impl.realtime.apc.VehicleOccupancyRecordCacheImpl;
 
@@ -99,4 +100,42 @@ public class VehicleOccupancyRecordCacheImplTest {
         assertNull(cache.getLastRecordForVehicleId(vehicle));
     }
 
+    @Test
+    public void testSmoothing() {
+        VehicleOccupancyRecordCacheImpl cache = new VehicleOccupancyRecordCacheImpl();
+        AgencyAndId vehicle = new AgencyAndId("ACTA", "1111");
+
+        cache.addRecord(record(vehicle, "a1", "0", OccupancyStatus.MANY_SEATS_AVAILABLE, 10));
+        cache.addRecord(record(vehicle, "a1", "0", OccupancyStatus.STANDING_ROOM_ONLY, 30));
+        // other directions are not smoothed in
+        cache.addRecord(record(vehicle, "a1", "1", OccupancyStatus.FULL, 60));
+
+        VehicleOccupancyRecord latest = cache.getSmoothedRecordForVehicleIdAndRoute(vehicle, "a1", "0", 0);
+        assertEquals(OccupancyStatus.STANDING_ROOM_ONLY, latest.getOccupancyStatus());
+        assertEquals(Integer.valueOf(30), latest.getRawCount());
+
+        VehicleOccupancyRecord smoothed = cache.getSmoothedRecordForVehicleIdAndRoute(vehicle, "a1", "0", 60);
+        assertEquals(OccupancyStatus.FEW_SEATS_AVAILABLE, smoothed.getOccupancyStatus());
+        assertEquals(Integer.valueOf(20), smoothed.getRawCount());
+        // the cached record is not modified
+        assertEquals(OccupancyStatus.STANDING_ROOM_ONLY,
+                cache.getRecordForVehicleIdAndRoute(vehicle, "a1", "0").getOccupancyStatus());
+
+        assertTrue(cache.clearRecord(record(vehicle, "a1", "0", null, 0)));
+        assertNull(cache.getSmoothedRecordForVehicleIdAndRoute(vehicle, "a1", "0", 60));
+        assertEquals(OccupancyStatus.FULL,
+                cache.getSmoothedRecordForVehicleIdAndRoute(vehicle, "a1", "1", 60).getOccupancyStatus());
+    }
+
+    private VehicleOccupancyRecord record(AgencyAndId vehicleId, String routeId, String directionId,
+                                          OccupancyStatus status, int rawCount) {
+        VehicleOccupancyRecord record = new VehicleOccupancyRecord();
+        record.setVehicleId(vehicleId);
+        record.setRouteId(routeId);
+        record.setDirectionId(directionId);
+        record.setOccupancyStatus(status);
+        record.setRawCount(rawCount);
+        return record;
+    }
+
 }
@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.impl.realtime.history;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.AgencyAndIdInstance;
+
+public class BlockLocationHistoryColumnsTest {
+
+  private static final AgencyAndId BLOCK_ID = new AgencyAndId("1", "blockA");
+
+  private static final AgencyAndId TRIP_ID = new AgencyAndId("1", "tripA");
+
+  @Test
+  public void testRoundTrip() throws IOException {
+
+    Map<AgencyAndIdInstance, List<BlockLocationArchiveRecord>> input = new LinkedHashMap<AgencyAndIdInstance, List<BlockLocationArchiveRecord>>();
+
+    List<BlockLocationArchiveRecord> dayA = new ArrayList<BlockLocationArchiveRecord>();
+    dayA.add(record(1000L, 2000L, 200.0, 60.0));
+    dayA.add(record(1000L, 1000L, 100.0, null));
+    input.put(new AgencyAndIdInstance(TRIP_ID, 1000L), dayA);
+
+    List<BlockLocationArchiveRecord> dayB = new ArrayList<BlockLocationArchiveRecord>();
+    dayB.add(record(5000L, 6000L, 50.0, -30.0));
+    input.put(new AgencyAndIdInstance(TRIP_ID, 5000L), dayB);
+
+    File file = File.createTempFile("BlockLocationHistoryColumnsTest-", ".bin");
+    file.deleteOnExit();
+
+    BlockLocationHistoryColumns.write(file, BLOCK_ID, 7000L, input);
+    BlockLocationHistoryColumns columns = BlockLocationHistoryColumns.read(file);
+
+    assertEquals(7000L, columns.getCutoffTime());
+    assertEquals(2, columns.getInstanceCount());
+    assertEquals(3, columns.getRecordCount());
+    assertEquals(0, columns.getFromIndex(0));
+    assertEquals(2, columns.getToIndex(0));
+    assertEquals(3, columns.getToIndex(1));
+
+    Map<AgencyAndIdInstance, List<BlockLocationArchiveRecord>> output = columns.getRecordsByInstance(TRIP_ID);
+    assertEquals(2, output.size());
+
+    List<BlockLocationArchiveRecord> records = output.get(new AgencyAndIdInstance(
+        TRIP_ID, 1000L));
+    assertEquals(2, records.size());
+
+    // sorted by distance along block
+    BlockLocationArchiveRecord r0 = records.get(0);
+    assertEquals(BLOCK_ID, r0.getBlockId());
+    assertEquals(TRIP_ID, r0.getTripId());
+    assertEquals(1000L, r0.getTime());
+    assertEquals(100.0, r0.getDistanceAlongBlock(), 0.0);
+    assertNull(r0.getScheduleDeviation());
+    assertNull(r0.getLocationLat());
+
+    BlockLocationArchiveRecord r1 = records.get(1);
+    assertEquals(2000L, r1.getTime());
+    assertEquals(60.0, r1.getScheduleDeviation(), 0.0);
+
+    records = output.get(new AgencyAndIdInstance(TRIP_ID, 5000L));
+    assertEquals(1, records.size());
+    assertEquals(-30.0, records.get(0).getScheduleDeviation(), 0.0);
+  }
+
+  private BlockLocationArchiveRecord record(long serviceDate, long time,
+      double distanceAlongBlock, Double scheduleDeviation) {
+    BlockLocationArchiveRecord record = new BlockLocationArchiveRecord();
+    record.setBlockId(BLOCK_ID);
+    record.setTripId(TRIP_ID);
+    record.setServiceDate(serviceDate);
+    record.setTime(time);
+    record.setDistanceAlongBlock(distanceAlongBlock);
+    record.setScheduleDeviation(scheduleDeviation);
+    return record;
+  }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.impl.realtime.history;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.onebusaway.gtfs.model.AgencyAndId;
+
+public class ScheduleDeviationDistributionTest {
+
+  @Test
+  public void testScheduleDeviationsForScheduleTime() {
+
+    ScheduleDeviationDistribution distribution = ScheduleDeviationDistribution.create(history());
+
+    double[] values = distribution.getScheduleDeviationsForScheduleTime(0);
+    assertEquals(3, values.length);
+    assertEquals(10.0, values[0], 0.0);
+    assertEquals(30.0, values[1], 0.0);
+    assertEquals(Double.NaN, values[2], 0.0);
+
+    // interpolated
+    values = distribution.getScheduleDeviationsForScheduleTime(50);
+    assertEquals(15.0, values[0], 0.0);
+    assertEquals(35.0, values[1], 0.0);
+
+    // clamped
+    values = distribution.getScheduleDeviationsForScheduleTime(500);
+    assertEquals(20.0, values[0], 0.0);
+    assertEquals(-10.0, values[2], 0.0);
+  }
+
+  @Test
+  public void testReturnedArraysAreCopies() {
+
+    ScheduleDeviationDistribution distribution = ScheduleDeviationDistribution.create(history());
+
+    distribution.getScheduleDeviationsForScheduleTime(0)[0] = 99.0;
+    distribution.getScheduleDeviationsForScheduleTime(500)[0] = 99.0;
+    distribution.getScheduleTimes()[0] = 99.0;
+
+    assertEquals(10.0, distribution.getScheduleDeviationsForScheduleTime(0)[0], 0.0);
+    assertEquals(20.0, distribution.getScheduleDeviationsForScheduleTime(500)[0], 0.0);
+    assertEquals(0.0, distribution.getScheduleTimes()[0], 0.0);
+  }
+
+  @Test
+  public void testScheduleDeviationsIntoBuffer() {
+
+    ScheduleDeviationDistribution distribution = ScheduleDeviationDistribution.create(history());
+
+    double[] buffer = new double[4];
+    buffer[3] = 99.0;
+
+    assertSame(buffer,
+        distribution.getScheduleDeviationsForScheduleTime(50, buffer));
+    assertEquals(15.0, buffer[0], 0.0);
+    assertEquals(35.0, buffer[1], 0.0);
+    assertEquals(99.0, buffer[3], 0.0);
+
+    distribution.getScheduleDeviationsForScheduleTime(500, buffer);
+    assertEquals(20.0, buffer[0], 0.0);
+    assertEquals(-10.0, buffer[2], 0.0);
+
+    // the shared column is untouched
+    buffer[0] = 99.0;
+    assertEquals(20.0, distribution.getScheduleDeviationsForScheduleTime(500)[0], 0.0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testScheduleDeviationsIntoShortBuffer() {
+    ScheduleDeviationDistribution distribution = ScheduleDeviationDistribution.create(history());
+    distribution.getScheduleDeviationsForScheduleTime(0, new double[2]);
+  }
+
+  @Test
+  public void testIntCDFMapClear() {
+
+    IntCDFMap cdf = new IntCDFMap();
+    cdf.put(1.0, 7);
+    cdf.clear();
+
+    assertTrue(cdf.isEmpty());
+    assertFalse(cdf.canSample());
+
+    cdf.put(2.0, 8);
+    assertEquals(1, cdf.size());
+    assertEquals(8, cdf.sample(0.0));
+    assertEquals(8, cdf.sample(0.99));
+  }
+
+  @Test
+  public void testIntCDFMap() {
+
+    IntCDFMap cdf = new IntCDFMap();
+    cdf.put(1.0, 7);
+    cdf.put(0.0, 8);
+    cdf.put(3.0, 9);
+
+    assertEquals(7, cdf.sample(0.0));
+    assertEquals(7, cdf.sample(0.25));
+    assertEquals(9, cdf.sample(0.26));
+    assertEquals(9, cdf.sample(0.99));
+  }
+
+  private ScheduleDeviationHistory history() {
+    double[] scheduleTimes = {0, 100};
+    double[][] scheduleDeviations = { {10, 20}, {30, 40}, {Double.NaN, -10}};
+    return new ScheduleDeviationHistory(new AgencyAndId("1", "tripA"),
+        scheduleTimes, scheduleDeviations);
+  }
+}
@@ -28,6 +28,7 @@ import org.onebusaway.geospatial.services.UTMLibrary;
 import org.onebusaway.geospatial.services.UTMProjection;
 import org.onebusaway.transit_data_federation.model.ShapePoints;
 import org.onebusaway.transit_data_federation.model.ShapePointsFactory;
+import org.onebusaway.transit_data_federation.model.ShapeSegmentIndex;
 
 public class ShapePointsLibraryTest {
 
@@ -164,6 +165,45 @@ public class ShapePointsLibraryTest {
     assertEquals(6.2, assignment.distanceFromTarget, 0.1);
   }
 
+  @Test
+  public void testSegmentIndexMatchesFullScan() {
+
+    ShapePointsLibrary spl = new ShapePointsLibrary();
+    spl.setLocalMinimumThreshold(25);
+
+    /**
+     * An out-and-back shape, with the return leg 20 meters from the outbound
+     * leg, so that targets have multiple local mins
+     */
+    List<XYPoint> points = new ArrayList<XYPoint>();
+    for (int i = 0; i <= 200; i++)
+      points.add(p(i * 10, Math.sin(i) * 2));
+    for (int i = 200; i >= 0; i--)
+      points.add(p(i * 10, 20 + Math.cos(i) * 2));
+
+    double[] shapePointDistances = shapePointDistances(points);
+    ShapeSegmentIndex index = new ShapeSegmentIndex(points,
+        shapePointDistances);
+
+    for (int t = 0; t < 100; t++) {
+      XYPoint target = p(t * 23 % 2100 - 50, (t * 37 % 140) - 60);
+      int fromIndex = t % 3 == 0 ? t : 0;
+      int toIndex = t % 5 == 0 ? points.size() - t : points.size();
+
+      List<PointAndIndex> expected = spl.computePotentialAssignments(points,
+          shapePointDistances, target, fromIndex, toIndex);
+      List<PointAndIndex> actual = spl.computePotentialAssignments(index,
+          target, fromIndex, toIndex);
+
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertEquals(expected.get(i).index, actual.get(i).index);
+        assertEquals(expected.get(i).distanceAlongShape,
+            actual.get(i).distanceAlongShape, 0.0);
+      }
+    }
+  }
+
   private XYPoint p(double x, double y) {
     return new XYPoint(x, y);
   }
@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.impl.transit_graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.onebusaway.transit_data_federation.impl.shapes.PointAndIndex;
+
+public class DistanceAlongShapeLibraryAssignmentTest {
+
+  @Test
+  public void testMinimizesTotalDistanceFromTarget() {
+
+    PointAndIndex a = point(5, 10);
+    PointAndIndex b = point(1, 100);
+    PointAndIndex c = point(2, 50);
+    PointAndIndex d = point(9, 200);
+
+    // the closest candidate for the first stop leaves only a poor one for the
+    // second
+    List<PointAndIndex> assignment = assign(Arrays.asList(a, b),
+        Arrays.asList(c, d));
+    assertAssignment(assignment, a, c);
+  }
+
+  @Test
+  public void testNoValidAssignment() {
+    assertNull(assign(Arrays.asList(point(1, 100)),
+        Arrays.asList(point(1, 50))));
+  }
+
+  @Test
+  public void testRegionBounds() {
+
+    PointAndIndex a = point(1, 10);
+    PointAndIndex b = point(1, 20);
+    PointAndIndex c = point(1, 5);
+
+    List<List<PointAndIndex>> possibleAssignments = new ArrayList<List<PointAndIndex>>();
+    possibleAssignments.add(Arrays.asList(c));
+    possibleAssignments.add(Arrays.asList(a));
+    possibleAssignments.add(Arrays.asList(b));
+
+    // the stop before the region would be out of order, but isn't considered
+    List<PointAndIndex> assignment = DistanceAlongShapeLibrary.computeBestAssignmentForRegion(
+        possibleAssignments, 1, 3);
+    assertAssignment(assignment, a, b);
+  }
+
+  @Test
+  public void testTiesPreferCandidateOrder() {
+
+    PointAndIndex a = point(1, 10);
+    PointAndIndex b = point(1, 20);
+    PointAndIndex c = point(1, 30);
+
+    assertAssignment(assign(Arrays.asList(a, b), Arrays.asList(c)), a, c);
+    assertAssignment(assign(Arrays.asList(b, a), Arrays.asList(c)), b, c);
+  }
+
+  /**
+   * A tie at the last stop is broken by the order the tied assignments would
+   * be enumerated in, which depends on the predecessors' ranks rather than on
+   * the candidate indices at that stop
+   */
+  @Test
+  public void testTiesPreferEnumerationOrder() {
+
+    PointAndIndex x = point(1, 5);
+    PointAndIndex y = point(1, 0);
+
+    // p is only reachable from y, q from both
+    PointAndIndex p = point(1, 2);
+    PointAndIndex q = point(1, 6);
+
+    PointAndIndex r = point(1, 10);
+
+    List<List<PointAndIndex>> possibleAssignments = new ArrayList<List<PointAndIndex>>();
+    possibleAssignments.add(Arrays.asList(x, y));
+    possibleAssignments.add(Arrays.asList(p, q));
+    possibleAssignments.add(Arrays.asList(r));
+
+    List<PointAndIndex> expected = enumerate(possibleAssignments, 0, 3);
+    assertAssignment(expected, x, q, r);
+
+    List<PointAndIndex> actual = DistanceAlongShapeLibrary.computeBestAssignmentForRegion(
+        possibleAssignments, 0, 3);
+    assertAssignment(actual, x, q, r);
+  }
+
+  /**
+   * Compares against a full enumeration of assignments, the approach the
+   * library used before. Integer-valued distances and repeated candidates
+   * force plenty of ties.
+   */
+  @Test
+  public void testMatchesEnumeration() {
+
+    Random random = new Random(38);
+
+    for (int trial = 0; trial < 5000; trial++) {
+
+      int stopCount = 1 + random.nextInt(6);
+      List<List<PointAndIndex>> possibleAssignments = new ArrayList<List<PointAndIndex>>();
+
+      for (int i = 0; i < stopCount; i++) {
+        int candidateCount = random.nextInt(5);
+        List<PointAndIndex> candidates = new ArrayList<PointAndIndex>();
+        for (int c = 0; c < candidateCount; c++) {
+          if (c > 0 && random.nextInt(4) == 0) {
+            PointAndIndex prev = candidates.get(c - 1);
+            candidates.add(point(prev.distanceFromTarget,
+                prev.distanceAlongShape));
+          } else {
+            candidates.add(point(random.nextInt(5), random.nextInt(10)));
+          }
+        }
+        possibleAssignments.add(candidates);
+      }
+
+      int from = random.nextInt(stopCount);
+      int to = from + 1 + random.nextInt(stopCount - from);
+
+      List<PointAndIndex> expected = enumerate(possibleAssignments, from, to);
+      List<PointAndIndex> actual = DistanceAlongShapeLibrary.computeBestAssignmentForRegion(
+          possibleAssignments, from, to);
+
+      if (expected == null) {
+        assertNull(actual);
+      } else {
+        assertAssignment(actual,
+            expected.toArray(new PointAndIndex[expected.size()]));
+      }
+    }
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private static List<PointAndIndex> assign(List<PointAndIndex> first,
+      List<PointAndIndex> second) {
+    List<List<PointAndIndex>> possibleAssignments = new ArrayList<List<PointAndIndex>>();
+    possibleAssignments.add(first);
+    possibleAssignments.add(second);
+    return DistanceAlongShapeLibrary.computeBestAssignmentForRegion(
+        possibleAssignments, 0, 2);
+  }
+
+  private static void assertAssignment(List<PointAndIndex> assignment,
+      PointAndIndex... expected) {
+    assertEquals(expected.length, assignment.size());
+    for (int i = 0; i < expected.length; i++)
+      assertSame(expected[i], assignment.get(i));
+  }
+
+  private static PointAndIndex point(double distanceFromTarget,
+      double distanceAlongShape) {
+    return new PointAndIndex(null, 0, distanceFromTarget, distanceAlongShape);
+  }
+
+  /**
+   * Reference implementation: recursively enumerates every assignment in
+   * candidate order and keeps the first one with the lowest score
+   */
+  private static List<PointAndIndex> enumerate(
+      List<List<PointAndIndex>> possibleAssignments, int indexFrom, int indexTo) {
+    List<List<PointAndIndex>> best = new ArrayList<List<PointAndIndex>>();
+    double[] bestScore = {Double.POSITIVE_INFINITY};
+    enumerate(possibleAssignments, new ArrayList<PointAndIndex>(), indexFrom,
+        indexFrom, indexTo, best, bestScore);
+    return best.isEmpty() ? null : best.get(0);
+  }
+
+  private static void enumerate(List<List<PointAndIndex>> possibleAssignments,
+      List<PointAndIndex> currentAssignment, int index, int indexFrom,
+      int indexTo, List<List<PointAndIndex>> best, double[] bestScore) {
+
+    if (index == indexTo) {
+      double score = 0;
+      for (PointAndIndex p : currentAssignment)
+        score += p.distanceFromTarget;
+      if (best.isEmpty() || score < bestScore[0]) {
+        best.clear();
+        best.add(new ArrayList<PointAndIndex>(currentAssignment));
+        bestScore[0] = score;
+      }
+      return;
+    }
+
+    double lastDistanceAlongShape = -1;
+    if (index > indexFrom)
+      lastDistanceAlongShape = currentAssignment.get(index - 1 - indexFrom).distanceAlongShape;
+
+    for (PointAndIndex candidate : possibleAssignments.get(index)) {
+      if (candidate.distanceAlongShape < lastDistanceAlongShape)
+        continue;
+      currentAssignment.add(candidate);
+      enumerate(possibleAssignments, currentAssignment, index + 1, indexFrom,
+          indexTo, best, bestScore);
+      currentAssignment.remove(currentAssignment.size() - 1);
+    }
+  }
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.onebusaway.gtfs.model.AgencyAndId;
+
+public class AutocompleteIndexTest {
+
+  @Test
+  public void testPrefixTopK() {
+
+    AutocompleteIndex.Builder builder = new AutocompleteIndex.Builder();
+    builder.add(aid("a"), "Main St", 1.0);
+    builder.add(aid("b"), "Market St", 3.0);
+    builder.add(aid("c"), "Marine Dr", 2.0);
+    builder.add(aid("d"), "Pine St", 10.0);
+    AutocompleteIndex index = builder.create();
+
+    assertEquals(4, index.size());
+
+    SearchResult<AgencyAndId> result = index.search("ma", 2);
+    assertEquals(Arrays.asList(aid("b"), aid("c")), result.getResults());
+
+    result = index.search("ma", 10);
+    assertEquals(Arrays.asList(aid("b"), aid("c"), aid("a")),
+        result.getResults());
+
+    // an exact term match outranks a heavier prefix match
+    result = index.search("main", 10);
+    assertEquals(Arrays.asList(aid("a")), result.getResults());
+
+    result = index.search("st ma", 10);
+    assertEquals(Arrays.asList(aid("b"), aid("a")), result.getResults());
+
+    // only the last token is matched as a prefix
+    assertEquals(0, index.search("ma st", 10).size());
+    assertEquals(0, index.search("", 10).size());
+    assertEquals(0, index.search("ma", 0).size());
+  }
+
+  @Test
+  public void testEqualWeightsPreferEarlierEntries() {
+
+    AutocompleteIndex.Builder builder = new AutocompleteIndex.Builder();
+    builder.add(aid("a"), "Oak", 1.0);
+    builder.add(aid("b"), "Oak", 1.0);
+    builder.add(aid("c"), "Oak", 1.0);
+    AutocompleteIndex index = builder.create();
+
+    SearchResult<AgencyAndId> result = index.search("oak", 2);
+    assertEquals(Arrays.asList(aid("a"), aid("b")), result.getResults());
+  }
+
+  @Test
+  public void testFuzzyMatching() {
+
+    AutocompleteIndex.Builder builder = new AutocompleteIndex.Builder();
+    builder.add(aid("a"), "Main", 1.0);
+    builder.add(aid("b"), "Market", 1.0);
+    builder.add(aid("c"), "Street", 1.0);
+    AutocompleteIndex index = builder.create();
+
+    // substitution, deletion and insertion against a whole term
+    assertEquals(Arrays.asList(aid("a")), index.search("maen", 10).getResults());
+    assertEquals(Arrays.asList(aid("a")),
+        index.search("mainn", 10).getResults());
+    assertEquals(Arrays.asList(aid("b")),
+        index.search("markt", 10).getResults());
+    assertEquals(Arrays.asList(aid("c")),
+        index.search("strxet", 10).getResults());
+
+    // substitution against a prefix, for the token still being typed
+    assertEquals(Arrays.asList(aid("b")), index.search("marx", 10).getResults());
+
+    // the prefix is only relaxed for the last token
+    assertEquals(0, index.search("marx main", 10).size());
+
+    // short tokens and tokens more than one edit away don't match
+    assertEquals(0, index.search("mxn", 10).size());
+    assertEquals(0, index.search("mxxn", 10).size());
+  }
+
+  @Test
+  public void testFuzzyMatchingAgainstReference() {
+
+    Random random = new Random(42);
+    String alphabet = "abcd";
+
+    Set<String> terms = new HashSet<String>();
+    while (terms.size() < 200)
+      terms.add(randomWord(random, alphabet, 2, 7));
+
+    AutocompleteIndex.Builder builder = new AutocompleteIndex.Builder();
+    for (String term : terms)
+      builder.add(aid(term), term, 1.0);
+    AutocompleteIndex index = builder.create();
+
+    for (int i = 0; i < 2000; i++) {
+
+      String token = randomWord(random, alphabet, 1, 8);
+
+      Set<AgencyAndId> expected = new HashSet<AgencyAndId>();
+      for (String term : terms) {
+        if (term.startsWith(token))
+          expected.add(aid(term));
+      }
+      if (expected.isEmpty() && token.length() >= 4) {
+        for (String term : terms) {
+          if (isWithinOneEdit(token, term)
+              || (term.length() > token.length() && isWithinOneEdit(token,
+                  term.substring(0, token.length()))))
+            expected.add(aid(term));
+        }
+      }
+
+      SearchResult<AgencyAndId> result = index.search(token, terms.size());
+      Set<AgencyAndId> actual = new HashSet<AgencyAndId>(result.getResults());
+      assertEquals(token, expected, actual);
+    }
+  }
+
+  @Test
+  public void testIsWithinOneEdit() {
+    assertTrue(isWithinOneEdit("main", "main"));
+    assertTrue(isWithinOneEdit("main", "maen"));
+    assertTrue(isWithinOneEdit("main", "man"));
+    assertTrue(isWithinOneEdit("man", "main"));
+    assertTrue(isWithinOneEdit("main", "mains"));
+    assertTrue(isWithinOneEdit("main", "xmain"));
+    assertEquals(false, isWithinOneEdit("main", "mian"));
+    assertEquals(false, isWithinOneEdit("main", "ma"));
+    assertEquals(false, isWithinOneEdit("main", "mainst"));
+  }
+
+  @Test
+  public void testTokenize() {
+    List<String> expected = new ArrayList<String>();
+    expected.add("3rd");
+    expected.add("ave");
+    expected.add("pine");
+    assertEquals(expected, AutocompleteIndex.tokenize(" 3rd Ave & Pine-"));
+    assertEquals(0, AutocompleteIndex.tokenize(null).size());
+  }
+
+  /**
+   * Reference edit distance check: the classic dynamic program, bounded to one
+   * edit
+   */
+  private static boolean isWithinOneEdit(String a, String b) {
+    int[] prev = new int[b.length() + 1];
+    int[] curr = new int[b.length() + 1];
+    for (int j = 0; j <= b.length(); j++)
+      prev[j] = j;
+    for (int i = 1; i <= a.length(); i++) {
+      curr[0] = i;
+      for (int j = 1; j <= b.length(); j++) {
+        int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+        curr[j] = Math.min(prev[j - 1] + cost,
+            Math.min(prev[j], curr[j - 1]) + 1);
+      }
+      int[] tmp = prev;
+      prev = curr;
+      curr = tmp;
+    }
+    return prev[b.length()] <= 1;
+  }
+
+  private static String randomWord(Random random, String alphabet, int min,
+      int max) {
+    int length = min + random.nextInt(max - min + 1);
+    StringBuilder b = new StringBuilder();
+    for (int i = 0; i < length; i++)
+      b.append(alphabet.charAt(random.nextInt(alphabet.length())));
+    return b.toString();
+  }
+
+  private static AgencyAndId aid(String id) {
+    return new AgencyAndId("1", id);
+  }
+}
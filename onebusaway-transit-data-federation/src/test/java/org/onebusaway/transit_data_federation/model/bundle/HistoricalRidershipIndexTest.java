@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2018 Cambridge Systematics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.model.bundle;
+
+import org.junit.Test;
+import org.onebusaway.gtfs.model.AgencyAndId;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HistoricalRidershipIndexTest {
+
+    private static final AgencyAndId ROUTE = new AgencyAndId("1", "route");
+    private static final AgencyAndId TRIP_A = new AgencyAndId("1", "tripA");
+    private static final AgencyAndId TRIP_B = new AgencyAndId("1", "tripB");
+    private static final AgencyAndId STOP_A = new AgencyAndId("1", "stopA");
+    private static final AgencyAndId STOP_B = new AgencyAndId("1", "stopB");
+
+    @Test
+    public void testLookups() {
+        List<HistoricalRidership> riderships = new ArrayList<>();
+        riderships.add(ridership(TRIP_B, STOP_A, HistoricalRidership.CalendarType.SATURDAY, 0.1));
+        riderships.add(ridership(TRIP_A, STOP_A, HistoricalRidership.CalendarType.WEEKDAY, 0.2));
+        riderships.add(ridership(TRIP_A, STOP_A, HistoricalRidership.CalendarType.WEEKDAY, 0.3));
+        riderships.add(ridership(TRIP_A, STOP_B, HistoricalRidership.CalendarType.SUNDAY, 0.4));
+
+        HistoricalRidershipIndex index = HistoricalRidershipIndex.create(riderships);
+        assertEquals(4, index.size());
+
+        assertEquals(0.2, index.getLoadFactor(ROUTE, TRIP_A, STOP_A, HistoricalRidershipIndex.ANY_DAY), 0.0);
+        assertEquals(0.2, index.getLoadFactor(ROUTE, TRIP_A, STOP_A, HistoricalRidershipIndex.WEEKDAY), 0.0);
+        assertTrue(Double.isNaN(index.getLoadFactor(ROUTE, TRIP_A, STOP_A, HistoricalRidershipIndex.WEEKEND)));
+        assertEquals(0.4, index.getLoadFactor(ROUTE, TRIP_A, STOP_B, HistoricalRidershipIndex.WEEKEND), 0.0);
+        assertTrue(Double.isNaN(index.getLoadFactor(ROUTE, TRIP_B, STOP_B, HistoricalRidershipIndex.ANY_DAY)));
+
+        List<HistoricalRidership> forStop = index.getForStop(STOP_A, HistoricalRidershipIndex.ANY_DAY);
+        assertEquals(3, forStop.size());
+        assertEquals(0.1, forStop.get(0).getLoadFactor(), 0.0);
+        assertEquals(0.2, forStop.get(1).getLoadFactor(), 0.0);
+        assertEquals(0.3, forStop.get(2).getLoadFactor(), 0.0);
+
+        assertEquals(1, index.getForTrip(TRIP_A, HistoricalRidershipIndex.WEEKEND).size());
+        assertEquals(2, index.getAll(HistoricalRidershipIndex.WEEKEND).size());
+        assertEquals(4, index.getForRoute(ROUTE, HistoricalRidershipIndex.ANY_DAY).size());
+        assertEquals(0, index.getForRouteTripAndStop(ROUTE, TRIP_B, STOP_A,
+                HistoricalRidershipIndex.WEEKDAY).size());
+        assertNull(index.getForRouteTripAndStop(ROUTE, TRIP_B, STOP_B, HistoricalRidershipIndex.ANY_DAY));
+        assertNull(index.getForTrip(new AgencyAndId("1", "missing"), HistoricalRidershipIndex.ANY_DAY));
+    }
+
+    private HistoricalRidership ridership(AgencyAndId tripId, AgencyAndId stopId,
+                                          HistoricalRidership.CalendarType calendarType, double loadFactor) {
+        HistoricalRidership.Builder builder = HistoricalRidership.builder();
+        builder.setRouteId(ROUTE);
+        builder.setTripId(tripId);
+        builder.setStopId(stopId);
+        builder.setCalendarType(calendarType);
+        builder.setLoadFactor(loadFactor);
+        return builder.create();
+    }
+}
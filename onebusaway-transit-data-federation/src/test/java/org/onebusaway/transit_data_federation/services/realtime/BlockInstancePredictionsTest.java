@@ -0,0 +1,257 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.services.realtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.block;
+import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.blockConfiguration;
+import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.dateAsLong;
+import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.lsids;
+import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.serviceIds;
+import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.stop;
+import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.stopTime;
+import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.time;
+import static org.onebusaway.transit_data_federation.testing.UnitTestingSupport.trip;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.onebusaway.realtime.api.TimepointPredictionRecord;
+import org.onebusaway.transit_data_federation.impl.transit_graph.StopEntryImpl;
+import org.onebusaway.transit_data_federation.impl.transit_graph.TripEntryImpl;
+import org.onebusaway.transit_data_federation.services.blocks.BlockInstance;
+import org.onebusaway.transit_data_federation.services.realtime.BlockInstancePredictions.TimepointPredictionMatch;
+import org.onebusaway.transit_data_federation.services.transit_graph.BlockConfigurationEntry;
+import org.onebusaway.transit_data_federation.services.transit_graph.BlockStopTimeEntry;
+import org.onebusaway.utility.EInRangeStrategy;
+import org.onebusaway.utility.EOutOfRangeStrategy;
+import org.onebusaway.utility.TransitInterpolationLibrary;
+
+/**
+ * The trip visits stop A twice, before and after stop B:
+ * 
+ * <pre>
+ * stop  sequence  gtfs sequence  arrival
+ * A     0         1              10:00
+ * B     1         2              10:10
+ * A     2         3              10:20
+ * </pre>
+ */
+public class BlockInstancePredictionsTest {
+
+  private final long _serviceDate = dateAsLong("2015-07-23 00:00");
+
+  private final StopEntryImpl _stopA = stop("stopA", 47.0, -122.0);
+
+  private final StopEntryImpl _stopB = stop("stopB", 47.1, -122.0);
+
+  private TripEntryImpl _trip;
+
+  private BlockConfigurationEntry _blockConfig;
+
+  private BlockInstance _blockInstance;
+
+  private BlockStopTimeEntry _firstA;
+
+  private BlockStopTimeEntry _b;
+
+  private BlockStopTimeEntry _secondA;
+
+  @Before
+  public void setup() {
+    _trip = trip("tripA", "sA", 3000);
+    stopTime(0, _stopA, _trip, time(10, 0), time(10, 0), 0).setGtfsSequence(1);
+    stopTime(1, _stopB, _trip, time(10, 10), time(10, 10), 1000).setGtfsSequence(2);
+    stopTime(2, _stopA, _trip, time(10, 20), time(10, 20), 2000).setGtfsSequence(3);
+    _blockConfig = blockConfiguration(block("blockA"),
+        serviceIds(lsids("sA"), lsids()), _trip);
+    _blockInstance = new BlockInstance(_blockConfig, _serviceDate);
+    _firstA = _blockConfig.getStopTimes().get(0);
+    _b = _blockConfig.getStopTimes().get(1);
+    _secondA = _blockConfig.getStopTimes().get(2);
+  }
+
+  @Test
+  public void testMatchSingleVisit() {
+
+    TimepointPredictionRecord tprB = record(_stopB, -1, time(10, 12));
+    List<TimepointPredictionRecord> records = Arrays.asList(tprB);
+
+    TimepointPredictionMatch match = BlockInstancePredictions.matchTimepointPrediction(
+        records, _b);
+    assertSame(tprB, match.getRecord());
+    assertTrue(match.isComplete());
+
+    match = BlockInstancePredictions.matchTimepointPrediction(records, _firstA);
+    assertNull(match.getRecord());
+    assertFalse(match.isComplete());
+  }
+
+  @Test
+  public void testMatchRepeatedVisitByStopSequence() {
+
+    TimepointPredictionRecord tprA = record(_stopA, 3, time(10, 25));
+    List<TimepointPredictionRecord> records = Arrays.asList(tprA);
+
+    TimepointPredictionMatch match = BlockInstancePredictions.matchTimepointPrediction(
+        records, _secondA);
+    assertSame(tprA, match.getRecord());
+    assertTrue(match.isComplete());
+
+    // without a stop sequence match, one record can't cover both visits
+    match = BlockInstancePredictions.matchTimepointPrediction(records, _firstA);
+    assertFalse(match.isComplete());
+  }
+
+  @Test
+  public void testMatchRepeatedVisitByOrder() {
+
+    TimepointPredictionRecord tprA1 = record(_stopA, -1, time(10, 2));
+    TimepointPredictionRecord tprA2 = record(_stopA, -1, time(10, 22));
+
+    TimepointPredictionMatch match = BlockInstancePredictions.matchTimepointPrediction(
+        Arrays.asList(tprA1, tprA2), _secondA);
+    assertSame(tprA2, match.getRecord());
+    assertTrue(match.isComplete());
+
+    // a single record for a stop visited twice is not trusted
+    match = BlockInstancePredictions.matchTimepointPrediction(
+        Arrays.asList(tprA1), _secondA);
+    assertFalse(match.isComplete());
+  }
+
+  @Test
+  public void testMatchIgnoresOtherTrips() {
+
+    TimepointPredictionRecord tprB = record(_stopB, -1, time(10, 12));
+    tprB.setTripId(trip("tripB").getId());
+
+    TimepointPredictionMatch match = BlockInstancePredictions.matchTimepointPrediction(
+        Arrays.asList(tprB), _b);
+    assertNull(match.getRecord());
+    assertFalse(match.isComplete());
+  }
+
+  /**
+   * Callers fall back to matching directly when the precomputed predictions
+   * don't apply, so both paths must agree for every stop time
+   */
+  @Test
+  public void testPrecomputedMatchesDirectMatching() {
+
+    List<TimepointPredictionRecord> records = new ArrayList<TimepointPredictionRecord>();
+    records.add(record(_stopA, -1, time(10, 2)));
+    records.add(record(_stopB, -1, time(10, 12)));
+    records.add(record(_stopA, 3, time(10, 22)));
+
+    ScheduleDeviationSamples samples = samples(time(10, 0), 120, time(10, 10),
+        180);
+
+    BlockInstancePredictions predictions = BlockInstancePredictions.create(
+        _blockInstance, records, samples);
+
+    for (BlockStopTimeEntry blockStopTime : _blockConfig.getStopTimes()) {
+
+      TimepointPredictionMatch expected = BlockInstancePredictions.matchTimepointPrediction(
+          records, blockStopTime);
+      TimepointPredictionMatch actual = predictions.getTimepointPredictionMatch(blockStopTime);
+      assertSame(expected.getRecord(), actual.getRecord());
+      assertEquals(expected.isComplete(), actual.isComplete());
+
+      Double deviation = TransitInterpolationLibrary.interpolate(
+          samples.getScheduleTimes(), samples.getScheduleDeviationMus(),
+          blockStopTime.getStopTime().getArrivalTime(),
+          EOutOfRangeStrategy.LAST_VALUE, EInRangeStrategy.PREVIOUS_VALUE);
+      assertEquals(deviation, predictions.getBestScheduleDeviation(blockStopTime));
+    }
+  }
+
+  @Test
+  public void testWithoutPredictionsOrSamples() {
+
+    BlockInstancePredictions predictions = BlockInstancePredictions.create(
+        _blockInstance, null, null);
+
+    for (BlockStopTimeEntry blockStopTime : _blockConfig.getStopTimes()) {
+      assertNull(predictions.getTimepointPredictionMatch(blockStopTime).getRecord());
+      assertNull(predictions.getBestScheduleDeviation(blockStopTime));
+    }
+  }
+
+  @Test
+  public void testIsApplicable() {
+
+    List<TimepointPredictionRecord> records = Arrays.asList(record(_stopB,
+        -1, time(10, 12)));
+    ScheduleDeviationSamples samples = samples(time(10, 10), 120);
+
+    BlockInstancePredictions predictions = BlockInstancePredictions.create(
+        _blockInstance, records, samples);
+
+    BlockLocation location = new BlockLocation();
+    location.setTimepointPredictions(records);
+    location.setScheduleDeviations(samples);
+
+    for (BlockStopTimeEntry blockStopTime : _blockConfig.getStopTimes())
+      assertTrue(predictions.isApplicable(location, blockStopTime));
+
+    // an equal but different list of records comes from another vehicle record
+    location.setTimepointPredictions(new ArrayList<TimepointPredictionRecord>(
+        records));
+    assertFalse(predictions.isApplicable(location, _b));
+
+    location.setTimepointPredictions(records);
+    location.setScheduleDeviations(samples(time(10, 10), 120));
+    assertFalse(predictions.isApplicable(location, _b));
+
+    // a stop time from another block
+    location.setScheduleDeviations(samples);
+    TripEntryImpl otherTrip = trip("tripB", "sA", 3000);
+    stopTime(3, _stopB, otherTrip, time(11, 0), time(11, 0), 0);
+    BlockConfigurationEntry otherBlockConfig = blockConfiguration(
+        block("blockB"), serviceIds(lsids("sA"), lsids()), otherTrip);
+    assertFalse(predictions.isApplicable(location,
+        otherBlockConfig.getStopTimes().get(0)));
+  }
+
+  private TimepointPredictionRecord record(StopEntryImpl stop,
+      int stopSequence, int arrivalTime) {
+    TimepointPredictionRecord tpr = new TimepointPredictionRecord();
+    tpr.setTimepointId(stop.getId());
+    tpr.setTripId(_trip.getId());
+    tpr.setStopSequence(stopSequence);
+    tpr.setTimepointPredictedArrivalTime(_serviceDate + arrivalTime * 1000L);
+    return tpr;
+  }
+
+  private static ScheduleDeviationSamples samples(double... timesAndDeviations) {
+    int n = timesAndDeviations.length / 2;
+    double[] scheduleTimes = new double[n];
+    double[] mus = new double[n];
+    for (int i = 0; i < n; i++) {
+      scheduleTimes[i] = timesAndDeviations[i * 2];
+      mus[i] = timesAndDeviations[i * 2 + 1];
+    }
+    return new ScheduleDeviationSamples(scheduleTimes, mus, new double[n]);
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2016 Cambridge Systematics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data_federation.siri;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import java.util.Random;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+
+public class TokenReplacingWriterTest {
+
+  private static final String[] TAGS = {
+      "<siriExtensionWrapper>", "</siriExtensionWrapper>",
+      "<siriPolyLinesExtension>", "</siriPolyLinesExtension>"};
+
+  private static final String XML = "<Siri><Extensions><siriExtensionWrapper>"
+      + "<Distances><siriExtension>1</siriExtension></Distances>"
+      + "<siriPolyLinesExtension><Line>abc&lt;</Line></siriPolyLinesExtension>"
+      + "</siriExtensionWrapper></Extensions><<siriExtensionWrapper</Siri>";
+
+  @Test
+  public void testStripWholeString() throws Exception {
+    assertEquals(expected(), strip(XML, XML.length()));
+  }
+
+  @Test
+  public void testStripCharByChar() throws Exception {
+    StringWriter out = new StringWriter();
+    TokenReplacingWriter writer = TokenReplacingWriter.stripping(out, TAGS);
+    for (int i = 0; i < XML.length(); i++)
+      writer.write(XML.charAt(i));
+    writer.flush();
+    assertEquals(expected(), out.toString());
+  }
+
+  @Test
+  public void testStripRandomChunks() throws Exception {
+    Random random = new Random(42);
+    for (int i = 0; i < 100; i++)
+      assertEquals(expected(), strip(XML, 1 + random.nextInt(12)));
+  }
+
+  @Test
+  public void testTrailingPartialTag() throws Exception {
+    assertEquals("<a></a><siriExt", strip("<a></a><siriExt", 3));
+  }
+
+  @Test
+  public void testReplace() throws Exception {
+    String[] tokens = {"<ns5:", "</ns5:", "xmlns:ns5"};
+    String[] replacements = {"<", "</", "xmlns"};
+    String xml = "<ns5:Siri xmlns:ns5=\"x\" xmlns=\"y\"><ns5:a>xx</ns5:a></ns5:Siri>";
+    String expected = "<Siri xmlns=\"x\" xmlns=\"y\"><a>xx</a></Siri>";
+    for (int chunkSize = 1; chunkSize <= xml.length(); chunkSize++) {
+      StringWriter out = new StringWriter();
+      write(new TokenReplacingWriter(out, tokens, replacements), xml, chunkSize);
+      assertEquals(expected, out.toString());
+    }
+  }
+
+  @Test
+  public void testTokenStartingInsideCandidate() throws Exception {
+    // "<ab" fails as a candidate for "<abc" but contains the start of "ab"
+    String[] tokens = {"<abc", "ab"};
+    StringWriter out = new StringWriter();
+    write(TokenReplacingWriter.stripping(out, tokens), "<abd<abc", 1);
+    assertEquals("<d", out.toString());
+  }
+
+  private static String expected() {
+    return StringUtils.replaceEach(XML, TAGS, new String[] {"", "", "", ""});
+  }
+
+  private static String strip(String value, int chunkSize) throws Exception {
+    StringWriter out = new StringWriter();
+    write(TokenReplacingWriter.stripping(out, TAGS), value, chunkSize);
+    return out.toString();
+  }
+
+  private static void write(TokenReplacingWriter writer, String value,
+      int chunkSize) throws Exception {
+    char[] chars = value.toCharArray();
+    for (int i = 0; i < chars.length; i += chunkSize)
+      writer.write(chars, i, Math.min(chunkSize, chars.length - i));
+    writer.flush();
+  }
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data.model;
+
+import java.io.Serializable;
+
+/**
+ * A compact projection of {@link ArrivalAndDepartureBean} for clients such as
+ * signage and phone frontends that only announce which route is coming and
+ * when. It carries no trip status, situations or nested stop and trip beans,
+ * so it is cheap to assemble and to serialize.
+ */
+public class ArrivalSummaryBean implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private String stopId;
+
+  private String routeId;
+
+  private String routeShortName;
+
+  private String tripId;
+
+  private String tripHeadsign;
+
+  private long serviceDate;
+
+  private int stopSequence;
+
+  private String vehicleId;
+
+  private boolean predicted;
+
+  private String status;
+
+  private long scheduledArrivalTime;
+
+  private long scheduledDepartureTime;
+
+  private long predictedArrivalTime;
+
+  private long predictedDepartureTime;
+
+  private int numberOfStopsAway;
+
+  public String getStopId() {
+    return stopId;
+  }
+
+  public void setStopId(String stopId) {
+    this.stopId = stopId;
+  }
+
+  public String getRouteId() {
+    return routeId;
+  }
+
+  public void setRouteId(String routeId) {
+    this.routeId = routeId;
+  }
+
+  public String getRouteShortName() {
+    return routeShortName;
+  }
+
+  public void setRouteShortName(String routeShortName) {
+    this.routeShortName = routeShortName;
+  }
+
+  public String getTripId() {
+    return tripId;
+  }
+
+  public void setTripId(String tripId) {
+    this.tripId = tripId;
+  }
+
+  public String getTripHeadsign() {
+    return tripHeadsign;
+  }
+
+  public void setTripHeadsign(String tripHeadsign) {
+    this.tripHeadsign = tripHeadsign;
+  }
+
+  public long getServiceDate() {
+    return serviceDate;
+  }
+
+  public void setServiceDate(long serviceDate) {
+    this.serviceDate = serviceDate;
+  }
+
+  public int getStopSequence() {
+    return stopSequence;
+  }
+
+  public void setStopSequence(int stopSequence) {
+    this.stopSequence = stopSequence;
+  }
+
+  public String getVehicleId() {
+    return vehicleId;
+  }
+
+  public void setVehicleId(String vehicleId) {
+    this.vehicleId = vehicleId;
+  }
+
+  public boolean isPredicted() {
+    return predicted;
+  }
+
+  public void setPredicted(boolean predicted) {
+    this.predicted = predicted;
+  }
+
+  public String getStatus() {
+    return status;
+  }
+
+  public void setStatus(String status) {
+    this.status = status;
+  }
+
+  public long getScheduledArrivalTime() {
+    return scheduledArrivalTime;
+  }
+
+  public void setScheduledArrivalTime(long scheduledArrivalTime) {
+    this.scheduledArrivalTime = scheduledArrivalTime;
+  }
+
+  public long getScheduledDepartureTime() {
+    return scheduledDepartureTime;
+  }
+
+  public void setScheduledDepartureTime(long scheduledDepartureTime) {
+    this.scheduledDepartureTime = scheduledDepartureTime;
+  }
+
+  public long getPredictedArrivalTime() {
+    return predictedArrivalTime;
+  }
+
+  public void setPredictedArrivalTime(long predictedArrivalTime) {
+    this.predictedArrivalTime = predictedArrivalTime;
+  }
+
+  public long getPredictedDepartureTime() {
+    return predictedDepartureTime;
+  }
+
+  public void setPredictedDepartureTime(long predictedDepartureTime) {
+    this.predictedDepartureTime = predictedDepartureTime;
+  }
+
+  public int getNumberOfStopsAway() {
+    return numberOfStopsAway;
+  }
+
+  public void setNumberOfStopsAway(int numberOfStopsAway) {
+    this.numberOfStopsAway = numberOfStopsAway;
+  }
+
+  public boolean hasPredictedArrivalTime() {
+    return predictedArrivalTime > 0;
+  }
+
+  public boolean hasPredictedDepartureTime() {
+    return predictedDepartureTime > 0;
+  }
+
+  public long computeBestArrivalTime() {
+    return hasPredictedArrivalTime() ? predictedArrivalTime
+        : scheduledArrivalTime;
+  }
+
+  public long computeBestDepartureTime() {
+    return hasPredictedDepartureTime() ? predictedDepartureTime
+        : scheduledDepartureTime;
+  }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data.model.realtime;
+
+import java.io.Serializable;
+
+/**
+ * A single change in real-time state, published as vehicle location records
+ * are received: either a new vehicle position or a changed prediction for a
+ * stop on a vehicle's trip.
+ */
+public class RealtimeDeltaBean implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  public static final String TYPE_VEHICLE = "vehicle";
+
+  public static final String TYPE_STOP = "stop";
+
+  private long sequence;
+
+  private String type;
+
+  private long time;
+
+  private String vehicleId;
+
+  private String tripId;
+
+  private long serviceDate;
+
+  private double lat = Double.NaN;
+
+  private double lon = Double.NaN;
+
+  private double scheduleDeviation = Double.NaN;
+
+  private double distanceAlongBlock = Double.NaN;
+
+  private String stopId;
+
+  private int stopSequence = -1;
+
+  private long predictedArrivalTime;
+
+  private long predictedDepartureTime;
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  public void setSequence(long sequence) {
+    this.sequence = sequence;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public void setType(String type) {
+    this.type = type;
+  }
+
+  public long getTime() {
+    return time;
+  }
+
+  public void setTime(long time) {
+    this.time = time;
+  }
+
+  public String getVehicleId() {
+    return vehicleId;
+  }
+
+  public void setVehicleId(String vehicleId) {
+    this.vehicleId = vehicleId;
+  }
+
+  public String getTripId() {
+    return tripId;
+  }
+
+  public void setTripId(String tripId) {
+    this.tripId = tripId;
+  }
+
+  public long getServiceDate() {
+    return serviceDate;
+  }
+
+  public void setServiceDate(long serviceDate) {
+    this.serviceDate = serviceDate;
+  }
+
+  public double getLat() {
+    return lat;
+  }
+
+  public void setLat(double lat) {
+    this.lat = lat;
+  }
+
+  public double getLon() {
+    return lon;
+  }
+
+  public void setLon(double lon) {
+    this.lon = lon;
+  }
+
+  public double getScheduleDeviation() {
+    return scheduleDeviation;
+  }
+
+  public void setScheduleDeviation(double scheduleDeviation) {
+    this.scheduleDeviation = scheduleDeviation;
+  }
+
+  public double getDistanceAlongBlock() {
+    return distanceAlongBlock;
+  }
+
+  public void setDistanceAlongBlock(double distanceAlongBlock) {
+    this.distanceAlongBlock = distanceAlongBlock;
+  }
+
+  public String getStopId() {
+    return stopId;
+  }
+
+  public void setStopId(String stopId) {
+    this.stopId = stopId;
+  }
+
+  public int getStopSequence() {
+    return stopSequence;
+  }
+
+  public void setStopSequence(int stopSequence) {
+    this.stopSequence = stopSequence;
+  }
+
+  public long getPredictedArrivalTime() {
+    return predictedArrivalTime;
+  }
+
+  public void setPredictedArrivalTime(long predictedArrivalTime) {
+    this.predictedArrivalTime = predictedArrivalTime;
+  }
+
+  public long getPredictedDepartureTime() {
+    return predictedDepartureTime;
+  }
+
+  public void setPredictedDepartureTime(long predictedDepartureTime) {
+    this.predictedDepartureTime = predictedDepartureTime;
+  }
+
+  /**
+   * @return a key shared by deltas that supersede one another: the vehicle for
+   *         position deltas, and the stop and trip for prediction deltas
+   */
+  public String getCoalescingKey() {
+    if (TYPE_STOP.equals(type))
+      return type + ":" + stopId + ":" + tripId + ":" + stopSequence;
+    return type + ":" + vehicleId;
+  }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.transit_data.model.realtime;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deltas published after a given sequence number, coalesced so each key
+ * appears at most once.  If the requested sequence is no longer retained,
+ * {@link #isReset()} is true and clients should refresh their full state
+ * before applying further deltas.
+ */
+public class RealtimeDeltasBean implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private List<RealtimeDeltaBean> deltas = new ArrayList<RealtimeDeltaBean>();
+
+  private long lastSequence;
+
+  private boolean reset = false;
+
+  public List<RealtimeDeltaBean> getDeltas() {
+    return deltas;
+  }
+
+  public void setDeltas(List<RealtimeDeltaBean> deltas) {
+    this.deltas = deltas;
+  }
+
+  /**
+   * @return the sequence to request deltas after in the next call
+   */
+  public long getLastSequence() {
+    return lastSequence;
+  }
+
+  public void setLastSequence(long lastSequence) {
+    this.lastSequence = lastSequence;
+  }
+
+  public boolean isReset() {
+    return reset;
+  }
+
+  public void setReset(boolean reset) {
+    this.reset = reset;
+  }
+}
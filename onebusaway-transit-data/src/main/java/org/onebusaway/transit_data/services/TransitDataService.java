@@ -51,6 +51,7 @@ import org.onebusaway.transit_data.model.problems.TripProblemReportQueryBean;
 import org.onebusaway.transit_data.model.problems.TripProblemReportSummaryBean;
 import org.onebusaway.transit_data.model.realtime.CurrentVehicleEstimateBean;
 import org.onebusaway.transit_data.model.realtime.CurrentVehicleEstimateQueryBean;
+import org.onebusaway.transit_data.model.realtime.RealtimeDeltasBean;
 import org.onebusaway.transit_data.model.realtime.VehicleLocationRecordBean;
 import org.onebusaway.transit_data.model.realtime.VehicleLocationRecordQueryBean;
 import org.onebusaway.transit_data.model.service_alerts.ServiceAlertBean;
@@ -100,7 +101,7 @@ public interface TransitDataService extends FederatedService {
    *         coverage information.
    * @throws ServiceException
    */
-  @FederatedByAggregateMethod
+  @FederatedByAggregateMethod(timeoutMillis = 10000, allowPartialResults = true)
   public List<AgencyWithCoverageBean> getAgenciesWithCoverage()
       throws ServiceException;
 
@@ -121,6 +122,19 @@ public interface TransitDataService extends FederatedService {
   @FederatedByCoordinateBoundsMethod(propertyExpression = "bounds")
   public RoutesBean getRoutes(SearchQueryBean query) throws ServiceException;
 
+  /**
+   * Typeahead search for routes by name, with the last word of the input
+   * matched as a prefix.
+   * 
+   * @param input the partial user input
+   * @param maxCount the maximum number of routes to return
+   * @return matching routes, ordered by descending relevance
+   * @throws ServiceException
+   */
+  @FederatedByAggregateMethod(timeoutMillis = 10000, allowPartialResults = true)
+  public RoutesBean getRoutesForAutocomplete(String input, int maxCount)
+      throws ServiceException;
+
   /**
    * 
    * @param routeId
@@ -267,6 +281,21 @@ public interface TransitDataService extends FederatedService {
   @FederatedByEntityIdMethod
   public void resetVehicleLocation(String vehicleId);
 
+  /**
+   * Real-time deltas for the agency's vehicles published since the given
+   * sequence number, for clients that stream changes rather than poll.
+   * Sequence numbers are shared by every agency the instance serves.
+   * 
+   * @param agencyId the agency whose deltas are returned
+   * @param afterSequence the lastSequence of the previous call, or -1 to start
+   *          from the current head
+   * @param maxCount the maximum number of published deltas to read
+   * @return the coalesced deltas
+   */
+  @FederatedByAgencyIdMethod
+  public RealtimeDeltasBean getRealtimeDeltas(String agencyId,
+      long afterSequence, int maxCount);
+
   @FederatedByEntityIdMethod
   VehicleOccupancyRecord getVehicleOccupancyRecordForVehicleIdAndRoute(AgencyAndId var1, String var2, String var3);
 
@@ -293,6 +322,22 @@ public interface TransitDataService extends FederatedService {
       String stopId, ArrivalsAndDeparturesQueryBean query, AgencyServiceInterval serviceInterval)
       throws ServiceException;
 
+  /**
+   * A lightweight alternative to
+   * {@link #getStopWithArrivalsAndDepartures(String, ArrivalsAndDeparturesQueryBean, AgencyServiceInterval)}
+   * for clients that only need route, headsign and arrival times. Trip status,
+   * situations and stop and trip references are not assembled.
+   * 
+   * @param stopId
+   * @param query
+   * @return arrival summaries for the specified stop and time range, ordered
+   *         by best arrival time
+   * @throws ServiceException
+   */
+  @FederatedByEntityIdMethod
+  public ListBean<ArrivalSummaryBean> getArrivalSummariesForStop(String stopId,
+      ArrivalsAndDeparturesQueryBean query) throws ServiceException;
+
   /**
    * @param stopIds
    * @param query
@@ -354,9 +399,22 @@ public interface TransitDataService extends FederatedService {
    * @return
    * @throws ServiceException
    */
-  @FederatedByAggregateMethod
+  @FederatedByAggregateMethod(timeoutMillis = 10000, allowPartialResults = true)
   public StopsBean getStopsByName(String stopName) throws ServiceException;
 
+  /**
+   * Typeahead search for stops by name, with the last word of the input
+   * matched as a prefix.
+   * 
+   * @param input the partial user input
+   * @param maxCount the maximum number of stops to return
+   * @return matching stops, ordered by descending relevance
+   * @throws ServiceException
+   */
+  @FederatedByAggregateMethod(timeoutMillis = 10000, allowPartialResults = true)
+  public StopsBean getStopsForAutocomplete(String input, int maxCount)
+      throws ServiceException;
+
 
     /**
      * @param stopId
@@ -545,7 +603,7 @@ public interface TransitDataService extends FederatedService {
   @FederatedByEntityIdMethod()
   public void deleteTripProblemReportForTripIdAndId(String tripId, long id);
 
-  @FederatedByAggregateMethod
+  @FederatedByAggregateMethod(timeoutMillis = 10000, allowPartialResults = true)
   public List<String> getAllTripProblemReportLabels();
   
   /**
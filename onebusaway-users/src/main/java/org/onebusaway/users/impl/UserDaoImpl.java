@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.hibernate.*;
 import org.hibernate.criterion.Projections;
@@ -116,6 +117,24 @@ class UserDaoImpl implements UserDao {
     }
   }
 
+  @Override
+  @Transactional
+  public int updateLastAccessTimes(Map<Integer, Date> lastAccessTimesByUserId) {
+    Session session = getSession();
+    int updated = 0;
+    for (Map.Entry<Integer, Date> entry : lastAccessTimesByUserId.entrySet()) {
+      User user = (User) session.get(User.class, entry.getKey());
+      if (user == null)
+        continue;
+      Date lastAccessTime = user.getLastAccessTime();
+      if (lastAccessTime == null || lastAccessTime.before(entry.getValue())) {
+        user.setLastAccessTime(entry.getValue());
+        updated++;
+      }
+    }
+    return updated;
+  }
+
   @Override
   @Transactional
   public void deleteUser(User user) {
@@ -16,11 +16,23 @@
 package org.onebusaway.users.impl.internal;
 
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.Element;
 
-import org.onebusaway.users.model.User;
 import org.onebusaway.users.services.UserDao;
 import org.onebusaway.users.services.internal.UserLastAccessTimeService;
 import org.slf4j.Logger;
@@ -28,6 +40,17 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+/**
+ * Records user access times in memory and writes them behind to the database.
+ * As before, an access is only recorded when the user is not already in the
+ * cache, i.e. at the start of a session, so a user making steady requests is
+ * written once per cache idle period rather than once per request.
+ * 
+ * Each flush hands every pending user to
+ * {@link UserDao#updateLastAccessTimes(Map)} in a single transaction, and none
+ * of it happens on the request thread. A flush is also triggered early if the
+ * number of pending users exceeds {@link #setMaxPendingUsers(int)}.
+ */
 @Component
 public class UserLastAccessTimeServiceImpl implements UserLastAccessTimeService {
 
@@ -37,6 +60,26 @@ public class UserLastAccessTimeServiceImpl implements UserLastAccessTimeService
 
   private Cache _cache;
 
+  private int _flushInterval = 60;
+
+  private int _maxPendingUsers = 10000;
+
+  private final ConcurrentMap<Integer, Long> _pendingAccessTimes = new ConcurrentHashMap<Integer, Long>();
+
+  private final AtomicBoolean _earlyFlushScheduled = new AtomicBoolean();
+
+  private ScheduledExecutorService _executor;
+
+  private final AtomicLong _flushCount = new AtomicLong();
+
+  private final AtomicLong _flushFailureCount = new AtomicLong();
+
+  private final AtomicLong _usersFlushedCount = new AtomicLong();
+
+  private volatile long _lastFlushDuration;
+
+  private volatile long _lastFlushTime;
+
   @Autowired
   public void setUserDao(UserDao userDao) {
     _userDao = userDao;
@@ -46,20 +89,159 @@ public class UserLastAccessTimeServiceImpl implements UserLastAccessTimeService
     _cache = cache;
   }
 
+  /**
+   * @param flushInterval time, in seconds, between writes of pending access
+   *          times
+   */
+  public void setFlushInterval(int flushInterval) {
+    _flushInterval = flushInterval;
+  }
+
+  public void setMaxPendingUsers(int maxPendingUsers) {
+    _maxPendingUsers = maxPendingUsers;
+  }
+
+  @PostConstruct
+  public void start() {
+    _executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "user-last-access-time-flush");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    _executor.scheduleWithFixedDelay(new FlushTask(), _flushInterval,
+        _flushInterval, TimeUnit.SECONDS);
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (_executor != null)
+      _executor.shutdownNow();
+    flush();
+  }
+
   public long getNumberOfActiveUsers() {
     return _cache.getSize();
   }
 
+  public int getNumberOfPendingUsers() {
+    return _pendingAccessTimes.size();
+  }
+
+  public long getFlushCount() {
+    return _flushCount.get();
+  }
+
+  public long getFlushFailureCount() {
+    return _flushFailureCount.get();
+  }
+
+  public long getUsersFlushedCount() {
+    return _usersFlushedCount.get();
+  }
+
+  /**
+   * @return duration, in milliseconds, of the most recent flush
+   */
+  public long getLastFlushDuration() {
+    return _lastFlushDuration;
+  }
+
+  public long getLastFlushTime() {
+    return _lastFlushTime;
+  }
+
   public void handleAccessForUser(int userId, long accessTime) {
-    Element element = _cache.get(userId);
-    if (element == null) {
-      User user = _userDao.getUserForId(userId);
-      user.setLastAccessTime(new Date(accessTime));
-      _userDao.saveOrUpdateUser(user);
+
+    /**
+     * Only the first access of a session is recorded; the cache entry stays
+     * live while the user keeps making requests
+     */
+    if (_cache.get(userId) != null)
+      return;
+
+    _cache.put(new Element(userId, accessTime));
+    recordAccessTime(userId, accessTime);
+
+    if (_pendingAccessTimes.size() > _maxPendingUsers && _executor != null
+        && _earlyFlushScheduled.compareAndSet(false, true))
+      _executor.execute(new FlushTask());
+  }
+
+  /**
+   * Write all pending access times to the database. Called periodically, but
+   * safe to call directly.
+   */
+  public synchronized void flush() {
+
+    _earlyFlushScheduled.set(false);
+
+    if (_pendingAccessTimes.isEmpty())
+      return;
+
+    long t0 = System.currentTimeMillis();
+
+    Map<Integer, Long> batch = new HashMap<Integer, Long>();
+    Map<Integer, Date> lastAccessTimes = new HashMap<Integer, Date>();
+
+    for (Map.Entry<Integer, Long> entry : _pendingAccessTimes.entrySet()) {
+      Integer userId = entry.getKey();
+      Long accessTime = entry.getValue();
+      /**
+       * Only remove the entry if it hasn't been updated since we read it, so a
+       * newer access time is left for the next flush
+       */
+      if (_pendingAccessTimes.remove(userId, accessTime)) {
+        batch.put(userId, accessTime);
+        lastAccessTimes.put(userId, new Date(accessTime));
+      }
+    }
+
+    try {
+      int updated = _userDao.updateLastAccessTimes(lastAccessTimes);
+      _usersFlushedCount.addAndGet(batch.size());
       if (_log.isDebugEnabled())
-        _log.debug("user last access set " + userId);
-      element = new Element(userId, accessTime);
-      _cache.put(element);
+        _log.debug("user last access flushed: pending=" + batch.size()
+            + " updated=" + updated);
+    } catch (RuntimeException ex) {
+      _flushFailureCount.incrementAndGet();
+      _log.warn("error flushing user last access times for " + batch.size()
+          + " users", ex);
+      // Put the batch back so it is retried on the next flush
+      for (Map.Entry<Integer, Long> entry : batch.entrySet())
+        recordAccessTime(entry.getKey(), entry.getValue());
+    }
+
+    long now = System.currentTimeMillis();
+    _flushCount.incrementAndGet();
+    _lastFlushDuration = now - t0;
+    _lastFlushTime = now;
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  /**
+   * Keep the latest access time seen for the user
+   */
+  private void recordAccessTime(int userId, long accessTime) {
+    Long previous = _pendingAccessTimes.putIfAbsent(userId, accessTime);
+    while (previous != null && previous < accessTime
+        && !_pendingAccessTimes.replace(userId, previous, accessTime))
+      previous = _pendingAccessTimes.putIfAbsent(userId, accessTime);
+  }
+
+  private class FlushTask implements Runnable {
+    @Override
+    public void run() {
+      try {
+        flush();
+      } catch (Throwable ex) {
+        _log.error("error flushing user last access times", ex);
+      }
     }
   }
 }
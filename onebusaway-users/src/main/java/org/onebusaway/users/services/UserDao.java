@@ -18,6 +18,7 @@ package org.onebusaway.users.services;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.onebusaway.users.model.User;
 import org.onebusaway.users.model.UserIndex;
@@ -52,6 +53,16 @@ public interface UserDao {
 
   public void saveOrUpdateUsers(User... users);
 
+  /**
+   * Update the last access time (see {@link User#getLastAccessTime()}) for a
+   * number of users in a single transaction. A user's last access time is only
+   * ever moved forward, and ids of users that no longer exist are ignored.
+   * 
+   * @param lastAccessTimesByUserId last access time keyed by user id
+   * @return the number of users that were updated
+   */
+  public int updateLastAccessTimes(Map<Integer, Date> lastAccessTimesByUserId);
+
   public void deleteUser(User user);
 
   public int getNumberOfUserRoles();
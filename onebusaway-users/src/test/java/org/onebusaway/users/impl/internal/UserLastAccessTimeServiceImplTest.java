@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.users.impl.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.Element;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.onebusaway.users.services.UserDao;
+
+public class UserLastAccessTimeServiceImplTest {
+
+  private UserLastAccessTimeServiceImpl _service;
+
+  private UserDao _userDao;
+
+  @Before
+  public void before() {
+    _userDao = Mockito.mock(UserDao.class);
+    _service = new UserLastAccessTimeServiceImpl();
+    _service.setUserDao(_userDao);
+    _service.setCache(Mockito.mock(Cache.class));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testFlushWritesLatestAccessTimePerUser() {
+
+    _service.handleAccessForUser(1, 1000);
+    _service.handleAccessForUser(1, 3000);
+    _service.handleAccessForUser(1, 2000);
+    _service.handleAccessForUser(2, 5000);
+
+    Mockito.verifyNoInteractions(_userDao);
+    assertEquals(2, _service.getNumberOfPendingUsers());
+
+    _service.flush();
+
+    ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+    Mockito.verify(_userDao).updateLastAccessTimes(captor.capture());
+    Map<Integer, Date> times = captor.getValue();
+    assertEquals(2, times.size());
+    assertEquals(new Date(3000), times.get(1));
+    assertEquals(new Date(5000), times.get(2));
+
+    assertEquals(0, _service.getNumberOfPendingUsers());
+    assertEquals(1, _service.getFlushCount());
+    assertEquals(2, _service.getUsersFlushedCount());
+
+    // Nothing pending, so no further writes
+    _service.flush();
+    Mockito.verify(_userDao).updateLastAccessTimes(Mockito.anyMap());
+  }
+
+  @Test
+  public void testOnlyCacheMissesAreRecorded() {
+
+    Cache cache = Mockito.mock(Cache.class);
+    Mockito.when(cache.get(1)).thenReturn(null).thenReturn(
+        new Element(1, 1000L));
+    _service.setCache(cache);
+
+    _service.handleAccessForUser(1, 1000);
+    _service.handleAccessForUser(1, 2000);
+    _service.handleAccessForUser(1, 3000);
+
+    Mockito.verify(cache, Mockito.times(1)).put(Mockito.any(Element.class));
+    assertEquals(1, _service.getNumberOfPendingUsers());
+
+    _service.flush();
+    Mockito.verify(_userDao).updateLastAccessTimes(
+        Collections.singletonMap(1, new Date(1000)));
+  }
+
+  @Test
+  public void testFailedFlushIsRetried() {
+
+    Mockito.when(_userDao.updateLastAccessTimes(Mockito.anyMap())).thenThrow(
+        new IllegalStateException("database unavailable")).thenReturn(1);
+
+    _service.handleAccessForUser(1, 1000);
+    _service.flush();
+
+    assertEquals(1, _service.getFlushFailureCount());
+    assertEquals(1, _service.getNumberOfPendingUsers());
+
+    _service.flush();
+
+    Mockito.verify(_userDao, Mockito.times(2)).updateLastAccessTimes(
+        Collections.singletonMap(1, new Date(1000)));
+    assertEquals(0, _service.getNumberOfPendingUsers());
+    assertEquals(1, _service.getUsersFlushedCount());
+  }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.util.tracing;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Timings for a single traced request, as captured by {@link RequestTracer}.
+ */
+public class RequestTrace implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private String name;
+
+  private String threadName;
+
+  private long startTime;
+
+  private long durationMillis;
+
+  private long cpuMillis = -1;
+
+  private long allocatedBytes = -1;
+
+  private List<RequestTraceSpan> spans = new ArrayList<RequestTraceSpan>();
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public String getThreadName() {
+    return threadName;
+  }
+
+  public void setThreadName(String threadName) {
+    this.threadName = threadName;
+  }
+
+  /**
+   * @return wall clock time the trace started, in ms since the epoch
+   */
+  public long getStartTime() {
+    return startTime;
+  }
+
+  public void setStartTime(long startTime) {
+    this.startTime = startTime;
+  }
+
+  public long getDurationMillis() {
+    return durationMillis;
+  }
+
+  public void setDurationMillis(long durationMillis) {
+    this.durationMillis = durationMillis;
+  }
+
+  /**
+   * @return cpu time used by the thread during the trace, or -1 if the JVM
+   *         doesn't support thread cpu timing
+   */
+  public long getCpuMillis() {
+    return cpuMillis;
+  }
+
+  public void setCpuMillis(long cpuMillis) {
+    this.cpuMillis = cpuMillis;
+  }
+
+  /**
+   * @return bytes allocated by the thread during the trace, or -1 if the JVM
+   *         doesn't support allocation accounting
+   */
+  public long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  public void setAllocatedBytes(long allocatedBytes) {
+    this.allocatedBytes = allocatedBytes;
+  }
+
+  /**
+   * @return spans in the order they were started
+   */
+  public List<RequestTraceSpan> getSpans() {
+    return spans;
+  }
+
+  public void setSpans(List<RequestTraceSpan> spans) {
+    this.spans = spans;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder b = new StringBuilder();
+    b.append(name).append(" ").append(durationMillis).append("ms");
+    b.append(" cpu=").append(cpuMillis).append("ms");
+    b.append(" allocated=").append(allocatedBytes);
+    for (RequestTraceSpan span : spans) {
+      b.append("\n");
+      for (int i = 0; i <= span.getDepth(); i++)
+        b.append("  ");
+      b.append(span.getName()).append(" +").append(span.getOffsetMillis()).append(
+          "ms ").append(span.getDurationMillis()).append("ms");
+      b.append(" allocated=").append(span.getAllocatedBytes());
+    }
+    return b.toString();
+  }
+}
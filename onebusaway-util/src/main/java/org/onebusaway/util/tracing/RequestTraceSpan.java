@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.util.tracing;
+
+import java.io.Serializable;
+
+/**
+ * A timed section of a {@link RequestTrace}.
+ */
+public class RequestTraceSpan implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private String name;
+
+  private int depth;
+
+  private long offsetMillis;
+
+  private long durationMillis;
+
+  private long allocatedBytes = -1;
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  /**
+   * @return nesting level of the span, where top-level spans are 0
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+  public void setDepth(int depth) {
+    this.depth = depth;
+  }
+
+  /**
+   * @return start of the span, relative to the start of the trace
+   */
+  public long getOffsetMillis() {
+    return offsetMillis;
+  }
+
+  public void setOffsetMillis(long offsetMillis) {
+    this.offsetMillis = offsetMillis;
+  }
+
+  public long getDurationMillis() {
+    return durationMillis;
+  }
+
+  public void setDurationMillis(long durationMillis) {
+    this.durationMillis = durationMillis;
+  }
+
+  /**
+   * @return bytes allocated by the thread during the span, or -1 if the JVM
+   *         doesn't support allocation accounting
+   */
+  public long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  public void setAllocatedBytes(long allocatedBytes) {
+    this.allocatedBytes = allocatedBytes;
+  }
+}
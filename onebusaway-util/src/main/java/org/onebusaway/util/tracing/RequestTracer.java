@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.util.tracing;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Records span timings for the request running on the current thread.  A
+ * trace is started with {@link #begin(String)} and finished with
+ * {@link #end()}; in between, code that wants to be broken out in the trace
+ * wraps itself in a {@link #span(String)}:
+ * 
+ * <pre>
+ * try (RequestTracer.Span span = RequestTracer.span("arrivals")) {
+ *   ...
+ * }
+ * </pre>
+ * 
+ * When no trace is active on the thread, {@link #span(String)} returns a shared
+ * no-op span, so instrumented code costs a thread local lookup when tracing is
+ * off.
+ */
+public final class RequestTracer {
+
+  private static final Span NO_OP_SPAN = new Span(null, null);
+
+  private static final ThreadLocal<ActiveTrace> _current = new ThreadLocal<ActiveTrace>();
+
+  private static final ThreadMXBean _threads = ManagementFactory.getThreadMXBean();
+
+  private RequestTracer() {
+
+  }
+
+  public static boolean isActive() {
+    return _current.get() != null;
+  }
+
+  /**
+   * Start a trace on the current thread, discarding any trace that was left
+   * active.
+   */
+  public static void begin(String name) {
+    ActiveTrace trace = new ActiveTrace();
+    trace.trace.setName(name);
+    trace.trace.setThreadName(Thread.currentThread().getName());
+    trace.trace.setStartTime(System.currentTimeMillis());
+    trace.startNanos = System.nanoTime();
+    trace.startCpuNanos = getCurrentThreadCpuTime();
+    trace.startAllocatedBytes = getCurrentThreadAllocatedBytes();
+    _current.set(trace);
+  }
+
+  public static Span span(String name) {
+    ActiveTrace trace = _current.get();
+    if (trace == null)
+      return NO_OP_SPAN;
+    RequestTraceSpan span = new RequestTraceSpan();
+    span.setName(name);
+    span.setDepth(trace.depth++);
+    span.setOffsetMillis((System.nanoTime() - trace.startNanos) / 1000000);
+    trace.trace.getSpans().add(span);
+    return new Span(trace, span);
+  }
+
+  /**
+   * Finish the trace on the current thread.
+   * 
+   * @return the finished trace, or null if no trace was active
+   */
+  public static RequestTrace end() {
+    ActiveTrace active = _current.get();
+    if (active == null)
+      return null;
+    _current.remove();
+    RequestTrace trace = active.trace;
+    trace.setDurationMillis((System.nanoTime() - active.startNanos) / 1000000);
+    if (active.startCpuNanos >= 0)
+      trace.setCpuMillis((getCurrentThreadCpuTime() - active.startCpuNanos) / 1000000);
+    if (active.startAllocatedBytes >= 0)
+      trace.setAllocatedBytes(getCurrentThreadAllocatedBytes()
+          - active.startAllocatedBytes);
+    return trace;
+  }
+
+  private static long getCurrentThreadCpuTime() {
+    if (!_threads.isCurrentThreadCpuTimeSupported())
+      return -1;
+    return _threads.getCurrentThreadCpuTime();
+  }
+
+  private static long getCurrentThreadAllocatedBytes() {
+    if (!(_threads instanceof com.sun.management.ThreadMXBean))
+      return -1;
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) _threads;
+    if (!threads.isThreadAllocatedMemorySupported()
+        || !threads.isThreadAllocatedMemoryEnabled())
+      return -1;
+    return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  public static class Span implements AutoCloseable {
+
+    private final ActiveTrace _trace;
+
+    private final RequestTraceSpan _span;
+
+    private final long _startNanos;
+
+    private final long _startAllocatedBytes;
+
+    private boolean _closed = false;
+
+    private Span(ActiveTrace trace, RequestTraceSpan span) {
+      _trace = trace;
+      _span = span;
+      _startNanos = trace == null ? 0 : System.nanoTime();
+      _startAllocatedBytes = trace == null ? -1
+          : getCurrentThreadAllocatedBytes();
+    }
+
+    @Override
+    public void close() {
+      if (_trace == null || _closed)
+        return;
+      _closed = true;
+      _trace.depth--;
+      _span.setDurationMillis((System.nanoTime() - _startNanos) / 1000000);
+      if (_startAllocatedBytes >= 0)
+        _span.setAllocatedBytes(getCurrentThreadAllocatedBytes()
+            - _startAllocatedBytes);
+    }
+  }
+
+  private static class ActiveTrace {
+
+    private final RequestTrace trace = new RequestTrace();
+
+    private long startNanos;
+
+    private long startCpuNanos;
+
+    private long startAllocatedBytes;
+
+    private int depth = 0;
+  }
+}
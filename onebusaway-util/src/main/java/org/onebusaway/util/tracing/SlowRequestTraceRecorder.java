@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.util.tracing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Starts {@link RequestTracer} traces for a sample of requests and keeps the
+ * most recent ones that ran longer than a threshold.  Tracing is opt-in: a
+ * webapp enables it by defining a bean of this type.
+ */
+public class SlowRequestTraceRecorder {
+
+  private long _thresholdMillis = 1000;
+
+  private int _sampleInterval = 1;
+
+  private int _capacity = 100;
+
+  private final AtomicLong _requestCount = new AtomicLong();
+
+  private final Deque<RequestTrace> _traces = new ArrayDeque<RequestTrace>();
+
+  /**
+   * @param thresholdMillis requests taking at least this long are kept
+   */
+  public void setThresholdMillis(long thresholdMillis) {
+    _thresholdMillis = thresholdMillis;
+  }
+
+  public long getThresholdMillis() {
+    return _thresholdMillis;
+  }
+
+  /**
+   * @param sampleInterval trace one out of every sampleInterval requests
+   */
+  public void setSampleInterval(int sampleInterval) {
+    if (sampleInterval < 1)
+      throw new IllegalArgumentException("sampleInterval must be positive");
+    _sampleInterval = sampleInterval;
+  }
+
+  /**
+   * @param capacity number of slow traces to keep
+   */
+  public void setCapacity(int capacity) {
+    if (capacity < 1)
+      throw new IllegalArgumentException("capacity must be positive");
+    _capacity = capacity;
+  }
+
+  /**
+   * Start a trace on the current thread if this request is sampled.  Does
+   * nothing if a trace is already active, so the outermost caller owns it.
+   * 
+   * @return true if a trace was started, in which case the caller must call
+   *         {@link #end()}
+   */
+  public boolean begin(String name) {
+    if (RequestTracer.isActive())
+      return false;
+    if (_sampleInterval > 1
+        && _requestCount.incrementAndGet() % _sampleInterval != 0)
+      return false;
+    RequestTracer.begin(name);
+    return true;
+  }
+
+  /**
+   * Finish the trace on the current thread, keeping it if it was slow.
+   */
+  public RequestTrace end() {
+    RequestTrace trace = RequestTracer.end();
+    if (trace != null && trace.getDurationMillis() >= _thresholdMillis) {
+      synchronized (_traces) {
+        _traces.addFirst(trace);
+        while (_traces.size() > _capacity)
+          _traces.removeLast();
+      }
+    }
+    return trace;
+  }
+
+  /**
+   * @return the retained slow traces, most recent first
+   */
+  public List<RequestTrace> getSlowTraces() {
+    synchronized (_traces) {
+      return new ArrayList<RequestTrace>(_traces);
+    }
+  }
+
+  public void clear() {
+    synchronized (_traces) {
+      _traces.clear();
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2011 Brian Ferris <bdferris@onebusaway.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.util.tracing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class SlowRequestTraceRecorderTest {
+
+  @After
+  public void after() {
+    RequestTracer.end();
+  }
+
+  @Test
+  public void testSpans() {
+    SlowRequestTraceRecorder recorder = new SlowRequestTraceRecorder();
+    recorder.setThresholdMillis(0);
+
+    assertTrue(recorder.begin("request"));
+    // nested begin leaves the outer trace in charge
+    assertFalse(recorder.begin("nested"));
+    try (RequestTracer.Span action = RequestTracer.span("action")) {
+      try (RequestTracer.Span service = RequestTracer.span("service")) {
+      }
+    }
+    try (RequestTracer.Span result = RequestTracer.span("result")) {
+    }
+    RequestTrace trace = recorder.end();
+
+    assertNotNull(trace);
+    assertEquals("request", trace.getName());
+    List<RequestTraceSpan> spans = trace.getSpans();
+    assertEquals(3, spans.size());
+    assertEquals("action", spans.get(0).getName());
+    assertEquals(0, spans.get(0).getDepth());
+    assertEquals("service", spans.get(1).getName());
+    assertEquals(1, spans.get(1).getDepth());
+    assertEquals("result", spans.get(2).getName());
+    assertEquals(0, spans.get(2).getDepth());
+
+    assertEquals(1, recorder.getSlowTraces().size());
+    assertFalse(RequestTracer.isActive());
+  }
+
+  @Test
+  public void testThresholdAndCapacity() {
+    SlowRequestTraceRecorder recorder = new SlowRequestTraceRecorder();
+    recorder.setThresholdMillis(60 * 1000);
+    recorder.begin("fast");
+    assertNotNull(recorder.end());
+    assertTrue(recorder.getSlowTraces().isEmpty());
+
+    recorder.setThresholdMillis(0);
+    recorder.setCapacity(2);
+    for (String name : new String[] {"a", "b", "c"}) {
+      recorder.begin(name);
+      recorder.end();
+    }
+    List<RequestTrace> traces = recorder.getSlowTraces();
+    assertEquals(2, traces.size());
+    assertEquals("c", traces.get(0).getName());
+    assertEquals("b", traces.get(1).getName());
+
+    recorder.clear();
+    assertTrue(recorder.getSlowTraces().isEmpty());
+  }
+
+  @Test
+  public void testSampling() {
+    SlowRequestTraceRecorder recorder = new SlowRequestTraceRecorder();
+    recorder.setSampleInterval(3);
+    int traced = 0;
+    for (int i = 0; i < 9; i++) {
+      if (recorder.begin("request")) {
+        traced++;
+        recorder.end();
+      }
+    }
+    assertEquals(3, traced);
+  }
+
+  @Test
+  public void testSpanWithoutTrace() {
+    assertFalse(RequestTracer.isActive());
+    try (RequestTracer.Span span = RequestTracer.span("ignored")) {
+    }
+    assertNull(RequestTracer.end());
+  }
+}